@@ -1,6 +1,10 @@
 package com.lyra.agent.agent;
 
+import com.lyra.agent.llm.LlmResponse;
+import com.lyra.agent.llm.ToolCall;
+
 import java.time.Instant;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -8,6 +12,11 @@ import java.util.Map;
  * Supports system, user, assistant, and tool roles.
  */
 public class Message {
+    /** Metadata key: the native tool calls of an assistant message, a {@code List<ToolCall>}. */
+    public static final String TOOL_CALLS = LlmResponse.TOOL_CALLS;
+    /** Metadata key: the id of the tool call a tool message answers. */
+    public static final String TOOL_CALL_ID = "toolCallId";
+
     public enum Role {
         SYSTEM, USER, ASSISTANT, TOOL
     }
@@ -38,10 +47,26 @@ public class Message {
         return new Message(Role.ASSISTANT, content, null, Instant.now(), Map.of());
     }
 
+    /**
+     * An assistant turn that requested native tool calls.
+     */
+    public static Message assistant(String content, List<ToolCall> toolCalls) {
+        return new Message(Role.ASSISTANT, content, null, Instant.now(), Map.of(TOOL_CALLS, List.copyOf(toolCalls)));
+    }
+
     public static Message tool(String toolName, String content) {
         return new Message(Role.TOOL, content, toolName, Instant.now(), Map.of());
     }
 
+    /**
+     * The result of a native tool call, answering the call with the given id.
+     * Some OpenAI-compatible servers stream calls without an id; the message then carries none.
+     */
+    public static Message tool(String toolName, String toolCallId, String content) {
+        return new Message(Role.TOOL, content, toolName, Instant.now(),
+                toolCallId != null ? Map.of(TOOL_CALL_ID, toolCallId) : Map.of());
+    }
+
     public Role getRole() {
         return role;
     }
@@ -61,4 +86,18 @@ public class Message {
     public Map<String, Object> getMetadata() {
         return metadata;
     }
+
+    /**
+     * @return the native tool calls of an assistant turn, empty if none
+     */
+    public List<ToolCall> getToolCalls() {
+        return ToolCall.from(metadata);
+    }
+
+    /**
+     * @return the id of the tool call this tool message answers, or null for a plain observation
+     */
+    public String getToolCallId() {
+        return metadata != null && metadata.get(TOOL_CALL_ID) instanceof String id ? id : null;
+    }
 }
\ No newline at end of file
@@ -9,6 +9,7 @@ public class ModeResult {
     private final String finalAnswer;
     private final List<Trace> trace;
     private final boolean isInterrupted;
+    private final RunUsage usage;
 
     /**
      * Create a final answer result.
@@ -17,7 +18,18 @@ public class ModeResult {
      * @return ModeResult instance
      */
     public static ModeResult finalAnswer(String finalAnswer, List<Trace> trace) {
-        return new ModeResult(finalAnswer, trace, false);
+        return finalAnswer(finalAnswer, trace, RunUsage.EMPTY);
+    }
+
+    /**
+     * Create a final answer result.
+     * @param finalAnswer the final answer
+     * @param trace execution trace
+     * @param usage token usage of the run
+     * @return ModeResult instance
+     */
+    public static ModeResult finalAnswer(String finalAnswer, List<Trace> trace, RunUsage usage) {
+        return new ModeResult(finalAnswer, trace, false, usage);
     }
 
     /**
@@ -26,13 +38,24 @@ public class ModeResult {
      * @return ModeResult instance
      */
     public static ModeResult interrupted(List<Trace> trace) {
-        return new ModeResult(null, trace, true);
+        return interrupted(trace, RunUsage.EMPTY);
     }
 
-    private ModeResult(String finalAnswer, List<Trace> trace, boolean isInterrupted) {
+    /**
+     * Create an interrupted result when execution is stopped before completion.
+     * @param trace execution trace
+     * @param usage token usage of the run up to the interruption
+     * @return ModeResult instance
+     */
+    public static ModeResult interrupted(List<Trace> trace, RunUsage usage) {
+        return new ModeResult(null, trace, true, usage);
+    }
+
+    private ModeResult(String finalAnswer, List<Trace> trace, boolean isInterrupted, RunUsage usage) {
         this.finalAnswer = finalAnswer;
         this.trace = trace;
         this.isInterrupted = isInterrupted;
+        this.usage = usage;
     }
 
     public String getFinalAnswer() {
@@ -50,4 +73,8 @@ public class ModeResult {
     public boolean isFinal() {
         return !isInterrupted && finalAnswer != null;
     }
-}
\ No newline at end of file
+
+    public RunUsage getUsage() {
+        return usage;
+    }
+}
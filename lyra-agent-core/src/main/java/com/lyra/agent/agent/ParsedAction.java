@@ -1,10 +1,12 @@
 package com.lyra.agent.agent;
 
+import java.util.List;
 import java.util.Map;
 
 /**
  * 解析后的动作或最终答案的载体。
  * 当 {@code finalAnswer} 为真时，表示包含最终文本答案；否则包含下一步动作信息。
+ * 一步中列出多个动作时，名称与输入取第一个动作，全部动作见 {@link #getActions()}。
  */
 public class ParsedAction {
     private final boolean finalAnswer;
@@ -12,6 +14,7 @@ public class ParsedAction {
     private final String actionName;
     private final Map<String, Object> actionInput;
     private final String thought;
+    private final List<ParsedAction> actions;
 
     /**
      * 构造一个非最终答案的动作。
@@ -26,6 +29,25 @@ public class ParsedAction {
         this.thought = thought;
         this.actionName = actionName;
         this.actionInput = actionInput;
+        this.actions = List.of(this);
+    }
+
+    /**
+     * 构造一步中的多个动作。
+     *
+     * @param thought 当前思考
+     * @param actions 按输出顺序排列的单个动作，至少一个
+     */
+    public ParsedAction(String thought, List<ParsedAction> actions) {
+        if (actions.isEmpty()) {
+            throw new IllegalArgumentException("actions must not be empty");
+        }
+        this.finalAnswer = false;
+        this.finalText = null;
+        this.thought = thought;
+        this.actionName = actions.get(0).getActionName();
+        this.actionInput = actions.get(0).getActionInput();
+        this.actions = List.copyOf(actions);
     }
 
     /**
@@ -39,6 +61,7 @@ public class ParsedAction {
         this.thought = null;
         this.actionName = null;
         this.actionInput = null;
+        this.actions = List.of();
     }
 
     /**
@@ -69,6 +92,13 @@ public class ParsedAction {
         return actionInput;
     }
 
+    /**
+     * 获取本步的全部动作，按输出顺序；单个动作时只含自身，最终答案时为空
+     */
+    public List<ParsedAction> getActions() {
+        return actions;
+    }
+
     /**
      * 获取当前思考文本
      */
@@ -3,38 +3,94 @@ package com.lyra.agent.agent;
 import com.lyra.agent.event.AgentEvent;
 import com.lyra.agent.event.EventBus;
 import com.lyra.agent.llm.LLMProvider;
+import com.lyra.agent.llm.LlmResponse;
+import com.lyra.agent.llm.StreamPublishers;
+import com.lyra.agent.llm.ToolCall;
 import com.lyra.agent.memory.AgentMemory;
-import com.lyra.agent.parser.ReActOutputParser;
+import com.lyra.agent.parser.ReActParseListener;
+import com.lyra.agent.parser.StreamingReActParser;
+import com.lyra.agent.tool.ParallelToolRunner;
 import com.lyra.agent.tool.ToolExecutor;
+import com.lyra.agent.tokenizer.ApproximateTokenizer;
+import com.lyra.agent.tokenizer.ContextBudget;
+import com.lyra.agent.tokenizer.Tokenizer;
 import com.lyra.agent.tool.ToolRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.core.io.Resource;
 import org.springframework.util.StreamUtils;
 
+import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 
 /**
  * ReAct mode implementation following the Mode interface.
  * Implements the Reasoning + Action pattern with Thought -> Action -> Observation cycles.
+ * When native tool calling is enabled and the provider supports it, the tools are sent as structured
+ * definitions and the model's tool calls are executed directly; otherwise the prompt template describes
+ * the tools and the output is parsed for "Action:" lines.
  */
 public class ReactMode implements Mode {
     private static final Logger logger = LoggerFactory.getLogger(ReactMode.class);
+    // Ends generation before the model invents the observation of its own action
+    private static final List<String> STOP_SEQUENCES = List.of("\nObservation:");
+    // OpenAI and most compatible APIs reject more stop sequences than this
+    private static final int MAX_STOP_SEQUENCES = 4;
+    private static final String NATIVE_SYSTEM_PROMPT = "Answer the following questions as best you can. "
+            + "Call the provided tools when you need more information, then reply with the final answer to the original question.";
     private final ToolRegistry toolRegistry;
     private final EventBus eventBus;
     private final int maxSteps;
     private final Resource promptTemplate;
+    private final ContextBudget budget;
+    private final boolean nativeToolCalling;
+    private final boolean speculativeToolExecution;
+    private final ParallelToolRunner toolRunner;
 
     public ReactMode(LLMProvider llmProvider, ToolRegistry toolRegistry, EventBus eventBus, int maxSteps, Resource promptTemplate) {
+        this(llmProvider, toolRegistry, eventBus, maxSteps, promptTemplate, new Options());
+    }
+
+    /**
+     * Creates a ReAct mode with the given options. Options left unset fall back to an approximate budget for
+     * the provider's model and to the process-wide {@link ParallelToolRunner#shared() shared} tool runner.
+     *
+     * @param llmProvider The LLM provider
+     * @param toolRegistry The tool registry
+     * @param eventBus The event bus
+     * @param maxSteps Maximum number of reasoning steps
+     * @param promptTemplate The ReAct prompt template, used when native tool calling is off or unsupported
+     * @param options Context budget, tool calling and tool execution settings
+     */
+    public ReactMode(LLMProvider llmProvider, ToolRegistry toolRegistry, EventBus eventBus, int maxSteps,
+                     Resource promptTemplate, Options options) {
         this.toolRegistry = toolRegistry;
         this.eventBus = eventBus;
         this.maxSteps = maxSteps;
         this.promptTemplate = promptTemplate;
+        this.budget = options.budget != null ? options.budget : defaultBudget(llmProvider);
+        this.nativeToolCalling = options.nativeToolCalling;
+        this.speculativeToolExecution = options.speculativeToolExecution;
+        this.toolRunner = options.toolRunner != null ? options.toolRunner : ParallelToolRunner.shared();
+    }
+
+    private static ContextBudget defaultBudget(LLMProvider llmProvider) {
+        String model = llmProvider != null ? llmProvider.getModelName() : null;
+        return ContextBudget.forModel(model, new ApproximateTokenizer(ContextBudget.encodingFor(model)));
     }
 
     @Override
@@ -44,40 +100,139 @@ public class ReactMode implements Mode {
 
     @Override
     public ModeResult run(ModeContext context) {
+        SpeculativeToolCalls speculative = speculativeToolExecution ? new SpeculativeToolCalls(toolRegistry, toolRunner) : null;
+        try {
+            return run(context, speculative);
+        } finally {
+            if (speculative != null) {
+                // Calls started in a step that then ended in a final answer or an error
+                speculative.cancelAll();
+            }
+        }
+    }
+
+    private ModeResult run(ModeContext context, SpeculativeToolCalls speculative) {
         logger.info("Starting ReAct mode execution with {} initial messages", context.getMessages().size());
-        List<Message> messages = new ArrayList<>(context.getMessages());
         AgentMemory memory = context.getMemory();
         List<Trace> trace = new ArrayList<>(context.getTrace());
+        boolean nativeTools = nativeToolCalling && context.getLlmProvider().supportsToolCalling()
+                && !toolRegistry.getToolDescriptors().isEmpty();
+        Map<String, Object> options = context.getOptions();
+        int toolTokens = 0;
+        if (nativeTools) {
+            options = new HashMap<>(options != null ? options : Map.of());
+            options.put(LLMProvider.OPTION_TOOLS, toolRegistry.getToolDescriptors());
+            // Tool definitions are part of the prompt but not of any message
+            toolTokens = budget.toolTokens(options);
+        } else {
+            options = withStopSequences(options);
+        }
+
+        // System prefix (template + tools) stays identical across steps and the history is
+        // append-only, so providers with prompt-prefix caching can reuse earlier steps
+        PromptWindow conversation;
+        try {
+            List<Message> initial = nativeTools ? nativeConversation(context.getMessages()) : buildConversation(context.getMessages());
+            conversation = new PromptWindow(initial, budget.getTokenizer(), toolTokens);
+        } catch (IOException e) {
+            String errorMsg = "Error reading prompt template: " + e.getMessage();
+            logger.error(errorMsg, e);
+            trace.add(Trace.start("trace-prompt", 0, name(), "default", "reasoning", "Building prompt")
+                    .end("error", errorMsg));
+            eventBus.publish(new AgentEvent("agent.error", Map.of("message", errorMsg)));
+            return ModeResult.interrupted(trace);
+        }
 
         logger.debug("Publishing agent start event");
-        eventBus.publish(new AgentEvent("agent.start", Map.of("mode", name(), "agentId", "default")));
+        eventBus.publish(new AgentEvent("agent.start", Map.of("mode", name(), "agentId", "default", "nativeTools", nativeTools)));
 
+        RunUsage usage = RunUsage.EMPTY;
         for (int step = 0; step < maxSteps; step++) {
             final int stepCount = step + 1;
             logger.info("Starting step {} of {}", stepCount, maxSteps);
-            Trace stepTrace = Trace.start("trace-" + step, step, name(), "default", "reasoning", "Starting reasoning step " + step);
+
+            // Drop the oldest turns when the history outgrows the model's context budget
+            int promptLimit = budget.promptLimit(options);
+            int omitted = conversation.fit(promptLimit);
+            if (omitted > 0) {
+                logger.info("Omitted {} earlier steps to fit the context budget of {} tokens", omitted, promptLimit);
+            }
+            int promptTokens = conversation.tokens();
+            Trace stepTrace = Trace.start("trace-" + step, step, name(), "default", "reasoning", "Starting reasoning step " + step)
+                    .withTokens(promptTokens, 0);
             trace.add(stepTrace);
 
             logger.debug("Publishing agent step event for step {}", stepCount);
-            eventBus.publish(new AgentEvent("agent.step", Map.of("step", step + 1, "mode", name())));
+            eventBus.publish(new AgentEvent("agent.step", Map.of("step", step + 1, "mode", name(), "promptTokens", promptTokens)));
+
+            if (promptTokens > promptLimit) {
+                String errorMsg = "Prompt of " + promptTokens + " tokens exceeds the context budget of " + promptLimit + " tokens";
+                logger.error(errorMsg);
+                trace.add(stepTrace.end("error", errorMsg));
+                eventBus.publish(new AgentEvent("agent.error", Map.of("message", errorMsg)));
+                return ModeResult.interrupted(trace, usage);
+            }
 
-            // Build prompt with current state
-            logger.debug("Building prompt for step {}", stepCount);
-            String prompt = buildPrompt(messages, context.getMemory());
-            logger.info("========== ReAct Prompt for Step {} ==========", stepCount);
-            logger.info("Prompt length: {} characters", prompt.length());
-            logger.info("Full Prompt:\n{}", prompt);
-            logger.info("========== End of Prompt ==========");
-            List<Message> promptMessages = List.of(Message.user(prompt));
+            List<Message> promptMessages = conversation.messages();
+            logger.info("Step {} prompt: {} messages, {} tokens", stepCount, promptMessages.size(), promptTokens);
+            // Full prompts and completions go to the audit sink (agent.audit); only render here when tracing
+            if (logger.isTraceEnabled()) {
+                logger.trace("Full prompt for step {}:\n{}", stepCount, render(promptMessages));
+            }
 
             // Get LLM response with streaming
             logger.debug("Calling LLM for step {} with streaming", stepCount);
             final StringBuilder fullOutput = new StringBuilder();
-            
+            final AtomicReference<Map<String, Object>> reportedUsage = new AtomicReference<>(Map.of());
+            // Native tool calls stream in as fragments keyed by their index
+            final TreeMap<Integer, ToolCall> toolCalls = new TreeMap<>();
+            long callStart = System.nanoTime();
+            // Text-mode output is parsed as it streams; the action name is announced before its input arrives,
+            // and the thought and the final answer are forwarded token by token without the ReAct markers around them
+            final StreamingReActParser parser = nativeTools ? null : new StreamingReActParser(new ReActParseListener() {
+                @Override
+                public void onThoughtDelta(String delta) {
+                    eventBus.publish(new AgentEvent("agent.thought.delta", Map.of("delta", delta, "step", stepCount)));
+                }
+
+                @Override
+                public void onActionName(String actionName) {
+                    eventBus.publish(new AgentEvent("agent.action", Map.of("name", actionName, "step", stepCount)));
+                }
+
+                @Override
+                public void onFinalAnswerDelta(String delta) {
+                    eventBus.publish(new AgentEvent("agent.answer.delta", Map.of("delta", delta, "step", stepCount)));
+                }
+
+                private int actions;
+
+                @Override
+                public void onActionInput(String actionName, Map<String, Object> input) {
+                    if (speculative != null) {
+                        speculative.start(actions, actionName, input);
+                    }
+                    actions++;
+                }
+            });
+            boolean aborted;
+
             try {
-                context.getLlmProvider().streamChat(promptMessages, context.getOptions(), chunk -> {
+                aborted = StreamPublishers.consumeUntil(context.getLlmProvider().streamChat(promptMessages, options), chunk -> {
+                    // Usage arrives on a terminal chunk; Gemini repeats it cumulatively, so the last one wins
+                    if (chunk.isDone() && chunk.getMetadata() != null && !chunk.getMetadata().isEmpty()) {
+                        reportedUsage.set(chunk.getMetadata());
+                    }
+                    ToolCall.merge(toolCalls, ToolCall.from(chunk.getMetadata()));
+                    if (speculative != null && toolCalls.size() > 1) {
+                        // Calls stream one after another, so every call before the last is complete
+                        startCompleteCalls(speculative, toolCalls);
+                    }
                     if (chunk.getContent() != null && !chunk.getContent().isEmpty()) {
                         fullOutput.append(chunk.getContent());
+                        if (parser != null) {
+                            parser.feed(chunk.getContent());
+                        }
                         // Publish streaming chunk event
                         eventBus.publish(new AgentEvent("agent.stream.chunk", 
                             Map.of("content", chunk.getContent(), "done", chunk.isDone())));
@@ -85,10 +240,12 @@ public class ReactMode implements Mode {
                     if (chunk.isDone()) {
                         logger.debug("LLM streaming completed for step {}", stepCount);
                     }
+                    // Stop reading (and paying for) tokens once a whole action or final answer has arrived
+                    return parser == null || !parser.isComplete();
                 });
-                
-                logger.debug("LLM response received for step {}: {}", stepCount, 
-                    fullOutput.substring(0, Math.min(100, fullOutput.length())) + (fullOutput.length() > 100 ? "..." : ""));
+
+                logger.debug("LLM response received for step {}: {} chars{}", stepCount, fullOutput.length(),
+                        aborted ? ", stream cancelled after a complete action" : "");
             } catch (Exception e) {
                 String errorMsg = "LLM error: " + e.getMessage();
                 logger.error(errorMsg, e);
@@ -99,12 +256,22 @@ public class ReactMode implements Mode {
                 eventBus.publish(new AgentEvent("agent.error", Map.of("message", errorMsg)));
                 
                 // Return an interrupted result with the error trace
-                return ModeResult.interrupted(trace);
+                return ModeResult.interrupted(trace, usage.plus(reportedUsage.get(), elapsedMs(callStart)));
             }
 
             String output = fullOutput.toString();
-            // Check if the output contains an error message before parsing
-            if (output.contains("Error calling") || output.contains("Too Many Requests") || output.contains("429")) {
+            if (aborted && reportedUsage.get().isEmpty()) {
+                // A cancelled stream never reaches the usage chunk; count what was received locally
+                reportedUsage.set(Map.of(LlmResponse.PROMPT_TOKENS, promptTokens,
+                        LlmResponse.COMPLETION_TOKENS, budget.getTokenizer().count(output)));
+            }
+            usage = usage.plus(reportedUsage.get(), elapsedMs(callStart));
+            // Prefer the provider's own counts; fall back to the local tokenizer when it reports none
+            stepTrace = stepTrace.withTokens(
+                    tokens(reportedUsage.get(), LlmResponse.PROMPT_TOKENS, promptTokens),
+                    tokens(reportedUsage.get(), LlmResponse.COMPLETION_TOKENS, budget.getTokenizer().count(output)));
+            // Providers report failures (including exhausted rate-limit retries) as an "Error calling" message
+            if (output.startsWith("Error calling")) {
                 String errorMsg = "LLM API Error: " + output;
                 logger.error(errorMsg);
                 
@@ -114,76 +281,100 @@ public class ReactMode implements Mode {
                 eventBus.publish(new AgentEvent("agent.error", Map.of("message", errorMsg)));
                 
                 // Return an interrupted result with the error trace
-                return ModeResult.interrupted(trace);
+                return ModeResult.interrupted(trace, usage);
             }
             
-            // Parse the output
-            logger.debug("Parsing LLM output for step {}", stepCount);
-            com.lyra.agent.agent.ParsedAction action = ReActOutputParser.parse(output);
-
-            if (action.isFinalAnswer()) {
-                logger.info("Final answer reached at step {}, answer: {}", stepCount, action.getFinalAnswer().substring(0, Math.min(100, action.getFinalAnswer().length())) + (action.getFinalAnswer().length() > 100 ? "..." : ""));
-                
-                // Add the final thought to messages
-                if (action.getThought() != null && !action.getThought().isEmpty()) {
-                    messages.add(Message.assistant(action.getThought()));
+            if (nativeTools) {
+                // A reply without tool calls is the final answer
+                if (toolCalls.isEmpty()) {
+                    return finish(nativeAnswer(output), stepCount, stepTrace, trace, usage);
                 }
-                
-                Trace finalTrace = stepTrace.end("completed", "Final answer reached");
-                trace.add(finalTrace);
-                
-                logger.debug("Publishing agent finish event");
-                eventBus.publish(new AgentEvent("agent.finish", Map.of("answer", action.getFinalAnswer(), "steps", stepCount)));
-                return ModeResult.finalAnswer(action.getFinalAnswer(), trace);
+                List<ToolCall> calls = new ArrayList<>(toolCalls.values());
+                if (!output.isBlank()) {
+                    eventBus.publish(new AgentEvent("agent.thought", Map.of("thought", output.trim())));
+                }
+                conversation.add(Message.assistant(output, calls));
+                List<PlannedCall> planned = new ArrayList<>(calls.size());
+                for (ToolCall call : calls) {
+                    ToolExecutor tool = toolRegistry.getTool(call.getName());
+                    Map<String, Object> input = null;
+                    String errorMsg = null;
+                    if (tool == null) {
+                        errorMsg = "Error: Tool " + call.getName() + " not found";
+                    } else {
+                        try {
+                            input = call.parseArguments();
+                        } catch (IllegalArgumentException e) {
+                            errorMsg = "Error: " + e.getMessage();
+                        }
+                    }
+                    if (errorMsg != null) {
+                        // Every tool call needs an answer, so the model sees the error and can correct itself
+                        logger.warn(errorMsg);
+                        trace.add(stepTrace.end("error", errorMsg));
+                        eventBus.publish(new AgentEvent("agent.error", Map.of("message", errorMsg)));
+                    }
+                    planned.add(new PlannedCall(call.getName(), tool, input, errorMsg));
+                }
+                try {
+                    List<String> results = runTools(planned, output.trim(), step, memory, speculative);
+                    for (int i = 0; i < calls.size(); i++) {
+                        conversation.add(Message.tool(calls.get(i).getName(), calls.get(i).getId(), results.get(i)));
+                    }
+                } catch (Exception e) {
+                    String errorMsg = "Tool execution error: " + e.getMessage();
+                    logger.error("Tool execution failed: {}", errorMsg, e);
+                    trace.add(stepTrace.end("error", errorMsg));
+                    eventBus.publish(new AgentEvent("agent.error", Map.of("message", errorMsg)));
+                    return ModeResult.interrupted(trace, usage);
+                }
+                continue;
             }
 
-            // Process the action
-            logger.debug("Processing action: {} with input: {}", action.getActionName(), action.getActionInput());
-            eventBus.publish(new AgentEvent("agent.thought", Map.of("thought", action.getThought())));
+            // Parse the output, ignoring anything the model wrote past the step's actions
+            logger.debug("Parsing LLM output for step {}", stepCount);
+            parser.finish();
+            if (parser.getEnd() >= 0) {
+                output = output.substring(0, parser.getEnd());
+            }
+            com.lyra.agent.agent.ParsedAction action = parser.result();
 
-            ToolExecutor tool = toolRegistry.getTool(action.getActionName());
-            if (tool == null) {
-                String errorMsg = "Error: Tool " + action.getActionName() + " not found";
-                logger.warn(errorMsg);
-                messages.add(Message.assistant(action.getThought()));
-                messages.add(Message.tool(action.getActionName(), errorMsg));
-                
-                Trace errorTrace = stepTrace.end("error", errorMsg);
-                trace.add(errorTrace);
-                
-                eventBus.publish(new AgentEvent("agent.error", Map.of("message", errorMsg)));
-                continue;
+            if (action.isFinalAnswer()) {
+                return finish(action.getFinalAnswer(), stepCount, stepTrace, trace, usage);
             }
 
-            try {
-                logger.info("Executing tool: {} with input: {}", action.getActionName(), action.getActionInput());
-                eventBus.publish(new AgentEvent("agent.tool.start", 
-                    Map.of("name", action.getActionName(), "input", action.getActionInput())));
+            // Process the actions; a step may list several independent ones
+            logger.debug("Processing {} action(s), first: {} with input: {}", action.getActions().size(),
+                    action.getActionName(), action.getActionInput());
+            eventBus.publish(new AgentEvent("agent.thought", Map.of("thought", action.getThought())));
 
-                Object result = tool.execute(action.getActionInput());
-                String resultStr = result.toString();
-                logger.info("Tool execution completed, result: {}", resultStr.substring(0, Math.min(100, resultStr.length())) + (resultStr.length() > 100 ? "..." : ""));
+            List<PlannedCall> planned = new ArrayList<>(action.getActions().size());
+            for (com.lyra.agent.agent.ParsedAction single : action.getActions()) {
+                ToolExecutor tool = toolRegistry.getTool(single.getActionName());
+                String errorMsg = null;
+                if (tool == null) {
+                    errorMsg = "Error: Tool " + single.getActionName() + " not found";
+                    logger.warn(errorMsg);
 
-                eventBus.publish(new AgentEvent("agent.tool.end", 
-                    Map.of("name", action.getActionName(), "result", resultStr)));
+                    Trace errorTrace = stepTrace.end("error", errorMsg);
+                    trace.add(errorTrace);
 
-                // Add to messages for next iteration
-                messages.add(Message.assistant(action.getThought()));
-                messages.add(Message.tool(action.getActionName(), resultStr));
+                    eventBus.publish(new AgentEvent("agent.error", Map.of("message", errorMsg)));
+                }
+                planned.add(new PlannedCall(single.getActionName(), tool, single.getActionInput(), errorMsg));
+            }
 
-                // Update memory with the interaction
-                memory.remember(new com.lyra.agent.memory.MemoryRecord(
-                    "thought-" + step, action.getThought(), "thought", Instant.now(), Map.of("step", step)));
-                memory.remember(new com.lyra.agent.memory.MemoryRecord(
-                    "action-" + step, action.getActionName() + ": " + action.getActionInput(), "action", Instant.now(), Map.of("step", step)));
-                memory.remember(new com.lyra.agent.memory.MemoryRecord(
-                    "observation-" + step, resultStr, "observation", Instant.now(), Map.of("step", step)));
+            try {
+                List<String> results = runTools(planned, action.getThought(), step, memory, speculative);
 
+                // Append to the conversation for the next iteration, observations in the order of the actions
+                conversation.add(Message.assistant(assistantTurn(output)));
+                for (int i = 0; i < planned.size(); i++) {
+                    conversation.add(Message.tool(planned.get(i).name, "Observation: " + results.get(i)));
+                }
             } catch (Exception e) {
                 String errorMsg = "Tool execution error: " + e.getMessage();
                 logger.error("Tool execution failed: {}", errorMsg, e);
-                messages.add(Message.assistant(action.getThought()));
-                messages.add(Message.tool(action.getActionName(), errorMsg));
                 
                 Trace errorTrace = stepTrace.end("error", errorMsg);
                 trace.add(errorTrace);
@@ -191,7 +382,7 @@ public class ReactMode implements Mode {
                 eventBus.publish(new AgentEvent("agent.error", Map.of("message", errorMsg)));
                 
                 // Return an interrupted result with the error trace
-                return ModeResult.interrupted(trace);
+                return ModeResult.interrupted(trace, usage);
             }
         }
 
@@ -201,44 +392,406 @@ public class ReactMode implements Mode {
         trace.add(timeoutTrace);
         
         eventBus.publish(new AgentEvent("agent.timeout", Map.of("maxSteps", maxSteps)));
-        return ModeResult.interrupted(trace);
+        return ModeResult.interrupted(trace, usage);
+    }
+
+    private ModeResult finish(String answer, int stepCount, Trace stepTrace, List<Trace> trace, RunUsage usage) {
+        logger.info("Final answer reached at step {} ({} chars)", stepCount, answer.length());
+        trace.add(stepTrace.end("completed", "Final answer reached"));
+
+        logger.debug("Publishing agent finish event");
+        eventBus.publish(new AgentEvent("agent.finish", Map.of("answer", answer, "steps", stepCount,
+                "totalTokens", usage.getTotalTokens())));
+        return ModeResult.finalAnswer(answer, trace, usage);
     }
 
     /**
-     * Builds the prompt for the LLM based on the current state.
+     * Executes the tool calls of one step concurrently, publishing their start and end events, and records
+     * the step in memory. Results are merged in call order whatever order the tools finish in.
      *
-     * @param messages The current conversation messages
-     * @return The formatted prompt string
+     * @param calls The calls of the step; calls that could not be prepared carry their error instead
+     * @param thought The reasoning that led to the calls
+     * @param step The step index
+     * @param memory The agent memory
+     * @param speculative Calls already started while the model was streaming, or null
+     * @return For each call, the tool result as text, or the call's error message
+     * @throws Exception if a tool fails or the calls do not finish within the step timeout
      */
-    private String buildPrompt(List<Message> messages, AgentMemory agentMemory) {
+    private List<String> runTools(List<PlannedCall> calls, String thought, int step, AgentMemory memory,
+                                  SpeculativeToolCalls speculative) throws Exception {
         try {
-            String template = StreamUtils.copyToString(promptTemplate.getInputStream(), StandardCharsets.UTF_8);
-            String toolDesc = toolRegistry.getToolDescriptors().stream()
-                    .map(d -> d.name + ": " + d.description)
-                    .collect(Collectors.joining("\n"));
-            String toolNames = toolRegistry.getToolDescriptors().stream()
-                    .map(d -> d.name)
-                    .collect(Collectors.joining(", "));
-
-            // Get user question from the messages
-            String userQuestion = messages.stream()
-                    .filter(m -> m.getRole() == Message.Role.USER)
-                    .findFirst()
-                    .map(Message::getContent)
-                    .orElse("No question provided");
-
-            // Build history string
-            StringBuilder history = new StringBuilder();
-            for (Message msg : messages) {
+            return executeTools(calls, thought, step, memory, speculative);
+        } finally {
+            if (speculative != null) {
+                // Unconfirmed calls, and confirmed ones abandoned by a timeout or a failing tool
+                speculative.cancelAll();
+            }
+        }
+    }
+
+    private List<String> executeTools(List<PlannedCall> calls, String thought, int step, AgentMemory memory,
+                                      SpeculativeToolCalls speculative) throws Exception {
+        List<Callable<Object>> tasks = new ArrayList<>(calls.size());
+        for (int i = 0; i < calls.size(); i++) {
+            PlannedCall call = calls.get(i);
+            if (call.error != null) {
+                continue;
+            }
+            Future<Object> started = speculative != null ? speculative.take(i, call.name, call.input) : null;
+            logger.info("Executing tool: {}{}", call.name, started != null ? " (started speculatively)" : "");
+            logger.debug("Tool input: {}", call.input);
+            eventBus.publish(new AgentEvent("agent.tool.start", Map.of("name", call.name, "input", call.input,
+                    "speculative", started != null)));
+            tasks.add(started != null ? () -> SpeculativeToolCalls.join(started) : () -> call.tool.execute(call.input));
+        }
+        List<Future<Object>> results = tasks.isEmpty() ? List.of() : toolRunner.runAll(tasks);
+
+        List<String> observations = new ArrayList<>(calls.size());
+        int next = 0;
+        for (int i = 0; i < calls.size(); i++) {
+            PlannedCall call = calls.get(i);
+            if (call.error != null) {
+                observations.add(call.error);
+                continue;
+            }
+            Object result;
+            try {
+                result = results.get(next++).get();
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof Exception cause ? cause : e;
+            } catch (CancellationException e) {
+                throw new TimeoutException("Tool " + call.name + " did not finish within " + toolRunner.getTimeoutMs() + " ms");
+            }
+            String resultStr = String.valueOf(result);
+            logger.info("Tool {} completed, result: {} chars", call.name, resultStr.length());
+
+            eventBus.publish(new AgentEvent("agent.tool.end", Map.of("name", call.name, "result", resultStr)));
+
+            String key = calls.size() == 1 ? String.valueOf(step) : step + "-" + i;
+            memory.remember(new com.lyra.agent.memory.MemoryRecord(
+                "thought-" + key, thought, "thought", Instant.now(), Map.of("step", step)));
+            memory.remember(new com.lyra.agent.memory.MemoryRecord(
+                "action-" + key, call.name + ": " + call.input, "action", Instant.now(), Map.of("step", step)));
+            memory.remember(new com.lyra.agent.memory.MemoryRecord(
+                "observation-" + key, resultStr, "observation", Instant.now(), Map.of("step", step)));
+            observations.add(resultStr);
+        }
+        return observations;
+    }
+
+    /**
+     * Builds the initial conversation for a native tool-calling run. The tools travel as structured
+     * definitions, so the system message carries no format instructions or tool descriptions.
+     *
+     * @param messages The initial conversation messages
+     * @return A mutable conversation to which each step appends its turns
+     */
+    private static List<Message> nativeConversation(List<Message> messages) {
+        Message question = messages.stream()
+                .filter(m -> m.getRole() == Message.Role.USER)
+                .findFirst()
+                .orElse(null);
+        StringBuilder user = new StringBuilder("Question: ")
+                .append(question != null ? question.getContent() : "No question provided");
+        for (Message msg : messages) {
+            if (msg != question) {
+                user.append("\n").append(msg.getRole()).append(": ").append(msg.getContent());
+            }
+        }
+
+        List<Message> conversation = new ArrayList<>();
+        conversation.add(Message.system(NATIVE_SYSTEM_PROMPT));
+        conversation.add(Message.user(user.toString()));
+        return conversation;
+    }
+
+    /**
+     * Builds the initial conversation for a run.
+     * The template is split at the line holding {@code {{user_question}}}: everything before it
+     * (instructions and tool descriptions) becomes a stable system message, the rest is rendered
+     * with the question and any prior messages as the first user message.
+     *
+     * @param messages The initial conversation messages
+     * @return A mutable conversation to which each step appends its turns
+     * @throws IOException if the prompt template cannot be read
+     */
+    private List<Message> buildConversation(List<Message> messages) throws IOException {
+        String template = StreamUtils.copyToString(promptTemplate.getInputStream(), StandardCharsets.UTF_8);
+        String toolDesc = toolRegistry.getToolDescriptors().stream()
+                .map(d -> d.name + ": " + d.description)
+                .collect(Collectors.joining("\n"));
+        String toolNames = toolRegistry.getToolDescriptors().stream()
+                .map(d -> d.name)
+                .collect(Collectors.joining(", "));
+
+        // Get user question from the messages
+        Message question = messages.stream()
+                .filter(m -> m.getRole() == Message.Role.USER)
+                .findFirst()
+                .orElse(null);
+        String userQuestion = question != null ? question.getContent() : "No question provided";
+
+        // Messages that preceded this run, excluding the question itself
+        StringBuilder history = new StringBuilder();
+        for (Message msg : messages) {
+            if (msg != question) {
                 history.append(msg.getRole()).append(": ").append(msg.getContent()).append("\n");
             }
+        }
+
+        int questionAt = template.indexOf("{{user_question}}");
+        int split = questionAt < 0 ? template.length() : template.lastIndexOf('\n', questionAt) + 1;
+        String system = template.substring(0, split)
+                .replace("{{tool_descriptions}}", toolDesc)
+                .replace("{{tool_names}}", toolNames)
+                .replace("{{history}}", "")
+                .stripTrailing();
+        String user = questionAt < 0
+                ? "Question: " + userQuestion + "\n" + history
+                : template.substring(split)
+                        .replace("{{tool_descriptions}}", toolDesc)
+                        .replace("{{tool_names}}", toolNames)
+                        .replace("{{user_question}}", userQuestion)
+                        .replace("{{history}}", history.toString());
+
+        List<Message> conversation = new ArrayList<>();
+        conversation.add(Message.system(system));
+        conversation.add(Message.user(user));
+        return conversation;
+    }
+
+    /**
+     * The model's turn as appended to the history: its output up to any self-generated observation.
+     *
+     * @param output The raw LLM output for the step
+     * @return The assistant message content
+     */
+    private static String assistantTurn(String output) {
+        int observation = output.indexOf("\nObservation:");
+        return (observation >= 0 ? output.substring(0, observation) : output).trim();
+    }
+
+    /**
+     * The final answer of a native-mode reply without tool calls. Models often keep the ReAct wording,
+     * so the markers are stripped the same way as in text mode; a reply without them is the answer as is.
+     *
+     * @param output The raw LLM output for the step
+     * @return The final answer
+     */
+    private static String nativeAnswer(String output) {
+        StreamingReActParser parser = new StreamingReActParser();
+        parser.feed(output);
+        parser.finish();
+        com.lyra.agent.agent.ParsedAction parsed = parser.result();
+        return parsed.isFinalAnswer() ? parsed.getFinalAnswer() : output.trim();
+    }
+
+    /**
+     * Puts the ReAct stop sequences ahead of any the caller already set, keeping at most the four most APIs
+     * accept. The ReAct stops are never the ones dropped, since without them the model writes its own observations.
+     */
+    private static Map<String, Object> withStopSequences(Map<String, Object> options) {
+        Map<String, Object> merged = new HashMap<>(options != null ? options : Map.of());
+        List<String> stop = new ArrayList<>(STOP_SEQUENCES);
+        Object existing = merged.get("stop");
+        if (existing instanceof String single) {
+            stop.add(single);
+        } else if (existing instanceof List<?> list) {
+            list.forEach(item -> stop.add(String.valueOf(item)));
+        }
+        List<String> distinct = stop.stream().distinct().collect(Collectors.toList());
+        if (distinct.size() > MAX_STOP_SEQUENCES) {
+            logger.warn("Dropping stop sequences {}: at most {} are accepted and the ReAct stops take precedence",
+                    distinct.subList(MAX_STOP_SEQUENCES, distinct.size()), MAX_STOP_SEQUENCES);
+        }
+        merged.put("stop", List.copyOf(distinct.subList(0, Math.min(distinct.size(), MAX_STOP_SEQUENCES))));
+        return merged;
+    }
+
+    private static void startCompleteCalls(SpeculativeToolCalls speculative, TreeMap<Integer, ToolCall> toolCalls) {
+        int position = 0;
+        for (ToolCall call : toolCalls.headMap(toolCalls.lastKey()).values()) {
+            // A call is complete once the next one starts, so each is parsed only the first time round
+            if (speculative.offer(position)) {
+                try {
+                    speculative.start(position, call.getName(), call.parseArguments());
+                } catch (IllegalArgumentException e) {
+                    // Malformed arguments are reported when the call is executed
+                }
+            }
+            position++;
+        }
+    }
+
+    private static long elapsedMs(long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+
+    private static int tokens(Map<String, Object> usage, String key, int fallback) {
+        return usage.get(key) instanceof Number n ? n.intValue() : fallback;
+    }
+
+    /**
+     * Optional settings of a {@link ReactMode}. Every setter returns this instance so the options can be
+     * chained, e.g. {@code new ReactMode.Options().budget(budget).nativeToolCalling(true)}.
+     */
+    public static final class Options {
+        private ContextBudget budget;
+        private boolean nativeToolCalling;
+        private boolean speculativeToolExecution;
+        private ParallelToolRunner toolRunner;
+
+        /**
+         * @param budget Tokenizer and context budget of the model; by default an approximate budget for the provider's model
+         * @return These options
+         */
+        public Options budget(ContextBudget budget) {
+            this.budget = budget;
+            return this;
+        }
+
+        /**
+         * @param nativeToolCalling Whether to send tools natively to providers that support it; off by default
+         * @return These options
+         */
+        public Options nativeToolCalling(boolean nativeToolCalling) {
+            this.nativeToolCalling = nativeToolCalling;
+            return this;
+        }
+
+        /**
+         * Starts tools marked {@code sideEffectFree} as soon as their name and input have streamed, so they run
+         * during the rest of the model's output; a result is used only if the final parse confirms the call.
+         *
+         * @param speculativeToolExecution Whether to start side-effect-free tools early; off by default
+         * @return These options
+         */
+        public Options speculativeToolExecution(boolean speculativeToolExecution) {
+            this.speculativeToolExecution = speculativeToolExecution;
+            return this;
+        }
+
+        /**
+         * Several calls in one step (native parallel tool calls, or several Action/Action Input pairs) run
+         * concurrently within the runner's parallelism and step timeout.
+         *
+         * @param toolRunner Executes the tool calls of a step; by default {@link ParallelToolRunner#shared()}
+         * @return These options
+         */
+        public Options toolRunner(ParallelToolRunner toolRunner) {
+            this.toolRunner = toolRunner;
+            return this;
+        }
+    }
+
+    /**
+     * A tool call of the current step, ready to run, or the error that keeps it from running.
+     */
+    private static final class PlannedCall {
+        private final String name;
+        private final ToolExecutor tool;
+        private final Map<String, Object> input;
+        private final String error;
+
+        private PlannedCall(String name, ToolExecutor tool, Map<String, Object> input, String error) {
+            this.name = name;
+            this.tool = tool;
+            this.input = input;
+            this.error = error;
+        }
+    }
+
+    /**
+     * The conversation sent to the model. The token count of each message is kept alongside it,
+     * so the prompt size is known each step without re-tokenizing the whole history.
+     */
+    private static final class PromptWindow {
+        // The system prefix and the opening user message are never dropped
+        private static final int PINNED = 2;
+        private final Tokenizer tokenizer;
+        private final List<Message> messages = new ArrayList<>();
+        private final List<Integer> counts = new ArrayList<>();
+        private int tokens;
+        private int omittedSteps;
+
+        PromptWindow(List<Message> initial, Tokenizer tokenizer, int overhead) {
+            this.tokenizer = tokenizer;
+            this.tokens = Tokenizer.TOKENS_PER_REPLY + overhead;
+            initial.forEach(this::add);
+        }
+
+        void add(Message message) {
+            insert(messages.size(), message);
+        }
+
+        int tokens() {
+            return tokens;
+        }
+
+        List<Message> messages() {
+            return List.copyOf(messages);
+        }
+
+        /**
+         * Drops the oldest turns (an assistant message and the observations answering it) until the prompt
+         * fits, always keeping the latest turn. A single note in place of the dropped turns tells the model
+         * that earlier steps happened.
+         *
+         * @param limit The prompt token limit
+         * @return The number of steps dropped by this call
+         */
+        int fit(int limit) {
+            int dropped = 0;
+            int first = omittedSteps > 0 ? PINNED + 1 : PINNED;
+            int turn = turnLength(first);
+            while (tokens > limit && turn > 0 && messages.size() - first > turn) {
+                for (int i = 0; i < turn; i++) {
+                    remove(first);
+                }
+                dropped++;
+                turn = turnLength(first);
+            }
+            if (dropped == 0) {
+                return 0;
+            }
+            if (omittedSteps > 0) {
+                remove(PINNED);
+            }
+            omittedSteps += dropped;
+            insert(PINNED, Message.user("Note: " + omittedSteps + " earlier step(s) were omitted to fit the context window."));
+            return dropped + fit(limit);
+        }
+
+        /**
+         * The number of messages in the turn starting at the given index: the assistant message
+         * followed by its tool observations.
+         */
+        private int turnLength(int start) {
+            int end = start + 1;
+            while (end < messages.size() && messages.get(end).getRole() == Message.Role.TOOL) {
+                end++;
+            }
+            return Math.min(end, messages.size()) - start;
+        }
+
+        private void insert(int index, Message message) {
+            int count = tokenizer.count(message);
+            messages.add(index, message);
+            counts.add(index, count);
+            tokens += count;
+        }
+
+        private void remove(int index) {
+            messages.remove(index);
+            tokens -= counts.remove(index);
+        }
+    }
 
-            return template.replace("{{tool_descriptions}}", toolDesc)
-                    .replace("{{tool_names}}", toolNames)
-                    .replace("{{user_question}}", userQuestion)
-                    .replace("{{history}}", history.toString());
-        } catch (Exception e) {
-            return "Error reading prompt template: " + e.getMessage();
+    private static String render(List<Message> conversation) {
+        StringBuilder sb = new StringBuilder();
+        for (Message msg : conversation) {
+            sb.append(msg.getRole()).append(": ").append(msg.getContent()).append("\n");
         }
+        return sb.toString();
     }
-}
\ No newline at end of file
+}
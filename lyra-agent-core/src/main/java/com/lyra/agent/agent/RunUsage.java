@@ -0,0 +1,82 @@
+package com.lyra.agent.agent;
+
+import com.lyra.agent.llm.LlmResponse;
+
+import java.util.Map;
+
+/**
+ * Token usage and LLM time accumulated over one mode run.
+ * Token counts come from the usage the provider reports; responses replayed from the
+ * response cache count as calls but add no tokens.
+ */
+public class RunUsage {
+    public static final RunUsage EMPTY = new RunUsage(0, 0, 0, 0, 0);
+
+    private final long promptTokens;
+    private final long completionTokens;
+    private final long cachedTokens;
+    private final int llmCalls;
+    private final long llmTimeMs;
+
+    public RunUsage(long promptTokens, long completionTokens, long cachedTokens, int llmCalls, long llmTimeMs) {
+        this.promptTokens = promptTokens;
+        this.completionTokens = completionTokens;
+        this.cachedTokens = cachedTokens;
+        this.llmCalls = llmCalls;
+        this.llmTimeMs = llmTimeMs;
+    }
+
+    /**
+     * Adds one LLM call.
+     *
+     * @param metadata Response metadata carrying the reported usage, may be empty
+     * @param timeMs Wall-clock time of the call
+     * @return The accumulated usage
+     */
+    public RunUsage plus(Map<String, Object> metadata, long timeMs) {
+        if (metadata == null || Boolean.TRUE.equals(metadata.get("cached"))) {
+            return new RunUsage(promptTokens, completionTokens, cachedTokens, llmCalls + 1, llmTimeMs + timeMs);
+        }
+        return new RunUsage(promptTokens + tokens(metadata, LlmResponse.PROMPT_TOKENS),
+                completionTokens + tokens(metadata, LlmResponse.COMPLETION_TOKENS),
+                cachedTokens + tokens(metadata, LlmResponse.CACHED_TOKENS),
+                llmCalls + 1, llmTimeMs + timeMs);
+    }
+
+    private static long tokens(Map<String, Object> metadata, String key) {
+        return metadata.get(key) instanceof Number n ? n.longValue() : 0;
+    }
+
+    public long getPromptTokens() {
+        return promptTokens;
+    }
+
+    public long getCompletionTokens() {
+        return completionTokens;
+    }
+
+    public long getCachedTokens() {
+        return cachedTokens;
+    }
+
+    public long getTotalTokens() {
+        return promptTokens + completionTokens;
+    }
+
+    public int getLlmCalls() {
+        return llmCalls;
+    }
+
+    public long getLlmTimeMs() {
+        return llmTimeMs;
+    }
+
+    /**
+     * Output throughput over the time spent waiting on the LLM.
+     *
+     * @return Completion tokens per second, 0 when nothing was measured
+     */
+    public double getCompletionTokensPerSecond() {
+        return llmTimeMs > 0 ? completionTokens * 1000.0 / llmTimeMs : 0;
+    }
+}
@@ -76,6 +76,10 @@ public class SimpleAgentManager implements AgentManager {
         logger.info("Executing agent mode: {}", agent.mode().name());
         ModeResult result = agent.mode().run(context);
         logger.info("Agent mode execution completed, result is final: {}", result.isFinal());
+        RunUsage usage = result.getUsage();
+        logger.info("Run usage: {} prompt tokens ({} cached), {} completion tokens over {} LLM calls, {} tokens/s",
+                usage.getPromptTokens(), usage.getCachedTokens(), usage.getCompletionTokens(), usage.getLlmCalls(),
+                String.format("%.1f", usage.getCompletionTokensPerSecond()));
 
         // Publish finish event if it's a final result
         if (result.isFinal()) {
@@ -0,0 +1,117 @@
+package com.lyra.agent.agent;
+
+import com.lyra.agent.tool.ParallelToolRunner;
+import com.lyra.agent.tool.ToolExecutor;
+import com.lyra.agent.tool.ToolRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Tool calls of one reasoning step that were started while the model was still streaming.
+ * Only tools declared side-effect-free are started, on the same runner as the step's other calls.
+ * A call that the final parse does not confirm (different name or input, or no action at all) is
+ * cancelled, interrupting the tool if it is still running, and its result is discarded.
+ */
+final class SpeculativeToolCalls {
+    private static final Logger logger = LoggerFactory.getLogger(SpeculativeToolCalls.class);
+
+    private final ToolRegistry toolRegistry;
+    private final ParallelToolRunner toolRunner;
+    private final Map<Integer, Started> started = new ConcurrentHashMap<>();
+    private final Set<Integer> offered = ConcurrentHashMap.newKeySet();
+
+    SpeculativeToolCalls(ToolRegistry toolRegistry, ParallelToolRunner toolRunner) {
+        this.toolRegistry = toolRegistry;
+        this.toolRunner = toolRunner;
+    }
+
+    /**
+     * Marks the call at the given position as seen, so callers that rescan the output examine each call once.
+     *
+     * @param index Position of the call within the step's output
+     * @return true the first time the position is offered in this step
+     */
+    boolean offer(int index) {
+        return offered.add(index);
+    }
+
+    /**
+     * Starts a call in the background unless the tool is unknown, has side effects, or the slot is taken.
+     *
+     * @param index Position of the call within the step's output
+     * @param name Tool name
+     * @param input Tool input
+     */
+    void start(int index, String name, Map<String, Object> input) {
+        ToolExecutor tool = toolRegistry.getTool(name);
+        if (tool == null || !toolRegistry.isSideEffectFree(name) || started.containsKey(index)) {
+            return;
+        }
+        logger.debug("Speculatively executing tool {} (call {})", name, index);
+        started.put(index, new Started(name, input, toolRunner.submit(() -> tool.execute(input))));
+    }
+
+    /**
+     * Claims a started call if it matches the call the model actually made; a mismatched call is cancelled.
+     * A claimed call stays tracked until {@link #cancelAll}, so it is cancelled too if the step gives up on it.
+     *
+     * @param index Position of the call within the step's output
+     * @param name Tool name of the confirmed call
+     * @param input Tool input of the confirmed call
+     * @return The running call, or null when nothing matching was started
+     */
+    Future<Object> take(int index, String name, Map<String, Object> input) {
+        Started call = started.get(index);
+        if (call == null) {
+            return null;
+        }
+        if (!call.name.equals(name) || !call.input.equals(input)) {
+            started.remove(index);
+            call.result.cancel(true);
+            return null;
+        }
+        return call.result;
+    }
+
+    /**
+     * Cancels every call still running and forgets the step, ready for the next one.
+     * Calls that already finished are unaffected.
+     */
+    void cancelAll() {
+        started.values().forEach(call -> call.result.cancel(true));
+        started.clear();
+        offered.clear();
+    }
+
+    /**
+     * Waits for a started call, rethrowing the tool's own exception.
+     */
+    static Object join(Future<Object> result) throws Exception {
+        try {
+            return result.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private static final class Started {
+        private final String name;
+        private final Map<String, Object> input;
+        private final Future<Object> result;
+
+        private Started(String name, Map<String, Object> input, Future<Object> result) {
+            this.name = name;
+            this.input = input;
+            this.result = result;
+        }
+    }
+}
@@ -17,9 +17,17 @@ public class Trace {
     private final Instant endTime;
     private final long durationMs;
     private final String status; // e.g., "success", "error", "interrupted"
+    private final int promptTokens;
+    private final int completionTokens;
 
     public Trace(String id, int step, String mode, String agentId, String action, String details, 
                  Instant startTime, Instant endTime, long durationMs, String status) {
+        this(id, step, mode, agentId, action, details, startTime, endTime, durationMs, status, 0, 0);
+    }
+
+    public Trace(String id, int step, String mode, String agentId, String action, String details,
+                 Instant startTime, Instant endTime, long durationMs, String status,
+                 int promptTokens, int completionTokens) {
         this.id = id;
         this.step = step;
         this.mode = mode;
@@ -30,6 +38,8 @@ public class Trace {
         this.endTime = endTime;
         this.durationMs = durationMs;
         this.status = status;
+        this.promptTokens = promptTokens;
+        this.completionTokens = completionTokens;
     }
 
     public static Trace start(String id, int step, String mode, String agentId, String action, String details) {
@@ -40,7 +50,20 @@ public class Trace {
         Instant now = Instant.now();
         long duration = now.toEpochMilli() - this.startTime.toEpochMilli();
         return new Trace(this.id, this.step, this.mode, this.agentId, this.action, 
-                        details, this.startTime, now, duration, status);
+                        details, this.startTime, now, duration, status, this.promptTokens, this.completionTokens);
+    }
+
+    /**
+     * Returns a copy of this trace carrying the token counts of its LLM call.
+     *
+     * @param promptTokens Tokens in the prompt sent for this step
+     * @param completionTokens Tokens in the model output for this step
+     * @return The trace with token counts
+     */
+    public Trace withTokens(int promptTokens, int completionTokens) {
+        return new Trace(this.id, this.step, this.mode, this.agentId, this.action,
+                        this.details, this.startTime, this.endTime, this.durationMs, this.status,
+                        promptTokens, completionTokens);
     }
 
     public String getId() {
@@ -82,4 +105,12 @@ public class Trace {
     public String getStatus() {
         return status;
     }
+
+    public int getPromptTokens() {
+        return promptTokens;
+    }
+
+    public int getCompletionTokens() {
+        return completionTokens;
+    }
 }
\ No newline at end of file
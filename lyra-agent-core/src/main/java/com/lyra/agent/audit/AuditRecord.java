@@ -0,0 +1,77 @@
+package com.lyra.agent.audit;
+
+import com.lyra.agent.agent.Message;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 一次 LLM 调用的审计记录。
+ * 只持有 prompt 与补全的引用，序列化与截断在写出线程上进行。
+ */
+public final class AuditRecord {
+    private final long timestamp;
+    private final String model;
+    private final List<Message> messages;
+    private final String completion;
+    private final String finishReason;
+    private final Map<String, Object> metadata;
+    private final long latencyMs;
+    private final String error;
+
+    /**
+     * 构造函数。
+     *
+     * @param timestamp    调用开始时间（epoch 毫秒）
+     * @param model        模型名
+     * @param messages     发送的消息
+     * @param completion   模型输出，调用失败时为 null
+     * @param finishReason 结束原因
+     * @param metadata     响应元数据（token 用量等）
+     * @param latencyMs    调用耗时
+     * @param error        失败原因，成功时为 null
+     */
+    public AuditRecord(long timestamp, String model, List<Message> messages, String completion, String finishReason,
+                       Map<String, Object> metadata, long latencyMs, String error) {
+        this.timestamp = timestamp;
+        this.model = model;
+        this.messages = messages;
+        this.completion = completion;
+        this.finishReason = finishReason;
+        this.metadata = metadata;
+        this.latencyMs = latencyMs;
+        this.error = error;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public String getModel() {
+        return model;
+    }
+
+    public List<Message> getMessages() {
+        return messages;
+    }
+
+    public String getCompletion() {
+        return completion;
+    }
+
+    public String getFinishReason() {
+        return finishReason;
+    }
+
+    public Map<String, Object> getMetadata() {
+        return metadata;
+    }
+
+    public long getLatencyMs() {
+        return latencyMs;
+    }
+
+    public String getError() {
+        return error;
+    }
+}
@@ -0,0 +1,37 @@
+package com.lyra.agent.audit;
+
+/**
+ * Prompt 与补全内容的审计输出。
+ * <p>
+ * 调用方先调用 {@link #sample()} 决定本次调用是否记录，只有返回 true 时才收集内容并调用 {@link #record}；
+ * 未被采样的调用不构建任何字符串。{@link #record} 不得阻塞调用线程。
+ */
+public interface AuditSink {
+    /**
+     * 不记录任何内容的实现。
+     */
+    AuditSink NOOP = new AuditSink() {
+        @Override
+        public boolean sample() {
+            return false;
+        }
+
+        @Override
+        public void record(AuditRecord record) {
+        }
+    };
+
+    /**
+     * 决定下一次调用是否记录。
+     *
+     * @return 是否记录
+     */
+    boolean sample();
+
+    /**
+     * 提交一条审计记录。实现应异步写出，缓冲区满时丢弃而不是阻塞。
+     *
+     * @param record 审计记录
+     */
+    void record(AuditRecord record);
+}
@@ -0,0 +1,56 @@
+package com.lyra.agent.audit;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 有界无锁环形缓冲区，多生产者、单消费者。
+ * <p>
+ * 生产者以 CAS 推进 tail 认领槽位后写入元素；消费者按序读取，槽位仍为空表示生产者尚未写完，稍后重试。
+ * 缓冲区满时 {@link #offer} 立即返回 false，从不阻塞生产者。
+ */
+final class MpscRingBuffer<T> {
+    private final AtomicReferenceArray<T> slots;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    private volatile long head;
+
+    MpscRingBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.slots = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+    }
+
+    boolean offer(T item) {
+        long t;
+        do {
+            t = tail.get();
+            if (t - head >= slots.length()) {
+                return false;
+            }
+        } while (!tail.compareAndSet(t, t + 1));
+        slots.lazySet((int) t & mask, item);
+        return true;
+    }
+
+    /**
+     * 取出下一个元素，只能由消费者线程调用。
+     *
+     * @return 元素；缓冲区为空或下一个槽位尚未写完时返回 null
+     */
+    T poll() {
+        long h = head;
+        int index = (int) h & mask;
+        T item = slots.get(index);
+        if (item == null) {
+            return null;
+        }
+        slots.lazySet(index, null);
+        head = h + 1;
+        return item;
+    }
+
+    int size() {
+        return (int) Math.max(0, tail.get() - head);
+    }
+}
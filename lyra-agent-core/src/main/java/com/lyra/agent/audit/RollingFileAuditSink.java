@@ -0,0 +1,259 @@
+package com.lyra.agent.audit;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.lyra.agent.agent.Message;
+import com.lyra.agent.autoconfigure.LyraAgentProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 写入 gzip 压缩滚动文件的审计输出。
+ * <p>
+ * 调用线程只做采样判断与一次无锁入队（{@link MpscRingBuffer}），缓冲区满时丢弃记录；
+ * 截断、JSON 序列化、压缩与文件 I/O 全部在单独的守护线程上完成。
+ * 每条记录为一行 JSON，文件名为 {@code audit-yyyyMMdd-HHmmss-SSS.jsonl.gz}，压缩后达到 maxFileBytes 时滚动，
+ * 只保留最近 maxFiles 个文件。空闲时以 gzip 同步刷新写出已有记录，文件随时可用 {@code zcat} 读取。
+ * <p>
+ * 指标：{@code lyra.audit.records}（outcome=written|dropped|failed）、{@code lyra.audit.buffer.size}。
+ */
+public class RollingFileAuditSink implements AuditSink, Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(RollingFileAuditSink.class);
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final DateTimeFormatter FILE_TIME = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS");
+    private static final String PREFIX = "audit-";
+    private static final String SUFFIX = ".jsonl.gz";
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+
+    private final double sampleRate;
+    private final int maxRecordChars;
+    private final long maxFileBytes;
+    private final int maxFiles;
+    private final Path directory;
+    private final MpscRingBuffer<AuditRecord> buffer;
+    private final Thread writer;
+    private final Counter written;
+    private final Counter dropped;
+    private final Counter failed;
+    private volatile boolean closed;
+
+    private CountingOutputStream counting;
+    private OutputStream out;
+    private boolean dirty;
+
+    /**
+     * 构造函数，启动写出线程。
+     *
+     * @param config   审计配置
+     * @param registry 指标注册表
+     */
+    public RollingFileAuditSink(LyraAgentProperties.Audit config, MeterRegistry registry) {
+        this.sampleRate = config.getSampleRate();
+        this.maxRecordChars = config.getMaxRecordChars();
+        this.maxFileBytes = config.getMaxFileBytes();
+        this.maxFiles = Math.max(1, config.getMaxFiles());
+        this.directory = Paths.get(config.getDirectory());
+        this.buffer = new MpscRingBuffer<>(config.getBufferSize());
+        this.written = Counter.builder("lyra.audit.records").tag("outcome", "written").register(registry);
+        this.dropped = Counter.builder("lyra.audit.records").tag("outcome", "dropped").register(registry);
+        this.failed = Counter.builder("lyra.audit.records").tag("outcome", "failed").register(registry);
+        Gauge.builder("lyra.audit.buffer.size", buffer, MpscRingBuffer::size).register(registry);
+        this.writer = new Thread(this::drain, "lyra-audit-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    @Override
+    public boolean sample() {
+        if (closed || sampleRate <= 0) {
+            return false;
+        }
+        return sampleRate >= 1 || ThreadLocalRandom.current().nextDouble() < sampleRate;
+    }
+
+    @Override
+    public void record(AuditRecord record) {
+        // 入队后不唤醒写出线程（它空闲时定期轮询），调用线程不做任何系统调用
+        if (closed || !buffer.offer(record)) {
+            dropped.increment();
+        }
+    }
+
+    /**
+     * 停止接收记录，写出缓冲区中剩余的记录后关闭当前文件。
+     */
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void drain() {
+        while (true) {
+            AuditRecord record = buffer.poll();
+            if (record != null) {
+                write(record);
+                continue;
+            }
+            if (closed && buffer.size() == 0) {
+                break;
+            }
+            if (dirty) {
+                flush();
+            }
+            LockSupport.parkNanos(IDLE_PARK_NANOS);
+        }
+        closeFile();
+    }
+
+    private void write(AuditRecord record) {
+        try {
+            byte[] line = MAPPER.writeValueAsBytes(toJson(record));
+            if (out == null) {
+                openFile();
+            }
+            out.write(line);
+            out.write('\n');
+            dirty = true;
+            written.increment();
+            if (counting.count >= maxFileBytes) {
+                closeFile();
+            }
+        } catch (IOException | RuntimeException e) {
+            failed.increment();
+            logger.warn("Failed to write audit record: {}", e.getMessage());
+            closeFile();
+        }
+    }
+
+    private Map<String, Object> toJson(AuditRecord record) {
+        List<Map<String, Object>> messages = new ArrayList<>(record.getMessages().size());
+        for (Message message : record.getMessages()) {
+            Map<String, Object> wire = new LinkedHashMap<>();
+            wire.put("role", message.getRole().name().toLowerCase(Locale.ROOT));
+            if (message.getName() != null) {
+                wire.put("name", message.getName());
+            }
+            wire.put("content", truncate(message.getContent()));
+            messages.add(wire);
+        }
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("ts", record.getTimestamp());
+        json.put("model", record.getModel());
+        json.put("latencyMs", record.getLatencyMs());
+        json.put("messages", messages);
+        json.put("completion", truncate(record.getCompletion()));
+        json.put("finishReason", record.getFinishReason());
+        if (record.getMetadata() != null && !record.getMetadata().isEmpty()) {
+            json.put("metadata", record.getMetadata());
+        }
+        if (record.getError() != null) {
+            json.put("error", record.getError());
+        }
+        return json;
+    }
+
+    private String truncate(String text) {
+        if (text == null || maxRecordChars <= 0 || text.length() <= maxRecordChars) {
+            return text;
+        }
+        return text.substring(0, maxRecordChars) + "...[" + (text.length() - maxRecordChars) + " chars truncated]";
+    }
+
+    private void openFile() throws IOException {
+        Files.createDirectories(directory);
+        Path file = directory.resolve(PREFIX + LocalDateTime.now().format(FILE_TIME) + SUFFIX);
+        counting = new CountingOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 64 * 1024));
+        out = new GZIPOutputStream(counting, 64 * 1024, true);
+        deleteOldFiles();
+    }
+
+    private void flush() {
+        try {
+            if (out != null) {
+                out.flush();
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to flush audit file: {}", e.getMessage());
+            closeFile();
+        }
+        dirty = false;
+    }
+
+    private void closeFile() {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException e) {
+                logger.warn("Failed to close audit file: {}", e.getMessage());
+            }
+        }
+        out = null;
+        counting = null;
+        dirty = false;
+    }
+
+    private void deleteOldFiles() throws IOException {
+        List<Path> files;
+        try (Stream<Path> listing = Files.list(directory)) {
+            files = listing.filter(p -> {
+                String name = p.getFileName().toString();
+                return name.startsWith(PREFIX) && name.endsWith(SUFFIX);
+            }).sorted().toList();
+        }
+        for (int i = 0; i < files.size() - maxFiles; i++) {
+            Files.deleteIfExists(files.get(i));
+        }
+    }
+
+    /**
+     * 统计压缩后写出的字节数，用于按文件大小滚动。
+     */
+    private static final class CountingOutputStream extends FilterOutputStream {
+        long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
@@ -1,17 +1,43 @@
 package com.lyra.agent.autoconfigure;
 
 import com.lyra.agent.agent.*;
+import com.lyra.agent.audit.AuditSink;
+import com.lyra.agent.audit.RollingFileAuditSink;
 import com.lyra.agent.event.EventBus;
 import com.lyra.agent.event.SimpleEventBus;
+import com.lyra.agent.llm.AdaptiveRateLimiter;
+import com.lyra.agent.llm.AuditingLLMProvider;
+import com.lyra.agent.llm.CachingEmbeddingModel;
+import com.lyra.agent.llm.CachingLLMProvider;
+import com.lyra.agent.llm.CircuitBreaker;
+import com.lyra.agent.llm.CircuitBreakingEmbeddingModel;
+import com.lyra.agent.llm.CircuitBreakingLLMProvider;
 import com.lyra.agent.llm.EmbeddingModel;
+import com.lyra.agent.llm.HedgingLLMProvider;
 import com.lyra.agent.llm.LLMProvider;
+import com.lyra.agent.llm.LlmHttpTransport;
+import com.lyra.agent.llm.MicroBatchingEmbeddingModel;
 import com.lyra.agent.llm.OpenAIEmbeddingModel;
 import com.lyra.agent.llm.OpenAILLMProvider;
+import com.lyra.agent.llm.RateLimitingLLMProvider;
+import com.lyra.agent.llm.RoutingLLMProvider;
+import com.lyra.agent.llm.SingleFlightLLMProvider;
+import com.lyra.agent.llm.TokenBudgetLLMProvider;
 import com.lyra.agent.memory.InMemoryVectorStore;
 import com.lyra.agent.memory.VectorStore;
+import com.lyra.agent.tokenizer.ApproximateTokenizer;
+import com.lyra.agent.tokenizer.BpeTokenizer;
+import com.lyra.agent.tokenizer.ContextBudget;
+import com.lyra.agent.tokenizer.Tokenizer;
+import com.lyra.agent.tool.ParallelToolRunner;
 import com.lyra.agent.tool.ToolExecutor;
 import com.lyra.agent.tool.ToolRegistry;
 import com.lyra.agent.web.AgentController;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.boot.autoconfigure.AutoConfiguration;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
@@ -20,6 +46,9 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.core.io.Resource;
 import org.springframework.core.io.ResourceLoader;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.List;
 
 @AutoConfiguration
@@ -30,6 +59,7 @@ import java.util.List;
  * 提供 LLMProvider、ToolRegistry、ReActAgent 与可选的 REST 控制器。
  */
 public class LyraAgentAutoConfiguration {
+    private static final Logger logger = LoggerFactory.getLogger(LyraAgentAutoConfiguration.class);
 
     @Bean
     @ConditionalOnMissingBean
@@ -42,16 +72,51 @@ public class LyraAgentAutoConfiguration {
         return new SimpleEventBus();
     }
 
+    @Bean(destroyMethod = "close")
+    @ConditionalOnMissingBean
+    /**
+     * 构建所有 LLM 提供者共享的 HTTP 传输层，容器关闭时释放其 I/O 线程池。
+     * 若容器中存在 MeterRegistry，则按主机的在途与排队请求指标注册到其中。
+     *
+     * @param props 配置属性
+     * @param meterRegistry 指标注册表
+     * @return LlmHttpTransport 实例
+     */
+    public LlmHttpTransport llmHttpTransport(LyraAgentProperties props, ObjectProvider<MeterRegistry> meterRegistry) {
+        return new LlmHttpTransport(props.getLlm(), meterRegistry.getIfAvailable(() -> Metrics.globalRegistry));
+    }
+
     @Bean
     @ConditionalOnMissingBean
     /**
      * 构建 EmbeddingModel。
+     * 启用 agent.llm.circuit-breaker 时包裹熔断器，提供者故障期间快速失败；
+     * agent.llm.embedding.batch-window-ms 大于 0 时把并发的单条嵌入调用合并为批量请求；
+     * 启用 agent.llm.embedding.cache 时在最外层按内容缓存向量，命中的调用不进入合并窗口。
      *
      * @param props 配置属性
+     * @param transport 共享 HTTP 传输层
+     * @param tokenizer 用于估算批次 token 数
+     * @param meterRegistry 指标注册表
      * @return EmbeddingModel 实例
      */
-    public EmbeddingModel embeddingModel(LyraAgentProperties props) {
-        return new OpenAIEmbeddingModel(props.getLlm());
+    public EmbeddingModel embeddingModel(LyraAgentProperties props, LlmHttpTransport transport, Tokenizer tokenizer,
+                                         ObjectProvider<MeterRegistry> meterRegistry) {
+        MeterRegistry registry = meterRegistry.getIfAvailable(() -> Metrics.globalRegistry);
+        EmbeddingModel model = new OpenAIEmbeddingModel(props.getLlm(), transport);
+        LyraAgentProperties.Llm.CircuitBreaker breaker = props.getLlm().getCircuitBreaker();
+        if (breaker.isEnabled()) {
+            model = new CircuitBreakingEmbeddingModel(model, new CircuitBreaker("embedding", breaker, registry));
+        }
+        LyraAgentProperties.Llm.Embedding embedding = props.getLlm().getEmbedding();
+        if (embedding.getBatchWindowMs() > 0) {
+            model = new MicroBatchingEmbeddingModel(model, tokenizer, embedding.getBatchWindowMs(),
+                    embedding.getMaxBatchSize(), embedding.getMaxBatchTokens(), registry);
+        }
+        if (embedding.getCache().isEnabled()) {
+            model = new CachingEmbeddingModel(model, props.getLlm(), registry);
+        }
+        return model;
     }
 
     @Bean
@@ -71,24 +136,207 @@ public class LyraAgentAutoConfiguration {
         return new InMemoryVectorStore(embeddingModel);
     }
 
+    @Bean
+    @ConditionalOnMissingBean
+    /**
+     * 构建本地 token 计数器。
+     * 编码由 agent.llm.tokenizer.encoding 指定，未指定时按模型推断；词表由 agent.llm.tokenizer.vocabulary 指定，
+     * 未指定且 classpath:tokenizer/{encoding}.tiktoken 不存在时使用近似计数并输出警告。
+     *
+     * @param props 配置属性
+     * @param rl 资源加载器，用于读取词表
+     * @return Tokenizer 实例
+     */
+    public Tokenizer tokenizer(LyraAgentProperties props, ResourceLoader rl) {
+        LyraAgentProperties.Llm.Tokenizer config = props.getLlm().getTokenizer();
+        String encoding = config.getEncoding() != null ? config.getEncoding() : ContextBudget.encodingFor(props.getLlm().getModel());
+        String location = config.getVocabulary() != null ? config.getVocabulary() : "classpath:tokenizer/" + encoding + ".tiktoken";
+        Resource vocabulary = rl.getResource(location);
+        if (!vocabulary.exists()) {
+            if (config.getVocabulary() != null) {
+                throw new IllegalStateException("Tokenizer vocabulary not found: " + location);
+            }
+            logger.warn("Tokenizer vocabulary {} not found, falling back to approximate token counting{}", location,
+                    config.getEnforce() == null ? "; agent.llm.tokenizer.enforce is off unless set explicitly" : "");
+            return new ApproximateTokenizer(encoding);
+        }
+        try (InputStream in = vocabulary.getInputStream()) {
+            return BpeTokenizer.load(encoding, in);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to load tokenizer vocabulary " + location, e);
+        }
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    /**
+     * 构建上下文预算。
+     * 未配置 agent.llm.tokenizer.context-window 时取主模型与路由端点、对冲备用、熔断回退中显式配置的模型里最小的上下文窗口。
+     *
+     * @param props 配置属性
+     * @param tokenizer token 计数器
+     * @return ContextBudget 实例
+     */
+    public ContextBudget contextBudget(LyraAgentProperties props, Tokenizer tokenizer) {
+        LyraAgentProperties.Llm llm = props.getLlm();
+        int window = llm.getTokenizer().getContextWindow();
+        if (window <= 0) {
+            List<LyraAgentProperties.Llm.ProviderRef> refs = new ArrayList<>(llm.getEndpoints());
+            refs.add(llm.getHedge().getSecondary());
+            refs.add(llm.getCircuitBreaker().getFallback());
+            window = ContextBudget.contextWindowFor(llm.getModel());
+            for (LyraAgentProperties.Llm.ProviderRef ref : refs) {
+                if (ref.getProvider() != null || ref.getModel() != null) {
+                    String model = derivedConfig(llm, ref).getModel();
+                    if (model != null) {
+                        window = Math.min(window, ContextBudget.contextWindowFor(model));
+                    }
+                }
+            }
+        }
+        return new ContextBudget(tokenizer, window, llm.getTokenizer().getReservedOutputTokens());
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    /**
+     * 构建 prompt 与补全的审计输出。
+     * agent.audit.enabled 为 true 时写入 gzip 滚动文件，否则不记录。
+     *
+     * @param props 配置属性
+     * @param meterRegistry 指标注册表
+     * @return AuditSink 实例
+     */
+    public AuditSink auditSink(LyraAgentProperties props, ObjectProvider<MeterRegistry> meterRegistry) {
+        if (!props.getAudit().isEnabled()) {
+            return AuditSink.NOOP;
+        }
+        return new RollingFileAuditSink(props.getAudit(), meterRegistry.getIfAvailable(() -> Metrics.globalRegistry));
+    }
+
     @Bean
     /**
      * 构建 LLMProvider。
+     * 由内到外依次包裹：客户端限流（agent.llm.rate-limit.enabled）、熔断（agent.llm.circuit-breaker.enabled）、
+     * 对冲请求（agent.llm.hedge.enabled）、相同在途请求合并（agent.llm.single-flight）、响应缓存（agent.llm.cache.enabled）、
+     * 上下文预算检查（agent.llm.tokenizer.enforce，未配置时仅在加载了 BPE 词表时启用）、采样审计（存在非空 AuditSink 时）。
+     * 配置了 agent.llm.endpoints 时，最内层为在各端点（各自限流与熔断）之间分配请求的路由提供者，
+     * 此时不再在路由外层包裹熔断器，避免同一故障被计两次、单个端点的故障打开全部端点的熔断；
+     * 未配置端点且配置了 agent.llm.circuit-breaker.fallback.provider 时，熔断或故障期间转发到回退提供者；
+     * 配置了 agent.llm.hedge.secondary.provider 时，对冲副本发往独立限流的备用提供者。
      *
      * @param props 配置属性
+     * @param transport 共享 HTTP 传输层
+     * @param meterRegistry 指标注册表
+     * @param budget 上下文预算
+     * @param auditSink 审计输出
      * @return LLMProvider 实例
      */
-    public LLMProvider llmProvider(LyraAgentProperties props) {
-        String provider = props.getLlm().getProvider();
+    public LLMProvider llmProvider(LyraAgentProperties props, LlmHttpTransport transport,
+                                   ObjectProvider<MeterRegistry> meterRegistry, ContextBudget budget, AuditSink auditSink) {
+        LyraAgentProperties.Llm llm = props.getLlm();
+        MeterRegistry registry = meterRegistry.getIfAvailable(() -> Metrics.globalRegistry);
+        LLMProvider provider = llm.getEndpoints().isEmpty()
+                ? rateLimited(createProvider(llm, transport), llm, llm.getRateLimit(), registry)
+                : createRouter(llm, transport, registry);
+        LyraAgentProperties.Llm.CircuitBreaker breaker = llm.getCircuitBreaker();
+        boolean routed = !llm.getEndpoints().isEmpty();
+        if (breaker.isEnabled() && routed && breaker.getFallback().getProvider() != null) {
+            logger.warn("agent.llm.circuit-breaker.fallback is ignored when agent.llm.endpoints is set; "
+                    + "add the fallback as a routing endpoint instead");
+        }
+        // 路由时每个端点已有自己的熔断器
+        if (breaker.isEnabled() && !routed) {
+            LLMProvider fallback = null;
+            if (breaker.getFallback().getProvider() != null) {
+                LyraAgentProperties.Llm fallbackConfig = derivedConfig(llm, breaker.getFallback());
+                fallback = rateLimited(createProvider(fallbackConfig, transport), fallbackConfig,
+                        llm.getRateLimit(), registry);
+            }
+            provider = new CircuitBreakingLLMProvider(provider, fallback,
+                    new CircuitBreaker(llm.getProvider(), breaker, registry));
+        }
+        if (llm.getHedge().isEnabled()) {
+            LLMProvider secondary = provider;
+            if (llm.getHedge().getSecondary().getProvider() != null) {
+                LyraAgentProperties.Llm secondaryConfig = derivedConfig(llm, llm.getHedge().getSecondary());
+                secondary = rateLimited(createProvider(secondaryConfig, transport), secondaryConfig,
+                        llm.getRateLimit(), registry);
+            }
+            provider = new HedgingLLMProvider(provider, secondary, llm, registry);
+        }
+        if (llm.isSingleFlight()) {
+            provider = new SingleFlightLLMProvider(provider, llm.getProvider(), registry);
+        }
+        if (llm.getCache().isEnabled()) {
+            provider = new CachingLLMProvider(provider, llm, registry);
+        }
+        Boolean enforce = llm.getTokenizer().getEnforce();
+        // 近似计数只在显式开启时用于拒绝请求
+        if (enforce != null ? enforce : !(budget.getTokenizer() instanceof ApproximateTokenizer)) {
+            provider = new TokenBudgetLLMProvider(provider, budget, llm.getProvider(), registry);
+        }
+        if (auditSink != AuditSink.NOOP) {
+            provider = new AuditingLLMProvider(provider, auditSink);
+        }
+        return provider;
+    }
+
+    private static LLMProvider rateLimited(LLMProvider provider, LyraAgentProperties.Llm llm,
+                                           LyraAgentProperties.Llm.RateLimit rateLimit, MeterRegistry registry) {
+        if (!rateLimit.isEnabled()) {
+            return provider;
+        }
+        return new RateLimitingLLMProvider(provider, llm.getProvider(), llm.getApiKey(), rateLimit, registry);
+    }
+
+    private static RoutingLLMProvider createRouter(LyraAgentProperties.Llm llm, LlmHttpTransport transport,
+                                                   MeterRegistry registry) {
+        List<RoutingLLMProvider.Endpoint> endpoints = new ArrayList<>();
+        for (LyraAgentProperties.Llm.Endpoint endpoint : llm.getEndpoints()) {
+            LyraAgentProperties.Llm config = derivedConfig(llm, endpoint);
+            String name = endpoint.getName() != null ? endpoint.getName() : config.getProvider() + "-" + endpoints.size();
+            LLMProvider provider = rateLimited(createProvider(config, transport), config, endpoint.getRateLimit(), registry);
+            AdaptiveRateLimiter limiter = provider instanceof RateLimitingLLMProvider limited ? limited.getLimiter() : null;
+            CircuitBreaker breaker = null;
+            if (llm.getCircuitBreaker().isEnabled()) {
+                breaker = new CircuitBreaker(name, llm.getCircuitBreaker(), registry);
+                provider = new CircuitBreakingLLMProvider(provider, null, breaker);
+            }
+            endpoints.add(new RoutingLLMProvider.Endpoint(name, provider, limiter, breaker, endpoint.getWeight()));
+        }
+        return new RoutingLLMProvider(endpoints, llm.getRouting(), registry);
+    }
+
+    /**
+     * 派生提供者（路由端点、对冲备用、熔断回退）的配置：与主提供者相同时，未设置的字段沿用主配置；
+     * 不同时使用该提供者的默认地址与模型。
+     */
+    private static LyraAgentProperties.Llm derivedConfig(LyraAgentProperties.Llm llm,
+                                                         LyraAgentProperties.Llm.ProviderRef ref) {
+        String provider = ref.getProvider() != null ? ref.getProvider() : llm.getProvider();
+        boolean sameProvider = provider.equalsIgnoreCase(llm.getProvider());
+        LyraAgentProperties.Llm config = new LyraAgentProperties.Llm();
+        config.setProvider(provider);
+        config.setModel(ref.getModel() != null || !sameProvider ? ref.getModel() : llm.getModel());
+        config.setApiKey(ref.getApiKey() != null || !sameProvider ? ref.getApiKey() : llm.getApiKey());
+        config.setBaseUrl(ref.getBaseUrl() != null || !sameProvider ? ref.getBaseUrl() : llm.getBaseUrl());
+        config.setEmbeddingModel(llm.getEmbeddingModel());
+        config.setTimeoutMs(llm.getTimeoutMs());
+        return config;
+    }
+
+    private static LLMProvider createProvider(LyraAgentProperties.Llm llm, LlmHttpTransport transport) {
+        String provider = llm.getProvider();
         if ("gemini".equalsIgnoreCase(provider)) {
-            return new com.lyra.agent.llm.GeminiLLMProvider(props.getLlm());
+            return new com.lyra.agent.llm.GeminiLLMProvider(llm, transport);
         } else if ("deepseek".equalsIgnoreCase(provider)) {
-            return new com.lyra.agent.llm.DeepSeekLLMProvider(props.getLlm());
+            return new com.lyra.agent.llm.DeepSeekLLMProvider(llm, transport);
         } else if ("qwen".equalsIgnoreCase(provider)) {
-            return new com.lyra.agent.llm.QwenLLMProvider(props.getLlm());
+            return new com.lyra.agent.llm.QwenLLMProvider(llm, transport);
         }
         // Default to OpenAI
-        return new OpenAILLMProvider(props.getLlm());
+        return new OpenAILLMProvider(llm, transport);
     }
 
     @Bean
@@ -113,6 +361,18 @@ public class LyraAgentAutoConfiguration {
         return new ToolRegistry(executors);
     }
 
+    @Bean
+    @ConditionalOnMissingBean
+    /**
+     * 构建并发执行同一步多个工具调用的执行器。
+     *
+     * @param props 属性配置，读取并发数与单步超时
+     * @return 工具调用执行器
+     */
+    public ParallelToolRunner parallelToolRunner(LyraAgentProperties props) {
+        return new ParallelToolRunner(props.getToolParallelism(), props.getToolTimeoutMs());
+    }
+
     @Bean
     /**
      * 构建 ReactMode。
@@ -122,11 +382,18 @@ public class LyraAgentAutoConfiguration {
      * @param eventBus 事件总线
      * @param props 属性配置
      * @param rl 资源加载器，用于读取 Prompt 模板
+     * @param budget 上下文预算
+     * @param toolRunner 工具调用执行器
      * @return ReactMode 实例
      */
-    public ReactMode reactMode(LLMProvider llmProvider, ToolRegistry toolRegistry, EventBus eventBus, LyraAgentProperties props, ResourceLoader rl) {
+    public ReactMode reactMode(LLMProvider llmProvider, ToolRegistry toolRegistry, EventBus eventBus, LyraAgentProperties props,
+                               ResourceLoader rl, ContextBudget budget, ParallelToolRunner toolRunner) {
         Resource prompt = rl.getResource(props.getPromptPath());
-        return new ReactMode(llmProvider, toolRegistry, eventBus, props.getMaxSteps(), prompt);
+        return new ReactMode(llmProvider, toolRegistry, eventBus, props.getMaxSteps(), prompt, new ReactMode.Options()
+                .budget(budget)
+                .nativeToolCalling(props.isNativeToolCalling())
+                .speculativeToolExecution(props.isSpeculativeToolExecution())
+                .toolRunner(toolRunner));
     }
 
     @Bean
@@ -164,9 +431,10 @@ public class LyraAgentAutoConfiguration {
      * 可选暴露 REST 控制器。
      *
      * @param agent ReActAgent 实例
+     * @param llmProvider LLMProvider 实例，用于查询路由表
      * @return 控制器实例
      */
-    public AgentController agentController(AgentManager agent) {
-        return new AgentController(agent);
+    public AgentController agentController(AgentManager agent, LLMProvider llmProvider) {
+        return new AgentController(agent, llmProvider);
     }
 }
@@ -1,7 +1,11 @@
 package com.lyra.agent.autoconfigure;
 
+import com.lyra.agent.tool.ParallelToolRunner;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
+import java.util.ArrayList;
+import java.util.List;
+
 @ConfigurationProperties("agent")
 /**
  * Lyra Agent 配置属性。
@@ -11,9 +15,21 @@ public class LyraAgentProperties {
     private boolean enabled = true;
     private int maxSteps = 5;
     private String promptPath = "classpath:templates/react-prompt.txt";
+    /**
+     * 提供者支持时以原生工具调用代替文本 ReAct 格式，不支持时回退到 Prompt 模板。
+     * 默认关闭，设置 agent.native-tool-calling=true 开启；开启前应确认所用模型的 function calling 可用。
+     */
+    private boolean nativeToolCalling = false;
+    /** 模型仍在输出时提前执行已完整的无副作用工具调用。 */
+    private boolean speculativeToolExecution = false;
+    /** 同一步多个工具调用的最大并发数。 */
+    private int toolParallelism = ParallelToolRunner.DEFAULT_PARALLELISM;
+    /** 一步内全部工具调用的超时（毫秒），超时的调用被取消并中断运行。 */
+    private long toolTimeoutMs = ParallelToolRunner.DEFAULT_TIMEOUT_MS;
     private final Llm llm = new Llm();
     private final Vector vector = new Vector();
     private final Api api = new Api();
+    private final Audit audit = new Audit();
 
     public boolean isEnabled() {
         return enabled;
@@ -39,6 +55,38 @@ public class LyraAgentProperties {
         this.promptPath = promptPath;
     }
 
+    public boolean isNativeToolCalling() {
+        return nativeToolCalling;
+    }
+
+    public void setNativeToolCalling(boolean nativeToolCalling) {
+        this.nativeToolCalling = nativeToolCalling;
+    }
+
+    public boolean isSpeculativeToolExecution() {
+        return speculativeToolExecution;
+    }
+
+    public void setSpeculativeToolExecution(boolean speculativeToolExecution) {
+        this.speculativeToolExecution = speculativeToolExecution;
+    }
+
+    public int getToolParallelism() {
+        return toolParallelism;
+    }
+
+    public void setToolParallelism(int toolParallelism) {
+        this.toolParallelism = toolParallelism;
+    }
+
+    public long getToolTimeoutMs() {
+        return toolTimeoutMs;
+    }
+
+    public void setToolTimeoutMs(long toolTimeoutMs) {
+        this.toolTimeoutMs = toolTimeoutMs;
+    }
+
     public Llm getLlm() {
         return llm;
     }
@@ -51,6 +99,10 @@ public class LyraAgentProperties {
         return api;
     }
 
+    public Audit getAudit() {
+        return audit;
+    }
+
     /**
      * LLM 相关配置。
      */
@@ -61,6 +113,16 @@ public class LyraAgentProperties {
         private String apiKey;
         private String baseUrl = "https://api.openai.com/v1";
         private int timeoutMs = 60000;
+        private boolean singleFlight = true;
+        private final Pool pool = new Pool();
+        private final Cache cache = new Cache();
+        private final RateLimit rateLimit = new RateLimit();
+        private final Hedge hedge = new Hedge();
+        private final Routing routing = new Routing();
+        private final List<Endpoint> endpoints = new ArrayList<>();
+        private final CircuitBreaker circuitBreaker = new CircuitBreaker();
+        private final Tokenizer tokenizer = new Tokenizer();
+        private final Embedding embedding = new Embedding();
 
         public String getProvider() {
             return provider;
@@ -109,6 +171,309 @@ public class LyraAgentProperties {
         public void setTimeoutMs(int timeoutMs) {
             this.timeoutMs = timeoutMs;
         }
+
+        public boolean isSingleFlight() {
+            return singleFlight;
+        }
+
+        public void setSingleFlight(boolean singleFlight) {
+            this.singleFlight = singleFlight;
+        }
+
+        public Pool getPool() {
+            return pool;
+        }
+
+        public Cache getCache() {
+            return cache;
+        }
+
+        public RateLimit getRateLimit() {
+            return rateLimit;
+        }
+
+        public Hedge getHedge() {
+            return hedge;
+        }
+
+        public Routing getRouting() {
+            return routing;
+        }
+
+        public List<Endpoint> getEndpoints() {
+            return endpoints;
+        }
+
+        public CircuitBreaker getCircuitBreaker() {
+            return circuitBreaker;
+        }
+
+        public Tokenizer getTokenizer() {
+            return tokenizer;
+        }
+
+        public Embedding getEmbedding() {
+            return embedding;
+        }
+
+        /**
+         * 共享 HTTP 传输层配置。
+         * <p>
+         * JDK HttpClient 的连接池大小与空闲超时只能以 JVM 参数设置，须在 HttpClient 类初始化之前生效，
+         * 例如 {@code -Djdk.httpclient.connectionPoolSize=64 -Djdk.httpclient.keepalive.timeout=30}，
+         * 且不作用于 HTTP/2 连接的保活，因此不在此处配置。
+         */
+        public static class Pool {
+            private int maxPerHost = 32;
+            private long acquireTimeoutMs = 30000;
+            private boolean http2 = true;
+            private boolean warmUp = true;
+            private int ioThreads = 0; // 0 = available processors
+
+            public int getMaxPerHost() { return maxPerHost; }
+            public void setMaxPerHost(int maxPerHost) { this.maxPerHost = maxPerHost; }
+            public long getAcquireTimeoutMs() { return acquireTimeoutMs; }
+            public void setAcquireTimeoutMs(long acquireTimeoutMs) { this.acquireTimeoutMs = acquireTimeoutMs; }
+            public boolean isHttp2() { return http2; }
+            public void setHttp2(boolean http2) { this.http2 = http2; }
+            public boolean isWarmUp() { return warmUp; }
+            public void setWarmUp(boolean warmUp) { this.warmUp = warmUp; }
+            public int getIoThreads() { return ioThreads; }
+            public void setIoThreads(int ioThreads) { this.ioThreads = ioThreads; }
+        }
+
+        /**
+         * LLM 响应精确匹配缓存配置。
+         */
+        public static class Cache {
+            private boolean enabled = false;
+            private int maxEntries = 1000;
+            private long ttlMs = 3600000;
+            private boolean diskEnabled = false;
+            private String diskPath = ".lyra/llm-cache.dat";
+            private long diskMaxBytes = 64L * 1024 * 1024;
+
+            public boolean isEnabled() { return enabled; }
+            public void setEnabled(boolean enabled) { this.enabled = enabled; }
+            public int getMaxEntries() { return maxEntries; }
+            public void setMaxEntries(int maxEntries) { this.maxEntries = maxEntries; }
+            public long getTtlMs() { return ttlMs; }
+            public void setTtlMs(long ttlMs) { this.ttlMs = ttlMs; }
+            public boolean isDiskEnabled() { return diskEnabled; }
+            public void setDiskEnabled(boolean diskEnabled) { this.diskEnabled = diskEnabled; }
+            public String getDiskPath() { return diskPath; }
+            public void setDiskPath(String diskPath) { this.diskPath = diskPath; }
+            public long getDiskMaxBytes() { return diskMaxBytes; }
+            public void setDiskMaxBytes(long diskMaxBytes) { this.diskMaxBytes = diskMaxBytes; }
+        }
+
+        /**
+         * 客户端限流配置，按提供者 + API Key 生效。速率为 0 表示不限制。
+         */
+        public static class RateLimit {
+            private boolean enabled = true;
+            private long requestsPerMinute = 0;
+            private long tokensPerMinute = 0;
+            private int maxConcurrency = 64;
+            private int minConcurrency = 1;
+            private int maxQueue = 1000;
+            private long maxWaitMs = 60000;
+            private int maxRetries = 3;
+            private long defaultRetryAfterMs = 1000;
+
+            public boolean isEnabled() { return enabled; }
+            public void setEnabled(boolean enabled) { this.enabled = enabled; }
+            public long getRequestsPerMinute() { return requestsPerMinute; }
+            public void setRequestsPerMinute(long requestsPerMinute) { this.requestsPerMinute = requestsPerMinute; }
+            public long getTokensPerMinute() { return tokensPerMinute; }
+            public void setTokensPerMinute(long tokensPerMinute) { this.tokensPerMinute = tokensPerMinute; }
+            public int getMaxConcurrency() { return maxConcurrency; }
+            public void setMaxConcurrency(int maxConcurrency) { this.maxConcurrency = maxConcurrency; }
+            public int getMinConcurrency() { return minConcurrency; }
+            public void setMinConcurrency(int minConcurrency) { this.minConcurrency = minConcurrency; }
+            public int getMaxQueue() { return maxQueue; }
+            public void setMaxQueue(int maxQueue) { this.maxQueue = maxQueue; }
+            public long getMaxWaitMs() { return maxWaitMs; }
+            public void setMaxWaitMs(long maxWaitMs) { this.maxWaitMs = maxWaitMs; }
+            public int getMaxRetries() { return maxRetries; }
+            public void setMaxRetries(int maxRetries) { this.maxRetries = maxRetries; }
+            public long getDefaultRetryAfterMs() { return defaultRetryAfterMs; }
+            public void setDefaultRetryAfterMs(long defaultRetryAfterMs) { this.defaultRetryAfterMs = defaultRetryAfterMs; }
+        }
+
+        /**
+         * 对冲请求配置。首个请求在延迟阈值内没有响应（流式为首个响应块）时再发出一个副本，取先返回者。
+         * 延迟阈值取近期延迟的指定分位数，样本不足时使用 initialDelayMs。
+         */
+        public static class Hedge {
+            private boolean enabled = false;
+            private double percentile = 95;
+            private long initialDelayMs = 2000;
+            private long minDelayMs = 50;
+            private long maxDelayMs = 10000;
+            private int minSamples = 20;
+            private int window = 256;
+            private double maxRatio = 0.05;
+            private final ProviderRef secondary = new ProviderRef();
+
+            public boolean isEnabled() { return enabled; }
+            public void setEnabled(boolean enabled) { this.enabled = enabled; }
+            public double getPercentile() { return percentile; }
+            public void setPercentile(double percentile) { this.percentile = percentile; }
+            public long getInitialDelayMs() { return initialDelayMs; }
+            public void setInitialDelayMs(long initialDelayMs) { this.initialDelayMs = initialDelayMs; }
+            public long getMinDelayMs() { return minDelayMs; }
+            public void setMinDelayMs(long minDelayMs) { this.minDelayMs = minDelayMs; }
+            public long getMaxDelayMs() { return maxDelayMs; }
+            public void setMaxDelayMs(long maxDelayMs) { this.maxDelayMs = maxDelayMs; }
+            public int getMinSamples() { return minSamples; }
+            public void setMinSamples(int minSamples) { this.minSamples = minSamples; }
+            public int getWindow() { return window; }
+            public void setWindow(int window) { this.window = window; }
+            public double getMaxRatio() { return maxRatio; }
+            public void setMaxRatio(double maxRatio) { this.maxRatio = maxRatio; }
+            /** 对冲副本发往的备用提供者，provider 为空时副本发往主提供者。 */
+            public ProviderRef getSecondary() { return secondary; }
+
+        }
+
+        /**
+         * 多端点路由配置，仅在配置了 endpoints 时生效。
+         */
+        public static class Routing {
+            private long latencyDecayMs = 10000;
+            private long failurePenaltyMs = 1000;
+
+            public long getLatencyDecayMs() { return latencyDecayMs; }
+            public void setLatencyDecayMs(long latencyDecayMs) { this.latencyDecayMs = latencyDecayMs; }
+            public long getFailurePenaltyMs() { return failurePenaltyMs; }
+            public void setFailurePenaltyMs(long failurePenaltyMs) { this.failurePenaltyMs = failurePenaltyMs; }
+        }
+
+        /**
+         * 派生提供者（路由端点、对冲备用、熔断回退）的连接配置。provider 为空时使用主提供者；
+         * 与主提供者相同时其余字段为空则沿用主配置，不同时为空则使用该提供者的默认值。
+         */
+        public static class ProviderRef {
+            private String provider;
+            private String model;
+            private String apiKey;
+            private String baseUrl;
+
+            public String getProvider() { return provider; }
+            public void setProvider(String provider) { this.provider = provider; }
+            public String getModel() { return model; }
+            public void setModel(String model) { this.model = model; }
+            public String getApiKey() { return apiKey; }
+            public void setApiKey(String apiKey) { this.apiKey = apiKey; }
+            public String getBaseUrl() { return baseUrl; }
+            public void setBaseUrl(String baseUrl) { this.baseUrl = baseUrl; }
+        }
+
+        /**
+         * 一个可路由的端点（提供者 + API Key），拥有独立的限流配置。
+         */
+        public static class Endpoint extends ProviderRef {
+            private String name;
+            private double weight = 1.0;
+            private final RateLimit rateLimit = new RateLimit();
+
+            public String getName() { return name; }
+            public void setName(String name) { this.name = name; }
+            public double getWeight() { return weight; }
+            public void setWeight(double weight) { this.weight = weight; }
+            public RateLimit getRateLimit() { return rateLimit; }
+        }
+
+        /**
+         * 熔断器配置。基于最近 windowSize 次调用的滑动窗口统计失败率与慢调用率，
+         * 任一超过阈值即打开熔断器，打开期间直接失败（或转发到回退提供者），
+         * openDurationMs 后放行少量探测请求（半开），探测全部成功则关闭。
+         */
+        public static class CircuitBreaker {
+            private boolean enabled = true;
+            private int windowSize = 100;
+            private int minimumCalls = 20;
+            private double failureRateThreshold = 50;
+            private long slowCallDurationMs = 30000;
+            private double slowCallRateThreshold = 80;
+            private long openDurationMs = 30000;
+            private int halfOpenProbes = 3;
+            private final ProviderRef fallback = new ProviderRef();
+
+            public boolean isEnabled() { return enabled; }
+            public void setEnabled(boolean enabled) { this.enabled = enabled; }
+            public int getWindowSize() { return windowSize; }
+            public void setWindowSize(int windowSize) { this.windowSize = windowSize; }
+            public int getMinimumCalls() { return minimumCalls; }
+            public void setMinimumCalls(int minimumCalls) { this.minimumCalls = minimumCalls; }
+            public double getFailureRateThreshold() { return failureRateThreshold; }
+            public void setFailureRateThreshold(double failureRateThreshold) { this.failureRateThreshold = failureRateThreshold; }
+            public long getSlowCallDurationMs() { return slowCallDurationMs; }
+            public void setSlowCallDurationMs(long slowCallDurationMs) { this.slowCallDurationMs = slowCallDurationMs; }
+            public double getSlowCallRateThreshold() { return slowCallRateThreshold; }
+            public void setSlowCallRateThreshold(double slowCallRateThreshold) { this.slowCallRateThreshold = slowCallRateThreshold; }
+            public long getOpenDurationMs() { return openDurationMs; }
+            public void setOpenDurationMs(long openDurationMs) { this.openDurationMs = openDurationMs; }
+            public int getHalfOpenProbes() { return halfOpenProbes; }
+            public void setHalfOpenProbes(int halfOpenProbes) { this.halfOpenProbes = halfOpenProbes; }
+            /** 熔断器打开或调用失败时使用的回退提供者，provider 为空时不回退。 */
+            public ProviderRef getFallback() { return fallback; }
+        }
+
+        /**
+         * 本地分词与上下文预算配置。词表为 tiktoken 格式文件，未配置时尝试 classpath:tokenizer/{encoding}.tiktoken，
+         * 仍不存在则按字符数近似计数。
+         */
+        public static class Tokenizer {
+            private String encoding; // cl100k_base, o200k_base；为空时按模型推断
+            private String vocabulary;
+            private int contextWindow = 0; // 0 = 按模型查表
+            private int reservedOutputTokens = 1024;
+            private Boolean enforce; // 为空 = 仅在加载了 BPE 词表时启用
+
+            public String getEncoding() { return encoding; }
+            public void setEncoding(String encoding) { this.encoding = encoding; }
+            public String getVocabulary() { return vocabulary; }
+            public void setVocabulary(String vocabulary) { this.vocabulary = vocabulary; }
+            public int getContextWindow() { return contextWindow; }
+            public void setContextWindow(int contextWindow) { this.contextWindow = contextWindow; }
+            public int getReservedOutputTokens() { return reservedOutputTokens; }
+            public void setReservedOutputTokens(int reservedOutputTokens) { this.reservedOutputTokens = reservedOutputTokens; }
+            /**
+             * 是否在发送前拒绝超出上下文预算的请求。未配置时仅在加载了 BPE 词表后启用，
+             * 近似计数的误差可能误拒本可发送的请求。
+             */
+            public Boolean getEnforce() { return enforce; }
+            public void setEnforce(Boolean enforce) { this.enforce = enforce; }
+        }
+
+        /**
+         * 嵌入请求配置。窗口内并发的单条嵌入调用合并为一次批量请求，batchWindowMs 为 0（默认）时不合并。
+         * 合并窗口会给每次调用增加最多 batchWindowMs 的延迟，适合大量并发单条嵌入的场景按需开启。
+         */
+        public static class Embedding {
+            private long batchWindowMs = 0;
+            private int maxBatchSize = 256;
+            private int maxBatchTokens = 100000;
+            private final Cache cache = new Cache();
+
+            public Embedding() {
+                cache.setMaxEntries(10000);
+                cache.setTtlMs(0);
+                cache.setDiskPath(".lyra/embedding-cache.dat");
+                cache.setDiskMaxBytes(256L * 1024 * 1024);
+            }
+
+            public long getBatchWindowMs() { return batchWindowMs; }
+            public void setBatchWindowMs(long batchWindowMs) { this.batchWindowMs = batchWindowMs; }
+            public int getMaxBatchSize() { return maxBatchSize; }
+            public void setMaxBatchSize(int maxBatchSize) { this.maxBatchSize = maxBatchSize; }
+            public int getMaxBatchTokens() { return maxBatchTokens; }
+            public void setMaxBatchTokens(int maxBatchTokens) { this.maxBatchTokens = maxBatchTokens; }
+            /** 嵌入向量缓存，ttlMs 为 0 表示永不过期；切换 embeddingModel 时磁盘层自动清空。 */
+            public Cache getCache() { return cache; }
+        }
     }
 
     /**
@@ -171,4 +536,33 @@ public class LyraAgentProperties {
             this.expose = expose;
         }
     }
+
+    /**
+     * Prompt 与补全审计配置。启用后按 sampleRate 采样 LLM 调用，异步写入 directory 下的 gzip 滚动文件；
+     * 单条消息或补全超过 maxRecordChars 时截断，缓冲区（bufferSize 条）满时丢弃新记录。
+     */
+    public static class Audit {
+        private boolean enabled = false;
+        private double sampleRate = 1.0;
+        private String directory = ".lyra/audit";
+        private int bufferSize = 4096;
+        private int maxRecordChars = 32768;
+        private long maxFileBytes = 64L * 1024 * 1024;
+        private int maxFiles = 10;
+
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+        public double getSampleRate() { return sampleRate; }
+        public void setSampleRate(double sampleRate) { this.sampleRate = sampleRate; }
+        public String getDirectory() { return directory; }
+        public void setDirectory(String directory) { this.directory = directory; }
+        public int getBufferSize() { return bufferSize; }
+        public void setBufferSize(int bufferSize) { this.bufferSize = bufferSize; }
+        public int getMaxRecordChars() { return maxRecordChars; }
+        public void setMaxRecordChars(int maxRecordChars) { this.maxRecordChars = maxRecordChars; }
+        public long getMaxFileBytes() { return maxFileBytes; }
+        public void setMaxFileBytes(long maxFileBytes) { this.maxFileBytes = maxFileBytes; }
+        public int getMaxFiles() { return maxFiles; }
+        public void setMaxFiles(int maxFiles) { this.maxFiles = maxFiles; }
+    }
 }
\ No newline at end of file
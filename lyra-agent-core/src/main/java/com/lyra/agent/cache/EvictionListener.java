@@ -0,0 +1,28 @@
+package com.lyra.agent.cache;
+
+/**
+ * 缓存条目被淘汰时的回调。
+ * 在缓存内部锁中调用，实现应尽量轻量（例如只累加计数器）。
+ *
+ * @param <K> 键类型
+ */
+@FunctionalInterface
+public interface EvictionListener<K> {
+    /**
+     * 淘汰原因。
+     */
+    enum Cause {
+        /** 超出容量上限 */
+        SIZE,
+        /** 超过存活时间 */
+        EXPIRED
+    }
+
+    /**
+     * 条目被淘汰。
+     *
+     * @param key   被淘汰的键
+     * @param cause 淘汰原因
+     */
+    void onEviction(K key, Cause cause);
+}
@@ -0,0 +1,122 @@
+package com.lyra.agent.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 带存活时间的有界 LRU 缓存。
+ * 超出容量时淘汰最久未访问的条目，过期条目在访问时惰性淘汰。线程安全。
+ *
+ * @param <K> 键类型
+ * @param <V> 值类型
+ */
+public class LruTtlCache<K, V> {
+    private final int maxEntries;
+    private final long ttlMillis;
+    private final EvictionListener<K> listener;
+    private final LinkedHashMap<K, Entry<V>> map;
+
+    /**
+     * 构造函数。
+     *
+     * @param maxEntries 最大条目数
+     * @param ttlMillis  存活时间（毫秒），不大于 0 表示永不过期
+     * @param listener   淘汰回调，可为 null
+     */
+    public LruTtlCache(int maxEntries, long ttlMillis, EvictionListener<K> listener) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("maxEntries must be positive: " + maxEntries);
+        }
+        this.maxEntries = maxEntries;
+        this.ttlMillis = ttlMillis;
+        this.listener = listener != null ? listener : (key, cause) -> { };
+        this.map = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * 获取缓存值，命中时刷新其访问顺序。
+     *
+     * @param key 键
+     * @return 缓存值，不存在或已过期时返回 null
+     */
+    public synchronized V get(K key) {
+        Entry<V> entry = map.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.isExpired(System.currentTimeMillis())) {
+            map.remove(key);
+            listener.onEviction(key, EvictionListener.Cause.EXPIRED);
+            return null;
+        }
+        return entry.value;
+    }
+
+    /**
+     * 写入缓存值，必要时淘汰最久未访问的条目。
+     * 写入前会顺带清理队首已过期的条目。
+     *
+     * @param key   键
+     * @param value 值
+     */
+    public synchronized void put(K key, V value) {
+        long now = System.currentTimeMillis();
+        map.put(key, new Entry<>(value, ttlMillis > 0 ? now + ttlMillis : Long.MAX_VALUE));
+        Iterator<Map.Entry<K, Entry<V>>> it = map.entrySet().iterator();
+        int excess = map.size() - maxEntries;
+        while (it.hasNext()) {
+            Map.Entry<K, Entry<V>> eldest = it.next();
+            if (excess > 0) {
+                it.remove();
+                excess--;
+                listener.onEviction(eldest.getKey(), eldest.getValue().isExpired(now)
+                        ? EvictionListener.Cause.EXPIRED : EvictionListener.Cause.SIZE);
+            } else if (eldest.getValue().isExpired(now)) {
+                it.remove();
+                listener.onEviction(eldest.getKey(), EvictionListener.Cause.EXPIRED);
+            } else {
+                break;
+            }
+        }
+    }
+
+    /**
+     * 移除指定键。
+     *
+     * @param key 键
+     */
+    public synchronized void remove(K key) {
+        map.remove(key);
+    }
+
+    /**
+     * 清空缓存，不触发淘汰回调。
+     */
+    public synchronized void clear() {
+        map.clear();
+    }
+
+    /**
+     * 当前条目数（可能包含尚未惰性淘汰的过期条目）。
+     *
+     * @return 条目数
+     */
+    public synchronized int size() {
+        return map.size();
+    }
+
+    private static final class Entry<V> {
+        final V value;
+        final long expiresAt;
+
+        Entry(V value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+
+        boolean isExpired(long now) {
+            return now >= expiresAt;
+        }
+    }
+}
@@ -0,0 +1,256 @@
+package com.lyra.agent.cache;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 基于内存映射文件的持久化键值存储，用作缓存的磁盘层。
+ * <p>
+ * 记录以追加方式写入一个固定大小的映射区域，堆内只保存键到偏移量的索引；
+ * 重启时顺序扫描文件重建索引，因此缓存内容可以跨进程重启保留。
+ * 每条记录最后写入记录头魔数，进程在写入中途退出时该记录在下次启动时会被忽略。
+ * 空间不足时先压缩（丢弃过期与被覆盖的记录），仍不足则按写入顺序淘汰最旧的记录。
+ * <p>
+ * 线程安全；同一文件不能被多个实例或多个进程同时打开。
+ */
+public class MappedDiskStore implements Closeable {
+    private static final int FILE_MAGIC = 0x4C594331; // "LYC1"
+    private static final int RECORD_MAGIC = 0x4C595231; // "LYR1"
+    private static final int FILE_HEADER = 8;
+    // magic(4) + keyLength(2) + expiresAt(8) + valueLength(4)
+    private static final int RECORD_HEADER = 18;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private final EvictionListener<String> listener;
+    private final Map<String, Integer> index = new HashMap<>();
+    private int writePosition;
+    private boolean closed;
+
+    /**
+     * 打开（或创建）存储文件并重建索引。
+     *
+     * @param path     文件路径，父目录不存在时自动创建
+     * @param maxBytes 映射区域大小上限（字节），不超过 2GB
+     * @param listener 淘汰回调，可为 null
+     * @throws IOException 文件无法打开或映射
+     */
+    public MappedDiskStore(Path path, long maxBytes, EvictionListener<String> listener) throws IOException {
+        if (maxBytes <= FILE_HEADER + RECORD_HEADER || maxBytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("maxBytes out of range: " + maxBytes);
+        }
+        Path parent = path.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        this.capacity = (int) maxBytes;
+        this.listener = listener != null ? listener : (key, cause) -> { };
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        if (buffer.getInt(0) == FILE_MAGIC) {
+            load();
+        } else {
+            buffer.putInt(0, FILE_MAGIC);
+            buffer.putInt(4, 0);
+            writePosition = FILE_HEADER;
+            terminate();
+        }
+    }
+
+    /**
+     * 读取值。
+     *
+     * @param key 键
+     * @return 值，不存在或已过期时返回 null
+     */
+    public synchronized byte[] get(String key) {
+        Integer position = index.get(key);
+        if (position == null || closed) {
+            return null;
+        }
+        int pos = position;
+        if (buffer.getLong(pos + 6) <= System.currentTimeMillis()) {
+            index.remove(key);
+            listener.onEviction(key, EvictionListener.Cause.EXPIRED);
+            return null;
+        }
+        int keyLength = buffer.getShort(pos + 4);
+        int valueLength = buffer.getInt(pos + 14);
+        byte[] value = new byte[valueLength];
+        buffer.get(pos + RECORD_HEADER + keyLength, value);
+        return value;
+    }
+
+    /**
+     * 写入值。
+     *
+     * @param key       键
+     * @param value     值
+     * @param expiresAt 过期时间（epoch 毫秒）
+     * @return 记录超过整个存储容量而未写入时返回 false
+     */
+    public synchronized boolean put(String key, byte[] value, long expiresAt) {
+        if (closed) {
+            return false;
+        }
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        if (keyBytes.length > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("key too long: " + keyBytes.length + " bytes");
+        }
+        long size = (long) RECORD_HEADER + keyBytes.length + value.length;
+        if (size > capacity - FILE_HEADER) {
+            return false;
+        }
+        if (writePosition + size > capacity) {
+            compact((int) size);
+        }
+        int pos = writePosition;
+        buffer.putShort(pos + 4, (short) keyBytes.length);
+        buffer.putLong(pos + 6, expiresAt);
+        buffer.putInt(pos + 14, value.length);
+        buffer.put(pos + RECORD_HEADER, keyBytes);
+        buffer.put(pos + RECORD_HEADER + keyBytes.length, value);
+        writePosition = pos + (int) size;
+        terminate();
+        // 魔数最后写入，保证半条记录不会在重启后被读到
+        buffer.putInt(pos, RECORD_MAGIC);
+        index.put(key, pos);
+        return true;
+    }
+
+    /**
+     * 移除指定键。空间在下次压缩时回收。
+     *
+     * @param key 键
+     */
+    public synchronized void remove(String key) {
+        index.remove(key);
+    }
+
+    /**
+     * 清空存储，不触发淘汰回调。
+     */
+    public synchronized void clear() {
+        index.clear();
+        writePosition = FILE_HEADER;
+        terminate();
+    }
+
+    /**
+     * 当前索引中的条目数（可能包含尚未惰性淘汰的过期条目）。
+     *
+     * @return 条目数
+     */
+    public synchronized int size() {
+        return index.size();
+    }
+
+    /**
+     * 将映射区域刷写到磁盘并关闭文件。
+     *
+     * @throws IOException 关闭失败
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        buffer.force();
+        channel.close();
+    }
+
+    private void load() {
+        long now = System.currentTimeMillis();
+        int pos = FILE_HEADER;
+        while (pos + RECORD_HEADER <= capacity && buffer.getInt(pos) == RECORD_MAGIC) {
+            int keyLength = buffer.getShort(pos + 4);
+            int valueLength = buffer.getInt(pos + 14);
+            long size = (long) RECORD_HEADER + keyLength + valueLength;
+            if (keyLength < 0 || valueLength < 0 || pos + size > capacity) {
+                break;
+            }
+            byte[] keyBytes = new byte[keyLength];
+            buffer.get(pos + RECORD_HEADER, keyBytes);
+            String key = new String(keyBytes, StandardCharsets.UTF_8);
+            if (buffer.getLong(pos + 6) > now) {
+                index.put(key, pos);
+            } else {
+                index.remove(key);
+            }
+            pos += (int) size;
+        }
+        writePosition = pos;
+        terminate();
+    }
+
+    /**
+     * 将存活记录依次移动到文件头部，腾出至少 {@code required} 字节的尾部空间。
+     */
+    private void compact(int required) {
+        long now = System.currentTimeMillis();
+        List<Map.Entry<String, Integer>> live = new ArrayList<>(index.entrySet());
+        live.sort(Comparator.comparingInt(Map.Entry::getValue));
+
+        long liveBytes = 0;
+        List<Map.Entry<String, Integer>> kept = new ArrayList<>(live.size());
+        for (Map.Entry<String, Integer> entry : live) {
+            if (buffer.getLong(entry.getValue() + 6) <= now) {
+                index.remove(entry.getKey());
+                listener.onEviction(entry.getKey(), EvictionListener.Cause.EXPIRED);
+            } else {
+                kept.add(entry);
+                liveBytes += recordSize(entry.getValue());
+            }
+        }
+        int first = 0;
+        while (first < kept.size() && FILE_HEADER + liveBytes + required > capacity) {
+            Map.Entry<String, Integer> oldest = kept.get(first++);
+            liveBytes -= recordSize(oldest.getValue());
+            index.remove(oldest.getKey());
+            listener.onEviction(oldest.getKey(), EvictionListener.Cause.SIZE);
+        }
+
+        int target = FILE_HEADER;
+        for (int i = first; i < kept.size(); i++) {
+            Map.Entry<String, Integer> entry = kept.get(i);
+            int source = entry.getValue();
+            int size = recordSize(source);
+            if (source != target) {
+                byte[] record = new byte[size];
+                buffer.get(source, record);
+                buffer.put(target, record);
+            }
+            index.put(entry.getKey(), target);
+            target += size;
+        }
+        writePosition = target;
+        terminate();
+    }
+
+    private int recordSize(int pos) {
+        return RECORD_HEADER + buffer.getShort(pos + 4) + buffer.getInt(pos + 14);
+    }
+
+    /**
+     * 在写入位置放置结束标记，防止重启扫描时读到其后残留的旧记录。
+     */
+    private void terminate() {
+        if (writePosition + 4 <= capacity) {
+            buffer.putInt(writePosition, 0);
+        }
+    }
+}
@@ -0,0 +1,353 @@
+package com.lyra.agent.llm;
+
+import com.lyra.agent.autoconfigure.LyraAgentProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 单个提供者 + API Key 的客户端自适应限流器。
+ * <p>
+ * 由三部分组成：每分钟请求数与每分钟 token 数两个令牌桶、按 AIMD 调整的并发上限，
+ * 以及一个严格 FIFO 的等待队列——调用方按到达顺序获得许可，而不是直接失败。
+ * 成功的请求使并发上限缓慢加一（每个窗口约 +1），收到 429 时上限减半，
+ * 并按 Retry-After（缺省时使用配置的退避时间）暂停整个队列。
+ * 仅当队列已满或等待超过上限时才拒绝请求。
+ * <p>
+ * 指标（标签 provider、key）：{@code lyra.llm.ratelimit.wait}、{@code lyra.llm.ratelimit.rejections}（reason）、
+ * {@code lyra.llm.ratelimit.throttled}、{@code lyra.llm.ratelimit.limit}、{@code lyra.llm.ratelimit.queued}、
+ * {@code lyra.llm.ratelimit.inflight}。
+ */
+public class AdaptiveRateLimiter {
+    private static final long NANOS_PER_MINUTE = TimeUnit.MINUTES.toNanos(1);
+    private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "lyra-llm-ratelimit");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final long requestsPerMinute;
+    private final long tokensPerMinute;
+    private final int minConcurrency;
+    private final int maxConcurrency;
+    private final int maxQueue;
+    private final long maxWaitMs;
+    private final long defaultRetryAfterMs;
+
+    private final ArrayDeque<Waiter> queue = new ArrayDeque<>();
+    private double requestBucket;
+    private double tokenBucket;
+    private long lastRefill;
+    private double limit;
+    private int inFlight;
+    private long pausedUntil;
+    private ScheduledFuture<?> wakeup;
+    private long wakeupAt;
+
+    private final Timer waitTimer;
+    private final Counter queueFull;
+    private final Counter timedOut;
+    private final Counter throttled;
+
+    /**
+     * 构造函数。
+     *
+     * @param config   限流配置
+     * @param registry 指标注册表
+     * @param tags     指标标签，通常为 provider 与 key
+     */
+    public AdaptiveRateLimiter(LyraAgentProperties.Llm.RateLimit config, MeterRegistry registry, Tags tags) {
+        this.requestsPerMinute = config.getRequestsPerMinute();
+        this.tokensPerMinute = config.getTokensPerMinute();
+        this.minConcurrency = Math.max(1, config.getMinConcurrency());
+        this.maxConcurrency = Math.max(minConcurrency, config.getMaxConcurrency());
+        this.maxQueue = config.getMaxQueue();
+        this.maxWaitMs = config.getMaxWaitMs();
+        this.defaultRetryAfterMs = config.getDefaultRetryAfterMs();
+        this.requestBucket = requestsPerMinute;
+        this.tokenBucket = tokensPerMinute;
+        this.lastRefill = System.nanoTime();
+        this.limit = maxConcurrency;
+
+        this.waitTimer = Timer.builder("lyra.llm.ratelimit.wait").tags(tags).register(registry);
+        this.queueFull = Counter.builder("lyra.llm.ratelimit.rejections").tags(tags).tag("reason", "queue_full")
+                .register(registry);
+        this.timedOut = Counter.builder("lyra.llm.ratelimit.rejections").tags(tags).tag("reason", "timeout")
+                .register(registry);
+        this.throttled = Counter.builder("lyra.llm.ratelimit.throttled").tags(tags).register(registry);
+        Gauge.builder("lyra.llm.ratelimit.limit", this, l -> l.currentLimit()).tags(tags).register(registry);
+        Gauge.builder("lyra.llm.ratelimit.queued", this, l -> l.queued()).tags(tags).register(registry);
+        Gauge.builder("lyra.llm.ratelimit.inflight", this, l -> l.inFlight()).tags(tags).register(registry);
+    }
+
+    /**
+     * 排队获取一个许可。
+     *
+     * @param estimatedTokens 预估的 token 消耗（输入 + 输出）
+     * @return 获得许可时完成的 Future；取消该 Future 即退出队列
+     */
+    public CompletableFuture<Permit> acquire(long estimatedTokens) {
+        return acquire(estimatedTokens, false);
+    }
+
+    /**
+     * 排队获取一个许可。
+     *
+     * @param estimatedTokens 预估的 token 消耗
+     * @param retry           是否为限流后的重试；重试插到队首，保持原有的先后顺序
+     * @return 获得许可时完成的 Future
+     */
+    public CompletableFuture<Permit> acquire(long estimatedTokens, boolean retry) {
+        Waiter waiter = new Waiter(Math.max(0, estimatedTokens));
+        synchronized (this) {
+            if (!retry && maxQueue > 0 && queue.size() >= maxQueue) {
+                queueFull.increment();
+                return CompletableFuture.failedFuture(
+                        new LlmException("Rate limiter queue is full (" + maxQueue + " waiting)", 429, null));
+            }
+            if (retry) {
+                queue.addFirst(waiter);
+            } else {
+                queue.addLast(waiter);
+            }
+        }
+        if (maxWaitMs > 0) {
+            ScheduledFuture<?> timeout = SCHEDULER.schedule(() -> {
+                // 先出队再失败，调用方看到超时时该等待者已不再计入 maxQueue
+                leave(waiter);
+                if (waiter.future.completeExceptionally(new LlmException(
+                        "Timed out after " + maxWaitMs + " ms waiting for rate limit", 429, null))) {
+                    timedOut.increment();
+                }
+            }, maxWaitMs, TimeUnit.MILLISECONDS);
+            waiter.future.whenComplete((p, e) -> timeout.cancel(false));
+        }
+        // 调用方取消时同样立即出队
+        waiter.future.whenComplete((p, e) -> {
+            if (e != null) {
+                leave(waiter);
+            }
+        });
+        dispatch();
+        return waiter.future;
+    }
+
+    /**
+     * 按队列顺序发放许可，直到队首因并发、令牌或退避无法满足为止。
+     */
+    private void dispatch() {
+        List<Waiter> granted = new ArrayList<>();
+        synchronized (this) {
+            long now = System.nanoTime();
+            refill(now);
+            while (!queue.isEmpty()) {
+                Waiter head = queue.peekFirst();
+                if (head.future.isDone()) {
+                    queue.pollFirst();
+                    continue;
+                }
+                if (now < pausedUntil) {
+                    scheduleWakeup(pausedUntil - now);
+                    break;
+                }
+                if (inFlight >= (int) limit) {
+                    break;
+                }
+                long tokens = tokensPerMinute > 0 ? Math.min(head.tokens, tokensPerMinute) : 0;
+                long waitNanos = 0;
+                if (requestsPerMinute > 0 && requestBucket < 1) {
+                    waitNanos = (long) ((1 - requestBucket) * NANOS_PER_MINUTE / requestsPerMinute);
+                }
+                if (tokensPerMinute > 0 && tokenBucket < tokens) {
+                    waitNanos = Math.max(waitNanos, (long) ((tokens - tokenBucket) * NANOS_PER_MINUTE / tokensPerMinute));
+                }
+                if (waitNanos > 0) {
+                    scheduleWakeup(waitNanos);
+                    break;
+                }
+                queue.pollFirst();
+                if (requestsPerMinute > 0) {
+                    requestBucket -= 1;
+                }
+                tokenBucket -= tokens;
+                inFlight++;
+                head.permit = new Permit(tokens);
+                granted.add(head);
+            }
+        }
+        for (Waiter waiter : granted) {
+            waitTimer.record(System.nanoTime() - waiter.enqueuedAt, TimeUnit.NANOSECONDS);
+            if (!waiter.future.complete(waiter.permit)) {
+                // 发放的同时被取消或超时，归还许可
+                waiter.permit.refund();
+            }
+        }
+    }
+
+    private synchronized void leave(Waiter waiter) {
+        queue.remove(waiter);
+    }
+
+    private void refill(long now) {
+        long elapsed = now - lastRefill;
+        lastRefill = now;
+        if (requestsPerMinute > 0) {
+            requestBucket = Math.min(requestsPerMinute, requestBucket + (double) elapsed * requestsPerMinute / NANOS_PER_MINUTE);
+        }
+        if (tokensPerMinute > 0) {
+            tokenBucket = Math.min(tokensPerMinute, tokenBucket + (double) elapsed * tokensPerMinute / NANOS_PER_MINUTE);
+        }
+    }
+
+    private void scheduleWakeup(long delayNanos) {
+        long now = System.nanoTime();
+        long at = now + delayNanos;
+        // 已到期的唤醒可能正在执行本次发放（调用在唤醒线程上同步失败），不能再依赖它
+        if (wakeup != null && !wakeup.isDone() && wakeupAt > now && wakeupAt <= at) {
+            return;
+        }
+        if (wakeup != null) {
+            wakeup.cancel(false);
+        }
+        wakeupAt = at;
+        wakeup = SCHEDULER.schedule(this::dispatch, delayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    synchronized double currentLimit() {
+        return limit;
+    }
+
+    synchronized int queued() {
+        return queue.size();
+    }
+
+    synchronized int inFlight() {
+        return inFlight;
+    }
+
+    /**
+     * 剩余额度占比，取并发、每分钟请求数与每分钟 token 数中最紧张的一项。
+     * 退避期间或已有请求排队时为 0。
+     *
+     * @return 0 到 1 之间的剩余额度
+     */
+    public synchronized double headroom() {
+        long now = System.nanoTime();
+        refill(now);
+        if (now < pausedUntil || !queue.isEmpty()) {
+            return 0;
+        }
+        double headroom = Math.max(0, 1 - inFlight / limit);
+        if (requestsPerMinute > 0) {
+            headroom = Math.min(headroom, requestBucket / requestsPerMinute);
+        }
+        if (tokensPerMinute > 0) {
+            headroom = Math.min(headroom, tokenBucket / tokensPerMinute);
+        }
+        return Math.max(0, headroom);
+    }
+
+    private static final class Waiter {
+        final long tokens;
+        final long enqueuedAt = System.nanoTime();
+        final CompletableFuture<Permit> future = new CompletableFuture<>();
+        Permit permit;
+
+        Waiter(long tokens) {
+            this.tokens = tokens;
+        }
+    }
+
+    /**
+     * 一次调用占用的许可。调用结束后必须且只能调用一次 {@link #release}、{@link #fail} 或 {@link #throttled}。
+     */
+    public final class Permit {
+        private final long reservedTokens;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(long reservedTokens) {
+            this.reservedTokens = reservedTokens;
+        }
+
+        /**
+         * 调用成功。并发上限加性增长；若已知实际 token 用量，按差额修正令牌桶。
+         *
+         * @param actualTokens 实际 token 用量，未知时传 0
+         */
+        public void release(long actualTokens) {
+            if (!released.compareAndSet(false, true)) {
+                return;
+            }
+            synchronized (AdaptiveRateLimiter.this) {
+                inFlight--;
+                limit = Math.min(maxConcurrency, limit + 1.0 / limit);
+                if (tokensPerMinute > 0 && actualTokens > 0) {
+                    tokenBucket += reservedTokens - actualTokens;
+                }
+            }
+            dispatch();
+        }
+
+        /**
+         * 调用因非限流原因失败或被取消。
+         */
+        public void fail() {
+            if (!released.compareAndSet(false, true)) {
+                return;
+            }
+            synchronized (AdaptiveRateLimiter.this) {
+                inFlight--;
+            }
+            dispatch();
+        }
+
+        /**
+         * 调用被服务端限流（HTTP 429）。并发上限减半，并暂停发放许可直到重试时间。
+         *
+         * @param retryAfter 服务端建议的重试间隔，为 null 时使用默认退避
+         */
+        public void throttled(Duration retryAfter) {
+            if (!released.compareAndSet(false, true)) {
+                return;
+            }
+            throttled.increment();
+            long backoff = retryAfter != null ? retryAfter.toNanos() : TimeUnit.MILLISECONDS.toNanos(defaultRetryAfterMs);
+            synchronized (AdaptiveRateLimiter.this) {
+                inFlight--;
+                limit = Math.max(minConcurrency, limit / 2);
+                pausedUntil = Math.max(pausedUntil, System.nanoTime() + backoff);
+            }
+            dispatch();
+        }
+
+        /**
+         * 许可未被使用，归还并发名额与令牌。
+         */
+        void refund() {
+            if (!released.compareAndSet(false, true)) {
+                return;
+            }
+            synchronized (AdaptiveRateLimiter.this) {
+                inFlight--;
+                if (requestsPerMinute > 0) {
+                    requestBucket += 1;
+                }
+                tokenBucket += reservedTokens;
+            }
+            dispatch();
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.lyra.agent.llm;
+
+import com.lyra.agent.agent.Message;
+import com.lyra.agent.audit.AuditRecord;
+import com.lyra.agent.audit.AuditSink;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 审计装饰器：把被采样调用的 prompt 与补全提交给 {@link AuditSink}。
+ * <p>
+ * 每次调用开始时先询问 {@link AuditSink#sample()}，未被采样的调用原样转发，不复制消息、不拼接输出。
+ * 流式调用只在被采样时累积响应块内容，流结束或失败后提交一条记录。
+ */
+public class AuditingLLMProvider extends DelegatingLLMProvider {
+    private final AuditSink sink;
+
+    /**
+     * 构造函数。
+     *
+     * @param delegate 被装饰的提供者
+     * @param sink     审计输出
+     */
+    public AuditingLLMProvider(LLMProvider delegate, AuditSink sink) {
+        super(delegate);
+        this.sink = sink;
+    }
+
+    @Override
+    public String generate(String prompt) {
+        if (!sink.sample()) {
+            return delegate.generate(prompt);
+        }
+        long start = System.nanoTime();
+        long timestamp = System.currentTimeMillis();
+        String output = delegate.generate(prompt);
+        record(timestamp, start, List.of(Message.user(prompt)), output, "stop", Map.of(), null);
+        return output;
+    }
+
+    @Override
+    public CompletableFuture<String> generateAsync(String prompt) {
+        if (!sink.sample()) {
+            return delegate.generateAsync(prompt);
+        }
+        long start = System.nanoTime();
+        long timestamp = System.currentTimeMillis();
+        CompletableFuture<String> future = delegate.generateAsync(prompt);
+        future.whenComplete((output, e) -> record(timestamp, start, List.of(Message.user(prompt)), output,
+                e == null ? "stop" : "error", Map.of(), e));
+        return future;
+    }
+
+    @Override
+    public Flow.Publisher<StreamChunk> generateStream(String prompt) {
+        if (!sink.sample()) {
+            return delegate.generateStream(prompt);
+        }
+        return subscriber -> delegate.generateStream(prompt)
+                .subscribe(new AuditingSubscriber(List.of(Message.user(prompt)), subscriber));
+    }
+
+    @Override
+    public LlmResponse chat(List<Message> messages, Map<String, Object> options) {
+        if (!sink.sample()) {
+            return delegate.chat(messages, options);
+        }
+        long start = System.nanoTime();
+        long timestamp = System.currentTimeMillis();
+        LlmResponse response = delegate.chat(messages, options);
+        record(timestamp, start, List.copyOf(messages), response.getContent(), response.getFinishReason(),
+                response.getMetadata(), null);
+        return response;
+    }
+
+    @Override
+    public CompletableFuture<LlmResponse> chatAsync(List<Message> messages, Map<String, Object> options) {
+        if (!sink.sample()) {
+            return delegate.chatAsync(messages, options);
+        }
+        long start = System.nanoTime();
+        long timestamp = System.currentTimeMillis();
+        List<Message> prompt = List.copyOf(messages);
+        CompletableFuture<LlmResponse> future = delegate.chatAsync(messages, options);
+        future.whenComplete((response, e) -> {
+            if (e != null) {
+                record(timestamp, start, prompt, null, "error", Map.of(), e);
+            } else {
+                record(timestamp, start, prompt, response.getContent(), response.getFinishReason(), response.getMetadata(), null);
+            }
+        });
+        return future;
+    }
+
+    @Override
+    public Flow.Publisher<StreamChunk> streamChat(List<Message> messages, Map<String, Object> options) {
+        if (!sink.sample()) {
+            return delegate.streamChat(messages, options);
+        }
+        List<Message> prompt = List.copyOf(messages);
+        return subscriber -> delegate.streamChat(messages, options).subscribe(new AuditingSubscriber(prompt, subscriber));
+    }
+
+    private void record(long timestamp, long startNanos, List<Message> messages, String completion, String finishReason,
+                        Map<String, Object> metadata, Throwable error) {
+        sink.record(new AuditRecord(timestamp, getModelName(), messages, completion, finishReason, metadata,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos),
+                error != null ? LlmException.describe(error) : null));
+    }
+
+    /**
+     * 转发响应块并累积内容，流结束或失败后提交审计记录；被取消的流不记录。
+     */
+    private final class AuditingSubscriber implements Flow.Subscriber<StreamChunk> {
+        private final List<Message> prompt;
+        private final Flow.Subscriber<? super StreamChunk> downstream;
+        private final StringBuilder content = new StringBuilder();
+        private final long start = System.nanoTime();
+        private final long timestamp = System.currentTimeMillis();
+        private Map<String, Object> metadata = Map.of();
+        private String finishReason;
+
+        AuditingSubscriber(List<Message> prompt, Flow.Subscriber<? super StreamChunk> downstream) {
+            this.prompt = prompt;
+            this.downstream = downstream;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            downstream.onSubscribe(subscription);
+        }
+
+        @Override
+        public void onNext(StreamChunk chunk) {
+            if (chunk.getContent() != null) {
+                content.append(chunk.getContent());
+            }
+            if (chunk.isDone()) {
+                if (finishReason == null || finishReason.isEmpty()) {
+                    finishReason = chunk.getFinishReason();
+                }
+                if (chunk.getMetadata() != null && !chunk.getMetadata().isEmpty()) {
+                    metadata = chunk.getMetadata();
+                }
+            }
+            downstream.onNext(chunk);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            record(timestamp, start, prompt, content.toString(), "error", metadata, throwable);
+            downstream.onError(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            record(timestamp, start, prompt, content.toString(), finishReason, metadata, null);
+            downstream.onComplete();
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package com.lyra.agent.llm;
+
+import com.lyra.agent.autoconfigure.LyraAgentProperties;
+import com.lyra.agent.cache.EvictionListener;
+import com.lyra.agent.cache.LruTtlCache;
+import com.lyra.agent.cache.MappedDiskStore;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 按内容寻址的嵌入向量缓存装饰器。
+ * <p>
+ * 以 (嵌入模型, 文本) 的哈希为键，先查堆内 LRU（值为 float[]），再查可选的内存映射磁盘层，
+ * 磁盘层命中的向量会回填到堆内，进程重启后无需重新嵌入。批量调用只把未命中且去重后的文本交给被装饰的模型。
+ * 磁盘层记录写入时的嵌入模型名，打开时与 {@code agent.llm.embedding-model} 不一致则清空整个文件。
+ * <p>
+ * 指标：{@code lyra.embedding.cache.hits}（tier=memory|disk）、{@code lyra.embedding.cache.misses}、
+ * {@code lyra.embedding.cache.evictions}（tier、cause=size|expired）、{@code lyra.embedding.cache.size}（tier）。
+ */
+public class CachingEmbeddingModel implements EmbeddingModel, AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(CachingEmbeddingModel.class);
+    /** 磁盘层中记录嵌入模型名的保留键，不会与 64 位十六进制的内容键冲突。 */
+    private static final String MODEL_KEY = "embedding-model";
+
+    private final EmbeddingModel delegate;
+    private final String model;
+    private final long ttlMillis;
+    private final LruTtlCache<String, float[]> memory;
+    private final MappedDiskStore disk;
+    private final MeterRegistry registry;
+    private final Counter memoryHits;
+    private final Counter diskHits;
+    private final Counter misses;
+
+    /**
+     * 构造函数。
+     * 磁盘层无法打开时记录警告并仅使用堆内缓存。
+     *
+     * @param delegate 被装饰的嵌入模型
+     * @param config   LLM 配置，使用其中的 embeddingModel 与 embedding.cache 配置
+     * @param registry 指标注册表
+     */
+    public CachingEmbeddingModel(EmbeddingModel delegate, LyraAgentProperties.Llm config, MeterRegistry registry) {
+        LyraAgentProperties.Llm.Cache cacheConfig = config.getEmbedding().getCache();
+        this.delegate = delegate;
+        this.model = config.getEmbeddingModel();
+        this.ttlMillis = cacheConfig.getTtlMs();
+        this.registry = registry;
+        this.memory = new LruTtlCache<>(cacheConfig.getMaxEntries(), ttlMillis, evictionCounter("memory"));
+        this.disk = cacheConfig.isDiskEnabled() ? openDisk(cacheConfig) : null;
+        this.memoryHits = Counter.builder("lyra.embedding.cache.hits").tag("tier", "memory").register(registry);
+        this.diskHits = Counter.builder("lyra.embedding.cache.hits").tag("tier", "disk").register(registry);
+        this.misses = Counter.builder("lyra.embedding.cache.misses").register(registry);
+        Gauge.builder("lyra.embedding.cache.size", memory, LruTtlCache::size).tag("tier", "memory").register(registry);
+        if (disk != null) {
+            Gauge.builder("lyra.embedding.cache.size", disk, MappedDiskStore::size).tag("tier", "disk")
+                    .register(registry);
+        }
+    }
+
+    @Override
+    public float[] embed(String text) {
+        String key = LlmRequestKey.ofEmbedding(model, text);
+        float[] vector = lookup(key);
+        if (vector == null) {
+            vector = delegate.embed(text);
+            store(key, vector);
+        }
+        return vector;
+    }
+
+    @Override
+    public List<float[]> embedBatch(List<String> texts) {
+        float[][] vectors = new float[texts.size()][];
+        // 未命中的文本 -> 在输入中出现的位置，相同文本只请求一次
+        Map<String, List<Integer>> missing = new LinkedHashMap<>();
+        for (int i = 0; i < texts.size(); i++) {
+            String text = texts.get(i);
+            List<Integer> positions = missing.get(text);
+            if (positions != null) {
+                positions.add(i);
+                continue;
+            }
+            vectors[i] = lookup(LlmRequestKey.ofEmbedding(model, text));
+            if (vectors[i] == null) {
+                positions = new ArrayList<>(1);
+                positions.add(i);
+                missing.put(text, positions);
+            }
+        }
+        if (!missing.isEmpty()) {
+            List<String> pending = new ArrayList<>(missing.keySet());
+            List<float[]> embedded = delegate.embedBatch(pending);
+            for (int i = 0; i < pending.size(); i++) {
+                float[] vector = embedded.get(i);
+                store(LlmRequestKey.ofEmbedding(model, pending.get(i)), vector);
+                for (int position : missing.get(pending.get(i))) {
+                    vectors[position] = vector;
+                }
+            }
+        }
+        return Arrays.asList(vectors);
+    }
+
+    /**
+     * 关闭磁盘层，将映射区域刷写到磁盘。
+     */
+    @Override
+    public void close() {
+        if (disk == null) {
+            return;
+        }
+        try {
+            disk.close();
+        } catch (IOException e) {
+            logger.warn("Failed to close embedding disk cache: {}", e.getMessage());
+        }
+    }
+
+    private float[] lookup(String key) {
+        float[] vector = memory.get(key);
+        if (vector != null) {
+            memoryHits.increment();
+            return vector;
+        }
+        if (disk != null) {
+            byte[] bytes = disk.get(key);
+            if (bytes != null && bytes.length % Float.BYTES == 0) {
+                vector = decode(bytes);
+                diskHits.increment();
+                memory.put(key, vector);
+                return vector;
+            }
+        }
+        misses.increment();
+        return null;
+    }
+
+    private void store(String key, float[] vector) {
+        memory.put(key, vector);
+        if (disk != null) {
+            disk.put(key, encode(vector), ttlMillis > 0 ? System.currentTimeMillis() + ttlMillis : Long.MAX_VALUE);
+            // 模型标记是最早写入的记录，空间不足时会最先被淘汰，缺失时补写，否则重启后整个文件会被误清空
+            if (disk.get(MODEL_KEY) == null) {
+                disk.put(MODEL_KEY, model.getBytes(StandardCharsets.UTF_8), Long.MAX_VALUE);
+            }
+        }
+    }
+
+    private static byte[] encode(float[] vector) {
+        ByteBuffer buffer = ByteBuffer.allocate(vector.length * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.asFloatBuffer().put(vector);
+        return buffer.array();
+    }
+
+    private static float[] decode(byte[] bytes) {
+        float[] vector = new float[bytes.length / Float.BYTES];
+        ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer().get(vector);
+        return vector;
+    }
+
+    private MappedDiskStore openDisk(LyraAgentProperties.Llm.Cache cacheConfig) {
+        MappedDiskStore store;
+        try {
+            store = new MappedDiskStore(Path.of(cacheConfig.getDiskPath()), cacheConfig.getDiskMaxBytes(),
+                    evictionCounter("disk"));
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Embedding disk cache disabled, cannot open {}: {}", cacheConfig.getDiskPath(), e.getMessage());
+            return null;
+        }
+        byte[] modelBytes = model.getBytes(StandardCharsets.UTF_8);
+        byte[] stored = store.get(MODEL_KEY);
+        if (stored == null || !Arrays.equals(stored, modelBytes)) {
+            if (store.size() > 0) {
+                logger.info("Embedding model changed to {}, clearing disk cache {}", model, cacheConfig.getDiskPath());
+            }
+            store.clear();
+            store.put(MODEL_KEY, modelBytes, Long.MAX_VALUE);
+        }
+        return store;
+    }
+
+    private EvictionListener<String> evictionCounter(String tier) {
+        return (key, cause) -> registry.counter("lyra.embedding.cache.evictions",
+                "tier", tier, "cause", cause.name().toLowerCase(Locale.ROOT)).increment();
+    }
+}
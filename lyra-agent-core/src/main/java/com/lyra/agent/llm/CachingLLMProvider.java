@@ -0,0 +1,327 @@
+package com.lyra.agent.llm;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.lyra.agent.agent.Message;
+import com.lyra.agent.autoconfigure.LyraAgentProperties;
+import com.lyra.agent.cache.EvictionListener;
+import com.lyra.agent.cache.LruTtlCache;
+import com.lyra.agent.cache.MappedDiskStore;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Flow;
+import java.util.function.Supplier;
+
+/**
+ * 精确匹配的 LLM 响应缓存装饰器。
+ * <p>
+ * 以 (提供者, 模型, 消息, 选项) 的哈希为键，先查堆内 LRU，再查可选的内存映射磁盘层，
+ * 磁盘层命中的结果会回填到堆内。同步、异步与流式调用共享同一份缓存：
+ * 命中时 {@code streamChat}/{@code generateStream} 将缓存内容切分为多个响应块回放。
+ * 只有成功完成的调用才会写入缓存；被取消或失败的流不会写入。
+ * 调用选项中 {@code cache=false} 或带有工具定义时跳过缓存：回放只还原文本，无法还原流式的工具调用。
+ * temperature 大于 0 的采样请求同样跳过缓存，与 {@link SingleFlightLLMProvider} 不合并这类请求的规则一致。
+ * <p>
+ * 指标：{@code lyra.llm.cache.hits}（tier=memory|disk）、{@code lyra.llm.cache.misses}、
+ * {@code lyra.llm.cache.evictions}（tier、cause=size|expired）、{@code lyra.llm.cache.size}（tier）。
+ */
+public class CachingLLMProvider extends DelegatingLLMProvider implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(CachingLLMProvider.class);
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final int REPLAY_CHUNK_CHARS = 16;
+    private static final String OPTION_CACHE = "cache";
+
+    private final String providerId;
+    private final long ttlMillis;
+    private final LruTtlCache<String, LlmResponse> memory;
+    private final MappedDiskStore disk;
+    private final MeterRegistry registry;
+    private final Counter memoryHits;
+    private final Counter diskHits;
+    private final Counter misses;
+
+    /**
+     * 构造函数。
+     * 磁盘层无法打开时记录警告并仅使用堆内缓存。
+     *
+     * @param delegate 被装饰的提供者
+     * @param config   LLM 配置，使用其中的 provider 与 cache 配置
+     * @param registry 指标注册表
+     */
+    public CachingLLMProvider(LLMProvider delegate, LyraAgentProperties.Llm config, MeterRegistry registry) {
+        super(delegate);
+        LyraAgentProperties.Llm.Cache cacheConfig = config.getCache();
+        this.providerId = config.getProvider();
+        this.ttlMillis = cacheConfig.getTtlMs();
+        this.registry = registry;
+        this.memory = new LruTtlCache<>(cacheConfig.getMaxEntries(), ttlMillis, evictionCounter("memory"));
+        this.disk = cacheConfig.isDiskEnabled() ? openDisk(cacheConfig) : null;
+        this.memoryHits = Counter.builder("lyra.llm.cache.hits").tag("provider", providerId)
+                .tag("tier", "memory").register(registry);
+        this.diskHits = Counter.builder("lyra.llm.cache.hits").tag("provider", providerId)
+                .tag("tier", "disk").register(registry);
+        this.misses = Counter.builder("lyra.llm.cache.misses").tag("provider", providerId).register(registry);
+        Gauge.builder("lyra.llm.cache.size", memory, LruTtlCache::size).tag("provider", providerId)
+                .tag("tier", "memory").register(registry);
+        if (disk != null) {
+            Gauge.builder("lyra.llm.cache.size", disk, MappedDiskStore::size).tag("provider", providerId)
+                    .tag("tier", "disk").register(registry);
+        }
+    }
+
+    @Override
+    public String generate(String prompt) {
+        try {
+            return generateAsync(prompt).join();
+        } catch (CompletionException e) {
+            return "Error calling LLM: " + LlmException.describe(e);
+        }
+    }
+
+    @Override
+    public CompletableFuture<String> generateAsync(String prompt) {
+        String key = LlmRequestKey.of(providerId, getModelName(), prompt);
+        LlmResponse cached = lookup(key);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached.getContent());
+        }
+        return LlmHttpTransport.map(delegate.generateAsync(prompt), content -> {
+            store(key, new LlmResponse(content, Map.of(), "stop"));
+            return content;
+        });
+    }
+
+    @Override
+    public Flow.Publisher<StreamChunk> generateStream(String prompt) {
+        return cachedStream(() -> LlmRequestKey.of(providerId, getModelName(), prompt),
+                () -> delegate.generateStream(prompt));
+    }
+
+    @Override
+    public LlmResponse chat(List<Message> messages, Map<String, Object> options) {
+        if (bypass(options)) {
+            return delegate.chat(messages, options);
+        }
+        try {
+            return chatAsync(messages, options).join();
+        } catch (CompletionException e) {
+            return new LlmResponse("Error calling LLM: " + LlmException.describe(e), Map.of(), "error");
+        }
+    }
+
+    @Override
+    public CompletableFuture<LlmResponse> chatAsync(List<Message> messages, Map<String, Object> options) {
+        if (bypass(options)) {
+            return delegate.chatAsync(messages, options);
+        }
+        String key = LlmRequestKey.of(providerId, getModelName(), messages, options);
+        LlmResponse cached = lookup(key);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        return LlmHttpTransport.map(delegate.chatAsync(messages, options), response -> {
+            store(key, response);
+            return response;
+        });
+    }
+
+    @Override
+    public Flow.Publisher<StreamChunk> streamChat(List<Message> messages, Map<String, Object> options) {
+        if (bypass(options)) {
+            return delegate.streamChat(messages, options);
+        }
+        return cachedStream(() -> LlmRequestKey.of(providerId, getModelName(), messages, options),
+                () -> delegate.streamChat(messages, options));
+    }
+
+    /**
+     * 关闭磁盘层，将映射区域刷写到磁盘。
+     */
+    @Override
+    public void close() {
+        if (disk == null) {
+            return;
+        }
+        try {
+            disk.close();
+        } catch (IOException e) {
+            logger.warn("Failed to close LLM disk cache: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 订阅时查找缓存：命中则回放，否则订阅上游并在流正常结束后写入缓存。
+     */
+    private Flow.Publisher<StreamChunk> cachedStream(Supplier<String> keySupplier,
+                                                     Supplier<Flow.Publisher<StreamChunk>> upstream) {
+        return subscriber -> {
+            String key = keySupplier.get();
+            LlmResponse cached = lookup(key);
+            if (cached != null) {
+                StreamPublishers.fromChunks(toChunks(cached)).subscribe(subscriber);
+            } else {
+                upstream.get().subscribe(new RecordingSubscriber(key, subscriber));
+            }
+        };
+    }
+
+    private LlmResponse lookup(String key) {
+        LlmResponse response = memory.get(key);
+        if (response != null) {
+            memoryHits.increment();
+            return response;
+        }
+        if (disk != null) {
+            byte[] bytes = disk.get(key);
+            response = bytes != null ? decode(bytes) : null;
+            if (response != null) {
+                diskHits.increment();
+                memory.put(key, response);
+                return response;
+            }
+        }
+        misses.increment();
+        return null;
+    }
+
+    private void store(String key, LlmResponse response) {
+        Map<String, Object> metadata = new HashMap<>(response.getMetadata() != null ? response.getMetadata() : Map.of());
+        metadata.put("cached", true);
+        LlmResponse cached = new LlmResponse(response.getContent(), Collections.unmodifiableMap(metadata), response.getFinishReason());
+        memory.put(key, cached);
+        if (disk != null) {
+            byte[] bytes = encode(cached);
+            if (bytes != null) {
+                disk.put(key, bytes, ttlMillis > 0 ? System.currentTimeMillis() + ttlMillis : Long.MAX_VALUE);
+            }
+        }
+    }
+
+    private static List<StreamChunk> toChunks(LlmResponse response) {
+        String content = response.getContent() != null ? response.getContent() : "";
+        List<StreamChunk> chunks = new ArrayList<>(content.length() / REPLAY_CHUNK_CHARS + 2);
+        int start = 0;
+        while (start < content.length()) {
+            int end = Math.min(start + REPLAY_CHUNK_CHARS, content.length());
+            if (end < content.length() && Character.isHighSurrogate(content.charAt(end - 1))) {
+                end++;
+            }
+            chunks.add(new StreamChunk(content.substring(start, end), false, Map.of(), ""));
+            start = end;
+        }
+        chunks.add(new StreamChunk("", true, response.getMetadata(), response.getFinishReason()));
+        return chunks;
+    }
+
+    private static byte[] encode(LlmResponse response) {
+        Map<String, Object> record = new HashMap<>();
+        record.put("content", response.getContent());
+        record.put("finishReason", response.getFinishReason());
+        record.put("metadata", response.getMetadata());
+        try {
+            return MAPPER.writeValueAsBytes(record);
+        } catch (IOException e) {
+            logger.debug("Skipping disk cache for response with unserializable metadata: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static LlmResponse decode(byte[] bytes) {
+        try {
+            Map<String, Object> record = MAPPER.readValue(bytes, new TypeReference<Map<String, Object>>() { });
+            Object metadata = record.get("metadata");
+            return new LlmResponse((String) record.get("content"),
+                    metadata instanceof Map ? Collections.unmodifiableMap((Map<String, Object>) metadata) : Map.of(),
+                    (String) record.get("finishReason"));
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Ignoring corrupt LLM disk cache entry: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private static boolean bypass(Map<String, Object> options) {
+        return options != null && (Boolean.FALSE.equals(options.get(OPTION_CACHE)) || options.containsKey(OPTION_TOOLS)
+                || isSampled(options));
+    }
+
+    private MappedDiskStore openDisk(LyraAgentProperties.Llm.Cache cacheConfig) {
+        try {
+            return new MappedDiskStore(Path.of(cacheConfig.getDiskPath()), cacheConfig.getDiskMaxBytes(),
+                    evictionCounter("disk"));
+        } catch (IOException | RuntimeException e) {
+            logger.warn("LLM disk cache disabled, cannot open {}: {}", cacheConfig.getDiskPath(), e.getMessage());
+            return null;
+        }
+    }
+
+    private EvictionListener<String> evictionCounter(String tier) {
+        return (key, cause) -> registry.counter("lyra.llm.cache.evictions", "provider", providerId,
+                "tier", tier, "cause", cause.name().toLowerCase(Locale.ROOT)).increment();
+    }
+
+    /**
+     * 透传上游响应块，同时累积内容；上游在发出结束块后正常完成时写入缓存。
+     */
+    private final class RecordingSubscriber implements Flow.Subscriber<StreamChunk> {
+        private final String key;
+        private final Flow.Subscriber<? super StreamChunk> downstream;
+        private final StringBuilder content = new StringBuilder();
+        private Map<String, Object> metadata = Map.of();
+        private String finishReason;
+
+        RecordingSubscriber(String key, Flow.Subscriber<? super StreamChunk> downstream) {
+            this.key = key;
+            this.downstream = downstream;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            downstream.onSubscribe(subscription);
+        }
+
+        @Override
+        public void onNext(StreamChunk chunk) {
+            if (chunk.getContent() != null) {
+                content.append(chunk.getContent());
+            }
+            if (chunk.isDone()) {
+                // 结束原因以首个非空值为准，之后的用量块与 [DONE] 不覆盖
+                if (finishReason == null || finishReason.isEmpty()) {
+                    finishReason = chunk.getFinishReason();
+                }
+                if (chunk.getMetadata() != null && !chunk.getMetadata().isEmpty()) {
+                    metadata = chunk.getMetadata();
+                }
+            }
+            downstream.onNext(chunk);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            downstream.onError(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            if (finishReason != null) {
+                store(key, new LlmResponse(content.toString(), metadata, finishReason));
+            }
+            downstream.onComplete();
+        }
+    }
+}
@@ -0,0 +1,265 @@
+package com.lyra.agent.llm;
+
+import com.lyra.agent.autoconfigure.LyraAgentProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 基于滑动窗口的熔断器。
+ * <p>
+ * 关闭状态下统计最近 windowSize 次调用的失败率与慢调用率，调用数达到 minimumCalls 后任一比例超过阈值即打开。
+ * 打开状态下 {@link #tryAcquire()} 直接返回 null，调用方应立即失败或转到回退提供者；
+ * openDurationMs 后进入半开状态，最多放行 halfOpenProbes 个探测请求，全部成功（且不慢）则关闭，
+ * 任一失败或慢调用则重新打开。
+ * <p>
+ * 只有服务端故障计为失败：5xx、网络错误与超时。4xx（含 429）属于请求或配额问题，由调用方与限流器处理，
+ * 不影响熔断器；被取消的调用不计入统计。
+ * <p>
+ * 指标（标签 name）：{@code lyra.llm.circuit.state}（0=closed，1=open，2=half_open）、
+ * {@code lyra.llm.circuit.calls}（outcome=success|failure|slow|ignored|rejected）。
+ */
+public class CircuitBreaker {
+    private static final Logger logger = LoggerFactory.getLogger(CircuitBreaker.class);
+
+    /**
+     * 熔断器状态。
+     */
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final String name;
+    private final int windowSize;
+    private final int minimumCalls;
+    private final double failureRateThreshold;
+    private final long slowCallNanos;
+    private final double slowCallRateThreshold;
+    private final long openNanos;
+    private final int halfOpenProbes;
+
+    private final boolean[] failed;
+    private final boolean[] slow;
+    private int recorded;
+    private int next;
+    private int failures;
+    private int slowCalls;
+    private State state = State.CLOSED;
+    private long generation;
+    private long openedAt;
+    private int probesIssued;
+    private int probesSucceeded;
+
+    private final Counter successes;
+    private final Counter failureCount;
+    private final Counter slowCount;
+    private final Counter ignored;
+    private final Counter rejected;
+
+    /**
+     * 构造函数。
+     *
+     * @param name     熔断器名称，通常为提供者或端点名
+     * @param config   熔断配置
+     * @param registry 指标注册表
+     */
+    public CircuitBreaker(String name, LyraAgentProperties.Llm.CircuitBreaker config, MeterRegistry registry) {
+        this.name = name;
+        this.windowSize = Math.max(1, config.getWindowSize());
+        this.minimumCalls = Math.max(1, Math.min(windowSize, config.getMinimumCalls()));
+        this.failureRateThreshold = config.getFailureRateThreshold();
+        this.slowCallNanos = TimeUnit.MILLISECONDS.toNanos(config.getSlowCallDurationMs());
+        this.slowCallRateThreshold = config.getSlowCallRateThreshold();
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(config.getOpenDurationMs());
+        this.halfOpenProbes = Math.max(1, config.getHalfOpenProbes());
+        this.failed = new boolean[windowSize];
+        this.slow = new boolean[windowSize];
+
+        this.successes = calls(registry, "success");
+        this.failureCount = calls(registry, "failure");
+        this.slowCount = calls(registry, "slow");
+        this.ignored = calls(registry, "ignored");
+        this.rejected = calls(registry, "rejected");
+        Gauge.builder("lyra.llm.circuit.state", this, b -> b.getState().ordinal()).tag("name", name).register(registry);
+    }
+
+    private Counter calls(MeterRegistry registry, String outcome) {
+        return Counter.builder("lyra.llm.circuit.calls").tag("name", name).tag("outcome", outcome).register(registry);
+    }
+
+    /**
+     * 申请一次调用。
+     *
+     * @return 调用许可；熔断器打开（或半开且探测名额已满）时返回 null
+     */
+    public Permit tryAcquire() {
+        synchronized (this) {
+            if (state == State.OPEN && System.nanoTime() - openedAt >= openNanos) {
+                transition(State.HALF_OPEN);
+            }
+            if (state == State.CLOSED) {
+                return new Permit(generation, false);
+            }
+            if (state == State.HALF_OPEN && probesIssued < halfOpenProbes) {
+                probesIssued++;
+                return new Permit(generation, true);
+            }
+        }
+        rejected.increment();
+        return null;
+    }
+
+    /**
+     * 熔断器打开时返回给调用方的异常。
+     *
+     * @return 异常实例
+     */
+    public LlmException openException() {
+        return new LlmException("Circuit breaker '" + name + "' is open", 503, null);
+    }
+
+    /**
+     * 当前状态。
+     *
+     * @return 状态
+     */
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * 判断异常是否表示提供者故障。4xx 与取消不计为失败。
+     *
+     * @param error 调用失败的原因
+     * @return 是否计为失败
+     */
+    public static boolean isFailure(Throwable error) {
+        for (Throwable t = error; t != null; t = t.getCause()) {
+            if (t instanceof CancellationException) {
+                return false;
+            }
+            if (t instanceof LlmException le && le.getStatusCode() >= 400 && le.getStatusCode() < 500) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void record(Permit permit, boolean isFailure, boolean isSlow) {
+        synchronized (this) {
+            if (permit.generation != generation) {
+                // 状态已切换，旧状态下发出的调用不再影响统计
+                return;
+            }
+            if (state == State.HALF_OPEN) {
+                if (isFailure || isSlow) {
+                    open();
+                } else if (++probesSucceeded >= halfOpenProbes) {
+                    transition(State.CLOSED);
+                }
+                return;
+            }
+            if (recorded == windowSize) {
+                failures -= failed[next] ? 1 : 0;
+                slowCalls -= slow[next] ? 1 : 0;
+            } else {
+                recorded++;
+            }
+            failed[next] = isFailure;
+            slow[next] = isSlow;
+            failures += isFailure ? 1 : 0;
+            slowCalls += isSlow ? 1 : 0;
+            next = (next + 1) % windowSize;
+            if (recorded >= minimumCalls) {
+                double failureRate = 100.0 * failures / recorded;
+                double slowRate = 100.0 * slowCalls / recorded;
+                if (failureRate >= failureRateThreshold || slowRate >= slowCallRateThreshold) {
+                    logger.warn("Circuit breaker '{}' opened: failure rate {}%, slow call rate {}% over {} calls",
+                            name, Math.round(failureRate), Math.round(slowRate), recorded);
+                    open();
+                }
+            }
+        }
+    }
+
+    private void open() {
+        transition(State.OPEN);
+        openedAt = System.nanoTime();
+    }
+
+    private void transition(State target) {
+        if (state != target) {
+            logger.info("Circuit breaker '{}' {} -> {}", name, state, target);
+        }
+        state = target;
+        generation++;
+        probesIssued = 0;
+        probesSucceeded = 0;
+        recorded = 0;
+        next = 0;
+        failures = 0;
+        slowCalls = 0;
+    }
+
+    /**
+     * 一次调用的许可。调用结束后必须且只能调用一次 {@link #success}、{@link #failure} 或 {@link #release}。
+     */
+    public final class Permit {
+        private final long generation;
+        private final boolean probe;
+        private final AtomicBoolean done = new AtomicBoolean();
+
+        private Permit(long generation, boolean probe) {
+            this.generation = generation;
+            this.probe = probe;
+        }
+
+        /**
+         * 调用成功。
+         *
+         * @param durationNanos 调用耗时（流式调用为首个响应块的延迟）
+         */
+        public void success(long durationNanos) {
+            if (done.compareAndSet(false, true)) {
+                boolean isSlow = durationNanos >= slowCallNanos;
+                (isSlow ? slowCount : successes).increment();
+                record(this, false, isSlow);
+            }
+        }
+
+        /**
+         * 调用失败。不表示提供者故障的异常（见 {@link #isFailure}）只归还许可。
+         *
+         * @param durationNanos 调用耗时
+         * @param error         失败原因
+         */
+        public void failure(long durationNanos, Throwable error) {
+            if (!isFailure(error)) {
+                ignored.increment();
+                release();
+                return;
+            }
+            if (done.compareAndSet(false, true)) {
+                failureCount.increment();
+                record(this, true, durationNanos >= slowCallNanos);
+            }
+        }
+
+        /**
+         * 调用被取消或结果无法判定，归还许可而不计入统计。
+         */
+        public void release() {
+            if (done.compareAndSet(false, true) && probe) {
+                synchronized (CircuitBreaker.this) {
+                    if (generation == CircuitBreaker.this.generation && probesIssued > 0) {
+                        probesIssued--;
+                    }
+                }
+            }
+        }
+    }
+}
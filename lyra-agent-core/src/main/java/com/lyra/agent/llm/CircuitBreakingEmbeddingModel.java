@@ -0,0 +1,57 @@
+package com.lyra.agent.llm;
+
+import java.util.List;
+
+/**
+ * 嵌入模型的熔断装饰器。
+ * 熔断器打开时立即抛出异常而不是等待超时。不同嵌入模型生成的向量不可比较，因此不提供回退模型。
+ */
+public class CircuitBreakingEmbeddingModel implements EmbeddingModel {
+    private final EmbeddingModel delegate;
+    private final CircuitBreaker breaker;
+
+    /**
+     * 构造函数。
+     *
+     * @param delegate 被装饰的嵌入模型
+     * @param breaker  熔断器
+     */
+    public CircuitBreakingEmbeddingModel(EmbeddingModel delegate, CircuitBreaker breaker) {
+        this.delegate = delegate;
+        this.breaker = breaker;
+    }
+
+    @Override
+    public float[] embed(String text) {
+        CircuitBreaker.Permit permit = breaker.tryAcquire();
+        if (permit == null) {
+            throw breaker.openException();
+        }
+        long start = System.nanoTime();
+        try {
+            float[] embedding = delegate.embed(text);
+            permit.success(System.nanoTime() - start);
+            return embedding;
+        } catch (RuntimeException e) {
+            permit.failure(System.nanoTime() - start, e);
+            throw e;
+        }
+    }
+
+    @Override
+    public List<float[]> embedBatch(List<String> texts) {
+        CircuitBreaker.Permit permit = breaker.tryAcquire();
+        if (permit == null) {
+            throw breaker.openException();
+        }
+        long start = System.nanoTime();
+        try {
+            List<float[]> embeddings = delegate.embedBatch(texts);
+            permit.success(System.nanoTime() - start);
+            return embeddings;
+        } catch (RuntimeException e) {
+            permit.failure(System.nanoTime() - start, e);
+            throw e;
+        }
+    }
+}
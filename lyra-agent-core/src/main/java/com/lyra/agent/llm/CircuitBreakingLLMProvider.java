@@ -0,0 +1,287 @@
+package com.lyra.agent.llm;
+
+import com.lyra.agent.agent.Message;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * 熔断装饰器。
+ * <p>
+ * 熔断器打开时调用立即失败，不再占用线程与连接等待超时；配置了回退提供者时转发到回退提供者。
+ * 熔断器关闭时，提供者故障（见 {@link CircuitBreaker#isFailure}）同样转发到回退提供者；
+ * 流式调用只在尚未收到任何响应块时回退。
+ */
+public class CircuitBreakingLLMProvider extends DelegatingLLMProvider {
+    private final LLMProvider fallback;
+    private final CircuitBreaker breaker;
+
+    /**
+     * 构造函数。
+     *
+     * @param delegate 被装饰的提供者
+     * @param fallback 回退提供者，为 null 时熔断期间直接失败
+     * @param breaker  熔断器
+     */
+    public CircuitBreakingLLMProvider(LLMProvider delegate, LLMProvider fallback, CircuitBreaker breaker) {
+        super(delegate);
+        this.fallback = fallback;
+        this.breaker = breaker;
+    }
+
+    /**
+     * 获取熔断器。
+     *
+     * @return 熔断器
+     */
+    public CircuitBreaker getBreaker() {
+        return breaker;
+    }
+
+    @Override
+    public String generate(String prompt) {
+        try {
+            return generateAsync(prompt).join();
+        } catch (CompletionException e) {
+            return "Error calling LLM: " + LlmException.describe(e);
+        }
+    }
+
+    @Override
+    public CompletableFuture<String> generateAsync(String prompt) {
+        return call(() -> delegate.generateAsync(prompt), fallback != null ? () -> fallback.generateAsync(prompt) : null);
+    }
+
+    @Override
+    public Flow.Publisher<StreamChunk> generateStream(String prompt) {
+        return subscriber -> new GuardedStream(() -> delegate.generateStream(prompt),
+                fallback != null ? () -> fallback.generateStream(prompt) : null, subscriber).start();
+    }
+
+    @Override
+    public LlmResponse chat(List<Message> messages, Map<String, Object> options) {
+        try {
+            return chatAsync(messages, options).join();
+        } catch (CompletionException e) {
+            return new LlmResponse("Error calling LLM: " + LlmException.describe(e), Map.of(), "error");
+        }
+    }
+
+    @Override
+    public CompletableFuture<LlmResponse> chatAsync(List<Message> messages, Map<String, Object> options) {
+        return call(() -> delegate.chatAsync(messages, options),
+                fallback != null ? () -> fallback.chatAsync(messages, options) : null);
+    }
+
+    @Override
+    public Flow.Publisher<StreamChunk> streamChat(List<Message> messages, Map<String, Object> options) {
+        return subscriber -> new GuardedStream(() -> delegate.streamChat(messages, options),
+                fallback != null ? () -> fallback.streamChat(messages, options) : null, subscriber).start();
+    }
+
+    private <T> CompletableFuture<T> call(Supplier<CompletableFuture<T>> call, Supplier<CompletableFuture<T>> fallbackCall) {
+        CircuitBreaker.Permit permit = breaker.tryAcquire();
+        if (permit == null) {
+            return fallbackCall != null ? fallbackCall.get() : CompletableFuture.failedFuture(breaker.openException());
+        }
+        long start = System.nanoTime();
+        CompletableFuture<T> future;
+        try {
+            future = call.get();
+        } catch (RuntimeException e) {
+            permit.failure(System.nanoTime() - start, e);
+            throw e;
+        }
+        if (fallbackCall == null) {
+            // 无回退时直接返回原 Future，保留取消语义
+            future.whenComplete((r, e) -> complete(permit, start, future.isCancelled(), e));
+            return future;
+        }
+        CompletableFuture<T> result = new CompletableFuture<>();
+        AtomicReference<CompletableFuture<T>> current = new AtomicReference<>(future);
+        future.whenComplete((r, e) -> {
+            complete(permit, start, future.isCancelled(), e);
+            if (e == null) {
+                result.complete(r);
+            } else if (!result.isDone() && CircuitBreaker.isFailure(e)) {
+                CompletableFuture<T> next = fallbackCall.get();
+                current.set(next);
+                next.whenComplete((r2, e2) -> {
+                    if (e2 != null) {
+                        result.completeExceptionally(unwrap(e2));
+                    } else {
+                        result.complete(r2);
+                    }
+                });
+            } else {
+                result.completeExceptionally(unwrap(e));
+            }
+        });
+        result.whenComplete((r, e) -> {
+            if (result.isCancelled()) {
+                current.get().cancel(true);
+            }
+        });
+        return result;
+    }
+
+    private static void complete(CircuitBreaker.Permit permit, long start, boolean cancelled, Throwable error) {
+        if (cancelled) {
+            permit.release();
+        } else if (error == null) {
+            permit.success(System.nanoTime() - start);
+        } else {
+            permit.failure(System.nanoTime() - start, error);
+        }
+    }
+
+    private static Throwable unwrap(Throwable e) {
+        return e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+    }
+
+    /**
+     * 一次流式订阅：熔断器允许时订阅主提供者，以首个响应块的延迟判定慢调用；
+     * 熔断器打开，或主提供者在发出任何响应块前故障时，改为订阅回退提供者。
+     */
+    private final class GuardedStream implements Flow.Subscription, Flow.Subscriber<StreamChunk> {
+        private final Supplier<Flow.Publisher<StreamChunk>> primary;
+        private final Supplier<Flow.Publisher<StreamChunk>> fallbackStream;
+        private final Flow.Subscriber<? super StreamChunk> downstream;
+        private final AtomicLong requested = new AtomicLong();
+        private final AtomicLong pending = new AtomicLong();
+        private final long start = System.nanoTime();
+        private volatile Flow.Subscription upstream;
+        private volatile boolean cancelled;
+        private CircuitBreaker.Permit permit;
+        private long firstChunkNanos = -1;
+        private boolean switched;
+
+        GuardedStream(Supplier<Flow.Publisher<StreamChunk>> primary, Supplier<Flow.Publisher<StreamChunk>> fallbackStream,
+                      Flow.Subscriber<? super StreamChunk> downstream) {
+            this.primary = primary;
+            this.fallbackStream = fallbackStream;
+            this.downstream = downstream;
+        }
+
+        void start() {
+            permit = breaker.tryAcquire();
+            if (permit == null && fallbackStream == null) {
+                StreamPublishers.error(breaker.openException()).subscribe(downstream);
+                return;
+            }
+            downstream.onSubscribe(this);
+            if (permit == null) {
+                switchToFallback();
+                return;
+            }
+            Flow.Publisher<StreamChunk> publisher;
+            try {
+                publisher = primary.get();
+            } catch (RuntimeException e) {
+                publisher = StreamPublishers.error(e);
+            }
+            publisher.subscribe(this);
+        }
+
+        /**
+         * 改为订阅回退提供者，并重新转发下游累计的全部需求。
+         */
+        private void switchToFallback() {
+            switched = true;
+            upstream = null;
+            // 切换前尚未发出任何响应块，下游累计的需求即为新上游应得的需求
+            pending.set(requested.get());
+            Flow.Publisher<StreamChunk> publisher;
+            try {
+                publisher = fallbackStream.get();
+            } catch (RuntimeException e) {
+                publisher = StreamPublishers.error(e);
+            }
+            publisher.subscribe(this);
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            if (cancelled) {
+                subscription.cancel();
+                return;
+            }
+            upstream = subscription;
+            flushPending();
+        }
+
+        @Override
+        public void onNext(StreamChunk chunk) {
+            if (firstChunkNanos < 0) {
+                firstChunkNanos = System.nanoTime() - start;
+            }
+            downstream.onNext(chunk);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            if (!switched) {
+                permit.failure(firstChunkNanos >= 0 ? firstChunkNanos : System.nanoTime() - start, throwable);
+                if (fallbackStream != null && firstChunkNanos < 0 && !cancelled && CircuitBreaker.isFailure(throwable)) {
+                    switchToFallback();
+                    return;
+                }
+            }
+            downstream.onError(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            if (!switched) {
+                permit.success(firstChunkNanos >= 0 ? firstChunkNanos : System.nanoTime() - start);
+            }
+            downstream.onComplete();
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                cancel();
+                downstream.onError(new IllegalArgumentException("non-positive subscription request: " + n));
+                return;
+            }
+            requested.getAndUpdate(r -> r + n < 0 ? Long.MAX_VALUE : r + n);
+            Flow.Subscription s = upstream;
+            if (s != null) {
+                s.request(n);
+                return;
+            }
+            pending.getAndUpdate(r -> r + n < 0 ? Long.MAX_VALUE : r + n);
+            flushPending();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            if (permit != null && !switched) {
+                permit.release();
+            }
+            Flow.Subscription s = upstream;
+            if (s != null) {
+                s.cancel();
+            }
+        }
+
+        private void flushPending() {
+            Flow.Subscription s = upstream;
+            if (s == null) {
+                return;
+            }
+            long n = pending.getAndSet(0);
+            if (n > 0) {
+                s.request(n);
+            }
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.lyra.agent.llm;
+
+import com.lyra.agent.agent.Message;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.function.Consumer;
+
+/**
+ * LLMProvider 装饰器基类。
+ * 所有调用默认原样转发给被装饰的提供者，子类只需覆盖需要拦截的方法。
+ */
+public abstract class DelegatingLLMProvider implements LLMProvider {
+    protected final LLMProvider delegate;
+
+    protected DelegatingLLMProvider(LLMProvider delegate) {
+        this.delegate = delegate;
+    }
+
+    /**
+     * 获取被装饰的提供者。
+     *
+     * @return 被装饰的提供者
+     */
+    public LLMProvider getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * 沿装饰链向内查找指定类型的提供者。
+     *
+     * @param provider 最外层的提供者
+     * @param type     要查找的类型
+     * @return 找到的提供者，不存在时返回 null
+     */
+    public static <T extends LLMProvider> T find(LLMProvider provider, Class<T> type) {
+        LLMProvider current = provider;
+        while (current != null) {
+            if (type.isInstance(current)) {
+                return type.cast(current);
+            }
+            current = current instanceof DelegatingLLMProvider d ? d.getDelegate() : null;
+        }
+        return null;
+    }
+
+    /**
+     * 调用是否要求采样（选项中 temperature 大于 0）。这类请求期望每次得到不同结果，
+     * 缓存与请求合并都不应让它复用其他调用的响应。
+     *
+     * @param options 调用选项，可为 null
+     * @return temperature 大于 0 时返回 true
+     */
+    protected static boolean isSampled(Map<String, Object> options) {
+        Object temperature = options != null ? options.get("temperature") : null;
+        return temperature instanceof Number n && n.doubleValue() > 0.0;
+    }
+
+    @Override
+    public String generate(String prompt) {
+        return delegate.generate(prompt);
+    }
+
+    @Override
+    public CompletableFuture<String> generateAsync(String prompt) {
+        return delegate.generateAsync(prompt);
+    }
+
+    @Override
+    public Flow.Publisher<StreamChunk> generateStream(String prompt) {
+        return delegate.generateStream(prompt);
+    }
+
+    @Override
+    public void generateStream(String prompt, Consumer<StreamChunk> chunkConsumer) {
+        StreamPublishers.consume(generateStream(prompt), chunkConsumer);
+    }
+
+    @Override
+    public LlmResponse chat(List<Message> messages, Map<String, Object> options) {
+        return delegate.chat(messages, options);
+    }
+
+    @Override
+    public CompletableFuture<LlmResponse> chatAsync(List<Message> messages, Map<String, Object> options) {
+        return delegate.chatAsync(messages, options);
+    }
+
+    @Override
+    public Flow.Publisher<StreamChunk> streamChat(List<Message> messages, Map<String, Object> options) {
+        return delegate.streamChat(messages, options);
+    }
+
+    @Override
+    public void streamChat(List<Message> messages, Map<String, Object> options, Consumer<StreamChunk> chunkConsumer) {
+        StreamPublishers.consume(streamChat(messages, options), chunkConsumer);
+    }
+
+    @Override
+    public String getModelName() {
+        return delegate.getModelName();
+    }
+
+    @Override
+    public boolean supportsToolCalling() {
+        return delegate.supportsToolCalling();
+    }
+}
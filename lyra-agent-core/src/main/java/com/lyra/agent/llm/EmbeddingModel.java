@@ -1,10 +1,11 @@
 package com.lyra.agent.llm;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /**
  * 嵌入模型接口。
- * 将文本转换为向量表示。
+ * 将文本转换为向量表示。向量以 float[] 表示，每维 4 字节，不装箱。
  */
 public interface EmbeddingModel {
     /**
@@ -13,5 +14,20 @@ public interface EmbeddingModel {
      * @param text 输入文本
      * @return 浮点数向量
      */
-    List<Double> embed(String text);
+    float[] embed(String text);
+
+    /**
+     * 批量生成嵌入向量，结果顺序与输入一致。
+     * 默认逐条调用 {@link #embed}，支持数组输入的实现应覆盖为单次请求。
+     *
+     * @param texts 输入文本
+     * @return 与输入一一对应的向量
+     */
+    default List<float[]> embedBatch(List<String> texts) {
+        List<float[]> vectors = new ArrayList<>(texts.size());
+        for (String text : texts) {
+            vectors.add(embed(text));
+        }
+        return vectors;
+    }
 }
@@ -1,26 +1,40 @@
 package com.lyra.agent.llm;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.lyra.agent.agent.Message;
 import com.lyra.agent.autoconfigure.LyraAgentProperties;
-import org.springframework.http.HttpEntity;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.MediaType;
-import org.springframework.http.ResponseEntity;
-import org.springframework.http.client.SimpleClientHttpRequestFactory;
-import org.springframework.web.client.RestTemplate;
 
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.Locale;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Flow;
 
 /**
  * Google Gemini 提供者实现。
  * 通过 REST API 调用 Google Gemini 接口。
  */
 public class GeminiLLMProvider implements LLMProvider {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final Map<String, String> GENERATION_OPTIONS = Map.of(
+            "temperature", "temperature",
+            "top_p", "topP",
+            "max_tokens", "maxOutputTokens",
+            "stop", "stopSequences");
     private final LyraAgentProperties.Llm config;
-    private final RestTemplate restTemplate;
+    private final LlmHttpTransport transport;
 
     /**
      * 使用配置初始化。
@@ -28,90 +42,368 @@ public class GeminiLLMProvider implements LLMProvider {
      * @param config LLM 配置
      */
     public GeminiLLMProvider(LyraAgentProperties.Llm config) {
+        this(config, LlmHttpTransport.shared());
+    }
+
+    /**
+     * 使用配置与共享传输层初始化。
+     *
+     * @param config    LLM 配置
+     * @param transport 共享 HTTP 传输层
+     */
+    public GeminiLLMProvider(LyraAgentProperties.Llm config, LlmHttpTransport transport) {
         this.config = config;
-        SimpleClientHttpRequestFactory factory = new SimpleClientHttpRequestFactory();
-        factory.setConnectTimeout(config.getTimeoutMs());
-        factory.setReadTimeout(config.getTimeoutMs());
-        this.restTemplate = new RestTemplate(factory);
+        this.transport = transport;
+        transport.warmUp(apiBase());
     }
 
     /**
      * 生成响应。
-     * 调用 Gemini generateContent 接口。
+     * 调用 Gemini generateContent 接口，阻塞直到 {@link #generateAsync(String)} 完成。
      *
      * @param prompt 输入提示
      * @return 文本响应
      */
     @Override
     public String generate(String prompt) {
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.APPLICATION_JSON);
-        if (config.getApiKey() != null && !config.getApiKey().isEmpty()) {
-            headers.add("x-goog-api-key", config.getApiKey());
+        try {
+            return generateAsync(prompt).join();
+        } catch (CompletionException e) {
+            return "Error calling Gemini API: " + LlmException.describe(e);
         }
+    }
 
-        // Gemini API payload structure
-        // { "contents": [{ "parts": [{ "text": "..." }] }] }
-        Map<String, Object> part = new HashMap<>();
-        part.put("text", prompt);
-        
-        Map<String, Object> content = new HashMap<>();
-        content.put("parts", Collections.singletonList(part));
-        
-        Map<String, Object> requestBody = new HashMap<>();
-        requestBody.put("contents", Collections.singletonList(content));
+    /**
+     * 异步生成响应。
+     *
+     * @param prompt 输入提示
+     * @return 文本响应 Future
+     */
+    @Override
+    public CompletableFuture<String> generateAsync(String prompt) {
+        return LlmHttpTransport.map(chatAsync(List.of(Message.user(prompt)), Map.of()), LlmResponse::getContent);
+    }
 
-        // Gemini uses API key in query param usually, but let's check config.
-        // Base URL usually: https://generativelanguage.googleapis.com/v1beta
-        // Full URL: BASE_URL + /models/MODEL_NAME:generateContent?key=API_KEY
-        
-        HttpEntity<Map<String, Object>> entity = new HttpEntity<>(requestBody, headers);
+    /**
+     * 流式生成响应。
+     *
+     * @param prompt 输入提示
+     * @return 响应块发布者
+     */
+    @Override
+    public Flow.Publisher<StreamChunk> generateStream(String prompt) {
+        return streamChat(List.of(Message.user(prompt)), Map.of());
+    }
 
+    /**
+     * 发送多轮对话请求。
+     * 系统消息作为 systemInstruction 发送，其余消息按 user/model 角色放入 contents。
+     *
+     * @param messages 对话消息
+     * @param options  调用选项
+     * @return 响应；调用失败时内容为错误描述，结束原因为 error
+     */
+    @Override
+    public LlmResponse chat(List<Message> messages, Map<String, Object> options) {
         try {
-            String baseUrl = "https://generativelanguage.googleapis.com";
-            // Force v1beta path to ensure compatibility
-            String apiVersion = "/v1beta";
-            String configuredBase = config.getBaseUrl();
-            if (configuredBase != null && configuredBase.contains("generativelanguage.googleapis.com")) {
-                // Respect custom domain if provided (without trailing version)
-                baseUrl = configuredBase.replaceAll("/v1(beta)?$", "");
-                apiVersion = configuredBase.endsWith("/v1") ? "/v1" : "/v1beta";
-            }
+            return chatAsync(messages, options).join();
+        } catch (CompletionException e) {
+            return new LlmResponse("Error calling Gemini API: " + LlmException.describe(e), Map.of(), "error");
+        }
+    }
 
-            // Handle model name
-            String model = config.getModel();
-            if (model == null || model.isEmpty()) {
-                model = "gemini-pro";
-            }
+    /**
+     * 异步发送多轮对话请求。
+     * 响应元数据中包含 token 用量，其中 cachedTokens 为命中上下文缓存的输入 token 数。
+     *
+     * @param messages 对话消息
+     * @param options  调用选项
+     * @return 响应 Future
+     */
+    @Override
+    public CompletableFuture<LlmResponse> chatAsync(List<Message> messages, Map<String, Object> options) {
+        HttpRequest request;
+        try {
+            request = buildRequest("generateContent", requestBody(messages, options));
+        } catch (LlmException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        return LlmHttpTransport.map(transport.sendAsync(request, HttpResponse.BodyHandlers.ofString()),
+                this::parseResponse);
+    }
 
-            String url = String.format("%s%s/models/%s:generateContent", baseUrl, apiVersion, model);
+    /**
+     * 流式发送多轮对话请求。
+     * 调用 streamGenerateContent 接口（alt=sse），与其他提供者共用同一 SSE 解码逻辑。
+     *
+     * @param messages 对话消息
+     * @param options  调用选项
+     * @return 响应块发布者
+     */
+    @Override
+    public Flow.Publisher<StreamChunk> streamChat(List<Message> messages, Map<String, Object> options) {
+        return new SseStreamPublisher(transport,
+                () -> buildRequest("streamGenerateContent?alt=sse", requestBody(messages, options)),
+                GeminiLLMProvider::toChunk);
+    }
 
-            ResponseEntity<Map> response = restTemplate.postForEntity(url, entity, Map.class);
+    /**
+     * 将一条 streamGenerateContent 事件转换为响应块。
+     * Gemini 不发送 [DONE]，以带 finishReason 的候选作为结束标记。
+     * 以流式方式读取首个候选的 {@code content.parts[].text}、{@code finishReason} 与 {@code usageMetadata}，其余字段直接跳过。
+     * 每个事件都带有截至当前的累计用量，只有结束块携带用量元数据。
+     *
+     * @param parser {@code data:} 负载的解析器
+     * @return 响应块；既无内容也无结束原因时返回 null
+     * @throws IOException JSON 格式错误
+     */
+    private static StreamChunk toChunk(JsonParser parser) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            return null;
+        }
+        StringBuilder text = new StringBuilder();
+        String finishReason = null;
+        Map<String, Object> usage = Map.of();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if ("usageMetadata".equals(field) && value == JsonToken.START_OBJECT) {
+                usage = readUsage(parser);
+                continue;
+            }
+            if (!"candidates".equals(field) || value != JsonToken.START_ARRAY) {
+                parser.skipChildren();
+                continue;
+            }
+            if (parser.nextToken() == JsonToken.START_OBJECT) {
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String candidateField = parser.currentName();
+                    JsonToken candidateValue = parser.nextToken();
+                    if ("content".equals(candidateField) && candidateValue == JsonToken.START_OBJECT) {
+                        readParts(parser, text);
+                    } else if ("finishReason".equals(candidateField) && candidateValue == JsonToken.VALUE_STRING) {
+                        finishReason = parser.getText().toLowerCase(Locale.ROOT);
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+            }
+            // 只关心首个候选
+            SseChunkParser.skipArrayRemainder(parser);
+        }
+        boolean isDone = finishReason != null;
+        if (text.length() == 0 && !isDone) {
+            return null;
+        }
+        return new StreamChunk(text.toString(), isDone, isDone ? usage : Map.of(), isDone ? finishReason : "");
+    }
 
-            if (response.getBody() == null) {
-                return "Error: Empty response body";
+    /**
+     * 以流式方式读取 usageMetadata 对象，返回时解析器位于该对象的结束位置。
+     */
+    private static Map<String, Object> readUsage(JsonParser parser) throws IOException {
+        Map<String, Object> usage = new HashMap<>();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            if (parser.nextToken() != JsonToken.VALUE_NUMBER_INT) {
+                parser.skipChildren();
+            } else if ("promptTokenCount".equals(field)) {
+                usage.put(LlmResponse.PROMPT_TOKENS, parser.getIntValue());
+            } else if ("candidatesTokenCount".equals(field)) {
+                usage.put(LlmResponse.COMPLETION_TOKENS, parser.getIntValue());
+            } else if ("cachedContentTokenCount".equals(field)) {
+                usage.put(LlmResponse.CACHED_TOKENS, parser.getIntValue());
             }
+        }
+        return usage;
+    }
 
-            // Parse response
-            // { "candidates": [{ "content": { "parts": [{ "text": "..." }] } }] }
-            List<Map<String, Object>> candidates = (List<Map<String, Object>>) response.getBody().get("candidates");
-            if (candidates == null || candidates.isEmpty()) {
-                // Safety ratings block?
-                return "Error: No candidates in response (blocked?)";
+    /**
+     * 拼接 {@code content.parts[].text}，返回时解析器位于 content 对象的结束位置。
+     */
+    private static void readParts(JsonParser parser, StringBuilder text) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if (!"parts".equals(field) || value != JsonToken.START_ARRAY) {
+                parser.skipChildren();
+                continue;
+            }
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String partField = parser.currentName();
+                    JsonToken partValue = parser.nextToken();
+                    if ("text".equals(partField) && partValue == JsonToken.VALUE_STRING) {
+                        text.append(parser.getText());
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+            }
+            SseChunkParser.skipArrayRemainder(parser);
+        }
+    }
+
+    /**
+     * 构造请求体。
+     * Gemini API payload structure
+     * { "systemInstruction": { "parts": [...] }, "contents": [{ "role": "user", "parts": [{ "text": "..." }] }] }
+     * Gemini 要求 user/model 交替出现，相邻的同角色消息合并为同一条 content 的多个 part。
+     *
+     * @param messages 对话消息
+     * @param options  调用选项，其中 temperature、top_p、max_tokens、stop 映射到 generationConfig
+     * @return 请求体映射
+     */
+    private Map<String, Object> requestBody(List<Message> messages, Map<String, Object> options) {
+        List<Map<String, Object>> systemParts = new ArrayList<>();
+        List<Map<String, Object>> contents = new ArrayList<>();
+        String lastRole = null;
+        List<Map<String, Object>> parts = null;
+        for (Message message : messages) {
+            Map<String, Object> part = new HashMap<>();
+            part.put("text", message.getContent());
+            if (message.getRole() == Message.Role.SYSTEM) {
+                systemParts.add(part);
+                continue;
             }
-            
-            Map<String, Object> firstCandidate = candidates.get(0);
-            Map<String, Object> respContent = (Map<String, Object>) firstCandidate.get("content");
-            List<Map<String, Object>> parts = (List<Map<String, Object>>) respContent.get("parts");
-            
-            if (parts == null || parts.isEmpty()) {
-                return "";
+            String role = message.getRole() == Message.Role.ASSISTANT ? "model" : "user";
+            if (!role.equals(lastRole)) {
+                parts = new ArrayList<>();
+                Map<String, Object> content = new HashMap<>();
+                content.put("role", role);
+                content.put("parts", parts);
+                contents.add(content);
+                lastRole = role;
+            }
+            parts.add(part);
+        }
+
+        Map<String, Object> requestBody = new HashMap<>();
+        requestBody.put("contents", contents);
+        if (!systemParts.isEmpty()) {
+            requestBody.put("systemInstruction", Map.of("parts", systemParts));
+        }
+        Map<String, Object> generationConfig = new HashMap<>();
+        if (options != null) {
+            for (Map.Entry<String, String> option : GENERATION_OPTIONS.entrySet()) {
+                Object value = options.get(option.getKey());
+                if (value != null) {
+                    generationConfig.put(option.getValue(),
+                            "stop".equals(option.getKey()) && value instanceof String ? List.of(value) : value);
+                }
             }
-            
-            return (String) parts.get(0).get("text");
+        }
+        if (!generationConfig.isEmpty()) {
+            requestBody.put("generationConfig", generationConfig);
+        }
+        return requestBody;
+    }
+
+    /**
+     * 解析 generateContent 响应：首个候选的文本、结束原因与 token 用量。
+     * { "candidates": [{ "content": { "parts": [{ "text": "..." }] }, "finishReason": "STOP" }], "usageMetadata": {...} }
+     *
+     * @param response HTTP 响应
+     * @return LLM 响应
+     */
+    private LlmResponse parseResponse(HttpResponse<String> response) {
+        if (response.statusCode() / 100 != 2) {
+            throw LlmException.httpError(response.statusCode(), response.body(), response.headers());
+        }
+        if (response.body() == null || response.body().isEmpty()) {
+            throw new LlmException("Empty response body");
+        }
+        JsonNode json;
+        try {
+            json = MAPPER.readTree(response.body());
+        } catch (IOException e) {
+            throw new LlmException("Malformed response body: " + e.getMessage(), e);
+        }
+        JsonNode candidates = json.get("candidates");
+        if (candidates == null || !candidates.isArray() || candidates.isEmpty()) {
+            // Safety ratings block?
+            throw new LlmException("No candidates in response (blocked?)");
+        }
 
-        } catch (Exception e) {
-            return "Error calling Gemini API: " + e.getMessage();
+        JsonNode candidate = candidates.get(0);
+        StringBuilder text = new StringBuilder();
+        for (JsonNode part : candidate.path("content").path("parts")) {
+            text.append(part.path("text").asText(""));
+        }
+        return new LlmResponse(text.toString(), usage(json.path("usageMetadata")),
+                candidate.path("finishReason").asText("STOP").toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * 提取 token 用量，cachedContentTokenCount 为命中上下文缓存的输入 token 数。
+     */
+    private static Map<String, Object> usage(JsonNode usage) {
+        if (!usage.isObject()) {
+            return Map.of();
+        }
+        Map<String, Object> metadata = new HashMap<>();
+        if (usage.has("promptTokenCount")) {
+            metadata.put(LlmResponse.PROMPT_TOKENS, usage.get("promptTokenCount").asInt());
+        }
+        if (usage.has("candidatesTokenCount")) {
+            metadata.put(LlmResponse.COMPLETION_TOKENS, usage.get("candidatesTokenCount").asInt());
+        }
+        if (usage.has("cachedContentTokenCount")) {
+            metadata.put(LlmResponse.CACHED_TOKENS, usage.get("cachedContentTokenCount").asInt());
+        }
+        return metadata;
+    }
+
+    /**
+     * 构造指向指定 Gemini 方法的 POST 请求。
+     * Full URL: BASE_URL + /models/MODEL_NAME:METHOD
+     *
+     * @param method 方法名，如 generateContent
+     * @param body   请求体
+     * @return HTTP 请求
+     */
+    private HttpRequest buildRequest(String method, Map<String, Object> body) {
+        String url = String.format("%s/models/%s:%s", apiBase(), getModelName(), method);
+
+        byte[] json;
+        try {
+            json = MAPPER.writeValueAsBytes(body);
+        } catch (JsonProcessingException e) {
+            throw new LlmException("Failed to serialize request body: " + e.getMessage(), e);
+        }
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(url))
+                .timeout(Duration.ofMillis(config.getTimeoutMs()))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(json));
+        if (config.getApiKey() != null && !config.getApiKey().isEmpty()) {
+            builder.header("x-goog-api-key", config.getApiKey());
+        }
+        return builder.build();
+    }
+
+    /**
+     * 获取模型名，未配置时使用 gemini-pro。
+     *
+     * @return 模型名
+     */
+    @Override
+    public String getModelName() {
+        String model = config.getModel();
+        return model == null || model.isEmpty() ? "gemini-pro" : model;
+    }
+
+    /**
+     * 解析 API 基础地址（含版本号）。
+     * Base URL usually: https://generativelanguage.googleapis.com/v1beta
+     */
+    private String apiBase() {
+        String configuredBase = config.getBaseUrl();
+        // 未配置或仍是 OpenAI 默认地址时使用 Google 官方地址，其余地址（代理、本地桩服务器等）原样使用
+        if (configuredBase == null || configuredBase.isEmpty() || configuredBase.startsWith("https://api.openai.com")) {
+            return "https://generativelanguage.googleapis.com/v1beta";
         }
+        String base = configuredBase.replaceAll("/+$", "");
+        // Force v1beta path unless a version is given explicitly
+        return base.matches(".*/v1(beta)?$") ? base : base + "/v1beta";
     }
 }
@@ -0,0 +1,533 @@
+package com.lyra.agent.llm;
+
+import com.lyra.agent.agent.Message;
+import com.lyra.agent.autoconfigure.LyraAgentProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 对冲请求装饰器，用于压低尾延迟。
+ * <p>
+ * 首个请求在延迟阈值内没有返回响应（流式请求为首个响应块）时，向备用提供者（未配置时为同一提供者）
+ * 再发出一个相同请求，先返回者胜出，另一个被取消。延迟阈值取近期主请求延迟的指定分位数，
+ * 样本不足时使用固定的初始延迟。对冲请求胜出时主请求被取消，其真实延迟未知，
+ * 此时记录主请求已等待的时间（真实延迟的下界），而不是对冲请求自身较短的延迟，以免阈值被不断拉低。额外负载受预算限制：每个请求积累 maxRatio 个对冲额度，
+ * 因此对冲请求数最多约为总请求数的 maxRatio。首个请求在对冲前失败时直接返回失败，不做重试。
+ * <p>
+ * 指标：{@code lyra.llm.hedge.requests}（winner=primary|hedge）、{@code lyra.llm.hedge.sent}、
+ * {@code lyra.llm.hedge.skipped}（预算不足）、{@code lyra.llm.hedge.delay}（当前阈值，毫秒）。
+ */
+public class HedgingLLMProvider extends DelegatingLLMProvider {
+    private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "lyra-llm-hedge");
+        t.setDaemon(true);
+        return t;
+    });
+    /** 预算最多积累的对冲次数，限制突发。 */
+    private static final double MAX_BUDGET = 5;
+
+    private final LLMProvider secondary;
+    private final double maxRatio;
+    private final LatencyWindow latencies;
+    private double budget;
+
+    private final Counter primaryWins;
+    private final Counter hedgeWins;
+    private final Counter sent;
+    private final Counter skipped;
+
+    /**
+     * 构造函数。
+     *
+     * @param delegate  主提供者
+     * @param secondary 对冲副本使用的提供者，可以与主提供者相同
+     * @param config    LLM 配置，使用其中的 provider 与 hedge 配置
+     * @param registry  指标注册表
+     */
+    public HedgingLLMProvider(LLMProvider delegate, LLMProvider secondary, LyraAgentProperties.Llm config,
+                              MeterRegistry registry) {
+        super(delegate);
+        LyraAgentProperties.Llm.Hedge hedge = config.getHedge();
+        this.secondary = secondary != null ? secondary : delegate;
+        this.maxRatio = hedge.getMaxRatio();
+        this.latencies = new LatencyWindow(hedge);
+        String provider = config.getProvider();
+        this.primaryWins = Counter.builder("lyra.llm.hedge.requests").tag("provider", provider)
+                .tag("winner", "primary").register(registry);
+        this.hedgeWins = Counter.builder("lyra.llm.hedge.requests").tag("provider", provider)
+                .tag("winner", "hedge").register(registry);
+        this.sent = Counter.builder("lyra.llm.hedge.sent").tag("provider", provider).register(registry);
+        this.skipped = Counter.builder("lyra.llm.hedge.skipped").tag("provider", provider).register(registry);
+        Gauge.builder("lyra.llm.hedge.delay", latencies, w -> TimeUnit.NANOSECONDS.toMillis(w.delayNanos()))
+                .tag("provider", provider).register(registry);
+    }
+
+    @Override
+    public String generate(String prompt) {
+        try {
+            return generateAsync(prompt).join();
+        } catch (CompletionException e) {
+            return "Error calling LLM: " + LlmException.describe(e);
+        }
+    }
+
+    @Override
+    public CompletableFuture<String> generateAsync(String prompt) {
+        return new HedgedCall<>(() -> delegate.generateAsync(prompt), () -> secondary.generateAsync(prompt)).start();
+    }
+
+    @Override
+    public Flow.Publisher<StreamChunk> generateStream(String prompt) {
+        return subscriber -> new HedgedStream(() -> delegate.generateStream(prompt),
+                () -> secondary.generateStream(prompt), subscriber).start();
+    }
+
+    @Override
+    public LlmResponse chat(List<Message> messages, Map<String, Object> options) {
+        try {
+            return chatAsync(messages, options).join();
+        } catch (CompletionException e) {
+            return new LlmResponse("Error calling LLM: " + LlmException.describe(e), Map.of(), "error");
+        }
+    }
+
+    @Override
+    public CompletableFuture<LlmResponse> chatAsync(List<Message> messages, Map<String, Object> options) {
+        return new HedgedCall<>(() -> delegate.chatAsync(messages, options),
+                () -> secondary.chatAsync(messages, options)).start();
+    }
+
+    @Override
+    public Flow.Publisher<StreamChunk> streamChat(List<Message> messages, Map<String, Object> options) {
+        return subscriber -> new HedgedStream(() -> delegate.streamChat(messages, options),
+                () -> secondary.streamChat(messages, options), subscriber).start();
+    }
+
+    /**
+     * 每个请求积累 maxRatio 个额度，发出一次对冲消耗 1 个额度。
+     */
+    private synchronized void earnBudget() {
+        budget = Math.min(MAX_BUDGET, budget + maxRatio);
+    }
+
+    private boolean tryAcquireHedge() {
+        synchronized (this) {
+            if (budget >= 1) {
+                budget -= 1;
+                sent.increment();
+                return true;
+            }
+        }
+        skipped.increment();
+        return false;
+    }
+
+    private ScheduledFuture<?> scheduleHedge(Runnable hedge) {
+        earnBudget();
+        return SCHEDULER.schedule(hedge, latencies.delayNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 一次非流式调用：发起主请求，超过延迟阈值仍未完成且预算允许时发起对冲请求，取先成功者并取消其余请求。
+     * 取消返回的 Future 会取消全部在途请求。
+     */
+    private final class HedgedCall<T> {
+        private final Supplier<CompletableFuture<T>> primary;
+        private final Supplier<CompletableFuture<T>> hedge;
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+        private final List<CompletableFuture<T>> attempts = new ArrayList<>(2);
+        private ScheduledFuture<?> timer;
+        private Throwable firstError;
+        private int failures;
+        private final long primaryStart = System.nanoTime();
+
+        HedgedCall(Supplier<CompletableFuture<T>> primary, Supplier<CompletableFuture<T>> hedge) {
+            this.primary = primary;
+            this.hedge = hedge;
+        }
+
+        CompletableFuture<T> start() {
+            result.whenComplete((r, e) -> {
+                ScheduledFuture<?> t;
+                List<CompletableFuture<T>> snapshot;
+                synchronized (this) {
+                    t = timer;
+                    snapshot = new ArrayList<>(attempts);
+                }
+                if (t != null) {
+                    t.cancel(false);
+                }
+                for (CompletableFuture<T> f : snapshot) {
+                    f.cancel(true);
+                }
+            });
+            launch(primary, false);
+            ScheduledFuture<?> t = scheduleHedge(() -> {
+                if (!result.isDone() && tryAcquireHedge()) {
+                    launch(hedge, true);
+                }
+            });
+            synchronized (this) {
+                timer = t;
+            }
+            if (result.isDone()) {
+                t.cancel(false);
+            }
+            return result;
+        }
+
+        private void launch(Supplier<CompletableFuture<T>> call, boolean isHedge) {
+            CompletableFuture<T> future;
+            try {
+                future = call.get();
+            } catch (RuntimeException e) {
+                future = CompletableFuture.failedFuture(e);
+            }
+            synchronized (this) {
+                attempts.add(future);
+            }
+            if (result.isDone()) {
+                future.cancel(true);
+                return;
+            }
+            future.whenComplete((r, e) -> {
+                if (e == null) {
+                    if (result.complete(r)) {
+                        latencies.record(System.nanoTime() - primaryStart);
+                        (isHedge ? hedgeWins : primaryWins).increment();
+                    }
+                    return;
+                }
+                Throwable error;
+                synchronized (this) {
+                    failures++;
+                    if (firstError == null) {
+                        firstError = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                    }
+                    // 已发出的请求全部失败时返回首个错误，不再等待尚未发出的对冲请求
+                    error = failures == attempts.size() ? firstError : null;
+                }
+                if (error != null) {
+                    result.completeExceptionally(error);
+                }
+            });
+        }
+    }
+
+    /**
+     * 一次流式订阅：各请求先只拉取首个响应块，最先发出首块的请求胜出，其余被取消；
+     * 首块交付给下游后，下游需求才转发给胜出的请求。
+     */
+    private final class HedgedStream implements Flow.Subscription {
+        private final Supplier<Flow.Publisher<StreamChunk>> primary;
+        private final Supplier<Flow.Publisher<StreamChunk>> hedge;
+        private final Flow.Subscriber<? super StreamChunk> downstream;
+        private final List<Attempt> attempts = new ArrayList<>(2);
+        private ScheduledFuture<?> timer;
+        private Attempt winner;
+        private StreamChunk held;
+        private long demand;
+        private boolean forwarding;
+        private boolean pendingComplete;
+        private Throwable pendingError;
+        private Throwable firstError;
+        private int failures;
+        private boolean done;
+        private final long primaryStart = System.nanoTime();
+
+        HedgedStream(Supplier<Flow.Publisher<StreamChunk>> primary, Supplier<Flow.Publisher<StreamChunk>> hedge,
+                     Flow.Subscriber<? super StreamChunk> downstream) {
+            this.primary = primary;
+            this.hedge = hedge;
+            this.downstream = downstream;
+        }
+
+        void start() {
+            downstream.onSubscribe(this);
+            launch(primary, false);
+            ScheduledFuture<?> t = scheduleHedge(() -> {
+                synchronized (this) {
+                    if (done || winner != null) {
+                        return;
+                    }
+                }
+                if (tryAcquireHedge()) {
+                    launch(hedge, true);
+                }
+            });
+            boolean cancel;
+            synchronized (this) {
+                timer = t;
+                cancel = done || winner != null;
+            }
+            if (cancel) {
+                t.cancel(false);
+            }
+        }
+
+        private void launch(Supplier<Flow.Publisher<StreamChunk>> upstream, boolean isHedge) {
+            Attempt attempt = new Attempt(isHedge);
+            synchronized (this) {
+                if (done || winner != null) {
+                    return;
+                }
+                attempts.add(attempt);
+            }
+            Flow.Publisher<StreamChunk> publisher;
+            try {
+                publisher = upstream.get();
+            } catch (RuntimeException e) {
+                publisher = StreamPublishers.error(e);
+            }
+            publisher.subscribe(attempt);
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                cancel();
+                downstream.onError(new IllegalArgumentException("non-positive subscription request: " + n));
+                return;
+            }
+            Flow.Subscription s = null;
+            synchronized (this) {
+                if (forwarding) {
+                    s = winner.subscription;
+                } else {
+                    demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+                }
+            }
+            if (s != null) {
+                s.request(n);
+            } else {
+                emitFirst();
+            }
+        }
+
+        @Override
+        public void cancel() {
+            List<Attempt> snapshot;
+            ScheduledFuture<?> t;
+            synchronized (this) {
+                if (done) {
+                    return;
+                }
+                done = true;
+                snapshot = new ArrayList<>(attempts);
+                t = timer;
+            }
+            if (t != null) {
+                t.cancel(false);
+            }
+            snapshot.forEach(Attempt::cancel);
+        }
+
+        /**
+         * 胜出者确定后取消定时器与其余请求。
+         */
+        private void cancelLosers(Attempt won) {
+            List<Attempt> losers = new ArrayList<>(attempts);
+            losers.remove(won);
+            if (timer != null) {
+                timer.cancel(false);
+            }
+            losers.forEach(Attempt::cancel);
+        }
+
+        /**
+         * 下游有需求时交付暂存的首块，随后开始向胜出者转发需求，并补发首块之前已到达的结束信号。
+         */
+        private void emitFirst() {
+            StreamChunk first;
+            synchronized (this) {
+                if (held == null || demand == 0 || done) {
+                    return;
+                }
+                first = held;
+                held = null;
+                demand--;
+            }
+            downstream.onNext(first);
+            long remaining;
+            Flow.Subscription s;
+            boolean complete;
+            Throwable error;
+            synchronized (this) {
+                forwarding = true;
+                remaining = demand;
+                demand = 0;
+                s = winner.subscription;
+                complete = pendingComplete;
+                error = pendingError;
+                if (complete || error != null) {
+                    done = true;
+                }
+            }
+            if (error != null) {
+                downstream.onError(error);
+            } else if (complete) {
+                downstream.onComplete();
+            } else if (remaining > 0) {
+                s.request(remaining);
+            }
+        }
+
+        private final class Attempt implements Flow.Subscriber<StreamChunk> {
+            private final boolean isHedge;
+            private volatile Flow.Subscription subscription;
+            private volatile boolean cancelled;
+
+            Attempt(boolean isHedge) {
+                this.isHedge = isHedge;
+            }
+
+            void cancel() {
+                cancelled = true;
+                Flow.Subscription s = subscription;
+                if (s != null) {
+                    s.cancel();
+                }
+            }
+
+            @Override
+            public void onSubscribe(Flow.Subscription s) {
+                subscription = s;
+                if (cancelled) {
+                    s.cancel();
+                } else {
+                    s.request(1);
+                }
+            }
+
+            @Override
+            public void onNext(StreamChunk chunk) {
+                boolean first;
+                synchronized (HedgedStream.this) {
+                    if (done || (winner != null && winner != this)) {
+                        return;
+                    }
+                    first = winner == null;
+                    if (first) {
+                        winner = this;
+                        held = chunk;
+                        cancelLosers(this);
+                    }
+                }
+                if (!first) {
+                    // 首块之后的响应块直接转发
+                    downstream.onNext(chunk);
+                    return;
+                }
+                latencies.record(System.nanoTime() - primaryStart);
+                (isHedge ? hedgeWins : primaryWins).increment();
+                emitFirst();
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                synchronized (HedgedStream.this) {
+                    if (done || (winner != null && winner != this)) {
+                        return;
+                    }
+                    if (winner == this) {
+                        if (!forwarding) {
+                            pendingError = throwable;
+                            return;
+                        }
+                    } else {
+                        failures++;
+                        if (firstError == null) {
+                            firstError = throwable;
+                        }
+                        if (failures < attempts.size()) {
+                            return;
+                        }
+                        throwable = firstError;
+                        if (timer != null) {
+                            timer.cancel(false);
+                        }
+                    }
+                    done = true;
+                }
+                downstream.onError(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                synchronized (HedgedStream.this) {
+                    if (done || (winner != null && winner != this)) {
+                        return;
+                    }
+                    if (winner == null) {
+                        // 空流：直接作为胜出者结束
+                        winner = this;
+                        cancelLosers(this);
+                    } else if (!forwarding) {
+                        pendingComplete = true;
+                        return;
+                    }
+                    done = true;
+                }
+                downstream.onComplete();
+            }
+        }
+    }
+
+    /**
+     * 最近若干个主请求延迟（从主请求发出到首个结果）的滑动窗口，按需计算分位数作为对冲阈值。
+     */
+    private static final class LatencyWindow {
+        private static final int RECOMPUTE_EVERY = 16;
+
+        private final long[] samples;
+        private final double percentile;
+        private final long initialDelayNanos;
+        private final long minDelayNanos;
+        private final long maxDelayNanos;
+        private final int minSamples;
+        private int count;
+        private int next;
+        private volatile long delayNanos;
+
+        LatencyWindow(LyraAgentProperties.Llm.Hedge config) {
+            this.samples = new long[Math.max(1, config.getWindow())];
+            this.percentile = Math.min(100, Math.max(0, config.getPercentile()));
+            this.initialDelayNanos = TimeUnit.MILLISECONDS.toNanos(config.getInitialDelayMs());
+            this.minDelayNanos = TimeUnit.MILLISECONDS.toNanos(config.getMinDelayMs());
+            this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(config.getMaxDelayMs());
+            this.minSamples = Math.max(1, config.getMinSamples());
+            this.delayNanos = initialDelayNanos;
+        }
+
+        long delayNanos() {
+            return delayNanos;
+        }
+
+        synchronized void record(long nanos) {
+            samples[next] = nanos;
+            next = (next + 1) % samples.length;
+            count = Math.min(count + 1, samples.length);
+            if (count >= minSamples && (count < samples.length || next % RECOMPUTE_EVERY == 0)) {
+                long[] sorted = Arrays.copyOf(samples, count);
+                Arrays.sort(sorted);
+                int index = (int) Math.ceil(percentile / 100 * count) - 1;
+                long value = sorted[Math.max(0, Math.min(count - 1, index))];
+                delayNanos = Math.max(minDelayNanos, Math.min(maxDelayNanos, value));
+            }
+        }
+    }
+}
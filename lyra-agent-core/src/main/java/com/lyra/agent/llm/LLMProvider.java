@@ -4,6 +4,8 @@ import com.lyra.agent.agent.Message;
 
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
 import java.util.function.Consumer;
 
 /**
@@ -19,14 +21,36 @@ public interface LLMProvider extends LlmClient {
      */
     String generate(String prompt);
 
+    /**
+     * 根据给定 Prompt 异步生成文本响应，不阻塞调用线程。
+     * 默认实现在公共线程池上调用 {@link #generate(String)}，内置提供者使用非阻塞 HTTP 客户端原生实现。
+     *
+     * @param prompt 输入提示
+     * @return 完成时携带模型返回文本的 Future
+     */
+    default CompletableFuture<String> generateAsync(String prompt) {
+        return CompletableFuture.supplyAsync(() -> generate(prompt));
+    }
+
+    /**
+     * 根据给定 Prompt 生成支持背压与取消的流式响应。
+     *
+     * @param prompt 输入提示
+     * @return 响应块发布者，每次订阅发起一次请求
+     */
+    default Flow.Publisher<StreamChunk> generateStream(String prompt) {
+        return StreamPublishers.error(new UnsupportedOperationException("Streaming not implemented"));
+    }
+
     /**
      * 根据给定 Prompt 生成流式文本响应。
+     * 阻塞直到流结束，回调在调用线程上执行。
      *
      * @param prompt 输入提示
      * @param chunkConsumer 消费每个响应块的回调函数
      */
     default void generateStream(String prompt, Consumer<StreamChunk> chunkConsumer) {
-        throw new UnsupportedOperationException("Streaming not implemented");
+        StreamPublishers.consume(generateStream(prompt), chunkConsumer);
     }
 
     /**
@@ -40,29 +64,45 @@ public interface LLMProvider extends LlmClient {
     default LlmResponse chat(List<Message> messages, Map<String, Object> options) {
         // Default implementation that converts messages to a prompt string
         // This is a simple implementation that concatenates all messages
-        StringBuilder prompt = new StringBuilder();
-        for (Message msg : messages) {
-            prompt.append(msg.getRole().name()).append(": ").append(msg.getContent()).append("\n");
-        }
-        String response = generate(prompt.toString());
+        String response = generate(toPrompt(messages));
         return new LlmResponse(response, Map.of(), "stop");
     }
 
+    /**
+     * Send a chat request to the LLM without blocking the caller.
+     * This method is inherited from LlmClient and delegates to {@link #generateAsync(String)}.
+     * @param messages list of messages in the conversation
+     * @param options additional options for the LLM call
+     * @return a future completed with the LLM response
+     */
+    @Override
+    default CompletableFuture<LlmResponse> chatAsync(List<Message> messages, Map<String, Object> options) {
+        return LlmHttpTransport.map(generateAsync(toPrompt(messages)), response -> new LlmResponse(response, Map.of(), "stop"));
+    }
+
+    /**
+     * Send a chat request to the LLM and get a streaming response as a reactive stream.
+     * This method is inherited from LlmClient and delegates to {@link #generateStream(String)}.
+     * @param messages list of messages in the conversation
+     * @param options additional options for the LLM call
+     * @return a cold publisher of response chunks
+     */
+    @Override
+    default Flow.Publisher<StreamChunk> streamChat(List<Message> messages, Map<String, Object> options) {
+        return generateStream(toPrompt(messages));
+    }
+
     /**
      * Send a chat request to the LLM and get a streaming response.
-     * This method is inherited from LlmClient.
+     * This method is inherited from LlmClient and consumes {@link #streamChat(List, Map)},
+     * so providers that send role-structured messages natively only need to override that.
      * @param messages list of messages in the conversation
      * @param options additional options for the LLM call
      * @param chunkConsumer consumer that will receive each chunk of the response
      */
     @Override
     default void streamChat(List<Message> messages, Map<String, Object> options, Consumer<StreamChunk> chunkConsumer) {
-        // Default implementation that converts messages to a prompt string
-        StringBuilder prompt = new StringBuilder();
-        for (Message msg : messages) {
-            prompt.append(msg.getRole().name()).append(": ").append(msg.getContent()).append("\n");
-        }
-        generateStream(prompt.toString(), chunkConsumer);
+        StreamPublishers.consume(streamChat(messages, options), chunkConsumer);
     }
 
     /**
@@ -74,4 +114,17 @@ public interface LLMProvider extends LlmClient {
     default String getModelName() {
         return "default-model";
     }
+
+    /**
+     * Flatten the conversation into a single "ROLE: content" prompt.
+     * @param messages list of messages in the conversation
+     * @return the prompt string
+     */
+    private static String toPrompt(List<Message> messages) {
+        StringBuilder prompt = new StringBuilder();
+        for (Message msg : messages) {
+            prompt.append(msg.getRole().name()).append(": ").append(msg.getContent()).append("\n");
+        }
+        return prompt.toString();
+    }
 }
\ No newline at end of file
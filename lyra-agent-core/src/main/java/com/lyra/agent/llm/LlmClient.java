@@ -4,6 +4,8 @@ import com.lyra.agent.agent.Message;
 
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
 import java.util.function.Consumer;
 
 /**
@@ -11,6 +13,12 @@ import java.util.function.Consumer;
  * Supports both synchronous and streaming chat, as well as function/tool calling.
  */
 public interface LlmClient {
+    /**
+     * Option key: the tools offered to the model, a {@code List<ToolDescriptor>}.
+     * Only honoured by clients whose {@link #supportsToolCalling()} is true.
+     */
+    String OPTION_TOOLS = "tools";
+
     /**
      * Send a chat request to the LLM and get a response.
      * @param messages list of messages in the conversation
@@ -19,14 +27,42 @@ public interface LlmClient {
      */
     LlmResponse chat(List<Message> messages, Map<String, Object> options);
 
+    /**
+     * Send a chat request to the LLM without blocking the caller.
+     * The default implementation runs {@link #chat} on the common pool; the built-in
+     * providers override this with a natively asynchronous HTTP call.
+     * @param messages list of messages in the conversation
+     * @param options additional options for the LLM call
+     * @return a future completed with the LLM response. The built-in providers complete it exceptionally
+     *         with an {@link LlmException} when the call fails; the default implementation only completes
+     *         exceptionally if {@link #chat} throws, so a client whose {@code chat} reports failures as
+     *         an error message delivers that message as a normal response
+     */
+    default CompletableFuture<LlmResponse> chatAsync(List<Message> messages, Map<String, Object> options) {
+        return CompletableFuture.supplyAsync(() -> chat(messages, options));
+    }
+
+    /**
+     * Send a chat request to the LLM and get a streaming response as a reactive stream.
+     * Chunks are only produced as the subscriber requests them, and cancelling the
+     * subscription closes the upstream HTTP stream. Each subscription issues a new request.
+     * @param messages list of messages in the conversation
+     * @param options additional options for the LLM call
+     * @return a cold publisher of response chunks
+     */
+    default Flow.Publisher<StreamChunk> streamChat(List<Message> messages, Map<String, Object> options) {
+        return StreamPublishers.error(new UnsupportedOperationException("Streaming not implemented"));
+    }
+
     /**
      * Send a chat request to the LLM and get a streaming response.
+     * Blocks until the stream ends; the consumer is invoked on the calling thread.
      * @param messages list of messages in the conversation
      * @param options additional options for the LLM call
      * @param chunkConsumer consumer that will receive each chunk of the response
      */
     default void streamChat(List<Message> messages, Map<String, Object> options, Consumer<StreamChunk> chunkConsumer) {
-        throw new UnsupportedOperationException("Streaming not implemented");
+        StreamPublishers.consume(streamChat(messages, options), chunkConsumer);
     }
 
     /**
@@ -34,4 +70,13 @@ public interface LlmClient {
      * @return the model name
      */
     String getModelName();
+
+    /**
+     * Whether this client sends {@link #OPTION_TOOLS} as native tool definitions and reports the
+     * model's structured calls under {@link LlmResponse#TOOL_CALLS}, on the response or on stream chunks.
+     * @return true if native tool calling is supported
+     */
+    default boolean supportsToolCalling() {
+        return false;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,123 @@
+package com.lyra.agent.llm;
+
+import java.net.http.HttpHeaders;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Optional;
+import java.util.concurrent.CompletionException;
+
+/**
+ * LLM 调用失败时抛出的异常。
+ * 对于 HTTP 层面的失败，携带响应状态码与服务端建议的重试间隔；非 HTTP 失败时状态码为 -1。
+ */
+public class LlmException extends RuntimeException {
+    private final int statusCode;
+    private final Duration retryAfter;
+
+    public LlmException(String message) {
+        this(message, -1, null);
+    }
+
+    public LlmException(String message, Throwable cause) {
+        this(message, -1, cause);
+    }
+
+    public LlmException(String message, int statusCode, Throwable cause) {
+        this(message, statusCode, null, cause);
+    }
+
+    public LlmException(String message, int statusCode, Duration retryAfter, Throwable cause) {
+        super(message, cause);
+        this.statusCode = statusCode;
+        this.retryAfter = retryAfter;
+    }
+
+    /**
+     * 根据非 2xx 响应构造异常。
+     *
+     * @param statusCode HTTP 状态码
+     * @param body       响应体
+     * @return 异常实例
+     */
+    public static LlmException httpError(int statusCode, String body) {
+        return new LlmException("HTTP " + statusCode + ": " + body, statusCode, null);
+    }
+
+    /**
+     * 根据非 2xx 响应构造异常，并从 {@code retry-after-ms} 或 {@code Retry-After}（秒数或 HTTP 日期）头中读取建议的重试间隔。
+     *
+     * @param statusCode HTTP 状态码
+     * @param body       响应体
+     * @param headers    响应头
+     * @return 异常实例
+     */
+    public static LlmException httpError(int statusCode, String body, HttpHeaders headers) {
+        return new LlmException("HTTP " + statusCode + ": " + body, statusCode, retryAfter(headers), null);
+    }
+
+    private static Duration retryAfter(HttpHeaders headers) {
+        try {
+            Optional<String> millis = headers.firstValue("retry-after-ms");
+            if (millis.isPresent()) {
+                return Duration.ofMillis((long) Double.parseDouble(millis.get().trim()));
+            }
+            Optional<String> value = headers.firstValue("retry-after");
+            if (value.isEmpty()) {
+                return null;
+            }
+            String v = value.get().trim();
+            if (!v.isEmpty() && Character.isDigit(v.charAt(0))) {
+                return Duration.ofMillis((long) (Double.parseDouble(v) * 1000));
+            }
+            Duration until = Duration.between(Instant.now(),
+                    ZonedDateTime.parse(v, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant());
+            return until.isNegative() ? Duration.ZERO : until;
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 生成可读的失败描述，用于兼容以文本形式返回错误的同步接口。
+     * 会剥离 CompletionException 包装，异常消息为空时使用异常类名。
+     *
+     * @param error 失败原因
+     * @return 描述文本
+     */
+    public static String describe(Throwable error) {
+        Throwable cause = error;
+        while (cause instanceof CompletionException && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause.getMessage() != null ? cause.getMessage() : cause.getClass().getSimpleName();
+    }
+
+    /**
+     * 获取 HTTP 状态码。
+     *
+     * @return 状态码，非 HTTP 失败时为 -1
+     */
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * 是否为限流（HTTP 429）失败。
+     *
+     * @return 是否限流
+     */
+    public boolean isRateLimited() {
+        return statusCode == 429;
+    }
+
+    /**
+     * 获取服务端建议的重试间隔。
+     *
+     * @return 重试间隔，响应未提供时为 null
+     */
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+}
@@ -0,0 +1,456 @@
+package com.lyra.agent.llm;
+
+import com.lyra.agent.autoconfigure.LyraAgentProperties;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * 所有 LLM 提供者共享的 HTTP 传输层。
+ * 基于 JDK HttpClient：长连接复用、HTTP/2 多路复用、按主机限制并发请求数，
+ * 并可在启动时预热到各提供者的连接。
+ * <p>
+ * 响应在自有 I/O 线程池上处理，不再使用时调用 {@link #close()} 释放；
+ * 未显式传入传输层的提供者共用 {@link #shared()}。
+ */
+public class LlmHttpTransport implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(LlmHttpTransport.class);
+
+    private final HttpClient client;
+    private final ExecutorService ioExecutor;
+    private final boolean closeable;
+    private final MeterRegistry meterRegistry;
+    private final int maxPerHost;
+    private final long acquireTimeoutMs;
+    private final boolean warmUpEnabled;
+    private final Map<String, HostLimiter> limiters = new ConcurrentHashMap<>();
+    private final Set<String> warmedHosts = ConcurrentHashMap.newKeySet();
+
+    public LlmHttpTransport(LyraAgentProperties.Llm config) {
+        this(config, Metrics.globalRegistry);
+    }
+
+    /**
+     * 使用配置初始化。
+     *
+     * @param config        LLM 配置，连接池参数取自 {@link LyraAgentProperties.Llm#getPool()}
+     * @param meterRegistry 指标注册表
+     */
+    public LlmHttpTransport(LyraAgentProperties.Llm config, MeterRegistry meterRegistry) {
+        this(config, meterRegistry, true);
+    }
+
+    private LlmHttpTransport(LyraAgentProperties.Llm config, MeterRegistry meterRegistry, boolean closeable) {
+        LyraAgentProperties.Llm.Pool pool = config.getPool();
+        this.meterRegistry = meterRegistry;
+        this.maxPerHost = pool.getMaxPerHost();
+        this.acquireTimeoutMs = pool.getAcquireTimeoutMs();
+        this.warmUpEnabled = pool.isWarmUp();
+        int ioThreads = pool.getIoThreads() > 0 ? pool.getIoThreads() : Runtime.getRuntime().availableProcessors();
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.closeable = closeable;
+        this.ioExecutor = Executors.newFixedThreadPool(ioThreads, r -> {
+            Thread t = new Thread(r, "lyra-llm-io-" + threadIndex.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        this.client = HttpClient.newBuilder()
+                // 响应处理全部在少量 I/O 线程上完成，调用方线程不会被阻塞
+                .executor(ioExecutor)
+                .version(pool.isHttp2() ? HttpClient.Version.HTTP_2 : HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofMillis(config.getTimeoutMs()))
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build();
+    }
+
+    /**
+     * 进程内共用的默认传输层，使用默认连接配置与全局指标注册表，供未传入传输层的便捷构造函数使用。
+     * 该实例随进程存在，{@link #close()} 对其无效。
+     *
+     * @return 默认传输层
+     */
+    public static LlmHttpTransport shared() {
+        return SharedHolder.INSTANCE;
+    }
+
+    /**
+     * 获取底层共享的 HttpClient。
+     *
+     * @return HttpClient 实例
+     */
+    public HttpClient client() {
+        return client;
+    }
+
+    /**
+     * 异步发送请求。
+     * 请求在占用目标主机的一个并发名额后发出，名额在响应体读完、出错或被取消时归还。
+     * 取消返回的 Future 会中止底层 HTTP 交换。
+     *
+     * @param request 请求
+     * @param handler 响应体处理器
+     * @return 响应 Future
+     */
+    public <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request, HttpResponse.BodyHandler<T> handler) {
+        HostLimiter limiter = limiterFor(request.uri());
+        long start = System.nanoTime();
+        CompletableFuture<HttpResponse<T>> result = new CompletableFuture<>();
+        CompletableFuture<Void> slot = limiter.acquire(acquireTimeoutMs);
+        AtomicReference<CompletableFuture<HttpResponse<T>>> exchange = new AtomicReference<>();
+        AtomicReference<ReleasingBodySubscriber<T>> body = new AtomicReference<>();
+        slot.whenComplete((v, err) -> {
+            if (err != null) {
+                result.completeExceptionally(err instanceof TimeoutException
+                        ? new HttpTimeoutException("Timed out waiting for a request slot to " + limiter.host)
+                        : err);
+                return;
+            }
+            limiter.waitTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            Runnable release = onceRunnable(limiter::release);
+            if (result.isDone()) {
+                release.run();
+                return;
+            }
+            CompletableFuture<HttpResponse<T>> future;
+            try {
+                future = client.sendAsync(request, info -> {
+                    ReleasingBodySubscriber<T> subscriber = new ReleasingBodySubscriber<>(handler.apply(info), release);
+                    body.set(subscriber);
+                    return subscriber;
+                });
+            } catch (RuntimeException e) {
+                release.run();
+                result.completeExceptionally(e);
+                return;
+            }
+            exchange.set(future);
+            future.whenComplete((r, e) -> {
+                if (e != null) {
+                    release.run();
+                    result.completeExceptionally(e instanceof CompletionException && e.getCause() != null ? e.getCause() : e);
+                } else if (!result.complete(r)) {
+                    // 调用方已取消，响应不会再被读取，需主动关闭响应体以归还名额
+                    abort(body.get());
+                }
+            });
+            if (result.isCancelled()) {
+                future.cancel(true);
+            }
+        });
+        result.whenComplete((r, e) -> {
+            if (result.isCancelled()) {
+                slot.cancel(false);
+                CompletableFuture<HttpResponse<T>> future = exchange.get();
+                if (future != null) {
+                    future.cancel(true);
+                }
+                abort(body.get());
+            }
+        });
+        return result;
+    }
+
+    private static void abort(ReleasingBodySubscriber<?> body) {
+        if (body != null) {
+            body.abort();
+        }
+    }
+
+    /**
+     * 同步发送请求，语义同 {@link HttpClient#send}。
+     *
+     * @param request 请求
+     * @param handler 响应体处理器
+     * @return 响应
+     */
+    public <T> HttpResponse<T> send(HttpRequest request, HttpResponse.BodyHandler<T> handler)
+            throws IOException, InterruptedException {
+        CompletableFuture<HttpResponse<T>> future = sendAsync(request, handler);
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            throw e;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException io) {
+                throw io;
+            }
+            if (cause instanceof RuntimeException re) {
+                throw re;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * 预热到指定地址的连接（TCP/TLS 握手与 HTTP/2 协商），每个主机只预热一次。
+     * 预热请求与普通请求一样占用该主机的并发名额。
+     *
+     * @param url 提供者基础地址
+     */
+    public void warmUp(String url) {
+        if (!warmUpEnabled || url == null || url.isEmpty()) {
+            return;
+        }
+        URI uri;
+        try {
+            uri = URI.create(url);
+        } catch (IllegalArgumentException e) {
+            logger.warn("Skipping warm-up for invalid url: {}", url);
+            return;
+        }
+        if (uri.getHost() == null || !warmedHosts.add(hostKey(uri))) {
+            return;
+        }
+        HttpRequest request = HttpRequest.newBuilder(uri)
+                .method("HEAD", HttpRequest.BodyPublishers.noBody())
+                .timeout(Duration.ofSeconds(10))
+                .build();
+        sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                .whenComplete((r, e) -> {
+                    if (e != null) {
+                        logger.debug("Warm-up of {} failed: {}", uri.getHost(), e.getMessage());
+                    } else {
+                        logger.debug("Warmed up connection to {} ({})", uri.getHost(), r.version());
+                    }
+                });
+    }
+
+    /**
+     * 某主机当前占用的并发名额数。
+     *
+     * @param host 主机名
+     * @return 在途请求数
+     */
+    public int activeRequests(String host) {
+        HostLimiter limiter = limiters.get(host);
+        return limiter == null ? 0 : limiter.active();
+    }
+
+    /**
+     * 关闭 I/O 线程池，进行中的请求随之失败。默认传输层 {@link #shared()} 不会被关闭。
+     */
+    @Override
+    public void close() {
+        if (closeable) {
+            ioExecutor.shutdownNow();
+        }
+    }
+
+    private HostLimiter limiterFor(URI uri) {
+        return limiters.computeIfAbsent(hostKey(uri), host -> new HostLimiter(host, maxPerHost, meterRegistry));
+    }
+
+    private static String hostKey(URI uri) {
+        return uri.getPort() < 0 ? uri.getHost() : uri.getHost() + ":" + uri.getPort();
+    }
+
+    /**
+     * 转换异步结果，并在取消转换后的 Future 时一并取消源 Future。
+     * {@link CompletableFuture#thenApply} 返回的 Future 被取消时不会通知上游，用于提供者的响应解析，
+     * 使调用方（如对冲请求中落后的一方）取消时能真正中止底层 HTTP 交换。
+     *
+     * @param source 源 Future
+     * @param fn     转换函数
+     * @return 转换后的 Future
+     */
+    public static <T, R> CompletableFuture<R> map(CompletableFuture<T> source, Function<? super T, ? extends R> fn) {
+        CompletableFuture<R> result = source.thenApply(fn);
+        result.whenComplete((r, e) -> {
+            if (result.isCancelled()) {
+                source.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    private static final class SharedHolder {
+        private static final LlmHttpTransport INSTANCE =
+                new LlmHttpTransport(new LyraAgentProperties.Llm(), Metrics.globalRegistry, false);
+    }
+
+    private static Runnable onceRunnable(Runnable r) {
+        AtomicBoolean done = new AtomicBoolean();
+        return () -> {
+            if (done.compareAndSet(false, true)) {
+                r.run();
+            }
+        };
+    }
+
+    /**
+     * 单主机的并发名额，等待者按 FIFO 顺序获得名额。
+     */
+    private static final class HostLimiter {
+        private final String host;
+        private final int max;
+        private final ArrayDeque<CompletableFuture<Void>> waiters = new ArrayDeque<>();
+        private final Timer waitTimer;
+        private int active;
+
+        HostLimiter(String host, int max, MeterRegistry registry) {
+            this.host = host;
+            this.max = max;
+            // 以下指标度量的是本限流器的名额，而非底层连接池的连接数：
+            // HTTP/2 下多个名额可复用同一连接，HTTP/1.1 下空闲连接也不占名额
+            this.waitTimer = Timer.builder("lyra.llm.http.slot.wait")
+                    .description("Time spent waiting for a per-host request slot")
+                    .tag("host", host)
+                    .register(registry);
+            Gauge.builder("lyra.llm.http.inflight", this, HostLimiter::active)
+                    .description("Per-host request slots in use (limiter slots, not pooled connections)")
+                    .tag("host", host)
+                    .register(registry);
+            Gauge.builder("lyra.llm.http.queued", this, HostLimiter::pending)
+                    .description("Requests waiting for a per-host request slot (limiter queue, not connection pool)")
+                    .tag("host", host)
+                    .register(registry);
+        }
+
+        CompletableFuture<Void> acquire(long timeoutMs) {
+            CompletableFuture<Void> waiter;
+            synchronized (this) {
+                if (active < max) {
+                    active++;
+                    return CompletableFuture.completedFuture(null);
+                }
+                waiter = new CompletableFuture<>();
+                waiters.add(waiter);
+            }
+            // 超时或取消的等待者立即出队，不再计入排队数；release 仍会跳过已结束的等待者
+            waiter.whenComplete((v, e) -> {
+                if (e != null) {
+                    synchronized (this) {
+                        waiters.remove(waiter);
+                    }
+                }
+            });
+            return waiter.orTimeout(timeoutMs, TimeUnit.MILLISECONDS);
+        }
+
+        void release() {
+            while (true) {
+                CompletableFuture<Void> next;
+                synchronized (this) {
+                    next = waiters.poll();
+                    if (next == null) {
+                        active--;
+                        return;
+                    }
+                }
+                // 名额直接移交给下一个仍在等待的请求
+                if (next.complete(null)) {
+                    return;
+                }
+            }
+        }
+
+        synchronized int active() {
+            return active;
+        }
+
+        synchronized int pending() {
+            return waiters.size();
+        }
+    }
+
+    /**
+     * 在响应体结束、出错或下游取消订阅时归还并发名额。
+     */
+    private static final class ReleasingBodySubscriber<T> implements HttpResponse.BodySubscriber<T> {
+        private final HttpResponse.BodySubscriber<T> delegate;
+        private final Runnable release;
+        private volatile Flow.Subscription upstream;
+        private volatile boolean aborted;
+
+        ReleasingBodySubscriber(HttpResponse.BodySubscriber<T> delegate, Runnable release) {
+            this.delegate = delegate;
+            this.release = release;
+        }
+
+        @Override
+        public CompletionStage<T> getBody() {
+            return delegate.getBody();
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            upstream = subscription;
+            if (aborted) {
+                subscription.cancel();
+            }
+            delegate.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                    subscription.request(n);
+                }
+
+                @Override
+                public void cancel() {
+                    release.run();
+                    subscription.cancel();
+                }
+            });
+        }
+
+        /**
+         * 响应未交给调用方时关闭响应体并归还名额。
+         */
+        void abort() {
+            aborted = true;
+            release.run();
+            Flow.Subscription s = upstream;
+            if (s != null) {
+                s.cancel();
+            }
+        }
+
+        @Override
+        public void onNext(List<ByteBuffer> item) {
+            delegate.onNext(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            release.run();
+            delegate.onError(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            release.run();
+            delegate.onComplete();
+        }
+    }
+}
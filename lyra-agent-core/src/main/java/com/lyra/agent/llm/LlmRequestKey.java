@@ -0,0 +1,104 @@
+package com.lyra.agent.llm;
+
+import com.lyra.agent.agent.Message;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * LLM 请求的内容哈希。
+ * 对 (提供者, 模型, 消息, 选项) 计算 SHA-256，内容相同的请求得到相同的键。
+ * 消息的时间戳不参与计算，选项按键排序后参与计算。
+ */
+public final class LlmRequestKey {
+
+    private LlmRequestKey() {
+    }
+
+    /**
+     * 计算对话请求的键。
+     *
+     * @param provider 提供者标识
+     * @param model    模型名
+     * @param messages 对话消息
+     * @param options  调用选项，可为 null
+     * @return 64 位十六进制字符串
+     */
+    public static String of(String provider, String model, List<Message> messages, Map<String, Object> options) {
+        MessageDigest digest = sha256();
+        update(digest, "chat");
+        update(digest, provider);
+        update(digest, model);
+        for (Message message : messages) {
+            update(digest, message.getRole().name());
+            update(digest, message.getName());
+            update(digest, message.getContent());
+            update(digest, sorted(message.getMetadata()));
+        }
+        update(digest, sorted(options));
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * 计算单 Prompt 请求的键。
+     *
+     * @param provider 提供者标识
+     * @param model    模型名
+     * @param prompt   输入提示
+     * @return 64 位十六进制字符串
+     */
+    public static String of(String provider, String model, String prompt) {
+        MessageDigest digest = sha256();
+        update(digest, "prompt");
+        update(digest, provider);
+        update(digest, model);
+        update(digest, prompt);
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * 计算嵌入请求的键。嵌入模型不同的向量不可比较，因此模型名参与计算。
+     *
+     * @param model 嵌入模型名
+     * @param text  输入文本
+     * @return 64 位十六进制字符串
+     */
+    public static String ofEmbedding(String model, String text) {
+        MessageDigest digest = sha256();
+        update(digest, "embedding");
+        update(digest, model);
+        update(digest, text);
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static String sorted(Map<String, Object> map) {
+        return map == null || map.isEmpty() ? null : new TreeMap<>(map).toString();
+    }
+
+    /**
+     * 以长度前缀写入字段，避免不同字段拼接后产生相同的字节序列。
+     */
+    private static void update(MessageDigest digest, String value) {
+        if (value == null) {
+            digest.update(new byte[]{-1, -1, -1, -1});
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        int n = bytes.length;
+        digest.update(new byte[]{(byte) (n >>> 24), (byte) (n >>> 16), (byte) (n >>> 8), (byte) n});
+        digest.update(bytes);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
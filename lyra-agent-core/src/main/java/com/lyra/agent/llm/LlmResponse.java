@@ -6,6 +6,15 @@ import java.util.Map;
  * Response from the LLM containing the content and additional metadata.
  */
 public class LlmResponse {
+    /** Metadata key: input tokens reported by the provider. */
+    public static final String PROMPT_TOKENS = "promptTokens";
+    /** Metadata key: output tokens reported by the provider. */
+    public static final String COMPLETION_TOKENS = "completionTokens";
+    /** Metadata key: input tokens served from the provider's prompt cache. */
+    public static final String CACHED_TOKENS = "cachedTokens";
+    /** Metadata key: native tool calls requested by the model, a {@code List<ToolCall>}. */
+    public static final String TOOL_CALLS = "toolCalls";
+
     private final String content;
     private final Map<String, Object> metadata;
     private final String finishReason;
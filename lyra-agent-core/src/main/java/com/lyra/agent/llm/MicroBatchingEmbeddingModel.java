@@ -0,0 +1,198 @@
+package com.lyra.agent.llm;
+
+import com.lyra.agent.tokenizer.Tokenizer;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 嵌入模型的微批装饰器：把短时间窗口内并发的单条 {@link #embed} 调用合并为一次 {@link EmbeddingModel#embedBatch} 请求。
+ * <p>
+ * 窗口内第一个调用者成为批次的发起者，最多等待 window 后用自己的线程发出请求，其余调用者阻塞等待各自的结果；
+ * 批次条数达到 maxBatchSize 或 token 数将超过 maxBatchTokens 时立即封口发出，不再等待窗口结束。
+ * 批量请求失败时同批次的所有调用者收到同一异常。直接调用 {@link #embedBatch} 不参与合并，只按同样的上限切分。
+ * <p>
+ * 指标：{@code lyra.embedding.batch.size}（每次请求的文本条数）。
+ */
+public class MicroBatchingEmbeddingModel implements EmbeddingModel {
+    private final EmbeddingModel delegate;
+    private final Tokenizer tokenizer;
+    private final long windowNanos;
+    private final int maxBatchSize;
+    private final int maxBatchTokens;
+    private final DistributionSummary batchSizes;
+    private final ReentrantLock lock = new ReentrantLock();
+    private Batch open;
+
+    /**
+     * 构造函数。
+     *
+     * @param delegate       被装饰的嵌入模型
+     * @param tokenizer      用于估算批次 token 数
+     * @param windowMs       合并窗口（毫秒）
+     * @param maxBatchSize   单次请求最多文本条数
+     * @param maxBatchTokens 单次请求最多 token 数，单条超过上限的文本单独发送
+     * @param registry       指标注册表
+     */
+    public MicroBatchingEmbeddingModel(EmbeddingModel delegate, Tokenizer tokenizer, long windowMs, int maxBatchSize,
+                                       int maxBatchTokens, MeterRegistry registry) {
+        this.delegate = delegate;
+        this.tokenizer = tokenizer;
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, windowMs));
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.maxBatchTokens = Math.max(1, maxBatchTokens);
+        this.batchSizes = DistributionSummary.builder("lyra.embedding.batch.size").register(registry);
+    }
+
+    @Override
+    public float[] embed(String text) {
+        Pending pending = new Pending(text, tokenizer.count(text));
+        Batch batch;
+        boolean leader = false;
+        lock.lock();
+        try {
+            if (open != null && !open.fits(pending)) {
+                seal(open);
+            }
+            if (open == null) {
+                open = new Batch(lock.newCondition());
+                leader = true;
+            }
+            batch = open;
+            batch.add(pending);
+            if (batch.items.size() >= maxBatchSize || batch.tokens >= maxBatchTokens) {
+                seal(batch);
+            }
+            if (leader) {
+                awaitSealed(batch);
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (leader) {
+            send(batch.items);
+        }
+        try {
+            return pending.result.join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException re ? re : e;
+        }
+    }
+
+    @Override
+    public List<float[]> embedBatch(List<String> texts) {
+        List<float[]> vectors = new ArrayList<>(texts.size());
+        int from = 0;
+        while (from < texts.size()) {
+            int to = from;
+            int tokens = 0;
+            while (to < texts.size() && to - from < maxBatchSize) {
+                int count = tokenizer.count(texts.get(to));
+                if (to > from && tokens + count > maxBatchTokens) {
+                    break;
+                }
+                tokens += count;
+                to++;
+            }
+            batchSizes.record(to - from);
+            vectors.addAll(delegate.embedBatch(texts.subList(from, to)));
+            from = to;
+        }
+        return vectors;
+    }
+
+    /**
+     * 发起者等待窗口结束或批次被其他调用者封口；调用时持有锁。
+     */
+    private void awaitSealed(Batch batch) {
+        long remaining = windowNanos;
+        boolean interrupted = false;
+        while (!batch.sealed && remaining > 0) {
+            try {
+                remaining = batch.full.awaitNanos(remaining);
+            } catch (InterruptedException e) {
+                interrupted = true;
+                break;
+            }
+        }
+        if (!batch.sealed) {
+            seal(batch);
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void seal(Batch batch) {
+        batch.sealed = true;
+        batch.full.signal();
+        if (open == batch) {
+            open = null;
+        }
+    }
+
+    private void send(List<Pending> items) {
+        batchSizes.record(items.size());
+        List<String> texts = new ArrayList<>(items.size());
+        for (Pending item : items) {
+            texts.add(item.text);
+        }
+        try {
+            List<float[]> vectors = delegate.embedBatch(texts);
+            if (vectors.size() != items.size()) {
+                throw new IllegalStateException("Expected " + items.size() + " embeddings, got " + vectors.size());
+            }
+            for (int i = 0; i < items.size(); i++) {
+                items.get(i).result.complete(vectors.get(i));
+            }
+        } catch (RuntimeException e) {
+            for (Pending item : items) {
+                item.result.completeExceptionally(e);
+            }
+        }
+    }
+
+    /**
+     * 等待合并发送的一条文本。
+     */
+    private static final class Pending {
+        final String text;
+        final int tokens;
+        final CompletableFuture<float[]> result = new CompletableFuture<>();
+
+        Pending(String text, int tokens) {
+            this.text = text;
+            this.tokens = tokens;
+        }
+    }
+
+    /**
+     * 正在收集的批次；封口后不再加入新文本，由发起者发出。
+     */
+    private final class Batch {
+        final Condition full;
+        final List<Pending> items = new ArrayList<>();
+        int tokens;
+        boolean sealed;
+
+        Batch(Condition full) {
+            this.full = full;
+        }
+
+        boolean fits(Pending pending) {
+            return items.size() < maxBatchSize && tokens + pending.tokens <= maxBatchTokens;
+        }
+
+        void add(Pending pending) {
+            items.add(pending);
+            tokens += pending.tokens;
+        }
+    }
+}
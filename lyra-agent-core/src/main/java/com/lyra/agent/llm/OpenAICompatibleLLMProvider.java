@@ -0,0 +1,497 @@
+package com.lyra.agent.llm;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.lyra.agent.agent.Message;
+import com.lyra.agent.autoconfigure.LyraAgentProperties;
+import com.lyra.agent.tool.ToolDescriptor;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Flow;
+
+/**
+ * OpenAI 兼容接口（/chat/completions）提供者的公共实现。
+ * OpenAI、DeepSeek、Qwen 仅在默认模型与默认地址上有所不同。
+ * 支持原生工具调用：{@link #OPTION_TOOLS} 以 function 定义发送，模型的 tool_calls 通过 {@link LlmResponse#TOOL_CALLS} 返回。
+ */
+public abstract class OpenAICompatibleLLMProvider implements LLMProvider {
+    protected static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final List<String> PASSTHROUGH_OPTIONS = List.of("temperature", "top_p", "max_tokens", "stop", "tool_choice");
+
+    protected final LyraAgentProperties.Llm config;
+    protected final LlmHttpTransport transport;
+
+    /**
+     * 使用配置与共享传输层初始化。
+     *
+     * @param config    LLM 配置
+     * @param transport 共享 HTTP 传输层
+     */
+    protected OpenAICompatibleLLMProvider(LyraAgentProperties.Llm config, LlmHttpTransport transport) {
+        this.config = config;
+        this.transport = transport;
+        transport.warmUp(baseUrl());
+    }
+
+    /**
+     * 未配置模型时使用的默认模型。
+     */
+    protected abstract String defaultModel();
+
+    /**
+     * 未配置地址时使用的默认 API 地址。
+     */
+    protected abstract String defaultBaseUrl();
+
+    protected String model() {
+        return config.getModel() == null || config.getModel().isEmpty() ? defaultModel() : config.getModel();
+    }
+
+    @Override
+    public String getModelName() {
+        return model();
+    }
+
+    @Override
+    public boolean supportsToolCalling() {
+        return true;
+    }
+
+    protected String baseUrl() {
+        return config.getBaseUrl() == null || config.getBaseUrl().isEmpty() ? defaultBaseUrl() : config.getBaseUrl();
+    }
+
+    /**
+     * 生成响应。
+     * 调用 /chat/completions 接口，阻塞直到 {@link #generateAsync(String)} 完成。
+     *
+     * @param prompt 输入提示
+     * @return 文本响应
+     */
+    @Override
+    public String generate(String prompt) {
+        try {
+            return generateAsync(prompt).join();
+        } catch (CompletionException e) {
+            return "Error calling LLM: " + LlmException.describe(e);
+        }
+    }
+
+    /**
+     * 异步生成响应。
+     * 请求由共享传输层以非阻塞方式发出，响应在 I/O 线程上解析。
+     *
+     * @param prompt 输入提示
+     * @return 文本响应 Future
+     */
+    @Override
+    public CompletableFuture<String> generateAsync(String prompt) {
+        return LlmHttpTransport.map(chatAsync(List.of(Message.user(prompt)), Map.of()), LlmResponse::getContent);
+    }
+
+    /**
+     * 流式生成响应。
+     * 以 {@code stream=true} 调用 /chat/completions，通过 SSE 逐块返回。
+     *
+     * @param prompt 输入提示
+     * @return 响应块发布者
+     */
+    @Override
+    public Flow.Publisher<StreamChunk> generateStream(String prompt) {
+        return streamChat(List.of(Message.user(prompt)), Map.of());
+    }
+
+    /**
+     * 发送对话请求。
+     * 消息按角色原样发送，不拼接为单个 Prompt，以便命中服务端的前缀缓存。
+     *
+     * @param messages 对话消息
+     * @param options  调用选项
+     * @return 响应；调用失败时内容为错误描述，结束原因为 error
+     */
+    @Override
+    public LlmResponse chat(List<Message> messages, Map<String, Object> options) {
+        try {
+            return chatAsync(messages, options).join();
+        } catch (CompletionException e) {
+            return new LlmResponse("Error calling LLM: " + LlmException.describe(e), Map.of(), "error");
+        }
+    }
+
+    /**
+     * 异步发送对话请求。
+     * 响应元数据中包含 token 用量，其中 cachedTokens 为命中服务端前缀缓存的输入 token 数。
+     *
+     * @param messages 对话消息
+     * @param options  调用选项
+     * @return 响应 Future
+     */
+    @Override
+    public CompletableFuture<LlmResponse> chatAsync(List<Message> messages, Map<String, Object> options) {
+        HttpRequest request;
+        try {
+            request = buildRequest(requestBody(messages, options, false), "application/json");
+        } catch (LlmException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        return LlmHttpTransport.map(transport.sendAsync(request, HttpResponse.BodyHandlers.ofString()),
+                this::parseResponse);
+    }
+
+    /**
+     * 流式发送对话请求。
+     *
+     * @param messages 对话消息
+     * @param options  调用选项
+     * @return 响应块发布者
+     */
+    @Override
+    public Flow.Publisher<StreamChunk> streamChat(List<Message> messages, Map<String, Object> options) {
+        return new SseStreamPublisher(transport,
+                () -> buildRequest(requestBody(messages, options, true), "text/event-stream"),
+                OpenAICompatibleLLMProvider::toChunk);
+    }
+
+    /**
+     * 将一条 chat.completion.chunk 负载转换为响应块。
+     * 以流式方式读取 {@code choices[0].delta.content}、{@code choices[0].delta.tool_calls}、{@code choices[0].finish_reason}
+     * 与 {@code usage}，其余字段直接跳过。工具调用片段放在响应块元数据的 {@link LlmResponse#TOOL_CALLS} 中。
+     * 请求带 {@code stream_options.include_usage} 时，服务端在结束块之后另发一个 choices 为空、只含 usage 的块，
+     * 转换为带用量元数据的结束块，由 {@link SseStreamPublisher} 与之前的结束块合并为一个。
+     *
+     * @param parser {@code data:} 负载的解析器
+     * @return 响应块；既无内容、工具调用、结束原因也无用量时返回 null
+     * @throws IOException JSON 格式错误
+     */
+    protected static StreamChunk toChunk(JsonParser parser) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            return null;
+        }
+        String content = "";
+        String finishReason = null;
+        Map<String, Object> usage = null;
+        List<ToolCall> toolCalls = List.of();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if ("usage".equals(field) && value == JsonToken.START_OBJECT) {
+                usage = readUsage(parser);
+                continue;
+            }
+            if (!"choices".equals(field) || value != JsonToken.START_ARRAY) {
+                parser.skipChildren();
+                continue;
+            }
+            if (parser.nextToken() == JsonToken.START_OBJECT) {
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String choiceField = parser.currentName();
+                    JsonToken choiceValue = parser.nextToken();
+                    if ("delta".equals(choiceField) && choiceValue == JsonToken.START_OBJECT) {
+                        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                            String deltaField = parser.currentName();
+                            JsonToken deltaValue = parser.nextToken();
+                            if ("content".equals(deltaField) && deltaValue == JsonToken.VALUE_STRING) {
+                                content = parser.getText();
+                            } else if ("tool_calls".equals(deltaField) && deltaValue == JsonToken.START_ARRAY) {
+                                toolCalls = readToolCallDeltas(parser);
+                            } else {
+                                parser.skipChildren();
+                            }
+                        }
+                    } else if ("finish_reason".equals(choiceField) && choiceValue == JsonToken.VALUE_STRING) {
+                        finishReason = parser.getText();
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+            }
+            // 只关心首个 choice
+            SseChunkParser.skipArrayRemainder(parser);
+        }
+
+        boolean isDone = finishReason != null || usage != null;
+        if (content.isEmpty() && !isDone && toolCalls.isEmpty()) {
+            return null;
+        }
+        Map<String, Object> metadata = usage != null ? usage : Map.of();
+        if (!toolCalls.isEmpty()) {
+            metadata = new HashMap<>(metadata);
+            metadata.put(LlmResponse.TOOL_CALLS, toolCalls);
+        }
+        return new StreamChunk(content, isDone, metadata, finishReason != null ? finishReason : "");
+    }
+
+    /**
+     * 以流式方式读取 {@code delta.tool_calls} 数组，返回时解析器位于数组的结束位置。
+     * 片段中缺失的 id、name 为 null，arguments 为本块新增的部分。
+     */
+    private static List<ToolCall> readToolCallDeltas(JsonParser parser) throws IOException {
+        List<ToolCall> calls = new ArrayList<>(1);
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+            int index = calls.size();
+            String id = null;
+            String name = null;
+            String arguments = "";
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if ("index".equals(field) && value == JsonToken.VALUE_NUMBER_INT) {
+                    index = parser.getIntValue();
+                } else if ("id".equals(field) && value == JsonToken.VALUE_STRING) {
+                    id = parser.getText();
+                } else if ("function".equals(field) && value == JsonToken.START_OBJECT) {
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        String functionField = parser.currentName();
+                        JsonToken functionValue = parser.nextToken();
+                        if ("name".equals(functionField) && functionValue == JsonToken.VALUE_STRING) {
+                            name = parser.getText();
+                        } else if ("arguments".equals(functionField) && functionValue == JsonToken.VALUE_STRING) {
+                            arguments = parser.getText();
+                        } else {
+                            parser.skipChildren();
+                        }
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            calls.add(new ToolCall(index, id, name, arguments));
+        }
+        return calls;
+    }
+
+    /**
+     * 以流式方式读取 usage 对象，返回时解析器位于 usage 对象的结束位置。
+     */
+    private static Map<String, Object> readUsage(JsonParser parser) throws IOException {
+        Map<String, Object> usage = new HashMap<>();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if (value == JsonToken.VALUE_NUMBER_INT && "prompt_tokens".equals(field)) {
+                usage.put(LlmResponse.PROMPT_TOKENS, parser.getIntValue());
+            } else if (value == JsonToken.VALUE_NUMBER_INT && "completion_tokens".equals(field)) {
+                usage.put(LlmResponse.COMPLETION_TOKENS, parser.getIntValue());
+            } else if (value == JsonToken.VALUE_NUMBER_INT && "prompt_cache_hit_tokens".equals(field)) {
+                usage.putIfAbsent(LlmResponse.CACHED_TOKENS, parser.getIntValue());
+            } else if (value == JsonToken.START_OBJECT && "prompt_tokens_details".equals(field)) {
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String detail = parser.currentName();
+                    if (parser.nextToken() == JsonToken.VALUE_NUMBER_INT && "cached_tokens".equals(detail)) {
+                        usage.put(LlmResponse.CACHED_TOKENS, parser.getIntValue());
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return usage;
+    }
+
+    /**
+     * 解析非流式响应：首个 choice 的文本、工具调用、结束原因与 token 用量。
+     *
+     * @param response HTTP 响应
+     * @return LLM 响应
+     */
+    protected LlmResponse parseResponse(HttpResponse<String> response) {
+        if (response.statusCode() / 100 != 2) {
+            throw LlmException.httpError(response.statusCode(), response.body(), response.headers());
+        }
+        if (response.body() == null || response.body().isEmpty()) {
+            throw new LlmException("Empty response body");
+        }
+        JsonNode json;
+        try {
+            json = MAPPER.readTree(response.body());
+        } catch (IOException e) {
+            throw new LlmException("Malformed response body: " + e.getMessage(), e);
+        }
+        JsonNode choices = json.get("choices");
+        if (choices == null || !choices.isArray() || choices.isEmpty()) {
+            throw new LlmException("No choices in response");
+        }
+        JsonNode choice = choices.get(0);
+        Map<String, Object> metadata = usage(json.path("usage"));
+        JsonNode toolCalls = choice.path("message").path("tool_calls");
+        if (toolCalls.isArray() && !toolCalls.isEmpty()) {
+            List<ToolCall> calls = new ArrayList<>(toolCalls.size());
+            for (JsonNode call : toolCalls) {
+                calls.add(new ToolCall(calls.size(), call.path("id").asText(null),
+                        call.path("function").path("name").asText(null), call.path("function").path("arguments").asText("")));
+            }
+            metadata = new HashMap<>(metadata);
+            metadata.put(LlmResponse.TOOL_CALLS, calls);
+        }
+        return new LlmResponse(choice.path("message").path("content").asText(""),
+                metadata, choice.path("finish_reason").asText("stop"));
+    }
+
+    /**
+     * 提取 token 用量。
+     * OpenAI/Qwen 通过 {@code prompt_tokens_details.cached_tokens} 报告前缀缓存命中，
+     * DeepSeek 通过 {@code prompt_cache_hit_tokens} 报告。
+     *
+     * @param usage usage 节点
+     * @return 用量元数据，无用量信息时为空
+     */
+    protected static Map<String, Object> usage(JsonNode usage) {
+        if (!usage.isObject()) {
+            return Map.of();
+        }
+        Map<String, Object> metadata = new HashMap<>();
+        if (usage.has("prompt_tokens")) {
+            metadata.put(LlmResponse.PROMPT_TOKENS, usage.get("prompt_tokens").asInt());
+        }
+        if (usage.has("completion_tokens")) {
+            metadata.put(LlmResponse.COMPLETION_TOKENS, usage.get("completion_tokens").asInt());
+        }
+        JsonNode cached = usage.path("prompt_tokens_details").get("cached_tokens");
+        if (cached == null) {
+            cached = usage.get("prompt_cache_hit_tokens");
+        }
+        if (cached != null && cached.isNumber()) {
+            metadata.put(LlmResponse.CACHED_TOKENS, cached.asInt());
+        }
+        return metadata;
+    }
+
+    /**
+     * 构造请求体。
+     *
+     * @param messages 对话消息
+     * @param options  调用选项，其中 temperature、top_p、max_tokens、stop、tool_choice 会透传给接口，
+     *                 {@link #OPTION_TOOLS} 转换为 function 定义
+     * @param stream   是否流式
+     * @return 请求体映射
+     */
+    protected Map<String, Object> requestBody(List<Message> messages, Map<String, Object> options, boolean stream) {
+        List<Map<String, Object>> wireMessages = new ArrayList<>(messages.size());
+        for (Message message : messages) {
+            Map<String, Object> wire = new HashMap<>();
+            wire.put("role", role(message));
+            wire.put("content", message.getContent());
+            List<ToolCall> toolCalls = message.getToolCalls();
+            if (!toolCalls.isEmpty()) {
+                List<Map<String, Object>> wireCalls = new ArrayList<>(toolCalls.size());
+                for (ToolCall call : toolCalls) {
+                    // 部分兼容服务流式返回的调用不带 id，缺失的字段不发送
+                    Map<String, Object> function = new LinkedHashMap<>();
+                    putIfNotNull(function, "name", call.getName());
+                    function.put("arguments", call.getArguments() != null ? call.getArguments() : "");
+                    Map<String, Object> wireCall = new LinkedHashMap<>();
+                    putIfNotNull(wireCall, "id", call.getId());
+                    wireCall.put("type", "function");
+                    wireCall.put("function", function);
+                    wireCalls.add(wireCall);
+                }
+                wire.put("tool_calls", wireCalls);
+            }
+            if (message.getToolCallId() != null) {
+                wire.put("tool_call_id", message.getToolCallId());
+            }
+            wireMessages.add(wire);
+        }
+
+        Map<String, Object> requestBody = new HashMap<>();
+        requestBody.put("model", model());
+        requestBody.put("messages", wireMessages);
+        requestBody.put("temperature", 0.0);
+        if (options != null) {
+            for (String option : PASSTHROUGH_OPTIONS) {
+                if (options.containsKey(option)) {
+                    requestBody.put(option, options.get(option));
+                }
+            }
+            if (options.get(OPTION_TOOLS) instanceof List<?> tools && !tools.isEmpty()) {
+                requestBody.put("tools", tools(tools));
+            }
+        }
+        if (stream) {
+            requestBody.put("stream", true);
+            // 让服务端在流末尾报告 token 用量
+            requestBody.put("stream_options", Map.of("include_usage", true));
+        }
+        return requestBody;
+    }
+
+    /**
+     * 将工具描述转换为 function 定义。
+     */
+    private static void putIfNotNull(Map<String, Object> map, String key, Object value) {
+        if (value != null) {
+            map.put(key, value);
+        }
+    }
+
+    private static List<Map<String, Object>> tools(List<?> tools) {
+        List<Map<String, Object>> definitions = new ArrayList<>(tools.size());
+        for (Object tool : tools) {
+            if (tool instanceof ToolDescriptor descriptor) {
+                Map<String, Object> function = new HashMap<>();
+                function.put("name", descriptor.name);
+                function.put("description", descriptor.description);
+                function.put("parameters", descriptor.parameters);
+                definitions.add(Map.of("type", "function", "function", function));
+            }
+        }
+        return definitions;
+    }
+
+    /**
+     * 角色映射。未携带工具调用 ID 的工具结果以 user 角色发送。
+     */
+    private static String role(Message message) {
+        switch (message.getRole()) {
+            case SYSTEM:
+                return "system";
+            case ASSISTANT:
+                return "assistant";
+            case TOOL:
+                return message.getToolCallId() != null ? "tool" : "user";
+            default:
+                return "user";
+        }
+    }
+
+    /**
+     * 构造指向 /chat/completions 的 POST 请求。
+     *
+     * @param body   请求体
+     * @param accept Accept 头
+     * @return HTTP 请求
+     */
+    protected HttpRequest buildRequest(Map<String, Object> body, String accept) {
+        byte[] json;
+        try {
+            json = MAPPER.writeValueAsBytes(body);
+        } catch (JsonProcessingException e) {
+            throw new LlmException("Failed to serialize request body: " + e.getMessage(), e);
+        }
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(baseUrl() + "/chat/completions"))
+                .timeout(Duration.ofMillis(config.getTimeoutMs()))
+                .header("Content-Type", "application/json")
+                .header("Accept", accept)
+                .POST(HttpRequest.BodyPublishers.ofByteArray(json));
+        if (config.getApiKey() != null && !config.getApiKey().isEmpty()) {
+            builder.header("Authorization", "Bearer " + config.getApiKey());
+        }
+        return builder.build();
+    }
+}
@@ -1,66 +1,141 @@
 package com.lyra.agent.llm;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.lyra.agent.autoconfigure.LyraAgentProperties;
-import org.springframework.http.HttpEntity;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.MediaType;
-import org.springframework.http.ResponseEntity;
-import org.springframework.http.client.SimpleClientHttpRequestFactory;
-import org.springframework.web.client.RestTemplate;
 
-import java.util.Collections;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 /**
  * OpenAI 嵌入模型实现。
- * 调用 /embeddings 接口。
+ * 调用 /embeddings 接口，批量嵌入使用数组形式的 input。
  */
 public class OpenAIEmbeddingModel implements EmbeddingModel {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
     private final LyraAgentProperties.Llm config;
-    private final RestTemplate restTemplate;
+    private final LlmHttpTransport transport;
 
     public OpenAIEmbeddingModel(LyraAgentProperties.Llm config) {
+        this(config, LlmHttpTransport.shared());
+    }
+
+    public OpenAIEmbeddingModel(LyraAgentProperties.Llm config, LlmHttpTransport transport) {
         this.config = config;
-        SimpleClientHttpRequestFactory factory = new SimpleClientHttpRequestFactory();
-        factory.setConnectTimeout(config.getTimeoutMs());
-        factory.setReadTimeout(config.getTimeoutMs());
-        this.restTemplate = new RestTemplate(factory);
+        this.transport = transport;
+    }
+
+    @Override
+    public float[] embed(String text) {
+        return request(text, 1).get(0);
     }
 
+    /**
+     * 以数组形式的 input 在一次请求中嵌入全部文本。
+     */
     @Override
-    @SuppressWarnings("unchecked")
-    public List<Double> embed(String text) {
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.APPLICATION_JSON);
-        if (config.getApiKey() != null && !config.getApiKey().isEmpty()) {
-            headers.setBearerAuth(config.getApiKey());
+    public List<float[]> embedBatch(List<String> texts) {
+        if (texts.isEmpty()) {
+            return List.of();
         }
+        return request(texts, texts.size());
+    }
 
+    private List<float[]> request(Object input, int expected) {
         Map<String, Object> requestBody = new HashMap<>();
-        requestBody.put("input", text);
+        requestBody.put("input", input);
         requestBody.put("model", config.getEmbeddingModel());
 
-        HttpEntity<Map<String, Object>> entity = new HttpEntity<>(requestBody, headers);
-
         try {
-            String url = config.getBaseUrl() + "/embeddings";
-            ResponseEntity<Map> response = restTemplate.postForEntity(url, entity, Map.class);
+            HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(config.getBaseUrl() + "/embeddings"))
+                    .timeout(Duration.ofMillis(config.getTimeoutMs()))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(MAPPER.writeValueAsBytes(requestBody)));
+            if (config.getApiKey() != null && !config.getApiKey().isEmpty()) {
+                builder.header("Authorization", "Bearer " + config.getApiKey());
+            }
+            HttpResponse<byte[]> response = transport.send(builder.build(), HttpResponse.BodyHandlers.ofByteArray());
+            if (response.statusCode() / 100 != 2) {
+                throw LlmException.httpError(response.statusCode(),
+                        new String(response.body(), StandardCharsets.UTF_8), response.headers());
+            }
 
-            if (response.getBody() == null) {
+            if (response.body() == null || response.body().length == 0) {
                 throw new RuntimeException("Empty response from embedding API");
             }
 
-            List<Map<String, Object>> data = (List<Map<String, Object>>) response.getBody().get("data");
-            if (data == null || data.isEmpty()) {
-                throw new RuntimeException("No embedding data in response");
+            float[][] vectors = parse(response.body(), expected);
+            for (float[] vector : vectors) {
+                if (vector == null) {
+                    throw new RuntimeException("Expected " + expected + " embeddings in response");
+                }
             }
-
-            return (List<Double>) data.get(0).get("embedding");
+            return Arrays.asList(vectors);
 
         } catch (Exception e) {
             throw new RuntimeException("Error calling embedding API: " + e.getMessage(), e);
         }
     }
+
+    /**
+     * 流式解析响应，embedding 数组直接读入 float[]，不经过 Map 与装箱的 Double。
+     * 按 index 字段还原输入顺序，缺少 index 时按出现顺序。
+     */
+    private static float[][] parse(byte[] body, int expected) throws IOException {
+        float[][] vectors = new float[expected][];
+        try (JsonParser parser = MAPPER.getFactory().createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Embedding response is not a JSON object");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                if (parser.nextToken() != JsonToken.START_ARRAY || !"data".equals(field)) {
+                    parser.skipChildren();
+                    continue;
+                }
+                int position = 0;
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    int index = position++;
+                    float[] vector = null;
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        String itemField = parser.currentName();
+                        JsonToken value = parser.nextToken();
+                        if ("index".equals(itemField) && value == JsonToken.VALUE_NUMBER_INT) {
+                            index = parser.getIntValue();
+                        } else if ("embedding".equals(itemField) && value == JsonToken.START_ARRAY) {
+                            vector = readVector(parser);
+                        } else {
+                            parser.skipChildren();
+                        }
+                    }
+                    if (index < 0 || index >= expected) {
+                        throw new IOException("Embedding index out of range: " + index);
+                    }
+                    vectors[index] = vector;
+                }
+            }
+        }
+        return vectors;
+    }
+
+    private static float[] readVector(JsonParser parser) throws IOException {
+        float[] vector = new float[256];
+        int size = 0;
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            if (size == vector.length) {
+                vector = Arrays.copyOf(vector, size * 2);
+            }
+            vector[size++] = parser.getFloatValue();
+        }
+        return size == vector.length ? vector : Arrays.copyOf(vector, size);
+    }
 }
@@ -0,0 +1,379 @@
+package com.lyra.agent.llm;
+
+import com.lyra.agent.agent.Message;
+import com.lyra.agent.autoconfigure.LyraAgentProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * 客户端限流装饰器。
+ * <p>
+ * 每次调用先在 {@link AdaptiveRateLimiter} 中排队获取许可；上游返回 HTTP 429 时，
+ * 限流器按 Retry-After 退避并降低并发上限，调用在退避结束后自动重试（最多 maxRetries 次），
+ * 调用方只会感受到排队等待。流式调用只在尚未收到任何响应块时重试。
+ * <p>
+ * token 预估按字符数 / 4 加上 max_tokens 选项计算，响应中带有用量时按实际值修正令牌桶。
+ */
+public class RateLimitingLLMProvider extends DelegatingLLMProvider {
+    private final AdaptiveRateLimiter limiter;
+    private final int maxRetries;
+
+    /**
+     * 构造函数。
+     *
+     * @param delegate 被装饰的提供者
+     * @param config   LLM 配置，使用其中的 provider、apiKey 与 rateLimit 配置
+     * @param registry 指标注册表
+     */
+    public RateLimitingLLMProvider(LLMProvider delegate, LyraAgentProperties.Llm config, MeterRegistry registry) {
+        this(delegate, config.getProvider(), config.getApiKey(), config.getRateLimit(), registry);
+    }
+
+    /**
+     * 构造函数。
+     *
+     * @param delegate   被装饰的提供者
+     * @param providerId 提供者标识，作为指标标签
+     * @param apiKey     API Key，其哈希前缀作为指标标签
+     * @param rateLimit  限流配置
+     * @param registry   指标注册表
+     */
+    public RateLimitingLLMProvider(LLMProvider delegate, String providerId, String apiKey,
+                                   LyraAgentProperties.Llm.RateLimit rateLimit, MeterRegistry registry) {
+        super(delegate);
+        this.maxRetries = rateLimit.getMaxRetries();
+        this.limiter = new AdaptiveRateLimiter(rateLimit, registry,
+                Tags.of("provider", providerId, "key", keyId(apiKey)));
+    }
+
+    /**
+     * 获取限流器。
+     *
+     * @return 限流器
+     */
+    public AdaptiveRateLimiter getLimiter() {
+        return limiter;
+    }
+
+    @Override
+    public String generate(String prompt) {
+        try {
+            return generateAsync(prompt).join();
+        } catch (CompletionException e) {
+            return "Error calling LLM: " + LlmException.describe(e);
+        }
+    }
+
+    @Override
+    public CompletableFuture<String> generateAsync(String prompt) {
+        return call(() -> delegate.generateAsync(prompt), estimate(prompt.length(), null), r -> 0);
+    }
+
+    @Override
+    public Flow.Publisher<StreamChunk> generateStream(String prompt) {
+        long estimate = estimate(prompt.length(), null);
+        return subscriber -> new LimitedStream(() -> delegate.generateStream(prompt), estimate, subscriber).start();
+    }
+
+    @Override
+    public LlmResponse chat(List<Message> messages, Map<String, Object> options) {
+        try {
+            return chatAsync(messages, options).join();
+        } catch (CompletionException e) {
+            return new LlmResponse("Error calling LLM: " + LlmException.describe(e), Map.of(), "error");
+        }
+    }
+
+    @Override
+    public CompletableFuture<LlmResponse> chatAsync(List<Message> messages, Map<String, Object> options) {
+        return call(() -> delegate.chatAsync(messages, options), estimate(messages, options),
+                r -> usedTokens(r.getMetadata()));
+    }
+
+    @Override
+    public Flow.Publisher<StreamChunk> streamChat(List<Message> messages, Map<String, Object> options) {
+        long estimate = estimate(messages, options);
+        return subscriber -> new LimitedStream(() -> delegate.streamChat(messages, options), estimate, subscriber)
+                .start();
+    }
+
+    /**
+     * 获取许可后发起调用，遇到 429 时退避重试。取消返回的 Future 会退出队列或取消在途调用。
+     */
+    private <T> CompletableFuture<T> call(Supplier<CompletableFuture<T>> call, long estimate, ToLongFunction<T> usage) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        AtomicReference<CompletableFuture<?>> current = new AtomicReference<>();
+        attempt(call, estimate, usage, 0, result, current);
+        result.whenComplete((r, e) -> {
+            CompletableFuture<?> f = current.get();
+            if (result.isCancelled() && f != null) {
+                f.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    private <T> void attempt(Supplier<CompletableFuture<T>> call, long estimate, ToLongFunction<T> usage, int attempt,
+                             CompletableFuture<T> result, AtomicReference<CompletableFuture<?>> current) {
+        CompletableFuture<AdaptiveRateLimiter.Permit> acquire = limiter.acquire(estimate, attempt > 0);
+        current.set(acquire);
+        if (result.isDone()) {
+            acquire.cancel(false);
+        }
+        acquire.whenComplete((permit, err) -> {
+            if (err != null) {
+                result.completeExceptionally(unwrap(err));
+                return;
+            }
+            if (result.isDone()) {
+                permit.fail();
+                return;
+            }
+            CompletableFuture<T> future;
+            try {
+                future = call.get();
+            } catch (RuntimeException e) {
+                permit.fail();
+                result.completeExceptionally(e);
+                return;
+            }
+            current.set(future);
+            if (result.isDone()) {
+                future.cancel(true);
+            }
+            future.whenComplete((r, e) -> {
+                if (e == null) {
+                    permit.release(usage.applyAsLong(r));
+                    result.complete(r);
+                    return;
+                }
+                Throwable cause = unwrap(e);
+                if (cause instanceof LlmException le && le.isRateLimited()) {
+                    permit.throttled(le.getRetryAfter());
+                    if (attempt < maxRetries && !result.isDone()) {
+                        attempt(call, estimate, usage, attempt + 1, result, current);
+                        return;
+                    }
+                } else {
+                    permit.fail();
+                }
+                result.completeExceptionally(cause);
+            });
+        });
+    }
+
+    /**
+     * 一次流式订阅：获取许可后订阅上游，在收到首个响应块之前遇到 429 时重新排队并重试。
+     * 下游在上游就绪前发出的请求量会被暂存并在订阅上游后转发。
+     */
+    private final class LimitedStream implements Flow.Subscription, Flow.Subscriber<StreamChunk> {
+        private final Supplier<Flow.Publisher<StreamChunk>> upstreamFactory;
+        private final long estimate;
+        private final Flow.Subscriber<? super StreamChunk> downstream;
+        private final AtomicLong pending = new AtomicLong();
+        private final AtomicLong requested = new AtomicLong();
+        private volatile Flow.Subscription upstream;
+        private volatile CompletableFuture<AdaptiveRateLimiter.Permit> acquire;
+        private volatile AdaptiveRateLimiter.Permit permit;
+        private volatile boolean cancelled;
+        private boolean emitted;
+        private long usedTokens;
+        private int attempt;
+
+        LimitedStream(Supplier<Flow.Publisher<StreamChunk>> upstreamFactory, long estimate,
+                      Flow.Subscriber<? super StreamChunk> downstream) {
+            this.upstreamFactory = upstreamFactory;
+            this.estimate = estimate;
+            this.downstream = downstream;
+        }
+
+        void start() {
+            downstream.onSubscribe(this);
+            subscribeUpstream();
+        }
+
+        private void subscribeUpstream() {
+            CompletableFuture<AdaptiveRateLimiter.Permit> future = limiter.acquire(estimate, attempt > 0);
+            acquire = future;
+            if (cancelled) {
+                future.cancel(false);
+            }
+            future.whenComplete((p, err) -> {
+                if (err != null) {
+                    if (!cancelled) {
+                        downstream.onError(unwrap(err));
+                    }
+                    return;
+                }
+                if (cancelled) {
+                    p.fail();
+                    return;
+                }
+                permit = p;
+                Flow.Publisher<StreamChunk> publisher;
+                try {
+                    publisher = upstreamFactory.get();
+                } catch (RuntimeException e) {
+                    p.fail();
+                    downstream.onError(e);
+                    return;
+                }
+                publisher.subscribe(this);
+            });
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                cancel();
+                downstream.onError(new IllegalArgumentException("non-positive subscription request: " + n));
+                return;
+            }
+            requested.getAndUpdate(r -> r + n < 0 ? Long.MAX_VALUE : r + n);
+            Flow.Subscription s = upstream;
+            if (s != null) {
+                s.request(n);
+                return;
+            }
+            pending.getAndUpdate(r -> r + n < 0 ? Long.MAX_VALUE : r + n);
+            flushPending();
+        }
+
+        @Override
+        public void cancel() {
+            if (cancelled) {
+                return;
+            }
+            cancelled = true;
+            CompletableFuture<AdaptiveRateLimiter.Permit> a = acquire;
+            if (a != null) {
+                a.cancel(false);
+            }
+            Flow.Subscription s = upstream;
+            if (s != null) {
+                s.cancel();
+            }
+            AdaptiveRateLimiter.Permit p = permit;
+            if (p != null) {
+                p.fail();
+            }
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            if (cancelled) {
+                subscription.cancel();
+                return;
+            }
+            upstream = subscription;
+            flushPending();
+        }
+
+        @Override
+        public void onNext(StreamChunk chunk) {
+            emitted = true;
+            if (chunk.isDone() && chunk.getMetadata() != null) {
+                usedTokens = Math.max(usedTokens, usedTokens(chunk.getMetadata()));
+            }
+            downstream.onNext(chunk);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            Throwable cause = unwrap(throwable);
+            AdaptiveRateLimiter.Permit p = permit;
+            if (!emitted && cause instanceof LlmException le && le.isRateLimited()) {
+                p.throttled(le.getRetryAfter());
+                if (attempt < maxRetries && !cancelled) {
+                    attempt++;
+                    upstream = null;
+                    permit = null;
+                    // 上游尚未发出任何块，重试时重新转发下游的全部需求
+                    pending.set(requested.get());
+                    subscribeUpstream();
+                    return;
+                }
+            } else {
+                p.fail();
+            }
+            downstream.onError(cause);
+        }
+
+        @Override
+        public void onComplete() {
+            permit.release(usedTokens);
+            downstream.onComplete();
+        }
+
+        private void flushPending() {
+            Flow.Subscription s = upstream;
+            if (s == null) {
+                return;
+            }
+            long n = pending.getAndSet(0);
+            if (n > 0) {
+                s.request(n);
+            }
+        }
+    }
+
+    private static long estimate(List<Message> messages, Map<String, Object> options) {
+        long chars = 0;
+        for (Message message : messages) {
+            chars += message.getContent() != null ? message.getContent().length() : 0;
+        }
+        return estimate(chars, options) + 4L * messages.size();
+    }
+
+    private static long estimate(long chars, Map<String, Object> options) {
+        Object maxTokens = options != null ? options.get("max_tokens") : null;
+        return chars / 4 + (maxTokens instanceof Number n ? n.longValue() : 0);
+    }
+
+    private static long usedTokens(Map<String, Object> metadata) {
+        if (metadata == null) {
+            return 0;
+        }
+        long used = 0;
+        if (metadata.get("promptTokens") instanceof Number n) {
+            used += n.longValue();
+        }
+        if (metadata.get("completionTokens") instanceof Number n) {
+            used += n.longValue();
+        }
+        return used;
+    }
+
+    private static Throwable unwrap(Throwable e) {
+        return e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+    }
+
+    /**
+     * 指标中用于区分 API Key 的标识：Key 的 SHA-256 前 8 位，不暴露 Key 本身。
+     */
+    private static String keyId(String apiKey) {
+        if (apiKey == null || apiKey.isEmpty()) {
+            return "none";
+        }
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(apiKey.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest, 0, 4);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
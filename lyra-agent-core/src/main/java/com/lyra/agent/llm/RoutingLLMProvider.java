@@ -0,0 +1,396 @@
+package com.lyra.agent.llm;
+
+import com.lyra.agent.agent.Message;
+import com.lyra.agent.autoconfigure.LyraAgentProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * 在多个端点（提供者 + API Key）之间分配请求的路由提供者。
+ * <p>
+ * 每次调用选择代价最低的端点：代价 = 延迟 EWMA × (在途请求数 + 1) / (权重 × 剩余限流额度)。
+ * 延迟 EWMA 按时间衰减，流式请求以首个响应块的延迟计；失败的请求额外计入惩罚延迟。
+ * 剩余额度取自端点的 {@link AdaptiveRateLimiter}，退避、排队中或熔断器打开的端点额度为 0，
+ * 只有在所有端点都受限时才会被选中。
+ * 代价相同时随机选择，未被调用过的端点延迟为 0，会优先得到探测流量。
+ * <p>
+ * 路由表可通过 {@link #routingTable()} 获取，并以指标形式暴露（标签 endpoint）：
+ * {@code lyra.llm.route.latency}（毫秒）、{@code lyra.llm.route.outstanding}、{@code lyra.llm.route.headroom}、
+ * {@code lyra.llm.route.requests}（outcome=success|error）。
+ */
+public class RoutingLLMProvider implements LLMProvider {
+    /** 额度的下限，避免代价除零；额度耗尽的端点代价放大 100 倍。 */
+    private static final double MIN_HEADROOM = 0.01;
+    private static final long BASE_LATENCY_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final List<Route> routes;
+    private final long decayNanos;
+    private final long failurePenaltyNanos;
+
+    /**
+     * 构造函数。
+     *
+     * @param endpoints 可路由的端点，至少一个
+     * @param config    路由配置
+     * @param registry  指标注册表
+     */
+    public RoutingLLMProvider(List<Endpoint> endpoints, LyraAgentProperties.Llm.Routing config, MeterRegistry registry) {
+        if (endpoints.isEmpty()) {
+            throw new IllegalArgumentException("At least one endpoint is required");
+        }
+        this.decayNanos = Math.max(1, TimeUnit.MILLISECONDS.toNanos(config.getLatencyDecayMs()));
+        this.failurePenaltyNanos = TimeUnit.MILLISECONDS.toNanos(config.getFailurePenaltyMs());
+        List<Route> list = new ArrayList<>(endpoints.size());
+        for (Endpoint endpoint : endpoints) {
+            list.add(new Route(endpoint, registry));
+        }
+        this.routes = List.copyOf(list);
+    }
+
+    @Override
+    public String generate(String prompt) {
+        try {
+            return generateAsync(prompt).join();
+        } catch (CompletionException e) {
+            return "Error calling LLM: " + LlmException.describe(e);
+        }
+    }
+
+    @Override
+    public CompletableFuture<String> generateAsync(String prompt) {
+        return call(provider -> provider.generateAsync(prompt));
+    }
+
+    @Override
+    public Flow.Publisher<StreamChunk> generateStream(String prompt) {
+        return stream(provider -> provider.generateStream(prompt));
+    }
+
+    @Override
+    public LlmResponse chat(List<Message> messages, Map<String, Object> options) {
+        try {
+            return chatAsync(messages, options).join();
+        } catch (CompletionException e) {
+            return new LlmResponse("Error calling LLM: " + LlmException.describe(e), Map.of(), "error");
+        }
+    }
+
+    @Override
+    public CompletableFuture<LlmResponse> chatAsync(List<Message> messages, Map<String, Object> options) {
+        return call(provider -> provider.chatAsync(messages, options));
+    }
+
+    @Override
+    public Flow.Publisher<StreamChunk> streamChat(List<Message> messages, Map<String, Object> options) {
+        return stream(provider -> provider.streamChat(messages, options));
+    }
+
+    /**
+     * 返回第一个端点的模型名。
+     */
+    @Override
+    public String getModelName() {
+        return routes.get(0).endpoint.getProvider().getModelName();
+    }
+
+    /**
+     * 所有端点都支持时才支持原生工具调用，否则同一请求可能被路由到无法处理工具定义的端点。
+     */
+    @Override
+    public boolean supportsToolCalling() {
+        for (Route route : routes) {
+            if (!route.endpoint.getProvider().supportsToolCalling()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 当前路由表快照。
+     *
+     * @return 各端点的状态，顺序与配置一致
+     */
+    public List<RouteStatus> routingTable() {
+        List<RouteStatus> table = new ArrayList<>(routes.size());
+        for (Route route : routes) {
+            double headroom = route.headroom();
+            table.add(new RouteStatus(route.endpoint.getName(), route.endpoint.getWeight(),
+                    TimeUnit.NANOSECONDS.toMicros((long) route.latency()) / 1000.0,
+                    route.outstanding.get(), headroom, route.cost(headroom)));
+        }
+        return table;
+    }
+
+    private <T> CompletableFuture<T> call(Function<LLMProvider, CompletableFuture<T>> call) {
+        Route route = select();
+        route.outstanding.incrementAndGet();
+        long start = System.nanoTime();
+        CompletableFuture<T> future;
+        try {
+            future = call.apply(route.endpoint.getProvider());
+        } catch (RuntimeException e) {
+            route.outstanding.decrementAndGet();
+            route.record(System.nanoTime() - start, false);
+            throw e;
+        }
+        // 返回原 Future 而不是派生的 Future，以保留取消语义；被取消的调用不计入延迟
+        future.whenComplete((r, e) -> {
+            route.outstanding.decrementAndGet();
+            if (!future.isCancelled()) {
+                route.record(System.nanoTime() - start, e == null);
+            }
+        });
+        return future;
+    }
+
+    private Flow.Publisher<StreamChunk> stream(Function<LLMProvider, Flow.Publisher<StreamChunk>> call) {
+        return subscriber -> {
+            Route route = select();
+            route.outstanding.incrementAndGet();
+            Flow.Publisher<StreamChunk> publisher;
+            try {
+                publisher = call.apply(route.endpoint.getProvider());
+            } catch (RuntimeException e) {
+                route.outstanding.decrementAndGet();
+                route.record(0, false);
+                StreamPublishers.error(e).subscribe(subscriber);
+                return;
+            }
+            publisher.subscribe(new TrackingSubscriber(route, subscriber));
+        };
+    }
+
+    private Route select() {
+        if (routes.size() == 1) {
+            return routes.get(0);
+        }
+        Route best = null;
+        double bestCost = Double.MAX_VALUE;
+        int ties = 0;
+        for (Route route : routes) {
+            double cost = route.cost(route.headroom());
+            if (cost < bestCost) {
+                best = route;
+                bestCost = cost;
+                ties = 1;
+            } else if (cost == bestCost && ThreadLocalRandom.current().nextInt(++ties) == 0) {
+                // 蓄水池抽样，在代价相同的端点中均匀随机选择
+                best = route;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * 一个可路由的端点。
+     */
+    public static final class Endpoint {
+        private final String name;
+        private final LLMProvider provider;
+        private final AdaptiveRateLimiter limiter;
+        private final CircuitBreaker breaker;
+        private final double weight;
+
+        /**
+         * 构造函数。
+         *
+         * @param name     端点名，作为指标标签
+         * @param provider 端点的提供者（通常已包裹限流）
+         * @param limiter  端点的限流器，未启用限流时为 null
+         * @param weight   静态权重
+         */
+        public Endpoint(String name, LLMProvider provider, AdaptiveRateLimiter limiter, double weight) {
+            this(name, provider, limiter, null, weight);
+        }
+
+        /**
+         * 构造函数。
+         *
+         * @param name     端点名，作为指标标签
+         * @param provider 端点的提供者（通常已包裹限流与熔断）
+         * @param limiter  端点的限流器，未启用限流时为 null
+         * @param breaker  端点的熔断器，未启用熔断时为 null；熔断器打开时端点额度为 0
+         * @param weight   静态权重
+         */
+        public Endpoint(String name, LLMProvider provider, AdaptiveRateLimiter limiter, CircuitBreaker breaker,
+                        double weight) {
+            this.name = name;
+            this.provider = provider;
+            this.limiter = limiter;
+            this.breaker = breaker;
+            this.weight = weight;
+        }
+
+        public String getName() { return name; }
+        public LLMProvider getProvider() { return provider; }
+        public AdaptiveRateLimiter getLimiter() { return limiter; }
+        public CircuitBreaker getBreaker() { return breaker; }
+        public double getWeight() { return weight; }
+    }
+
+    /**
+     * 路由表中的一行。
+     */
+    public static final class RouteStatus {
+        private final String name;
+        private final double weight;
+        private final double latencyMs;
+        private final int outstanding;
+        private final double headroom;
+        private final double cost;
+
+        RouteStatus(String name, double weight, double latencyMs, int outstanding, double headroom, double cost) {
+            this.name = name;
+            this.weight = weight;
+            this.latencyMs = latencyMs;
+            this.outstanding = outstanding;
+            this.headroom = headroom;
+            this.cost = cost;
+        }
+
+        public String getName() { return name; }
+        public double getWeight() { return weight; }
+        public double getLatencyMs() { return latencyMs; }
+        public int getOutstanding() { return outstanding; }
+        public double getHeadroom() { return headroom; }
+        public double getCost() { return cost; }
+    }
+
+    /**
+     * 单个端点的运行时状态。
+     */
+    private final class Route {
+        private final Endpoint endpoint;
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private final Counter successes;
+        private final Counter errors;
+        private double latency;
+        private long updatedAt = System.nanoTime();
+
+        Route(Endpoint endpoint, MeterRegistry registry) {
+            this.endpoint = endpoint;
+            this.successes = Counter.builder("lyra.llm.route.requests").tag("endpoint", endpoint.getName())
+                    .tag("outcome", "success").register(registry);
+            this.errors = Counter.builder("lyra.llm.route.requests").tag("endpoint", endpoint.getName())
+                    .tag("outcome", "error").register(registry);
+            Gauge.builder("lyra.llm.route.latency", this, r -> r.latency() / 1_000_000.0)
+                    .tag("endpoint", endpoint.getName()).register(registry);
+            Gauge.builder("lyra.llm.route.outstanding", outstanding, AtomicInteger::get)
+                    .tag("endpoint", endpoint.getName()).register(registry);
+            Gauge.builder("lyra.llm.route.headroom", this, Route::headroom)
+                    .tag("endpoint", endpoint.getName()).register(registry);
+        }
+
+        double headroom() {
+            if (endpoint.getBreaker() != null && endpoint.getBreaker().getState() == CircuitBreaker.State.OPEN) {
+                return 0;
+            }
+            return endpoint.getLimiter() != null ? endpoint.getLimiter().headroom() : 1.0;
+        }
+
+        double cost(double headroom) {
+            return (latency() + BASE_LATENCY_NANOS) * (outstanding.get() + 1)
+                    / (Math.max(endpoint.getWeight(), Double.MIN_VALUE) * Math.max(headroom, MIN_HEADROOM));
+        }
+
+        synchronized double latency() {
+            return latency;
+        }
+
+        /**
+         * 记录一次调用的结果，更新按时间衰减的延迟 EWMA。失败的调用额外计入惩罚延迟。
+         */
+        void record(long latencyNanos, boolean success) {
+            (success ? successes : errors).increment();
+            long sample = latencyNanos + (success ? 0 : failurePenaltyNanos);
+            long now = System.nanoTime();
+            synchronized (this) {
+                double alpha = latency == 0 ? 1 : 1 - Math.exp(-(double) (now - updatedAt) / decayNanos);
+                latency += alpha * (sample - latency);
+                updatedAt = now;
+            }
+        }
+    }
+
+    /**
+     * 透传上游信号，以首个响应块的延迟更新端点状态，并在流结束、出错或被取消时减少在途数。
+     */
+    private static final class TrackingSubscriber implements Flow.Subscriber<StreamChunk>, Flow.Subscription {
+        private final Route route;
+        private final Flow.Subscriber<? super StreamChunk> downstream;
+        private final long start = System.nanoTime();
+        private final AtomicBoolean finished = new AtomicBoolean();
+        private boolean recorded;
+        private Flow.Subscription upstream;
+
+        TrackingSubscriber(Route route, Flow.Subscriber<? super StreamChunk> downstream) {
+            this.route = route;
+            this.downstream = downstream;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            upstream = subscription;
+            downstream.onSubscribe(this);
+        }
+
+        @Override
+        public void onNext(StreamChunk chunk) {
+            if (!recorded) {
+                recorded = true;
+                route.record(System.nanoTime() - start, true);
+            }
+            downstream.onNext(chunk);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            if (finish() && !recorded) {
+                route.record(System.nanoTime() - start, false);
+            }
+            downstream.onError(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            if (finish() && !recorded) {
+                route.record(System.nanoTime() - start, true);
+            }
+            downstream.onComplete();
+        }
+
+        @Override
+        public void request(long n) {
+            upstream.request(n);
+        }
+
+        @Override
+        public void cancel() {
+            // 被取消（例如对冲请求落败）不计入延迟与错误
+            finish();
+            upstream.cancel();
+        }
+
+        private boolean finish() {
+            if (finished.compareAndSet(false, true)) {
+                route.outstanding.decrementAndGet();
+                return true;
+            }
+            return false;
+        }
+    }
+}
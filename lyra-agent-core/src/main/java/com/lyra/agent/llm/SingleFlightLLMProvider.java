@@ -0,0 +1,403 @@
+package com.lyra.agent.llm;
+
+import com.lyra.agent.agent.Message;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * 合并相同的在途 LLM 请求（single-flight）。
+ * <p>
+ * 以 {@link LlmRequestKey} 计算的内容哈希识别相同请求：同一时刻只有第一个请求（leader）真正发往上游，
+ * 其余请求等待并共享同一结果。流式请求共享同一条上游流，后加入的订阅者先从头回放已收到的响应块，
+ * 再继续接收实时块；每个订阅者各自遵守背压，上游按最快订阅者的需求拉取，
+ * 全部订阅者取消后才取消上游。请求结束后立即从在途表中移除，之后的相同请求会重新发起。
+ * <p>
+ * 选项中 temperature 大于 0 的请求期望得到不同的采样结果，不参与合并。
+ * <p>
+ * 指标：{@code lyra.llm.singleflight.requests}（result=leader|coalesced），
+ * 合并率为 coalesced / (leader + coalesced)；{@code lyra.llm.singleflight.inflight} 为在途请求数。
+ */
+public class SingleFlightLLMProvider extends DelegatingLLMProvider {
+    private final String providerId;
+    private final ConcurrentHashMap<String, CompletableFuture<String>> prompts = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, CompletableFuture<LlmResponse>> chats = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, SharedStream> streams = new ConcurrentHashMap<>();
+    private final Counter leaders;
+    private final Counter coalesced;
+
+    /**
+     * 构造函数。
+     *
+     * @param delegate   被装饰的提供者
+     * @param providerId 提供者标识，参与请求哈希并作为指标标签
+     * @param registry   指标注册表
+     */
+    public SingleFlightLLMProvider(LLMProvider delegate, String providerId, MeterRegistry registry) {
+        super(delegate);
+        this.providerId = providerId;
+        this.leaders = Counter.builder("lyra.llm.singleflight.requests").tag("provider", providerId)
+                .tag("result", "leader").register(registry);
+        this.coalesced = Counter.builder("lyra.llm.singleflight.requests").tag("provider", providerId)
+                .tag("result", "coalesced").register(registry);
+        Gauge.builder("lyra.llm.singleflight.inflight", this,
+                        p -> p.prompts.size() + p.chats.size() + p.streams.size())
+                .tag("provider", providerId).register(registry);
+    }
+
+    @Override
+    public String generate(String prompt) {
+        try {
+            return generateAsync(prompt).join();
+        } catch (CompletionException e) {
+            return "Error calling LLM: " + LlmException.describe(e);
+        }
+    }
+
+    @Override
+    public CompletableFuture<String> generateAsync(String prompt) {
+        return join(prompts, LlmRequestKey.of(providerId, getModelName(), prompt),
+                () -> delegate.generateAsync(prompt));
+    }
+
+    @Override
+    public Flow.Publisher<StreamChunk> generateStream(String prompt) {
+        return subscriber -> share(LlmRequestKey.of(providerId, getModelName(), prompt),
+                () -> delegate.generateStream(prompt), subscriber);
+    }
+
+    @Override
+    public LlmResponse chat(List<Message> messages, Map<String, Object> options) {
+        if (!coalescable(options)) {
+            return delegate.chat(messages, options);
+        }
+        try {
+            return chatAsync(messages, options).join();
+        } catch (CompletionException e) {
+            return new LlmResponse("Error calling LLM: " + LlmException.describe(e), Map.of(), "error");
+        }
+    }
+
+    @Override
+    public CompletableFuture<LlmResponse> chatAsync(List<Message> messages, Map<String, Object> options) {
+        if (!coalescable(options)) {
+            return delegate.chatAsync(messages, options);
+        }
+        return join(chats, LlmRequestKey.of(providerId, getModelName(), messages, options),
+                () -> delegate.chatAsync(messages, options));
+    }
+
+    @Override
+    public Flow.Publisher<StreamChunk> streamChat(List<Message> messages, Map<String, Object> options) {
+        if (!coalescable(options)) {
+            return delegate.streamChat(messages, options);
+        }
+        return subscriber -> share(LlmRequestKey.of(providerId, getModelName(), messages, options),
+                () -> delegate.streamChat(messages, options), subscriber);
+    }
+
+    /**
+     * 加入在途请求，不存在时作为 leader 发起。
+     * 返回的是共享结果的副本，调用方取消自己的 Future 不会影响其他等待者。
+     */
+    private <T> CompletableFuture<T> join(ConcurrentHashMap<String, CompletableFuture<T>> inflight, String key,
+                                          Supplier<CompletableFuture<T>> call) {
+        CompletableFuture<T> shared = new CompletableFuture<>();
+        CompletableFuture<T> existing = inflight.putIfAbsent(key, shared);
+        if (existing != null) {
+            coalesced.increment();
+            return existing.copy();
+        }
+        leaders.increment();
+        try {
+            call.get().whenComplete((result, error) -> {
+                inflight.remove(key, shared);
+                if (error != null) {
+                    shared.completeExceptionally(error);
+                } else {
+                    shared.complete(result);
+                }
+            });
+        } catch (RuntimeException e) {
+            inflight.remove(key, shared);
+            shared.completeExceptionally(e);
+        }
+        return shared.copy();
+    }
+
+    /**
+     * 将订阅者挂到在途的共享流上，不存在（或已关闭）时新建一条并订阅上游。
+     */
+    private void share(String key, Supplier<Flow.Publisher<StreamChunk>> upstream,
+                       Flow.Subscriber<? super StreamChunk> subscriber) {
+        while (true) {
+            SharedStream stream = new SharedStream(key);
+            SharedStream existing = streams.putIfAbsent(key, stream);
+            if (existing != null) {
+                if (existing.attach(subscriber)) {
+                    coalesced.increment();
+                    return;
+                }
+                // 已关闭但尚未移除，移除后重试
+                streams.remove(key, existing);
+                continue;
+            }
+            leaders.increment();
+            stream.attach(subscriber);
+            Flow.Publisher<StreamChunk> publisher;
+            try {
+                publisher = upstream.get();
+            } catch (RuntimeException e) {
+                stream.onSubscribe(NoopSubscription.INSTANCE);
+                stream.onError(e);
+                return;
+            }
+            publisher.subscribe(stream);
+            return;
+        }
+    }
+
+    private static boolean coalescable(Map<String, Object> options) {
+        return !isSampled(options);
+    }
+
+    /**
+     * 一条被多个订阅者共享的上游流。
+     * 已收到的响应块全部保留，供后加入的订阅者回放；状态变更在对象锁内完成，向下游发射在锁外进行。
+     */
+    private final class SharedStream implements Flow.Subscriber<StreamChunk> {
+        private final String key;
+        private final List<StreamChunk> chunks = new ArrayList<>();
+        private final List<Member> members = new ArrayList<>();
+        private Flow.Subscription upstream;
+        private long upstreamRequested;
+        private boolean terminated;
+        private Throwable error;
+        private boolean closed;
+
+        SharedStream(String key) {
+            this.key = key;
+        }
+
+        /**
+         * 加入订阅者。流已因全部订阅者取消而关闭时返回 false。
+         */
+        boolean attach(Flow.Subscriber<? super StreamChunk> subscriber) {
+            Member member = new Member(subscriber);
+            synchronized (this) {
+                if (closed) {
+                    return false;
+                }
+                members.add(member);
+            }
+            subscriber.onSubscribe(member);
+            member.drain();
+            return true;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            boolean cancel;
+            synchronized (this) {
+                upstream = subscription;
+                cancel = closed;
+            }
+            if (cancel) {
+                subscription.cancel();
+            } else {
+                requestUpstream();
+            }
+        }
+
+        @Override
+        public void onNext(StreamChunk chunk) {
+            synchronized (this) {
+                chunks.add(chunk);
+            }
+            drainAll();
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            synchronized (this) {
+                error = throwable;
+                terminated = true;
+            }
+            streams.remove(key, this);
+            drainAll();
+        }
+
+        @Override
+        public void onComplete() {
+            synchronized (this) {
+                terminated = true;
+            }
+            streams.remove(key, this);
+            drainAll();
+        }
+
+        synchronized StreamChunk chunkAt(int index) {
+            return index < chunks.size() ? chunks.get(index) : null;
+        }
+
+        synchronized boolean finishedAt(int index) {
+            return terminated && index >= chunks.size();
+        }
+
+        synchronized Throwable error() {
+            return error;
+        }
+
+        /**
+         * 上游需求取各订阅者累计请求量的最大值，即按最快的订阅者拉取。
+         */
+        void requestUpstream() {
+            Flow.Subscription s;
+            long n;
+            synchronized (this) {
+                if (upstream == null || terminated || closed) {
+                    return;
+                }
+                long wanted = 0;
+                for (Member member : members) {
+                    wanted = Math.max(wanted, member.totalRequested.get());
+                }
+                n = wanted - upstreamRequested;
+                if (n <= 0) {
+                    return;
+                }
+                upstreamRequested = wanted;
+                s = upstream;
+            }
+            s.request(n);
+        }
+
+        void detach(Member member) {
+            Flow.Subscription s = null;
+            synchronized (this) {
+                members.remove(member);
+                if (members.isEmpty() && !terminated && !closed) {
+                    closed = true;
+                    s = upstream;
+                }
+            }
+            if (closed) {
+                streams.remove(key, this);
+            }
+            if (s != null) {
+                s.cancel();
+            }
+        }
+
+        private void drainAll() {
+            List<Member> snapshot;
+            synchronized (this) {
+                snapshot = new ArrayList<>(members);
+            }
+            for (Member member : snapshot) {
+                member.drain();
+            }
+        }
+
+        /**
+         * 单个订阅者的游标与需求。
+         */
+        private final class Member implements Flow.Subscription {
+            private final Flow.Subscriber<? super StreamChunk> subscriber;
+            private final AtomicLong requested = new AtomicLong();
+            private final AtomicLong totalRequested = new AtomicLong();
+            private final AtomicInteger wip = new AtomicInteger();
+            private volatile boolean cancelled;
+            private int index;
+            private boolean done;
+
+            Member(Flow.Subscriber<? super StreamChunk> subscriber) {
+                this.subscriber = subscriber;
+            }
+
+            @Override
+            public void request(long n) {
+                if (n <= 0) {
+                    cancel();
+                    subscriber.onError(new IllegalArgumentException("non-positive subscription request: " + n));
+                    return;
+                }
+                requested.getAndUpdate(r -> r + n < 0 ? Long.MAX_VALUE : r + n);
+                totalRequested.getAndUpdate(r -> r + n < 0 ? Long.MAX_VALUE : r + n);
+                drain();
+                requestUpstream();
+            }
+
+            @Override
+            public void cancel() {
+                if (!cancelled) {
+                    cancelled = true;
+                    detach(this);
+                }
+            }
+
+            void drain() {
+                if (wip.getAndIncrement() != 0) {
+                    return;
+                }
+                int missed = 1;
+                do {
+                    if (done || cancelled) {
+                        return;
+                    }
+                    long r = requested.get();
+                    long emitted = 0;
+                    while (emitted != r && !cancelled) {
+                        StreamChunk chunk = chunkAt(index);
+                        if (chunk == null) {
+                            break;
+                        }
+                        index++;
+                        emitted++;
+                        subscriber.onNext(chunk);
+                    }
+                    if (emitted > 0 && r != Long.MAX_VALUE) {
+                        requested.addAndGet(-emitted);
+                    }
+                    if (!cancelled && finishedAt(index)) {
+                        done = true;
+                        synchronized (SharedStream.this) {
+                            members.remove(this);
+                        }
+                        Throwable e = error();
+                        if (e != null) {
+                            subscriber.onError(e);
+                        } else {
+                            subscriber.onComplete();
+                        }
+                        return;
+                    }
+                    missed = wip.addAndGet(-missed);
+                } while (missed != 0);
+            }
+        }
+    }
+
+    private enum NoopSubscription implements Flow.Subscription {
+        INSTANCE;
+
+        @Override
+        public void request(long n) {
+        }
+
+        @Override
+        public void cancel() {
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.lyra.agent.llm;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+
+/**
+ * 将单个 SSE 事件的 JSON 负载解析为响应块。
+ * 实现应使用流式 {@link JsonParser} 只读取所需字段并跳过其余部分，避免构建完整的 JSON 树。
+ */
+@FunctionalInterface
+public interface SseChunkParser {
+    /**
+     * 解析事件负载。
+     *
+     * @param parser 位于首个 token 之前的解析器
+     * @return 响应块；事件不携带内容时返回 null
+     * @throws IOException JSON 格式错误
+     */
+    StreamChunk parse(JsonParser parser) throws IOException;
+
+    /**
+     * 跳过当前数组中剩余的元素，返回时解析器位于 {@code END_ARRAY}。
+     *
+     * @param parser 位于数组内部的解析器
+     * @throws IOException 输入在数组结束前中断
+     */
+    static void skipArrayRemainder(JsonParser parser) throws IOException {
+        while (parser.currentToken() != JsonToken.END_ARRAY) {
+            if (parser.nextToken() == null) {
+                throw new IOException("Unexpected end of stream chunk");
+            }
+            parser.skipChildren();
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package com.lyra.agent.llm;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * 增量式 Server-Sent Events 解码器。
+ * 直接在字节缓冲区上切分行并拼接 {@code data:} 字段，不为每一行创建字符串；
+ * 内部缓冲区在整个流的生命周期内复用。非线程安全，每个流使用一个实例。
+ */
+public final class SseDecoder {
+    private static final byte[] DATA = {'d', 'a', 't', 'a', ':'};
+    private static final byte[] DONE = {'[', 'D', 'O', 'N', 'E', ']'};
+
+    /**
+     * 事件回调。
+     */
+    public interface Handler {
+        /**
+         * 收到一个完整事件的数据。
+         * 缓冲区仅在回调期间有效。
+         *
+         * @param buf 数据所在缓冲区
+         * @param off 起始偏移
+         * @param len 长度
+         */
+        void onData(byte[] buf, int off, int len);
+
+        /**
+         * 收到 OpenAI 风格的 {@code [DONE]} 结束标记。
+         */
+        void onDone();
+    }
+
+    private byte[] line = new byte[512];
+    private int lineLength;
+    private byte[] data = new byte[512];
+    private int dataLength;
+    private boolean hasData;
+    private boolean skipLeadingLf;
+
+    /**
+     * 解码一段字节，每遇到一个完整事件回调一次。
+     *
+     * @param buffer  输入字节，读取后位置前移至末尾
+     * @param handler 事件回调
+     */
+    public void feed(ByteBuffer buffer, Handler handler) {
+        while (buffer.hasRemaining()) {
+            int start = buffer.position();
+            int limit = buffer.limit();
+            int i = start;
+            if (skipLeadingLf) {
+                skipLeadingLf = false;
+                if (buffer.get(i) == '\n') {
+                    buffer.position(++i);
+                    continue;
+                }
+            }
+            while (i < limit) {
+                byte b = buffer.get(i);
+                if (b == '\n' || b == '\r') {
+                    break;
+                }
+                i++;
+            }
+            appendLine(buffer, i - start);
+            if (i == limit) {
+                return;
+            }
+            // 行结束：\n、\r 或 \r\n
+            byte terminator = buffer.get();
+            if (terminator == '\r') {
+                if (buffer.hasRemaining()) {
+                    if (buffer.get(buffer.position()) == '\n') {
+                        buffer.get();
+                    }
+                } else {
+                    skipLeadingLf = true;
+                }
+            }
+            processLine(handler);
+        }
+    }
+
+    /**
+     * 输入结束时调用，分发尚未以空行结尾的最后一个事件。
+     *
+     * @param handler 事件回调
+     */
+    public void finish(Handler handler) {
+        if (lineLength > 0) {
+            processLine(handler);
+        }
+        dispatch(handler);
+    }
+
+    private void appendLine(ByteBuffer buffer, int n) {
+        if (n == 0) {
+            return;
+        }
+        if (lineLength + n > line.length) {
+            line = Arrays.copyOf(line, Math.max(line.length * 2, lineLength + n));
+        }
+        buffer.get(line, lineLength, n);
+        lineLength += n;
+    }
+
+    private void processLine(Handler handler) {
+        int n = lineLength;
+        lineLength = 0;
+        if (n == 0) {
+            dispatch(handler);
+            return;
+        }
+        if (!startsWith(line, n, DATA)) {
+            // event:/id:/retry: 字段与 ':' 注释行均不影响 LLM 流
+            return;
+        }
+        int off = DATA.length;
+        if (off < n && line[off] == ' ') {
+            off++;
+        }
+        int len = n - off;
+        int required = dataLength + (hasData ? 1 : 0) + len;
+        if (required > data.length) {
+            data = Arrays.copyOf(data, Math.max(data.length * 2, required));
+        }
+        if (hasData) {
+            data[dataLength++] = '\n';
+        }
+        System.arraycopy(line, off, data, dataLength, len);
+        dataLength += len;
+        hasData = true;
+    }
+
+    private void dispatch(Handler handler) {
+        if (!hasData) {
+            return;
+        }
+        int len = dataLength;
+        hasData = false;
+        dataLength = 0;
+        if (len == DONE.length && startsWith(data, len, DONE)) {
+            handler.onDone();
+        } else {
+            handler.onData(data, 0, len);
+        }
+    }
+
+    private static boolean startsWith(byte[] buf, int len, byte[] prefix) {
+        if (len < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (buf[i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,329 @@
+package com.lyra.agent.llm;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * 基于 Server-Sent Events 的流式响应发布者。
+ * 每次订阅发起一次 HTTP 请求；仅在下游有需求且已解码的块耗尽时才向上游请求更多字节，
+ * 下游取消订阅会立即关闭上游 HTTP 流。
+ * 字节流由 {@link SseDecoder} 直接切分，事件负载交给 {@link SseChunkParser} 以流式方式解析，
+ * 无法解析的事件记录日志后忽略。
+ * 每个流最多发出一个结束块：结束原因与随后单独到达的用量块合并为一个结束块，
+ * 在 {@code [DONE]} 或响应体结束时发出；只有此前没有结束块时 {@code [DONE]} 才补发一个结束原因为 stop 的结束块。
+ */
+public class SseStreamPublisher implements Flow.Publisher<StreamChunk> {
+    private static final Logger logger = LoggerFactory.getLogger(SseStreamPublisher.class);
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private final LlmHttpTransport transport;
+    private final Supplier<HttpRequest> request;
+    private final SseChunkParser chunkParser;
+
+    /**
+     * 构造函数。
+     *
+     * @param transport  共享 HTTP 传输层
+     * @param request    请求工厂，每次订阅调用一次
+     * @param chunkParser 将单个事件的 JSON 负载解析为响应块，返回 null 表示忽略该事件
+     */
+    public SseStreamPublisher(LlmHttpTransport transport, Supplier<HttpRequest> request,
+                              SseChunkParser chunkParser) {
+        this.transport = transport;
+        this.request = request;
+        this.chunkParser = chunkParser;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super StreamChunk> subscriber) {
+        SseSubscription subscription = new SseSubscription(subscriber);
+        subscriber.onSubscribe(subscription);
+        subscription.start();
+    }
+
+    private final class SseSubscription implements Flow.Subscription, Flow.Subscriber<List<ByteBuffer>>,
+            SseDecoder.Handler {
+        private final Flow.Subscriber<? super StreamChunk> downstream;
+        private final ConcurrentLinkedQueue<StreamChunk> queue = new ConcurrentLinkedQueue<>();
+        private final AtomicLong requested = new AtomicLong();
+        private final AtomicInteger wip = new AtomicInteger();
+        private final AtomicBoolean awaitingUpstream = new AtomicBoolean();
+        private final SseDecoder decoder = new SseDecoder();
+        private volatile Flow.Subscription upstream;
+        private volatile CompletableFuture<?> exchange;
+        private volatile boolean upstreamDone;
+        private volatile boolean cancelled;
+        private volatile Throwable error;
+        private boolean terminated;
+        // 仅在上游回调线程上访问
+        private StreamChunk terminal;
+        private boolean terminalEmitted;
+
+        SseSubscription(Flow.Subscriber<? super StreamChunk> downstream) {
+            this.downstream = downstream;
+        }
+
+        void start() {
+            if (cancelled) {
+                return;
+            }
+            HttpRequest httpRequest;
+            try {
+                httpRequest = request.get();
+            } catch (RuntimeException e) {
+                onError(e);
+                return;
+            }
+            CompletableFuture<HttpResponse<Flow.Publisher<List<ByteBuffer>>>> future =
+                    transport.sendAsync(httpRequest, info -> info.statusCode() / 100 == 2
+                            ? HttpResponse.BodySubscribers.ofPublisher()
+                            : HttpResponse.BodySubscribers.mapping(
+                                    HttpResponse.BodySubscribers.ofString(StandardCharsets.UTF_8),
+                                    body -> failed(LlmException.httpError(info.statusCode(), body, info.headers()))));
+            exchange = future;
+            future.whenComplete((response, e) -> {
+                if (e != null) {
+                    onError(e);
+                } else if (cancelled) {
+                    response.body().subscribe(new CancellingSubscriber());
+                } else {
+                    response.body().subscribe(this);
+                }
+            });
+            if (cancelled) {
+                future.cancel(true);
+            }
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                onError(new IllegalArgumentException("non-positive subscription request: " + n));
+                return;
+            }
+            requested.getAndUpdate(r -> r + n < 0 ? Long.MAX_VALUE : r + n);
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            if (cancelled) {
+                return;
+            }
+            cancelled = true;
+            Flow.Subscription s = upstream;
+            if (s != null) {
+                s.cancel();
+            }
+            CompletableFuture<?> f = exchange;
+            if (f != null) {
+                f.cancel(true);
+            }
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            upstream = subscription;
+            if (cancelled) {
+                subscription.cancel();
+                return;
+            }
+            drain();
+        }
+
+        @Override
+        public void onNext(List<ByteBuffer> buffers) {
+            for (ByteBuffer buffer : buffers) {
+                decoder.feed(buffer, this);
+            }
+            awaitingUpstream.set(false);
+            drain();
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            if (error == null) {
+                error = throwable;
+            }
+            upstreamDone = true;
+            drain();
+        }
+
+        @Override
+        public void onComplete() {
+            decoder.finish(this);
+            emitTerminal();
+            upstreamDone = true;
+            drain();
+        }
+
+        @Override
+        public void onData(byte[] buf, int off, int len) {
+            try (JsonParser parser = JSON_FACTORY.createParser(buf, off, len)) {
+                StreamChunk chunk = chunkParser.parse(parser);
+                if (chunk == null || terminalEmitted) {
+                    return;
+                }
+                if (chunk.isDone()) {
+                    terminal = terminal == null ? chunk : merge(terminal, chunk);
+                } else {
+                    queue.offer(chunk);
+                }
+            } catch (IOException | RuntimeException e) {
+                logger.error("Error parsing stream chunk: {}", new String(buf, off, len, StandardCharsets.UTF_8), e);
+            }
+        }
+
+        @Override
+        public void onDone() {
+            if (terminal == null && !terminalEmitted) {
+                terminal = new StreamChunk("", true, Map.of(), "stop");
+            }
+            emitTerminal();
+        }
+
+        private void emitTerminal() {
+            if (terminal != null && !terminalEmitted) {
+                terminalEmitted = true;
+                queue.offer(terminal);
+            }
+        }
+
+        private void drain() {
+            if (wip.getAndIncrement() != 0) {
+                return;
+            }
+            int missed = 1;
+            do {
+                if (terminated) {
+                    return;
+                }
+                if (cancelled) {
+                    queue.clear();
+                    return;
+                }
+                if (error != null) {
+                    terminate();
+                    return;
+                }
+                long r = requested.get();
+                long emitted = 0;
+                while (emitted != r) {
+                    if (cancelled) {
+                        queue.clear();
+                        return;
+                    }
+                    StreamChunk chunk = queue.poll();
+                    if (chunk == null) {
+                        break;
+                    }
+                    downstream.onNext(chunk);
+                    emitted++;
+                }
+                if (emitted > 0 && r != Long.MAX_VALUE) {
+                    r = requested.addAndGet(-emitted);
+                }
+                if (queue.isEmpty()) {
+                    if (upstreamDone) {
+                        terminate();
+                        return;
+                    }
+                    Flow.Subscription s = upstream;
+                    if (r > 0 && s != null && awaitingUpstream.compareAndSet(false, true)) {
+                        s.request(1);
+                    }
+                }
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void terminate() {
+            terminated = true;
+            Throwable e = error;
+            if (e != null) {
+                Flow.Subscription s = upstream;
+                if (s != null) {
+                    s.cancel();
+                }
+                downstream.onError(e instanceof CompletionException && e.getCause() != null
+                        ? e.getCause() : e);
+            } else {
+                downstream.onComplete();
+            }
+        }
+    }
+
+    /**
+     * 合并两个结束块：内容按顺序拼接，结束原因取首个非空值，元数据以后到者为准。
+     */
+    private static StreamChunk merge(StreamChunk first, StreamChunk second) {
+        Map<String, Object> metadata = new HashMap<>();
+        if (first.getMetadata() != null) {
+            metadata.putAll(first.getMetadata());
+        }
+        if (second.getMetadata() != null) {
+            metadata.putAll(second.getMetadata());
+        }
+        String finishReason = first.getFinishReason() == null || first.getFinishReason().isEmpty()
+                ? second.getFinishReason() : first.getFinishReason();
+        String content = Objects.toString(first.getContent(), "") + Objects.toString(second.getContent(), "");
+        return new StreamChunk(content, true, metadata, finishReason);
+    }
+
+    private static Flow.Publisher<List<ByteBuffer>> failed(Throwable error) {
+        return subscriber -> {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                }
+
+                @Override
+                public void cancel() {
+                }
+            });
+            subscriber.onError(error);
+        };
+    }
+
+    /**
+     * 订阅在响应到达前已被取消时，用于立即关闭响应体。
+     */
+    private static final class CancellingSubscriber implements Flow.Subscriber<List<ByteBuffer>> {
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            subscription.cancel();
+        }
+
+        @Override
+        public void onNext(List<ByteBuffer> item) {
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+        }
+
+        @Override
+        public void onComplete() {
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package com.lyra.agent.llm;
+
+import java.util.List;
+import java.util.concurrent.Flow;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * {@link Flow.Publisher} 形式流式响应的工具方法。
+ * Reactor 用户可通过 {@code JdkFlowAdapter.flowPublisherToFlux} 将其转换为 Flux。
+ */
+public final class StreamPublishers {
+    private static final int PREFETCH = 16;
+    private static final Object COMPLETE = new Object();
+
+    private StreamPublishers() {
+    }
+
+    /**
+     * 返回一个订阅后立即以指定异常结束的发布者。
+     *
+     * @param error 失败原因
+     * @return 发布者
+     */
+    public static Flow.Publisher<StreamChunk> error(Throwable error) {
+        return subscriber -> {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                }
+
+                @Override
+                public void cancel() {
+                }
+            });
+            subscriber.onError(error);
+        };
+    }
+
+    /**
+     * 返回一个按需依次发出给定响应块后正常结束的发布者，用于回放已缓存的响应。
+     * 响应块在调用 {@code request} 的线程上同步发出。
+     *
+     * @param chunks 响应块
+     * @return 发布者
+     */
+    public static Flow.Publisher<StreamChunk> fromChunks(List<StreamChunk> chunks) {
+        return subscriber -> subscriber.onSubscribe(new Flow.Subscription() {
+            private final AtomicLong requested = new AtomicLong();
+            private final AtomicInteger wip = new AtomicInteger();
+            private volatile boolean cancelled;
+            private int index;
+
+            @Override
+            public void request(long n) {
+                if (n <= 0) {
+                    cancelled = true;
+                    subscriber.onError(new IllegalArgumentException("non-positive subscription request: " + n));
+                    return;
+                }
+                requested.getAndUpdate(r -> r + n < 0 ? Long.MAX_VALUE : r + n);
+                if (wip.getAndIncrement() != 0) {
+                    return;
+                }
+                int missed = 1;
+                do {
+                    long r = requested.get();
+                    long emitted = 0;
+                    while (emitted != r && index < chunks.size() && !cancelled) {
+                        subscriber.onNext(chunks.get(index++));
+                        emitted++;
+                    }
+                    if (cancelled) {
+                        return;
+                    }
+                    if (index == chunks.size()) {
+                        cancelled = true;
+                        subscriber.onComplete();
+                        return;
+                    }
+                    if (emitted > 0) {
+                        requested.addAndGet(-emitted);
+                    }
+                    missed = wip.addAndGet(-missed);
+                } while (missed != 0);
+            }
+
+            @Override
+            public void cancel() {
+                cancelled = true;
+            }
+        });
+    }
+
+    /**
+     * 在调用线程上消费整个流，直到结束。
+     * 响应块由调用线程逐个交给回调，回调处理完成后才会向上游请求下一个块，
+     * 因此慢速回调只会对上游形成背压，而不会阻塞 HTTP I/O 线程。
+     * 回调抛出异常或线程被中断时取消上游流。
+     *
+     * @param publisher     流式响应
+     * @param chunkConsumer 响应块回调
+     * @throws RuntimeException 上游失败时抛出，非运行时异常包装为 {@link LlmException}
+     */
+    public static void consume(Flow.Publisher<StreamChunk> publisher, Consumer<StreamChunk> chunkConsumer) {
+        consumeUntil(publisher, chunk -> {
+            chunkConsumer.accept(chunk);
+            return true;
+        });
+    }
+
+    /**
+     * 在调用线程上消费流，直到结束或回调返回 false。
+     * 回调返回 false 时取消上游流并立即返回，HTTP 连接随之关闭，服务端不再生成后续 token。
+     * 其余行为与 {@link #consume} 相同。
+     *
+     * @param publisher     流式响应
+     * @param chunkConsumer 响应块回调，返回是否继续接收
+     * @return 流是否因回调返回 false 被提前取消
+     * @throws RuntimeException 上游失败时抛出，非运行时异常包装为 {@link LlmException}
+     */
+    public static boolean consumeUntil(Flow.Publisher<StreamChunk> publisher, Predicate<StreamChunk> chunkConsumer) {
+        LinkedBlockingQueue<Object> signals = new LinkedBlockingQueue<>();
+        AtomicReference<Flow.Subscription> upstream = new AtomicReference<>();
+        publisher.subscribe(new Flow.Subscriber<StreamChunk>() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                upstream.set(subscription);
+                subscription.request(PREFETCH);
+            }
+
+            @Override
+            public void onNext(StreamChunk item) {
+                signals.offer(item);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                signals.offer(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                signals.offer(COMPLETE);
+            }
+        });
+        try {
+            while (true) {
+                Object signal = signals.take();
+                if (signal == COMPLETE) {
+                    return false;
+                }
+                if (signal instanceof Throwable t) {
+                    if (t instanceof RuntimeException re) {
+                        throw re;
+                    }
+                    throw new LlmException(LlmException.describe(t), t);
+                }
+                boolean more;
+                try {
+                    more = chunkConsumer.test((StreamChunk) signal);
+                } catch (RuntimeException e) {
+                    upstream.get().cancel();
+                    throw e;
+                }
+                if (!more) {
+                    upstream.get().cancel();
+                    return true;
+                }
+                upstream.get().request(1);
+            }
+        } catch (InterruptedException e) {
+            Flow.Subscription subscription = upstream.get();
+            if (subscription != null) {
+                subscription.cancel();
+            }
+            Thread.currentThread().interrupt();
+            throw new LlmException("Interrupted while streaming", e);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.lyra.agent.llm;
+
+import com.lyra.agent.agent.Message;
+import com.lyra.agent.tokenizer.ContextBudget;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+
+/**
+ * 上下文预算装饰器。
+ * <p>
+ * 发送前用本地分词器计算 prompt 的 token 数（消息与原生工具定义），超过 {@link ContextBudget#promptLimit} 时直接以 400 失败，
+ * 不再把注定被服务端以上下文超长拒绝的请求发出去。
+ * <p>
+ * 指标：{@code lyra.llm.prompt.tokens}（prompt token 数分布）、{@code lyra.llm.prompt.rejected}（超出预算被拒绝的请求数）。
+ */
+public class TokenBudgetLLMProvider extends DelegatingLLMProvider {
+    private final ContextBudget budget;
+    private final DistributionSummary promptTokens;
+    private final Counter rejected;
+
+    /**
+     * 构造函数。
+     *
+     * @param delegate   被装饰的提供者
+     * @param budget     上下文预算
+     * @param providerId 提供者标识，作为指标标签
+     * @param registry   指标注册表
+     */
+    public TokenBudgetLLMProvider(LLMProvider delegate, ContextBudget budget, String providerId, MeterRegistry registry) {
+        super(delegate);
+        this.budget = budget;
+        this.promptTokens = DistributionSummary.builder("lyra.llm.prompt.tokens").baseUnit("tokens")
+                .tag("provider", providerId).register(registry);
+        this.rejected = Counter.builder("lyra.llm.prompt.rejected").tag("provider", providerId).register(registry);
+    }
+
+    /**
+     * 获取上下文预算。
+     *
+     * @return 上下文预算
+     */
+    public ContextBudget getBudget() {
+        return budget;
+    }
+
+    @Override
+    public String generate(String prompt) {
+        LlmException error = check(budget.getTokenizer().count(prompt), null);
+        return error != null ? "Error calling LLM: " + error.getMessage() : delegate.generate(prompt);
+    }
+
+    @Override
+    public CompletableFuture<String> generateAsync(String prompt) {
+        LlmException error = check(budget.getTokenizer().count(prompt), null);
+        return error != null ? CompletableFuture.failedFuture(error) : delegate.generateAsync(prompt);
+    }
+
+    @Override
+    public Flow.Publisher<StreamChunk> generateStream(String prompt) {
+        LlmException error = check(budget.getTokenizer().count(prompt), null);
+        return error != null ? StreamPublishers.error(error) : delegate.generateStream(prompt);
+    }
+
+    @Override
+    public LlmResponse chat(List<Message> messages, Map<String, Object> options) {
+        LlmException error = check(budget.getTokenizer().count(messages) + budget.toolTokens(options), options);
+        return error != null
+                ? new LlmResponse("Error calling LLM: " + error.getMessage(), Map.of(), "error")
+                : delegate.chat(messages, options);
+    }
+
+    @Override
+    public CompletableFuture<LlmResponse> chatAsync(List<Message> messages, Map<String, Object> options) {
+        LlmException error = check(budget.getTokenizer().count(messages) + budget.toolTokens(options), options);
+        return error != null ? CompletableFuture.failedFuture(error) : delegate.chatAsync(messages, options);
+    }
+
+    @Override
+    public Flow.Publisher<StreamChunk> streamChat(List<Message> messages, Map<String, Object> options) {
+        LlmException error = check(budget.getTokenizer().count(messages) + budget.toolTokens(options), options);
+        return error != null ? StreamPublishers.error(error) : delegate.streamChat(messages, options);
+    }
+
+    private LlmException check(int tokens, Map<String, Object> options) {
+        promptTokens.record(tokens);
+        int limit = budget.promptLimit(options);
+        if (tokens <= limit) {
+            return null;
+        }
+        rejected.increment();
+        return new LlmException("Prompt of " + tokens + " tokens exceeds the context budget of " + limit
+                + " tokens for model " + getModelName(), 400, null);
+    }
+}
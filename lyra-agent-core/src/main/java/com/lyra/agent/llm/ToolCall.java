@@ -0,0 +1,113 @@
+package com.lyra.agent.llm;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 模型返回的一次原生工具调用。
+ * <p>
+ * arguments 为模型生成的 JSON 字符串。流式响应中同一调用按 index 分多块到达，
+ * 首块携带 id 与 name，后续块只携带 arguments 片段，由 {@link #merge} 拼接。
+ */
+public final class ToolCall {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final int index;
+    private final String id;
+    private final String name;
+    private final String arguments;
+
+    /**
+     * 构造函数。
+     *
+     * @param index     调用在本次响应中的序号
+     * @param id        调用 ID，回传工具结果时使用
+     * @param name      工具名称
+     * @param arguments JSON 格式的参数
+     */
+    public ToolCall(int index, String id, String name, String arguments) {
+        this.index = index;
+        this.id = id;
+        this.name = name;
+        this.arguments = arguments;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getArguments() {
+        return arguments;
+    }
+
+    /**
+     * 将参数解析为映射，参数为空时返回空映射。
+     *
+     * @return 参数映射
+     * @throws IllegalArgumentException 参数不是 JSON 对象
+     */
+    public Map<String, Object> parseArguments() {
+        if (arguments == null || arguments.isBlank()) {
+            return Map.of();
+        }
+        try {
+            Map<String, Object> parsed = MAPPER.readValue(arguments, new TypeReference<Map<String, Object>>() { });
+            return parsed != null ? parsed : Map.of();
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Malformed arguments for tool " + name + ": " + arguments, e);
+        }
+    }
+
+    /**
+     * 将流式响应块中的调用片段合并到已收到的调用中。
+     *
+     * @param calls  已收到的调用，按 index 排序
+     * @param deltas 本块的调用片段
+     */
+    public static void merge(TreeMap<Integer, ToolCall> calls, List<ToolCall> deltas) {
+        for (ToolCall delta : deltas) {
+            calls.merge(delta.index, delta, (current, next) -> new ToolCall(current.index,
+                    next.id != null && !next.id.isEmpty() ? next.id : current.id,
+                    next.name != null && !next.name.isEmpty() ? next.name : current.name,
+                    (current.arguments != null ? current.arguments : "") + (next.arguments != null ? next.arguments : "")));
+        }
+    }
+
+    /**
+     * 从响应元数据中取出工具调用。
+     *
+     * @param metadata 响应或响应块的元数据，可为 null
+     * @return 工具调用，没有时为空列表
+     */
+    public static List<ToolCall> from(Map<String, Object> metadata) {
+        if (metadata == null || !(metadata.get(LlmResponse.TOOL_CALLS) instanceof List<?> list)) {
+            return List.of();
+        }
+        List<ToolCall> calls = new ArrayList<>(list.size());
+        for (Object item : list) {
+            if (item instanceof ToolCall call) {
+                calls.add(call);
+            }
+        }
+        return calls;
+    }
+
+    @Override
+    public String toString() {
+        return name + "#" + id + arguments;
+    }
+}
@@ -23,17 +23,32 @@ public class InMemoryVectorStore implements VectorStore {
 
     @Override
     public void upsert(String id, String text, Map<String, Object> metadata) {
-        List<Double> vector = embeddingModel.embed(text);
+        float[] vector = embeddingModel.embed(text);
         store.put(id, new VectorEntry(id, text, metadata, vector));
     }
 
+    @Override
+    public void upsertAll(List<VectorDocument> documents) {
+        List<String> texts = new ArrayList<>(documents.size());
+        for (VectorDocument document : documents) {
+            texts.add(document.getText());
+        }
+        List<float[]> vectors = embeddingModel.embedBatch(texts);
+        for (int i = 0; i < documents.size(); i++) {
+            VectorDocument document = documents.get(i);
+            store.put(document.getId(), new VectorEntry(document.getId(), document.getText(), document.getMetadata(),
+                    vectors.get(i)));
+        }
+    }
+
     @Override
     public List<VectorSearchResult> similaritySearch(String text, int k) {
-        List<Double> queryVector = embeddingModel.embed(text);
+        float[] queryVector = embeddingModel.embed(text);
+        double queryNorm = norm(queryVector);
 
         return store.values().stream()
                 .map(entry -> {
-                    double score = cosineSimilarity(queryVector, entry.vector);
+                    double score = cosineSimilarity(queryVector, queryNorm, entry);
                     return new VectorSearchResult(entry.id, entry.text, entry.metadata, score);
                 })
                 .sorted(Comparator.comparingDouble(VectorSearchResult::getScore).reversed())
@@ -41,35 +56,43 @@ public class InMemoryVectorStore implements VectorStore {
                 .collect(Collectors.toList());
     }
 
-    private double cosineSimilarity(List<Double> v1, List<Double> v2) {
-        if (v1.size() != v2.size()) {
+    private static double cosineSimilarity(float[] query, double queryNorm, VectorEntry entry) {
+        float[] vector = entry.vector;
+        if (query.length != vector.length) {
             throw new IllegalArgumentException("Vector lengths do not match");
         }
+        if (queryNorm == 0 || entry.norm == 0) {
+            return 0.0;
+        }
         double dotProduct = 0.0;
-        double normA = 0.0;
-        double normB = 0.0;
-        for (int i = 0; i < v1.size(); i++) {
-            dotProduct += v1.get(i) * v2.get(i);
-            normA += Math.pow(v1.get(i), 2);
-            normB += Math.pow(v2.get(i), 2);
+        for (int i = 0; i < query.length; i++) {
+            dotProduct += (double) query[i] * vector[i];
         }
-        if (normA == 0 || normB == 0) {
-            return 0.0;
+        return dotProduct / (queryNorm * entry.norm);
+    }
+
+    private static double norm(float[] vector) {
+        double sum = 0.0;
+        for (float v : vector) {
+            sum += (double) v * v;
         }
-        return dotProduct / (Math.sqrt(normA) * Math.sqrt(normB));
+        return Math.sqrt(sum);
     }
 
     private static class VectorEntry {
         final String id;
         final String text;
         final Map<String, Object> metadata;
-        final List<Double> vector;
+        final float[] vector;
+        // 写入时计算一次范数，检索时只需点积
+        final double norm;
 
-        VectorEntry(String id, String text, Map<String, Object> metadata, List<Double> vector) {
+        VectorEntry(String id, String text, Map<String, Object> metadata, float[] vector) {
             this.id = id;
             this.text = text;
             this.metadata = metadata;
             this.vector = vector;
+            this.norm = norm(vector);
         }
     }
 }
@@ -20,7 +20,6 @@ import io.milvus.param.dml.SearchParam;
 import io.milvus.response.SearchResultsWrapper;
 
 import java.util.*;
-import java.util.stream.Collectors;
 
 /**
  * Milvus 向量存储实现。
@@ -104,17 +103,35 @@ public class MilvusVectorStore implements VectorStore {
 
     @Override
     public void upsert(String id, String text, Map<String, Object> metadata) {
-        List<Double> vector = embeddingModel.embed(text);
-        List<Float> floatVector = vector.stream().map(Double::floatValue).collect(Collectors.toList());
+        upsertAll(Collections.singletonList(new VectorDocument(id, text, metadata)));
+    }
+
+    @Override
+    public void upsertAll(List<VectorDocument> documents) {
+        if (documents.isEmpty()) {
+            return;
+        }
+        List<String> ids = new ArrayList<>(documents.size());
+        List<String> texts = new ArrayList<>(documents.size());
+        List<JsonObject> metadata = new ArrayList<>(documents.size());
+        for (VectorDocument document : documents) {
+            ids.add(document.getId());
+            texts.add(document.getText());
+            metadata.add(gson.toJsonTree(document.getMetadata()).getAsJsonObject());
+        }
+        List<List<Float>> floatVectors = new ArrayList<>(documents.size());
+        for (float[] vector : embeddingModel.embedBatch(texts)) {
+            floatVectors.add(toList(vector));
+        }
         
         // Use InsertParam (Note: upsert is supported in newer Milvus versions, here using insert for compatibility)
         // In production, might need delete then insert if ID exists, or use UpsertParam if available in SDK 2.4+
         
         List<InsertParam.Field> fields = new ArrayList<>();
-        fields.add(new InsertParam.Field(ID_FIELD, Collections.singletonList(id)));
-        fields.add(new InsertParam.Field(TEXT_FIELD, Collections.singletonList(text)));
-        fields.add(new InsertParam.Field(METADATA_FIELD, Collections.singletonList(gson.toJsonTree(metadata).getAsJsonObject())));
-        fields.add(new InsertParam.Field(VECTOR_FIELD, Collections.singletonList(floatVector)));
+        fields.add(new InsertParam.Field(ID_FIELD, ids));
+        fields.add(new InsertParam.Field(TEXT_FIELD, texts));
+        fields.add(new InsertParam.Field(METADATA_FIELD, metadata));
+        fields.add(new InsertParam.Field(VECTOR_FIELD, floatVectors));
 
         InsertParam insertParam = InsertParam.newBuilder()
                 .withCollectionName(collectionName)
@@ -126,8 +143,7 @@ public class MilvusVectorStore implements VectorStore {
 
     @Override
     public List<VectorSearchResult> similaritySearch(String text, int k) {
-        List<Double> vector = embeddingModel.embed(text);
-        List<Float> floatVector = vector.stream().map(Double::floatValue).collect(Collectors.toList());
+        List<Float> floatVector = toList(embeddingModel.embed(text));
 
         SearchParam searchParam = SearchParam.newBuilder()
                 .withCollectionName(collectionName)
@@ -161,4 +177,15 @@ public class MilvusVectorStore implements VectorStore {
         
         return results;
     }
+
+    /**
+     * Milvus SDK 只接受 List&lt;Float&gt;，在调用边界一次性装箱。
+     */
+    private static List<Float> toList(float[] vector) {
+        List<Float> list = new ArrayList<>(vector.length);
+        for (float v : vector) {
+            list.add(v);
+        }
+        return list;
+    }
 }
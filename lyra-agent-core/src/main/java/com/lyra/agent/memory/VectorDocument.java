@@ -0,0 +1,30 @@
+package com.lyra.agent.memory;
+
+import java.util.Map;
+
+/**
+ * 待写入向量存储的文档。
+ */
+public final class VectorDocument {
+    private final String id;
+    private final String text;
+    private final Map<String, Object> metadata;
+
+    public VectorDocument(String id, String text, Map<String, Object> metadata) {
+        this.id = id;
+        this.text = text;
+        this.metadata = metadata;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public Map<String, Object> getMetadata() {
+        return metadata;
+    }
+}
@@ -17,6 +17,17 @@ public interface VectorStore {
      */
     void upsert(String id, String text, Map<String, Object> metadata);
 
+    /**
+     * 批量插入或更新向量记录。默认逐条调用 {@link #upsert}，实现应覆盖为一次批量嵌入。
+     *
+     * @param documents 文档列表
+     */
+    default void upsertAll(List<VectorDocument> documents) {
+        for (VectorDocument document : documents) {
+            upsert(document.getId(), document.getText(), document.getMetadata());
+        }
+    }
+
     /**
      * 相似度搜索。
      *
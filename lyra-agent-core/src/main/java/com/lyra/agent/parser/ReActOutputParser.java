@@ -1,16 +1,15 @@
 package com.lyra.agent.parser;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.lyra.agent.agent.ParsedAction;
-import java.util.Map;
-import java.util.Collections;
 
 /**
  * 将 LLM 文本输出解析为结构化动作。
- * 期望格式包含 "Final Answer:" 或包含 "Action:" 与 "Input:" 两段。
+ * 期望格式包含 "Final Answer:" 或包含 "Action:" 与 "Input:"（或 "Action Input:"）两段，以先出现者为准：
+ * 动作之后的 "Final Answer:" 是模型在拿到观察结果之前编造的答案，会被忽略。
+ * 只有 "Action:" 而没有输入段时，动作以空输入执行（适用于无参数工具），不再把整段文本当作最终答案。
+ * 一次性解析完整文本；流式输出请直接使用 {@link StreamingReActParser}。
  */
 public class ReActOutputParser {
-    private static final ObjectMapper objectMapper = new ObjectMapper();
 
     /**
      * 解析文本，返回最终答案或下一步动作。
@@ -19,33 +18,9 @@ public class ReActOutputParser {
      * @return 解析后的动作对象
      */
     public static ParsedAction parse(String text) {
-        String lt = text == null ? "" : text.trim();
-        int fi = lt.indexOf("Final Answer:");
-        if (fi >= 0) {
-            String ans = lt.substring(fi + "Final Answer:".length()).trim();
-            return new ParsedAction(ans);
-        }
-        int ai = lt.indexOf("Action:");
-        int ii = lt.indexOf("Input:");
-        
-        if (ai < 0 || ii < 0) {
-             // 如果无法解析出动作，且文本不为空，将其视为最终答案
-             if (!lt.isEmpty()) {
-                 return new ParsedAction(lt);
-             }
-             // 文本为空或无法处理的情况
-             return new ParsedAction("thought", "unknown", Collections.emptyMap());
-        }
-
-        String action = lt.substring(ai + "Action:".length(), ii).trim();
-        String inputJson = lt.substring(ii + "Input:".length()).trim();
-        
-        Map<String, Object> input;
-        try {
-            input = objectMapper.readValue(inputJson, Map.class);
-        } catch (Exception e) {
-            input = Collections.emptyMap();
-        }
-        return new ParsedAction("thought", action, input);
+        StreamingReActParser parser = new StreamingReActParser();
+        parser.feed(text);
+        parser.finish();
+        return parser.result();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,48 @@
+package com.lyra.agent.parser;
+
+import java.util.Map;
+
+/**
+ * {@link StreamingReActParser} 的解析事件回调，在模型仍在生成时按到达顺序触发。
+ * 所有方法默认不做任何事，按需覆盖。
+ */
+public interface ReActParseListener {
+    /**
+     * Thought 文本的新增片段。
+     *
+     * @param delta 新增文本
+     */
+    default void onThoughtDelta(String delta) {
+    }
+
+    /**
+     * 动作名称已完整（所在行结束或遇到 Action Input）。
+     *
+     * @param name 动作名称
+     */
+    default void onActionName(String name) {
+    }
+
+    /**
+     * 动作输入已完整（JSON 已闭合，非 JSON 输入到行尾），动作可以执行。
+     *
+     * @param name  动作名称
+     * @param input 动作输入参数，无法解析为 JSON 对象时为空映射
+     */
+    default void onActionInput(String name, Map<String, Object> input) {
+    }
+
+    /**
+     * 遇到 Final Answer 标记，之后的文本属于最终答案。
+     */
+    default void onFinalAnswerStart() {
+    }
+
+    /**
+     * 最终答案文本的新增片段。
+     *
+     * @param delta 新增文本
+     */
+    default void onFinalAnswerDelta(String delta) {
+    }
+}
@@ -0,0 +1,383 @@
+package com.lyra.agent.parser;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.lyra.agent.agent.ParsedAction;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 增量 ReAct 输出解析器：按到达顺序喂入流式响应块，在生成过程中识别 Thought、Action、Action Input 与 Final Answer，
+ * 并通过 {@link ReActParseListener} 发出事件。
+ * <p>
+ * 每个字符只处理一次，标记可以跨响应块；可能是标记开头的文本先暂存，确认不是标记后再作为内容发出。
+ * 标记须位于行首或空白之后，最终答案中只有行首的下一轮标记（Observation、Question、Thought、Action）才会结束答案。
+ * 动作输入按 JSON 括号配对识别结束（字符串内的括号不计），非 JSON 输入到行尾结束，闭合时解析一次。
+ * 一个动作之后可以在行首紧接下一个 Action，多个动作属于同一步。
+ * 动作之后出现其他内容，或最终答案被下一轮标记结束，即为完成，之后的输入被忽略。
+ * <p>
+ * 非线程安全，每次模型输出使用一个实例。
+ */
+public class StreamingReActParser {
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static final TypeReference<Map<String, Object>> MAP_TYPE = new TypeReference<>() { };
+
+    private static final String THOUGHT = "Thought:";
+    private static final String ACTION = "Action:";
+    private static final String ACTION_INPUT = "Action Input:";
+    private static final String INPUT = "Input:";
+    private static final String FINAL_ANSWER = "Final Answer:";
+    private static final String OBSERVATION = "Observation:";
+    private static final String QUESTION = "Question:";
+
+    private static final String[] THOUGHT_MARKERS = {THOUGHT, ACTION, FINAL_ANSWER};
+    private static final String[] ACTION_MARKERS = {ACTION_INPUT, INPUT};
+    private static final String[] NEXT_TURN_MARKERS = {OBSERVATION, QUESTION, THOUGHT, ACTION};
+    private static final String[] NEXT_ACTION_MARKERS = {ACTION};
+
+    /** NEXT：一个动作已完整，等待同一步的下一个动作。 */
+    private enum State { THOUGHT, ACTION, INPUT, NEXT, FINAL, DONE }
+
+    private final ReActParseListener listener;
+    private final StringBuilder thought = new StringBuilder();
+    private final StringBuilder name = new StringBuilder();
+    private final StringBuilder input = new StringBuilder();
+    private final StringBuilder answer = new StringBuilder();
+    private final StringBuilder pending = new StringBuilder();
+    private final StringBuilder delta = new StringBuilder();
+    private State state = State.THOUGHT;
+    private int received;
+    private int pendingStart;
+    private int end = -1;
+    private boolean lineStart = true;
+    private boolean boundary = true;
+    private boolean skipSpace = true;
+    private boolean nameKnown;
+    private boolean finalAnswer;
+    private boolean inputStarted;
+    private boolean inputJson;
+    private boolean inString;
+    private boolean escaped;
+    private int depth;
+    private final List<ParsedAction> actions = new ArrayList<>();
+
+    /**
+     * 构造不发出事件的解析器。
+     */
+    public StreamingReActParser() {
+        this(new ReActParseListener() { });
+    }
+
+    /**
+     * 构造函数。
+     *
+     * @param listener 解析事件回调，在调用 {@link #feed} 或 {@link #finish} 的线程上触发
+     */
+    public StreamingReActParser(ReActParseListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * 喂入一段新到达的输出。完成后再喂入的文本被忽略。
+     *
+     * @param text 新增文本，可为 null
+     */
+    public void feed(CharSequence text) {
+        if (text == null) {
+            return;
+        }
+        for (int i = 0; i < text.length() && state != State.DONE; i++) {
+            accept(text.charAt(i), received++);
+        }
+        flushDelta();
+    }
+
+    /**
+     * 输出结束。暂存的文本作为内容处理，缺少输入的动作以空输入完成，未闭合的 JSON 输入按已收到的部分解析。
+     */
+    public void finish() {
+        if (state == State.DONE) {
+            return;
+        }
+        String rest = pending.toString();
+        pending.setLength(0);
+        for (int i = 0; i < rest.length(); i++) {
+            content(rest.charAt(i));
+        }
+        flushDelta();
+        if (state == State.ACTION) {
+            completeName();
+            completeInput(received);
+        } else if (state == State.INPUT) {
+            completeInput(received);
+        }
+        state = State.DONE;
+    }
+
+    /**
+     * 是否已解析到一步的全部动作，或最终答案已被下一轮标记结束。完成后即可取消上游流。
+     */
+    public boolean isComplete() {
+        return state == State.DONE;
+    }
+
+    /**
+     * 有效输出的长度，之后的内容都可丢弃。
+     *
+     * @return 最后一个完整动作或最终答案结束处的长度，尚无时为 -1
+     */
+    public int getEnd() {
+        return end;
+    }
+
+    /**
+     * 目前为止的 Thought 文本。
+     */
+    public String getThought() {
+        return thought.toString().trim();
+    }
+
+    /**
+     * 解析结果，在 {@link #finish} 之后或 {@link #isComplete} 为真时调用。
+     * 既无动作也无最终答案标记时，整段 Thought 文本视为最终答案；输出为空时返回名为 unknown 的动作。
+     *
+     * @return 最终答案或下一步动作
+     */
+    public ParsedAction result() {
+        if (finalAnswer) {
+            return new ParsedAction(answer.toString().trim());
+        }
+        if (actions.size() == 1) {
+            return new ParsedAction(getThought(), actions.get(0).getActionName(), actions.get(0).getActionInput());
+        }
+        if (!actions.isEmpty()) {
+            return new ParsedAction(getThought(), actions);
+        }
+        String text = getThought();
+        if (!text.isEmpty()) {
+            return new ParsedAction(text);
+        }
+        return new ParsedAction("thought", "unknown", Collections.emptyMap());
+    }
+
+    private void accept(char c, int position) {
+        if (state == State.INPUT) {
+            input(c, position);
+            return;
+        }
+        String[] markers = markers();
+        if (pending.length() == 0) {
+            if (!(state == State.FINAL || state == State.NEXT ? lineStart : boundary) || !startsMarker(markers, c)) {
+                content(c);
+                return;
+            }
+            pendingStart = position;
+        }
+        pending.append(c);
+        boolean prefix = false;
+        for (String marker : markers) {
+            if (marker.length() == pending.length() && marker.contentEquals(pending)) {
+                pending.setLength(0);
+                marker(marker, pendingStart);
+                return;
+            }
+            if (marker.length() > pending.length() && marker.startsWith(pending.toString())) {
+                prefix = true;
+            }
+        }
+        if (prefix) {
+            return;
+        }
+        // 不是标记：首字符作为内容，其余字符重新扫描
+        String held = pending.toString();
+        int start = pendingStart;
+        pending.setLength(0);
+        content(held.charAt(0));
+        for (int i = 1; i < held.length() && state != State.DONE; i++) {
+            accept(held.charAt(i), start + i);
+        }
+    }
+
+    private String[] markers() {
+        switch (state) {
+            case THOUGHT:
+                return THOUGHT_MARKERS;
+            case ACTION:
+                return ACTION_MARKERS;
+            case FINAL:
+                return NEXT_TURN_MARKERS;
+            case NEXT:
+                return NEXT_ACTION_MARKERS;
+            default:
+                return new String[0];
+        }
+    }
+
+    private static boolean startsMarker(String[] markers, char c) {
+        for (String marker : markers) {
+            if (marker.charAt(0) == c) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void marker(String marker, int at) {
+        flushDelta();
+        switch (state) {
+            case THOUGHT:
+                if (ACTION.equals(marker)) {
+                    state = State.ACTION;
+                } else if (FINAL_ANSWER.equals(marker)) {
+                    state = State.FINAL;
+                    finalAnswer = true;
+                    listener.onFinalAnswerStart();
+                }
+                break;
+            case ACTION:
+                completeName();
+                state = State.INPUT;
+                break;
+            case NEXT:
+                resetAction();
+                state = State.ACTION;
+                break;
+            case FINAL:
+                state = State.DONE;
+                end = at;
+                break;
+            default:
+                break;
+        }
+        skipSpace = true;
+        lineStart = false;
+        boundary = false;
+    }
+
+    private void content(char c) {
+        boolean whitespace = Character.isWhitespace(c);
+        if (c == '\n') {
+            lineStart = true;
+        } else if (!whitespace) {
+            lineStart = false;
+        }
+        boundary = whitespace;
+        if (skipSpace && whitespace) {
+            return;
+        }
+        skipSpace = false;
+        switch (state) {
+            case THOUGHT:
+                thought.append(c);
+                delta.append(c);
+                break;
+            case ACTION:
+                if (c == '\n') {
+                    completeName();
+                } else if (!nameKnown) {
+                    name.append(c);
+                }
+                break;
+            case NEXT:
+                // 动作之后不是下一个动作，本步结束
+                state = State.DONE;
+                break;
+            case FINAL:
+                answer.append(c);
+                delta.append(c);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void input(char c, int position) {
+        if (!inputStarted) {
+            if (Character.isWhitespace(c)) {
+                return;
+            }
+            inputStarted = true;
+            inputJson = c == '{' || c == '[';
+        }
+        if (!inputJson) {
+            if (c == '\n') {
+                completeInput(position);
+            } else {
+                input.append(c);
+            }
+            return;
+        }
+        input.append(c);
+        if (inString) {
+            if (escaped) {
+                escaped = false;
+            } else if (c == '\\') {
+                escaped = true;
+            } else if (c == '"') {
+                inString = false;
+            }
+        } else if (c == '"') {
+            inString = true;
+        } else if (c == '{' || c == '[') {
+            depth++;
+        } else if ((c == '}' || c == ']') && --depth == 0) {
+            completeInput(position + 1);
+        }
+    }
+
+    private void completeName() {
+        if (!nameKnown) {
+            nameKnown = true;
+            listener.onActionName(name.toString().trim());
+        }
+    }
+
+    private void completeInput(int at) {
+        Map<String, Object> actionInput = parseInput(input.toString().trim());
+        actions.add(new ParsedAction(getThought(), name.toString().trim(), actionInput));
+        state = State.NEXT;
+        end = at;
+        skipSpace = true;
+        lineStart = input.length() == 0 || !inputJson;
+        listener.onActionInput(name.toString().trim(), actionInput);
+    }
+
+    private void resetAction() {
+        name.setLength(0);
+        input.setLength(0);
+        nameKnown = false;
+        inputStarted = false;
+        inputJson = false;
+        inString = false;
+        escaped = false;
+        depth = 0;
+    }
+
+    private static Map<String, Object> parseInput(String json) {
+        if (json.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        try {
+            Map<String, Object> parsed = objectMapper.readValue(json, MAP_TYPE);
+            return parsed != null ? parsed : Collections.emptyMap();
+        } catch (Exception e) {
+            return Collections.emptyMap();
+        }
+    }
+
+    private void flushDelta() {
+        if (delta.length() == 0) {
+            return;
+        }
+        String text = delta.toString();
+        delta.setLength(0);
+        if (state == State.FINAL) {
+            listener.onFinalAnswerDelta(text);
+        } else {
+            listener.onThoughtDelta(text);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.lyra.agent.tokenizer;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 未配置词表时使用的近似计数器。
+ * <p>
+ * 与 {@link BpeTokenizer} 使用相同的预切分正则，每个片段按 ASCII 字符每 4 个计 1 个 token、
+ * 非 ASCII 字符（如中文）每个计 1 个 token 估算。对英文与中文文本的估算值通常略高于实际值，
+ * 用于上下文预算时偏保守。
+ */
+public class ApproximateTokenizer implements Tokenizer {
+    private final String encoding;
+    private final Pattern pattern;
+
+    /**
+     * 构造函数。
+     *
+     * @param encoding 近似的编码名称，决定预切分正则
+     */
+    public ApproximateTokenizer(String encoding) {
+        this.encoding = encoding;
+        this.pattern = Pattern.compile(BpeTokenizer.patternFor(encoding), Pattern.UNICODE_CHARACTER_CLASS);
+    }
+
+    @Override
+    public String getEncoding() {
+        return encoding;
+    }
+
+    @Override
+    public int count(String text) {
+        if (text == null || text.isEmpty()) {
+            return 0;
+        }
+        int count = 0;
+        Matcher matcher = pattern.matcher(text);
+        while (matcher.find()) {
+            int ascii = 0;
+            int other = 0;
+            for (int i = matcher.start(); i < matcher.end(); i++) {
+                char c = text.charAt(i);
+                if (c < 0x80) {
+                    ascii++;
+                } else if (!Character.isLowSurrogate(c)) {
+                    other++;
+                }
+            }
+            count += (ascii + 3) / 4 + other;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,220 @@
+package com.lyra.agent.tokenizer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 与 tiktoken 兼容的字节级 BPE 分词器。
+ * <p>
+ * 词表使用 tiktoken 文件格式：每行 "base64(字节序列) 序号"，序号即合并优先级。
+ * 文本先按编码对应的正则切分为片段，整段在词表中时直接取其序号，否则从单字节开始反复合并序号最小的相邻对。
+ * 特殊 token（如 {@code <|endoftext|>}）按普通文本编码，与 tiktoken 的 {@code encode_ordinary} 一致。
+ * <p>
+ * 常见片段的编码结果缓存在有界表中，同一会话反复计数时主要开销只剩正则切分。
+ */
+public class BpeTokenizer implements Tokenizer {
+    /** cl100k_base 的预切分正则。 */
+    public static final String CL100K_PATTERN =
+            "(?i:'s|'t|'re|'ve|'m|'ll|'d)|[^\\r\\n\\p{L}\\p{N}]?\\p{L}+|\\p{N}{1,3}| ?[^\\s\\p{L}\\p{N}]+[\\r\\n]*"
+                    + "|\\s*[\\r\\n]+|\\s+(?!\\S)|\\s+";
+    /** o200k_base 的预切分正则。 */
+    public static final String O200K_PATTERN =
+            "[^\\r\\n\\p{L}\\p{N}]?[\\p{Lu}\\p{Lt}\\p{Lm}\\p{Lo}\\p{M}]*[\\p{Ll}\\p{Lm}\\p{Lo}\\p{M}]+(?i:'s|'t|'re|'ve|'m|'ll|'d)?"
+                    + "|[^\\r\\n\\p{L}\\p{N}]?[\\p{Lu}\\p{Lt}\\p{Lm}\\p{Lo}\\p{M}]+[\\p{Ll}\\p{Lm}\\p{Lo}\\p{M}]*(?i:'s|'t|'re|'ve|'m|'ll|'d)?"
+                    + "|\\p{N}{1,3}| ?[^\\s\\p{L}\\p{N}]+[\\r\\n/]*|\\s*[\\r\\n]+|\\s+(?!\\S)|\\s+";
+
+    private static final int PIECE_CACHE_SIZE = 65536;
+
+    private final String encoding;
+    private final Pattern pattern;
+    // 键为字节序列按 ISO-8859-1 逐字节映射得到的字符串，便于哈希与截取
+    private final Map<String, Integer> ranks;
+    private final String[] tokens;
+    private final ConcurrentHashMap<String, int[]> pieceCache = new ConcurrentHashMap<>();
+
+    /**
+     * 构造函数。
+     *
+     * @param encoding 编码名称
+     * @param ranks    字节序列（ISO-8859-1 字符串）到序号的映射
+     * @param pattern  预切分正则
+     */
+    public BpeTokenizer(String encoding, Map<String, Integer> ranks, String pattern) {
+        this.encoding = encoding;
+        this.ranks = ranks;
+        this.pattern = Pattern.compile(pattern, Pattern.UNICODE_CHARACTER_CLASS);
+        int max = ranks.values().stream().mapToInt(Integer::intValue).max().orElse(-1);
+        this.tokens = new String[max + 1];
+        ranks.forEach((bytes, rank) -> tokens[rank] = bytes);
+    }
+
+    /**
+     * 从 tiktoken 格式的词表加载分词器。
+     *
+     * @param encoding 编码名称，决定预切分正则
+     * @param in       词表输入流，读取后不关闭
+     * @return 分词器
+     * @throws IOException 读取失败或格式错误
+     */
+    public static BpeTokenizer load(String encoding, InputStream in) throws IOException {
+        Map<String, Integer> ranks = new HashMap<>(1 << 18);
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.US_ASCII));
+        Base64.Decoder decoder = Base64.getDecoder();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.isBlank()) {
+                continue;
+            }
+            int space = line.indexOf(' ');
+            if (space < 0) {
+                throw new IOException("Malformed vocabulary line: " + line);
+            }
+            byte[] bytes = decoder.decode(line.substring(0, space));
+            ranks.put(new String(bytes, StandardCharsets.ISO_8859_1), Integer.parseInt(line.substring(space + 1).trim()));
+        }
+        return new BpeTokenizer(encoding, ranks, patternFor(encoding));
+    }
+
+    /**
+     * 编码对应的预切分正则，未知编码按 cl100k_base 处理。
+     *
+     * @param encoding 编码名称
+     * @return 正则
+     */
+    public static String patternFor(String encoding) {
+        return "o200k_base".equals(encoding) ? O200K_PATTERN : CL100K_PATTERN;
+    }
+
+    @Override
+    public String getEncoding() {
+        return encoding;
+    }
+
+    @Override
+    public int count(String text) {
+        if (text == null || text.isEmpty()) {
+            return 0;
+        }
+        int count = 0;
+        Matcher matcher = pattern.matcher(text);
+        while (matcher.find()) {
+            count += encodePiece(matcher.group()).length;
+        }
+        return count;
+    }
+
+    /**
+     * 编码文本。
+     *
+     * @param text 文本
+     * @return token 序号
+     */
+    public int[] encode(String text) {
+        if (text == null || text.isEmpty()) {
+            return new int[0];
+        }
+        int[] out = new int[16];
+        int size = 0;
+        Matcher matcher = pattern.matcher(text);
+        while (matcher.find()) {
+            for (int token : encodePiece(matcher.group())) {
+                if (size == out.length) {
+                    out = Arrays.copyOf(out, size * 2);
+                }
+                out[size++] = token;
+            }
+        }
+        return Arrays.copyOf(out, size);
+    }
+
+    /**
+     * 解码 token 序号。
+     *
+     * @param tokens token 序号
+     * @return 文本，不完整的 UTF-8 序列替换为 U+FFFD
+     */
+    public String decode(int[] tokens) {
+        StringBuilder bytes = new StringBuilder();
+        for (int token : tokens) {
+            if (token < 0 || token >= this.tokens.length || this.tokens[token] == null) {
+                throw new IllegalArgumentException("Unknown token: " + token);
+            }
+            bytes.append(this.tokens[token]);
+        }
+        return new String(bytes.toString().getBytes(StandardCharsets.ISO_8859_1), StandardCharsets.UTF_8);
+    }
+
+    private int[] encodePiece(String piece) {
+        int[] cached = pieceCache.get(piece);
+        if (cached != null) {
+            return cached;
+        }
+        int[] encoded = bytePairEncode(new String(piece.getBytes(StandardCharsets.UTF_8), StandardCharsets.ISO_8859_1));
+        if (pieceCache.size() >= PIECE_CACHE_SIZE) {
+            pieceCache.clear();
+        }
+        pieceCache.put(piece, encoded);
+        return encoded;
+    }
+
+    private int[] bytePairEncode(String piece) {
+        Integer whole = ranks.get(piece);
+        if (whole != null) {
+            return new int[]{whole};
+        }
+        // 边界数组：第 i 个部分为 [start[i], start[i + 1])，rank[i] 为第 i、i+1 两部分合并后的序号
+        int len = piece.length() + 1;
+        int[] start = new int[len];
+        int[] rank = new int[len];
+        for (int i = 0; i < len; i++) {
+            start[i] = i;
+        }
+        for (int i = 0; i < len; i++) {
+            rank[i] = i + 2 < len ? rankOf(piece, start[i], start[i + 2]) : Integer.MAX_VALUE;
+        }
+        while (len > 2) {
+            int min = Integer.MAX_VALUE;
+            int at = -1;
+            for (int i = 0; i < len - 2; i++) {
+                if (rank[i] < min) {
+                    min = rank[i];
+                    at = i;
+                }
+            }
+            if (at < 0) {
+                break;
+            }
+            System.arraycopy(start, at + 2, start, at + 1, len - at - 2);
+            System.arraycopy(rank, at + 2, rank, at + 1, len - at - 2);
+            len--;
+            rank[at] = at + 2 < len ? rankOf(piece, start[at], start[at + 2]) : Integer.MAX_VALUE;
+            if (at > 0) {
+                rank[at - 1] = rankOf(piece, start[at - 1], start[at + 1]);
+            }
+        }
+        int[] out = new int[len - 1];
+        for (int i = 0; i < len - 1; i++) {
+            Integer token = ranks.get(piece.substring(start[i], start[i + 1]));
+            if (token == null) {
+                throw new IllegalStateException("Vocabulary " + encoding + " has no token for byte sequence");
+            }
+            out[i] = token;
+        }
+        return out;
+    }
+
+    private int rankOf(String piece, int from, int to) {
+        Integer rank = ranks.get(piece.substring(from, to));
+        return rank != null ? rank : Integer.MAX_VALUE;
+    }
+}
@@ -0,0 +1,154 @@
+package com.lyra.agent.tokenizer;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 单个模型的上下文预算：上下文窗口减去为输出预留的 token 数，即 prompt 可用的上限。
+ * <p>
+ * 调用选项中带 max_tokens 时按其预留输出，否则按 reservedOutputTokens 预留。
+ * 以原生方式发送的工具定义（选项 tools）同样占用 prompt，由 {@link #toolTokens} 计入。
+ * 未显式配置上下文窗口时按模型名前缀查表，未知模型按 {@value #DEFAULT_CONTEXT_WINDOW} 处理。
+ */
+public class ContextBudget {
+    public static final int DEFAULT_CONTEXT_WINDOW = 8192;
+    public static final int DEFAULT_RESERVED_OUTPUT_TOKENS = 1024;
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    // 按前缀匹配，较长的前缀在前
+    private static final Map<String, Integer> CONTEXT_WINDOWS = new LinkedHashMap<>();
+
+    static {
+        CONTEXT_WINDOWS.put("gpt-4o", 128000);
+        CONTEXT_WINDOWS.put("gpt-4.1", 1047576);
+        CONTEXT_WINDOWS.put("gpt-4-turbo", 128000);
+        CONTEXT_WINDOWS.put("gpt-4-32k", 32768);
+        CONTEXT_WINDOWS.put("gpt-4", 8192);
+        CONTEXT_WINDOWS.put("gpt-3.5-turbo", 16385);
+        CONTEXT_WINDOWS.put("gpt-5", 400000);
+        CONTEXT_WINDOWS.put("o1", 200000);
+        CONTEXT_WINDOWS.put("o3", 200000);
+        CONTEXT_WINDOWS.put("o4", 200000);
+        CONTEXT_WINDOWS.put("deepseek", 65536);
+        CONTEXT_WINDOWS.put("qwen-long", 10000000);
+        CONTEXT_WINDOWS.put("qwen-turbo", 1000000);
+        CONTEXT_WINDOWS.put("qwen-plus", 131072);
+        CONTEXT_WINDOWS.put("qwen-max", 32768);
+        CONTEXT_WINDOWS.put("gemini", 1048576);
+    }
+
+    private final Tokenizer tokenizer;
+    private final int contextWindow;
+    private final int reservedOutputTokens;
+
+    /**
+     * 构造函数。
+     *
+     * @param tokenizer            token 计数器
+     * @param contextWindow        上下文窗口大小
+     * @param reservedOutputTokens 未指定 max_tokens 时为输出预留的 token 数
+     */
+    public ContextBudget(Tokenizer tokenizer, int contextWindow, int reservedOutputTokens) {
+        this.tokenizer = tokenizer;
+        this.contextWindow = contextWindow;
+        this.reservedOutputTokens = reservedOutputTokens;
+    }
+
+    /**
+     * 按模型名查表构建预算。
+     *
+     * @param model     模型名
+     * @param tokenizer token 计数器
+     * @return 预算
+     */
+    public static ContextBudget forModel(String model, Tokenizer tokenizer) {
+        return new ContextBudget(tokenizer, contextWindowFor(model), DEFAULT_RESERVED_OUTPUT_TOKENS);
+    }
+
+    /**
+     * 模型的上下文窗口大小。
+     *
+     * @param model 模型名
+     * @return 上下文窗口大小，未知模型返回 {@value #DEFAULT_CONTEXT_WINDOW}
+     */
+    public static int contextWindowFor(String model) {
+        if (model != null) {
+            String name = model.toLowerCase(Locale.ROOT);
+            for (Map.Entry<String, Integer> entry : CONTEXT_WINDOWS.entrySet()) {
+                if (name.startsWith(entry.getKey())) {
+                    return entry.getValue();
+                }
+            }
+        }
+        return DEFAULT_CONTEXT_WINDOW;
+    }
+
+    /**
+     * 模型使用的 BPE 编码。gpt-4o 及之后的 OpenAI 模型为 o200k_base，其余为 cl100k_base；
+     * 非 OpenAI 模型各有词表，cl100k_base 只作近似。
+     *
+     * @param model 模型名
+     * @return 编码名称
+     */
+    public static String encodingFor(String model) {
+        if (model != null) {
+            String name = model.toLowerCase(Locale.ROOT);
+            if (name.startsWith("gpt-4o") || name.startsWith("gpt-4.1") || name.startsWith("gpt-5")
+                    || name.startsWith("o1") || name.startsWith("o3") || name.startsWith("o4")) {
+                return "o200k_base";
+            }
+        }
+        return "cl100k_base";
+    }
+
+    public Tokenizer getTokenizer() {
+        return tokenizer;
+    }
+
+    public int getContextWindow() {
+        return contextWindow;
+    }
+
+    public int getReservedOutputTokens() {
+        return reservedOutputTokens;
+    }
+
+    /**
+     * prompt 可用的 token 上限。
+     *
+     * @param options 调用选项，可为 null
+     * @return 上下文窗口减去输出预留
+     */
+    public int promptLimit(Map<String, Object> options) {
+        Object maxTokens = options != null ? options.get("max_tokens") : null;
+        int reserved = maxTokens instanceof Number n ? n.intValue() : reservedOutputTokens;
+        return Math.max(0, contextWindow - reserved);
+    }
+
+    /**
+     * 调用选项中工具定义（选项 tools）占用的 token 数。
+     * 工具描述按 JSON 序列化后计数，名称、描述与参数 Schema 都计入，与请求中发送的 function 定义基本一致。
+     *
+     * @param options 调用选项，可为 null
+     * @return 工具定义的 token 数，没有工具时为 0
+     */
+    public int toolTokens(Map<String, Object> options) {
+        Object tools = options != null ? options.get("tools") : null;
+        if (!(tools instanceof List<?> list) || list.isEmpty()) {
+            return 0;
+        }
+        String serialized;
+        try {
+            serialized = objectMapper.writeValueAsString(list);
+        } catch (JsonProcessingException e) {
+            serialized = list.toString();
+        }
+        return tokenizer.count(serialized);
+    }
+}
@@ -0,0 +1,63 @@
+package com.lyra.agent.tokenizer;
+
+import com.lyra.agent.agent.Message;
+import com.lyra.agent.llm.ToolCall;
+
+import java.util.List;
+
+/**
+ * 进程内 token 计数器。
+ * <p>
+ * 消息列表的计数按 OpenAI chat 格式估算：每条消息额外 {@value #TOKENS_PER_MESSAGE} 个 token（角色与分隔符），
+ * 带 name 时再加 name 本身与 1 个 token，原生工具调用按工具名与参数计入，整个请求再加 {@value #TOKENS_PER_REPLY} 个回复引导 token。
+ */
+public interface Tokenizer {
+    int TOKENS_PER_MESSAGE = 3;
+    int TOKENS_PER_REPLY = 3;
+
+    /**
+     * 编码名称，例如 cl100k_base、o200k_base。
+     *
+     * @return 编码名称
+     */
+    String getEncoding();
+
+    /**
+     * 计算文本的 token 数。
+     *
+     * @param text 文本，为 null 时返回 0
+     * @return token 数
+     */
+    int count(String text);
+
+    /**
+     * 计算单条消息的 token 数，包含消息格式开销，不含回复引导。
+     *
+     * @param message 消息
+     * @return token 数
+     */
+    default int count(Message message) {
+        int tokens = TOKENS_PER_MESSAGE + count(message.getContent());
+        if (message.getName() != null) {
+            tokens += count(message.getName()) + 1;
+        }
+        for (ToolCall call : message.getToolCalls()) {
+            tokens += count(call.getName()) + count(call.getArguments());
+        }
+        return tokens;
+    }
+
+    /**
+     * 计算一次 chat 请求的 prompt token 数。
+     *
+     * @param messages 消息列表
+     * @return token 数
+     */
+    default int count(List<Message> messages) {
+        int tokens = TOKENS_PER_REPLY;
+        for (Message message : messages) {
+            tokens += count(message);
+        }
+        return tokens;
+    }
+}
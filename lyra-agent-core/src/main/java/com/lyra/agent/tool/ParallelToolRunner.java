@@ -0,0 +1,108 @@
+package com.lyra.agent.tool;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 并发执行一个推理步骤中的多个工具调用。
+ * <p>
+ * 线程数有上限，超出的调用排队等待；整批调用共享一个超时，到时未完成的调用被中断取消。
+ * 结果按提交顺序返回，便于按模型给出的顺序合并观察结果。空闲线程会在一段时间后回收。
+ */
+public class ParallelToolRunner implements AutoCloseable {
+    public static final int DEFAULT_PARALLELISM = 4;
+    public static final long DEFAULT_TIMEOUT_MS = 60000;
+
+    private static final AtomicInteger THREAD_INDEX = new AtomicInteger();
+
+    private final ThreadPoolExecutor executor;
+    private final long timeoutMs;
+    private final boolean closeable;
+
+    /**
+     * 使用默认并发数与超时构造。
+     */
+    public ParallelToolRunner() {
+        this(DEFAULT_PARALLELISM, DEFAULT_TIMEOUT_MS);
+    }
+
+    /**
+     * 构造函数。
+     *
+     * @param parallelism 同时执行的调用数上限
+     * @param timeoutMs   一个步骤内全部调用的超时（毫秒）
+     */
+    public ParallelToolRunner(int parallelism, long timeoutMs) {
+        this(parallelism, timeoutMs, true);
+    }
+
+    private ParallelToolRunner(int parallelism, long timeoutMs, boolean closeable) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be positive: " + parallelism);
+        }
+        this.timeoutMs = timeoutMs;
+        this.closeable = closeable;
+        this.executor = new ThreadPoolExecutor(parallelism, parallelism, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), r -> {
+                    Thread t = new Thread(r, "lyra-tool-" + THREAD_INDEX.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * 进程内共用的默认执行器，使用默认并发数与超时，供未传入执行器的便捷构造函数使用。
+     * 首次调用时创建，该实例随进程存在，{@link #close()} 对其无效。
+     *
+     * @return 默认执行器
+     */
+    public static ParallelToolRunner shared() {
+        return SharedHolder.INSTANCE;
+    }
+
+    /**
+     * 执行一批调用并等待全部完成或超时。
+     *
+     * @param calls 工具调用
+     * @return 与 calls 顺序一致的结果；调用失败时 get 抛出 ExecutionException，超时被取消时抛出 CancellationException
+     * @throws InterruptedException 等待期间线程被中断，未完成的调用已被取消
+     */
+    public List<Future<Object>> runAll(List<Callable<Object>> calls) throws InterruptedException {
+        return executor.invokeAll(calls, timeoutMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 提交单个调用，与 {@link #runAll} 共享线程与并发上限，不受步骤超时约束。
+     *
+     * @param call 工具调用
+     * @return 调用结果；取消时中断执行中的调用
+     */
+    public Future<Object> submit(Callable<Object> call) {
+        return executor.submit(call);
+    }
+
+    public long getTimeoutMs() {
+        return timeoutMs;
+    }
+
+    /**
+     * 关闭线程池并中断执行中的调用。默认执行器 {@link #shared()} 不会被关闭。
+     */
+    @Override
+    public void close() {
+        if (closeable) {
+            executor.shutdownNow();
+        }
+    }
+
+    private static final class SharedHolder {
+        private static final ParallelToolRunner INSTANCE =
+                new ParallelToolRunner(DEFAULT_PARALLELISM, DEFAULT_TIMEOUT_MS, false);
+    }
+}
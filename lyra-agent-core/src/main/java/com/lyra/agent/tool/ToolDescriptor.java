@@ -1,11 +1,14 @@
 package com.lyra.agent.tool;
 
+import java.util.Map;
+
 /**
- * 工具名称与描述的数据结构。
+ * 工具名称、描述与参数 Schema 的数据结构。
  */
 public class ToolDescriptor {
     public final String name;
     public final String description;
+    public final Map<String, Object> parameters;
 
     /**
      * 构造函数。
@@ -14,7 +17,24 @@ public class ToolDescriptor {
      * @param description 工具描述
      */
     public ToolDescriptor(String name, String description) {
+        this(name, description, Map.of());
+    }
+
+    /**
+     * 构造函数。
+     *
+     * @param name        工具名称
+     * @param description 工具描述
+     * @param parameters  参数的 JSON Schema
+     */
+    public ToolDescriptor(String name, String description, Map<String, Object> parameters) {
         this.name = name;
         this.description = description;
+        this.parameters = parameters;
+    }
+
+    @Override
+    public String toString() {
+        return name + ": " + description + " " + parameters;
     }
 }
\ No newline at end of file
@@ -12,17 +12,36 @@ import java.util.*;
 public class ToolRegistry {
     private final Map<String, ToolExecutor> tools = new HashMap<>();
     private final List<ToolDescriptor> descriptors = new ArrayList<>();
+    private final Set<String> sideEffectFree = new HashSet<>();
 
     public ToolRegistry(List<ToolExecutor> executors) {
         for (ToolExecutor e : executors) {
             Tool ann = e.getClass().getAnnotation(Tool.class);
             if (ann != null) {
                 tools.put(ann.name(), e);
-                descriptors.add(new ToolDescriptor(ann.name(), ann.description()));
+                descriptors.add(new ToolDescriptor(ann.name(), ann.description(), parameters(e)));
+                if (ann.sideEffectFree()) {
+                    sideEffectFree.add(ann.name());
+                }
             }
         }
     }
 
+    /**
+     * 将执行器的参数 Schema 规范为 object 类型的 JSON Schema。
+     * 只给出属性映射的 Schema（如 {@code {"query": {"type": "string"}}}）会被包装为其 properties。
+     */
+    private static Map<String, Object> parameters(ToolExecutor executor) {
+        Map<String, Object> schema = executor.getParametersSchema();
+        if (schema != null && "object".equals(schema.get("type"))) {
+            return schema;
+        }
+        Map<String, Object> wrapped = new LinkedHashMap<>();
+        wrapped.put("type", "object");
+        wrapped.put("properties", schema != null ? schema : Map.of());
+        return wrapped;
+    }
+
     /**
      * 根据工具名获取执行器。
      *
@@ -33,6 +52,16 @@ public class ToolRegistry {
         return tools.get(name);
     }
 
+    /**
+     * 工具是否声明为无副作用，见 {@link Tool#sideEffectFree()}。
+     *
+     * @param name 工具名称
+     * @return 已注册且无副作用时返回 true
+     */
+    public boolean isSideEffectFree(String name) {
+        return sideEffectFree.contains(name);
+    }
+
     /**
      * 获取只读的工具描述列表。
      *
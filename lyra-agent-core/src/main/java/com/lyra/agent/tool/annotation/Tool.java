@@ -18,4 +18,9 @@ public @interface Tool {
     String name();
 
     String description();
+
+    /**
+     * 工具是否无副作用（只读且幂等）。无副作用的工具可在模型仍在输出时提前执行，调用未被采用时取消执行并丢弃结果。
+     */
+    boolean sideEffectFree() default false;
 }
\ No newline at end of file
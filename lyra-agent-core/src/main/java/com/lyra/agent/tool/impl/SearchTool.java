@@ -9,7 +9,7 @@ import java.util.Map;
  * 示例搜索工具。
  * 实际应用可接入外部搜索 API，此处返回占位结果。
  */
-@Tool(name = "search", description = "Search the web for current information")
+@Tool(name = "search", description = "Search the web for current information", sideEffectFree = true)
 public class SearchTool implements ToolExecutor {
     /**
      * 执行搜索逻辑。
@@ -2,13 +2,18 @@ package com.lyra.agent.web;
 
 import com.lyra.agent.agent.AgentManager;
 import com.lyra.agent.agent.Message;
+import com.lyra.agent.llm.DelegatingLLMProvider;
+import com.lyra.agent.llm.LLMProvider;
+import com.lyra.agent.llm.RoutingLLMProvider;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.util.List;
 import java.util.Map;
 
 @RestController
@@ -19,9 +24,11 @@ import java.util.Map;
  */
 public class AgentController {
     private final AgentManager agentManager;
+    private final RoutingLLMProvider router;
 
-    public AgentController(AgentManager agentManager) {
+    public AgentController(AgentManager agentManager, LLMProvider llmProvider) {
         this.agentManager = agentManager;
+        this.router = DelegatingLLMProvider.find(llmProvider, RoutingLLMProvider.class);
     }
 
     /**
@@ -43,4 +50,15 @@ public class AgentController {
         resp.put("answer", answer);
         return ResponseEntity.ok(resp);
     }
-}
\ No newline at end of file
+
+    /**
+     * 返回多端点路由表：各端点的延迟 EWMA、在途请求数、剩余限流额度与当前代价。
+     * 未配置 agent.llm.endpoints 时返回空列表。
+     *
+     * @return 路由表
+     */
+    @GetMapping("/llm/routes")
+    public ResponseEntity<List<RoutingLLMProvider.RouteStatus>> routes() {
+        return ResponseEntity.ok(router != null ? router.routingTable() : List.of());
+    }
+}
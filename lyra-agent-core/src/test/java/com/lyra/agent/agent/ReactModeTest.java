@@ -0,0 +1,282 @@
+package com.lyra.agent.agent;
+
+import com.lyra.agent.event.SimpleEventBus;
+import com.lyra.agent.llm.LLMProvider;
+import com.lyra.agent.llm.StreamChunk;
+import com.lyra.agent.llm.StreamPublishers;
+import com.lyra.agent.memory.SimpleAgentMemory;
+import com.lyra.agent.tokenizer.ContextBudget;
+import com.lyra.agent.tokenizer.Tokenizer;
+import com.lyra.agent.tool.ToolRegistry;
+import com.lyra.agent.tool.impl.SearchTool;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.core.io.DefaultResourceLoader;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Flow;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ReactModeTest {
+
+    @Test
+    public void testFinalAnswerStreamsAsDeltas() {
+        LLMProvider llmProvider = Mockito.mock(LLMProvider.class);
+        when(llmProvider.streamChat(anyList(), anyMap()))
+                .thenReturn(stream("Thought: look it up\nAction: search\n", "Action Input: {\"query\": \"capital of France\"}"))
+                // The answer ends at the model's own "Observation:", split across chunks
+                .thenReturn(stream("Thought: done\nFinal Ans", "wer: The capital", " is Paris.\nObs", "ervation: made up"));
+
+        ToolRegistry toolRegistry = new ToolRegistry(List.of(new SearchTool()));
+        SimpleEventBus eventBus = new SimpleEventBus();
+        List<String> events = new ArrayList<>();
+        for (String type : List.of("agent.thought.delta", "agent.action", "agent.answer.delta")) {
+            eventBus.subscribe(type, event -> events.add(type + "#" + event.payload().get("step") + ":"
+                    + event.payload().getOrDefault("delta", event.payload().get("name"))));
+        }
+
+        ReactMode mode = new ReactMode(llmProvider, toolRegistry, eventBus, 5,
+                new DefaultResourceLoader().getResource("classpath:templates/react-prompt.txt"));
+        ModeResult result = mode.run(new ModeContext(List.of(Message.user("What is the capital of France?")),
+                new SimpleAgentMemory(), toolRegistry, llmProvider, Map.of(), List.of()));
+
+        assertTrue(result.isFinal());
+        assertEquals("The capital is Paris.", result.getFinalAnswer());
+        assertEquals(List.of(
+                "agent.thought.delta#1:look it up\n",
+                "agent.action#1:search",
+                "agent.thought.delta#2:done\n",
+                "agent.answer.delta#2:The capital",
+                "agent.answer.delta#2: is Paris.\n"), events);
+    }
+
+    @Test
+    public void testOldestStepsAreDroppedToFitTheContextBudget() {
+        LLMProvider llmProvider = Mockito.mock(LLMProvider.class);
+        String action = "Thought: keep looking\nAction: search\nAction Input: {\"query\": \"capital of France\"}";
+        when(llmProvider.streamChat(anyList(), anyMap()))
+                .thenAnswer(invocation -> stream(action))
+                .thenAnswer(invocation -> stream(action))
+                .thenAnswer(invocation -> stream(action))
+                .thenAnswer(invocation -> stream(action))
+                .thenAnswer(invocation -> stream("Final Answer: Paris"));
+
+        ToolRegistry toolRegistry = new ToolRegistry(List.of(new SearchTool()));
+        SimpleEventBus eventBus = new SimpleEventBus();
+        List<Integer> promptTokens = new ArrayList<>();
+        eventBus.subscribe("agent.step", event -> promptTokens.add((Integer) event.payload().get("promptTokens")));
+        // Pinned system + user messages take 11 tokens, each step 19, the omission note 4: room for two steps
+        ContextBudget budget = new ContextBudget(new ObservationTokenizer(), 53 + 1024, 1024);
+
+        ReactMode mode = new ReactMode(llmProvider, toolRegistry, eventBus, 5,
+                new DefaultResourceLoader().getResource("classpath:templates/react-prompt.txt"),
+                new ReactMode.Options().budget(budget));
+        ModeResult result = mode.run(new ModeContext(List.of(Message.user("What is the capital of France?")),
+                new SimpleAgentMemory(), toolRegistry, llmProvider, Map.of(), List.of()));
+
+        assertTrue(result.isFinal());
+        assertEquals(5, promptTokens.size());
+        promptTokens.forEach(tokens -> assertTrue(tokens <= 53, "prompt of " + tokens + " tokens over budget"));
+
+        ArgumentCaptor<List<Message>> prompts = ArgumentCaptor.forClass(List.class);
+        verify(llmProvider, times(5)).streamChat(prompts.capture(), anyMap());
+        List<Message> last = prompts.getAllValues().get(4);
+        assertEquals(7, last.size());
+        assertEquals(Message.Role.SYSTEM, last.get(0).getRole());
+        assertEquals("Note: 2 earlier step(s) were omitted to fit the context window.", last.get(2).getContent());
+        assertEquals(Message.Role.TOOL, last.get(6).getRole());
+    }
+
+    @Test
+    public void testPromptOverTheContextBudgetInterruptsTheRun() {
+        LLMProvider llmProvider = Mockito.mock(LLMProvider.class);
+        ToolRegistry toolRegistry = new ToolRegistry(List.of(new SearchTool()));
+        SimpleEventBus eventBus = new SimpleEventBus();
+        List<Object> errors = new ArrayList<>();
+        eventBus.subscribe("agent.error", event -> errors.add(event.payload().get("message")));
+
+        ReactMode mode = new ReactMode(llmProvider, toolRegistry, eventBus, 5,
+                new DefaultResourceLoader().getResource("classpath:templates/react-prompt.txt"),
+                new ReactMode.Options().budget(new ContextBudget(new ObservationTokenizer(), 1024 + 5, 1024)));
+        ModeResult result = mode.run(new ModeContext(List.of(Message.user("What is the capital of France?")),
+                new SimpleAgentMemory(), toolRegistry, llmProvider, Map.of(), List.of()));
+
+        assertTrue(result.isInterrupted());
+        assertEquals(List.of("Prompt of 11 tokens exceeds the context budget of 5 tokens"), errors);
+        verify(llmProvider, never()).streamChat(anyList(), anyMap());
+    }
+
+    @Test
+    public void testReactStopSequenceIsAddedToTheCallerStops() {
+        ScriptedProvider llmProvider = new ScriptedProvider(List.of(List.of("Final Answer: Paris")));
+        ToolRegistry toolRegistry = new ToolRegistry(List.of(new SearchTool()));
+
+        ReactMode mode = new ReactMode(llmProvider, toolRegistry, new SimpleEventBus(), 5,
+                new DefaultResourceLoader().getResource("classpath:templates/react-prompt.txt"));
+        mode.run(new ModeContext(List.of(Message.user("What is the capital of France?")),
+                new SimpleAgentMemory(), toolRegistry, llmProvider, Map.of("stop", List.of("\nUser:")), List.of()));
+
+        assertEquals(List.of("\nObservation:", "\nUser:"), llmProvider.options.get(0).get("stop"));
+    }
+
+    @Test
+    public void testReactStopSequenceSurvivesFourCallerStops() {
+        ScriptedProvider llmProvider = new ScriptedProvider(List.of(List.of("Final Answer: Paris")));
+        ToolRegistry toolRegistry = new ToolRegistry(List.of(new SearchTool()));
+
+        ReactMode mode = new ReactMode(llmProvider, toolRegistry, new SimpleEventBus(), 5,
+                new DefaultResourceLoader().getResource("classpath:templates/react-prompt.txt"));
+        mode.run(new ModeContext(List.of(Message.user("What is the capital of France?")),
+                new SimpleAgentMemory(), toolRegistry, llmProvider,
+                Map.of("stop", List.of("\nUser:", "\nHuman:", "###", "</answer>")), List.of()));
+
+        // Most APIs accept four stops; the one the loop depends on is kept
+        assertEquals(List.of("\nObservation:", "\nUser:", "\nHuman:", "###"), llmProvider.options.get(0).get("stop"));
+    }
+
+    @Test
+    public void testStreamIsCancelledOnceTheActionIsComplete() {
+        // The model runs on past its action and invents an observation and an answer
+        ScriptedProvider llmProvider = new ScriptedProvider(List.of(
+                List.of("Thought: look it up\nAction: search\n", "Action Input: {\"query\": \"capital of France\"}\n",
+                        "Observation: made up\n", "Final Answer: Lyon"),
+                List.of("Final Answer: Paris")));
+        ToolRegistry toolRegistry = new ToolRegistry(List.of(new SearchTool()));
+        SimpleEventBus eventBus = new SimpleEventBus();
+        List<Object> chunks = new ArrayList<>();
+        eventBus.subscribe("agent.stream.chunk", event -> chunks.add(event.payload().get("content")));
+
+        ReactMode mode = new ReactMode(llmProvider, toolRegistry, eventBus, 5,
+                new DefaultResourceLoader().getResource("classpath:templates/react-prompt.txt"));
+        ModeResult result = mode.run(new ModeContext(List.of(Message.user("What is the capital of France?")),
+                new SimpleAgentMemory(), toolRegistry, llmProvider, Map.of(), List.of()));
+
+        assertEquals("Paris", result.getFinalAnswer());
+        assertTrue(llmProvider.streams.get(0).cancelled, "the first step's stream should be cancelled");
+        assertFalse(llmProvider.streams.get(1).cancelled);
+        // A step may hold several actions, so the invented observation is what ends them
+        assertFalse(chunks.contains("Final Answer: Lyon"));
+    }
+
+    @Test
+    public void testSideEffectFreeToolIsStartedFromTheStream() {
+        ScriptedProvider llmProvider = new ScriptedProvider(List.of(
+                List.of("Thought: look it up\nAction: search\n", "Action Input: {\"query\": \"capital of France\"}\n"),
+                List.of("Final Answer: Paris")));
+        ToolRegistry toolRegistry = new ToolRegistry(List.of(new SearchTool()));
+        SimpleEventBus eventBus = new SimpleEventBus();
+        List<Object> speculative = new ArrayList<>();
+        eventBus.subscribe("agent.tool.start", event -> speculative.add(event.payload().get("speculative")));
+
+        ReactMode mode = new ReactMode(llmProvider, toolRegistry, eventBus, 5,
+                new DefaultResourceLoader().getResource("classpath:templates/react-prompt.txt"),
+                new ReactMode.Options()
+                        .budget(new ContextBudget(new ObservationTokenizer(), 128000, 1024))
+                        .speculativeToolExecution(true));
+        ModeResult result = mode.run(new ModeContext(List.of(Message.user("What is the capital of France?")),
+                new SimpleAgentMemory(), toolRegistry, llmProvider, Map.of(), List.of()));
+
+        assertEquals("Paris", result.getFinalAnswer());
+        assertEquals(List.of(true), speculative);
+    }
+
+    private static Flow.Publisher<StreamChunk> stream(String... chunks) {
+        List<StreamChunk> list = new ArrayList<>();
+        for (String chunk : chunks) {
+            list.add(new StreamChunk(chunk, false, Map.of(), null));
+        }
+        list.add(new StreamChunk("", true, Map.of(), "stop"));
+        return StreamPublishers.fromChunks(list);
+    }
+
+    /**
+     * Counts every text as one token except observations, which count ten, so prompt sizes are easy to follow.
+     */
+    private static final class ObservationTokenizer implements Tokenizer {
+        @Override
+        public String getEncoding() {
+            return "cl100k_base";
+        }
+
+        @Override
+        public int count(String text) {
+            if (text == null || text.isEmpty()) {
+                return 0;
+            }
+            return text.startsWith("Observation:") ? 10 : 1;
+        }
+    }
+
+    /**
+     * Streams a scripted output per call and records the options and cancellations it saw.
+     */
+    private static final class ScriptedProvider implements LLMProvider {
+        private final Deque<List<String>> scripts;
+        private final List<Map<String, Object>> options = new ArrayList<>();
+        private final List<ScriptedStream> streams = new ArrayList<>();
+
+        ScriptedProvider(List<List<String>> scripts) {
+            this.scripts = new ArrayDeque<>(scripts);
+        }
+
+        @Override
+        public String generate(String prompt) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Flow.Publisher<StreamChunk> streamChat(List<Message> messages, Map<String, Object> options) {
+            this.options.add(options);
+            ScriptedStream stream = new ScriptedStream(scripts.poll());
+            streams.add(stream);
+            return stream;
+        }
+    }
+
+    private static final class ScriptedStream implements Flow.Publisher<StreamChunk> {
+        private final List<String> chunks;
+        private int next;
+        private boolean cancelled;
+
+        ScriptedStream(List<String> chunks) {
+            this.chunks = chunks;
+        }
+
+        @Override
+        public void subscribe(Flow.Subscriber<? super StreamChunk> subscriber) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                    for (long i = 0; i < n && !cancelled && next <= chunks.size(); i++) {
+                        if (next < chunks.size()) {
+                            subscriber.onNext(new StreamChunk(chunks.get(next++), false, Map.of(), null));
+                        } else {
+                            next++;
+                            subscriber.onNext(new StreamChunk("", true, Map.of(), "stop"));
+                            subscriber.onComplete();
+                        }
+                    }
+                }
+
+                @Override
+                public void cancel() {
+                    cancelled = true;
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.lyra.agent.agent;
+
+import com.lyra.agent.tool.ParallelToolRunner;
+import com.lyra.agent.tool.ToolExecutor;
+import com.lyra.agent.tool.ToolRegistry;
+import com.lyra.agent.tool.annotation.Tool;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SpeculativeToolCallsTest {
+    private final ParallelToolRunner runner = new ParallelToolRunner(4, 5000);
+
+    @AfterEach
+    public void closeRunner() {
+        runner.close();
+    }
+
+    @Test
+    public void testMatchingCallIsClaimedWhileStillRunning() throws Exception {
+        WeatherTool weather = new WeatherTool();
+        SpeculativeToolCalls speculative = new SpeculativeToolCalls(new ToolRegistry(List.of(weather)), runner);
+
+        // The action input is complete, the rest of the model's output is still streaming
+        speculative.start(0, "weather", Map.of("city", "Oslo"));
+        assertTrue(weather.started.await(5, TimeUnit.SECONDS), "the tool should start before the output ends");
+
+        Future<Object> call = speculative.take(0, "weather", Map.of("city", "Oslo"));
+        assertNotNull(call);
+        assertFalse(call.isDone());
+        weather.release.countDown();
+
+        assertEquals("Oslo: 12°C", SpeculativeToolCalls.join(call));
+        assertEquals(List.of("Oslo"), weather.cities);
+    }
+
+    @Test
+    public void testMismatchedCallIsNotUsed() throws Exception {
+        WeatherTool weather = new WeatherTool();
+        SpeculativeToolCalls speculative = new SpeculativeToolCalls(new ToolRegistry(List.of(weather)), runner);
+        speculative.start(0, "weather", Map.of("city", "Oslo"));
+        assertTrue(weather.started.await(5, TimeUnit.SECONDS));
+
+        // The final parse read a different input, so the started call is cancelled and the tool runs again
+        assertNull(speculative.take(0, "weather", Map.of("city", "Bergen")));
+        assertTrue(weather.interrupted.await(5, TimeUnit.SECONDS), "the cancelled call should be interrupted");
+        assertNull(speculative.take(0, "weather", Map.of("city", "Oslo")), "a dropped call cannot be claimed later");
+        weather.release.countDown();
+        assertEquals("Bergen: 12°C", weather.execute(Map.of("city", "Bergen")));
+
+        speculative.start(1, "weather", Map.of("city", "Oslo"));
+        assertNull(speculative.take(1, "forecast", Map.of("city", "Oslo")), "a different tool name is a mismatch too");
+    }
+
+    @Test
+    public void testToolWithSideEffectsIsNeverStarted() {
+        BookingTool booking = new BookingTool();
+        SpeculativeToolCalls speculative = new SpeculativeToolCalls(new ToolRegistry(List.of(booking)), runner);
+
+        speculative.start(0, "book_table", Map.of("restaurant", "Maaemo"));
+        speculative.start(1, "unknown", Map.of());
+
+        assertNull(speculative.take(0, "book_table", Map.of("restaurant", "Maaemo")));
+        assertNull(speculative.take(1, "unknown", Map.of()));
+        assertTrue(booking.bookings.isEmpty());
+    }
+
+    /**
+     * A read-only tool that signals when it starts and then waits to be released.
+     */
+    @Tool(name = "weather", description = "Current weather for a city", sideEffectFree = true)
+    private static final class WeatherTool implements ToolExecutor {
+        private final CountDownLatch started = new CountDownLatch(1);
+        private final CountDownLatch release = new CountDownLatch(1);
+        private final CountDownLatch interrupted = new CountDownLatch(1);
+        private final List<String> cities = new CopyOnWriteArrayList<>();
+
+        @Override
+        public Object execute(Map<String, Object> args) throws Exception {
+            String city = String.valueOf(args.get("city"));
+            cities.add(city);
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+                throw e;
+            }
+            return city + ": 12°C";
+        }
+
+        @Override
+        public Map<String, Object> getParametersSchema() {
+            return Map.of("city", Map.of("type", "string"));
+        }
+    }
+
+    @Tool(name = "book_table", description = "Book a restaurant table")
+    private static final class BookingTool implements ToolExecutor {
+        private final List<Object> bookings = new CopyOnWriteArrayList<>();
+
+        @Override
+        public Object execute(Map<String, Object> args) {
+            bookings.add(args.get("restaurant"));
+            return "booked";
+        }
+
+        @Override
+        public Map<String, Object> getParametersSchema() {
+            return Map.of("restaurant", Map.of("type", "string"));
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.lyra.agent.audit;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.lyra.agent.agent.Message;
+import com.lyra.agent.autoconfigure.LyraAgentProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RollingFileAuditSinkTest {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void testSampleRateControlsWhichCallsAreRecorded() {
+        RollingFileAuditSink never = new RollingFileAuditSink(sampledAt(0), new SimpleMeterRegistry());
+        RollingFileAuditSink always = new RollingFileAuditSink(sampledAt(1), new SimpleMeterRegistry());
+        RollingFileAuditSink half = new RollingFileAuditSink(sampledAt(0.5), new SimpleMeterRegistry());
+
+        int sampled = 0;
+        for (int i = 0; i < 10000; i++) {
+            assertFalse(never.sample());
+            assertTrue(always.sample());
+            sampled += half.sample() ? 1 : 0;
+        }
+        assertTrue(sampled > 4000 && sampled < 6000, "sampled " + sampled + " of 10000 at rate 0.5");
+
+        always.close();
+        assertFalse(always.sample(), "a closed sink samples nothing");
+        never.close();
+        half.close();
+    }
+
+    @Test
+    public void testRecordsAreWrittenAsTruncatedJsonLines() throws IOException {
+        LyraAgentProperties.Audit config = sampledAt(1);
+        config.setMaxRecordChars(10);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        RollingFileAuditSink sink = new RollingFileAuditSink(config, registry);
+
+        sink.record(new AuditRecord(1000L, "gpt-4o", List.of(Message.user("Reset the password for user 1042.")),
+                "Reset link sent.", "stop", Map.of("total_tokens", 12), 42, null));
+        sink.record(new AuditRecord(2000L, "gpt-4o", List.of(Message.user("Unlock account 1042.")), null, "error", Map.of(), 7, "HTTP 503"));
+        sink.close();
+        sink.record(new AuditRecord(3000L, "gpt-4o", List.of(), "late", "stop", Map.of(), 1, null));
+
+        List<JsonNode> records = readAll();
+        assertEquals(2, records.size());
+        JsonNode first = records.get(0);
+        assertEquals("gpt-4o", first.get("model").asText());
+        assertEquals("user", first.get("messages").get(0).get("role").asText());
+        assertEquals("Reset the ...[23 chars truncated]", first.get("messages").get(0).get("content").asText());
+        assertEquals("Reset link...[6 chars truncated]", first.get("completion").asText());
+        assertEquals(12, first.get("metadata").get("total_tokens").asInt());
+        assertEquals("HTTP 503", records.get(1).get("error").asText());
+        assertEquals(2.0, registry.counter("lyra.audit.records", "outcome", "written").count());
+        assertEquals(1.0, registry.counter("lyra.audit.records", "outcome", "dropped").count());
+    }
+
+    @Test
+    public void testFilesRollAndOnlyTheNewestAreKept() throws Exception {
+        LyraAgentProperties.Audit config = sampledAt(1);
+        config.setMaxFileBytes(1);
+        config.setMaxFiles(2);
+        RollingFileAuditSink sink = new RollingFileAuditSink(config, new SimpleMeterRegistry());
+
+        for (int i = 0; i < 4; i++) {
+            sink.record(new AuditRecord(i, "gpt-4o", List.of(Message.user("step " + i)), "ok", "stop", Map.of(), 1, null));
+            // File names have millisecond resolution
+            Thread.sleep(50);
+        }
+        sink.close();
+
+        assertEquals(2, files().size());
+        List<JsonNode> records = readAll();
+        assertEquals(List.of(2L, 3L), List.of(records.get(0).get("ts").asLong(), records.get(1).get("ts").asLong()));
+    }
+
+    private LyraAgentProperties.Audit sampledAt(double sampleRate) {
+        LyraAgentProperties.Audit config = new LyraAgentProperties.Audit();
+        config.setEnabled(true);
+        config.setSampleRate(sampleRate);
+        config.setDirectory(dir.toString());
+        return config;
+    }
+
+    private List<Path> files() throws IOException {
+        try (Stream<Path> listing = Files.list(dir)) {
+            return listing.filter(p -> p.getFileName().toString().endsWith(".jsonl.gz")).sorted().toList();
+        }
+    }
+
+    private List<JsonNode> readAll() throws IOException {
+        List<JsonNode> records = new ArrayList<>();
+        for (Path file : files()) {
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                    new GZIPInputStream(Files.newInputStream(file)), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    records.add(MAPPER.readTree(line));
+                }
+            }
+        }
+        return records;
+    }
+}
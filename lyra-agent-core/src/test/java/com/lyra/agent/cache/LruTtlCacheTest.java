@@ -0,0 +1,45 @@
+package com.lyra.agent.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class LruTtlCacheTest {
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() {
+        List<String> evicted = new ArrayList<>();
+        LruTtlCache<String, Integer> cache = new LruTtlCache<>(2, 0, (key, cause) -> evicted.add(key + ":" + cause));
+        cache.put("a", 1);
+        cache.put("b", 2);
+        // Reading "a" makes "b" the least recently used entry
+        assertEquals(1, cache.get("a"));
+        cache.put("c", 3);
+
+        assertNull(cache.get("b"));
+        assertEquals(1, cache.get("a"));
+        assertEquals(3, cache.get("c"));
+        assertEquals(2, cache.size());
+        assertEquals(List.of("b:SIZE"), evicted);
+    }
+
+    @Test
+    public void testExpiredEntriesAreEvicted() throws InterruptedException {
+        List<String> evicted = new ArrayList<>();
+        LruTtlCache<String, Integer> cache = new LruTtlCache<>(10, 50, (key, cause) -> evicted.add(key + ":" + cause));
+        cache.put("a", 1);
+        cache.put("b", 2);
+        Thread.sleep(80);
+
+        // Read lazily on access, and swept from the head of the queue on the next write
+        assertNull(cache.get("a"));
+        cache.put("c", 3);
+        assertEquals(List.of("a:EXPIRED", "b:EXPIRED"), evicted);
+        assertEquals(1, cache.size());
+        assertEquals(3, cache.get("c"));
+    }
+}
@@ -0,0 +1,123 @@
+package com.lyra.agent.cache;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MappedDiskStoreTest {
+    private static final long FOREVER = Long.MAX_VALUE;
+    // File header (8) + record header (18) + one-byte key + ten-byte value
+    private static final int FILE_HEADER = 8;
+    private static final int RECORD = 18 + 1 + 10;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void testEntriesSurviveReopen() throws Exception {
+        Path file = dir.resolve("cache.dat");
+        try (MappedDiskStore store = new MappedDiskStore(file, 4096, null)) {
+            store.put("a", value('1'), FOREVER);
+            store.put("b", value('2'), FOREVER);
+            store.put("a", value('3'), FOREVER);
+        }
+        try (MappedDiskStore store = new MappedDiskStore(file, 4096, null)) {
+            // The later record for "a" wins
+            assertArrayEquals(value('3'), store.get("a"));
+            assertArrayEquals(value('2'), store.get("b"));
+            assertEquals(2, store.size());
+        }
+    }
+
+    @Test
+    public void testTornRecordIsIgnoredAfterCrash() throws Exception {
+        Path file = dir.resolve("cache.dat");
+        try (MappedDiskStore store = new MappedDiskStore(file, 4096, null)) {
+            store.put("a", value('1'), FOREVER);
+            store.put("b", value('2'), FOREVER);
+        }
+        // A crash before the record magic is written leaves the second record without it
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.seek(FILE_HEADER + RECORD);
+            raf.writeInt(0);
+        }
+        try (MappedDiskStore store = new MappedDiskStore(file, 4096, null)) {
+            assertArrayEquals(value('1'), store.get("a"));
+            assertNull(store.get("b"));
+            assertEquals(1, store.size());
+            // Writing resumes where the intact records end
+            store.put("c", value('3'), FOREVER);
+        }
+        try (MappedDiskStore store = new MappedDiskStore(file, 4096, null)) {
+            assertArrayEquals(value('1'), store.get("a"));
+            assertArrayEquals(value('3'), store.get("c"));
+        }
+    }
+
+    @Test
+    public void testExpiredEntries() throws Exception {
+        Path file = dir.resolve("cache.dat");
+        List<String> evicted = new ArrayList<>();
+        try (MappedDiskStore store = new MappedDiskStore(file, 4096, (key, cause) -> evicted.add(key + ":" + cause))) {
+            store.put("old", value('1'), System.currentTimeMillis() - 1);
+            store.put("soon", value('2'), System.currentTimeMillis() + 50);
+            store.put("kept", value('3'), FOREVER);
+            assertNull(store.get("old"));
+            assertArrayEquals(value('2'), store.get("soon"));
+            Thread.sleep(80);
+            assertNull(store.get("soon"));
+            assertEquals(List.of("old:EXPIRED", "soon:EXPIRED"), evicted);
+        }
+        try (MappedDiskStore store = new MappedDiskStore(file, 4096, null)) {
+            assertEquals(1, store.size(), "expired records are not indexed on reopen");
+            assertArrayEquals(value('3'), store.get("kept"));
+        }
+    }
+
+    @Test
+    public void testCompactionReclaimsOverwrittenRecordsBeforeEvicting() throws Exception {
+        Path file = dir.resolve("cache.dat");
+        List<String> evicted = new ArrayList<>();
+        // Room for exactly three records
+        try (MappedDiskStore store = new MappedDiskStore(file, FILE_HEADER + 3 * RECORD,
+                (key, cause) -> evicted.add(key + ":" + cause))) {
+            store.put("a", value('1'), FOREVER);
+            store.put("a", value('2'), FOREVER);
+            store.put("b", value('3'), FOREVER);
+            // The file is full, but the first record for "a" is dead and compaction makes room
+            assertTrue(store.put("c", value('4'), FOREVER));
+            assertTrue(evicted.isEmpty());
+            assertArrayEquals(value('2'), store.get("a"));
+            assertArrayEquals(value('3'), store.get("b"));
+            assertArrayEquals(value('4'), store.get("c"));
+
+            // All three records are live now, so the oldest one goes
+            assertTrue(store.put("d", value('5'), FOREVER));
+            assertEquals(List.of("a:SIZE"), evicted);
+            assertNull(store.get("a"));
+
+            assertFalse(store.put("big", new byte[4 * RECORD], FOREVER), "larger than the whole store");
+        }
+        try (MappedDiskStore store = new MappedDiskStore(file, FILE_HEADER + 3 * RECORD, null)) {
+            assertArrayEquals(value('3'), store.get("b"));
+            assertArrayEquals(value('4'), store.get("c"));
+            assertArrayEquals(value('5'), store.get("d"));
+            assertEquals(3, store.size());
+        }
+    }
+
+    private static byte[] value(char c) {
+        return String.valueOf(c).repeat(10).getBytes(StandardCharsets.UTF_8);
+    }
+}
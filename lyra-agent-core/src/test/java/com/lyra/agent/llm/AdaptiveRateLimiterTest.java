@@ -0,0 +1,89 @@
+package com.lyra.agent.llm;
+
+import com.lyra.agent.autoconfigure.LyraAgentProperties;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AdaptiveRateLimiterTest {
+
+    @Test
+    public void testPermitsAreGrantedInArrivalOrder() {
+        AdaptiveRateLimiter limiter = limiter(maxConcurrency(1));
+        CompletableFuture<AdaptiveRateLimiter.Permit> first = limiter.acquire(0);
+        CompletableFuture<AdaptiveRateLimiter.Permit> second = limiter.acquire(0);
+        CompletableFuture<AdaptiveRateLimiter.Permit> third = limiter.acquire(0);
+        assertTrue(first.isDone());
+        assertFalse(second.isDone());
+        assertEquals(2, limiter.queued());
+
+        first.join().release(0);
+        assertTrue(second.isDone());
+        assertFalse(third.isDone());
+        // A waiter that gives up leaves the queue without holding up the one behind it
+        third.cancel(false);
+        assertEquals(0, limiter.queued());
+        second.join().fail();
+        assertEquals(0, limiter.inFlight());
+        assertTrue(limiter.acquire(0).isDone());
+    }
+
+    @Test
+    public void testThrottlingHalvesTheLimitAndPausesTheQueue() throws Exception {
+        AdaptiveRateLimiter limiter = limiter(maxConcurrency(8));
+        long start = System.nanoTime();
+        limiter.acquire(0).join().throttled(Duration.ofMillis(100));
+        assertEquals(4.0, limiter.currentLimit());
+        assertEquals(0.0, limiter.headroom(), "no headroom while paused");
+
+        CompletableFuture<AdaptiveRateLimiter.Permit> next = limiter.acquire(0);
+        assertFalse(next.isDone());
+        next.get(2, TimeUnit.SECONDS).release(0);
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(100), "Retry-After not honoured");
+        // Successes grow the limit back additively
+        assertEquals(4.25, limiter.currentLimit());
+    }
+
+    @Test
+    public void testFullQueueAndLongWaitsAreRejected() {
+        LyraAgentProperties.Llm.RateLimit config = maxConcurrency(1);
+        config.setMaxQueue(1);
+        config.setMaxWaitMs(50);
+        AdaptiveRateLimiter limiter = limiter(config);
+        limiter.acquire(0).join();
+        CompletableFuture<AdaptiveRateLimiter.Permit> queued = limiter.acquire(0);
+
+        LlmException full = assertInstanceOf(LlmException.class,
+                assertThrows(CompletionException.class, () -> limiter.acquire(0).join()).getCause());
+        assertTrue(full.isRateLimited());
+        LlmException timedOut = assertInstanceOf(LlmException.class,
+                assertThrows(CompletionException.class, queued::join).getCause());
+        assertTrue(timedOut.getMessage().contains("Timed out"));
+        // The timed-out waiter has left the queue, so the next caller can wait in its place
+        assertEquals(0, limiter.queued());
+        CompletableFuture<AdaptiveRateLimiter.Permit> next = limiter.acquire(0);
+        assertFalse(next.isDone());
+        assertEquals(1, limiter.queued());
+    }
+
+    private static AdaptiveRateLimiter limiter(LyraAgentProperties.Llm.RateLimit config) {
+        return new AdaptiveRateLimiter(config, new SimpleMeterRegistry(), Tags.of("provider", "openai", "key", "test"));
+    }
+
+    private static LyraAgentProperties.Llm.RateLimit maxConcurrency(int maxConcurrency) {
+        LyraAgentProperties.Llm.RateLimit config = new LyraAgentProperties.Llm.RateLimit();
+        config.setMaxConcurrency(maxConcurrency);
+        return config;
+    }
+}
@@ -0,0 +1,113 @@
+package com.lyra.agent.llm;
+
+import com.lyra.agent.autoconfigure.LyraAgentProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class CachingEmbeddingModelTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void testRepeatedTextIsEmbeddedOnce() {
+        EmbeddingModel delegate = lengthEmbedder();
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        CachingEmbeddingModel model = new CachingEmbeddingModel(delegate, cacheFor("text-embedding-3-small", false), registry);
+
+        float[] first = model.embed("apple");
+        float[] second = model.embed("apple");
+
+        assertSame(first, second);
+        verify(delegate, times(1)).embed(anyString());
+        assertEquals(1.0, registry.counter("lyra.embedding.cache.hits", "tier", "memory").count());
+        assertEquals(1.0, registry.counter("lyra.embedding.cache.misses").count());
+    }
+
+    @Test
+    public void testBatchSendsOnlyMissingDistinctTexts() {
+        EmbeddingModel delegate = lengthEmbedder();
+        CachingEmbeddingModel model = new CachingEmbeddingModel(delegate, cacheFor("text-embedding-3-small", false),
+                new SimpleMeterRegistry());
+        model.embed("apple");
+
+        List<float[]> vectors = model.embedBatch(List.of("apple", "banana", "banana", "car"));
+
+        verify(delegate).embedBatch(List.of("banana", "car"));
+        assertEquals(4, vectors.size());
+        assertArrayEquals(new float[]{5}, vectors.get(0));
+        assertArrayEquals(new float[]{6}, vectors.get(1));
+        assertSame(vectors.get(1), vectors.get(2));
+        assertArrayEquals(new float[]{3}, vectors.get(3));
+    }
+
+    @Test
+    public void testDiskTierSurvivesRestartUntilTheModelChanges() {
+        EmbeddingModel delegate = lengthEmbedder();
+        CachingEmbeddingModel model = new CachingEmbeddingModel(delegate, cacheFor("text-embedding-3-small", true),
+                new SimpleMeterRegistry());
+        model.embed("apple");
+        model.close();
+
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        CachingEmbeddingModel restarted = new CachingEmbeddingModel(delegate, cacheFor("text-embedding-3-small", true),
+                registry);
+        assertArrayEquals(new float[]{5}, restarted.embed("apple"));
+        restarted.close();
+        verify(delegate, times(1)).embed(anyString());
+        assertEquals(1.0, registry.counter("lyra.embedding.cache.hits", "tier", "disk").count());
+
+        // Vectors from another model are not comparable; the disk tier starts over
+        CachingEmbeddingModel switched = new CachingEmbeddingModel(delegate, cacheFor("text-embedding-3-large", true),
+                new SimpleMeterRegistry());
+        switched.embed("apple");
+        switched.close();
+        verify(delegate, times(2)).embed(anyString());
+    }
+
+    /**
+     * Embeds each text as a one-dimensional vector holding its length.
+     */
+    private static EmbeddingModel lengthEmbedder() {
+        EmbeddingModel delegate = Mockito.mock(EmbeddingModel.class);
+        when(delegate.embed(anyString())).thenAnswer(invocation -> vector(invocation.getArgument(0)));
+        when(delegate.embedBatch(anyList())).thenAnswer(invocation -> {
+            List<float[]> vectors = new ArrayList<>();
+            for (Object text : invocation.getArgument(0, List.class)) {
+                vectors.add(vector((String) text));
+            }
+            return vectors;
+        });
+        return delegate;
+    }
+
+    private static float[] vector(String text) {
+        return new float[]{text.length()};
+    }
+
+    private LyraAgentProperties.Llm cacheFor(String embeddingModel, boolean disk) {
+        LyraAgentProperties.Llm llm = new LyraAgentProperties.Llm();
+        llm.setEmbeddingModel(embeddingModel);
+        LyraAgentProperties.Llm.Cache cache = llm.getEmbedding().getCache();
+        cache.setEnabled(true);
+        cache.setDiskEnabled(disk);
+        cache.setDiskPath(dir.resolve("embedding-cache.dat").toString());
+        cache.setDiskMaxBytes(64 * 1024);
+        return llm;
+    }
+}
@@ -0,0 +1,145 @@
+package com.lyra.agent.llm;
+
+import com.lyra.agent.agent.Message;
+import com.lyra.agent.autoconfigure.LyraAgentProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class CachingLLMProviderTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void testRepeatedChatIsServedFromMemory() {
+        // A deterministic classification prompt, asked twice
+        List<Message> review = List.of(
+                Message.system("Classify the sentiment of the review as positive or negative."),
+                Message.user("The battery died after an hour."));
+        LLMProvider delegate = classifier();
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        CachingLLMProvider provider = new CachingLLMProvider(delegate, memoryOnly(), registry);
+
+        LlmResponse first = provider.chat(review, Map.of());
+        LlmResponse second = provider.chat(review, Map.of());
+
+        assertEquals("negative", first.getContent());
+        assertEquals("negative", second.getContent());
+        assertEquals(true, second.getMetadata().get("cached"));
+        verify(delegate, times(1)).chatAsync(anyList(), anyMap());
+        assertEquals(1.0, registry.counter("lyra.llm.cache.hits", "provider", "openai", "tier", "memory").count());
+        assertEquals(1.0, registry.counter("lyra.llm.cache.misses", "provider", "openai").count());
+
+        // A different review is a different key
+        provider.chat(List.of(review.get(0), Message.user("Charges in ten minutes.")), Map.of());
+        verify(delegate, times(2)).chatAsync(anyList(), anyMap());
+    }
+
+    @Test
+    public void testCacheCanBeSkippedPerCall() {
+        List<Message> review = List.of(Message.user("Sentiment of: 'Works as advertised.'"));
+        LLMProvider delegate = classifier();
+        CachingLLMProvider provider = new CachingLLMProvider(delegate, memoryOnly(), new SimpleMeterRegistry());
+
+        provider.chat(review, Map.of("cache", false));
+        provider.chat(review, Map.of("cache", false));
+
+        verify(delegate, times(2)).chat(anyList(), anyMap());
+    }
+
+    @Test
+    public void testSampledRequestsBypassTheCache() {
+        List<Message> prompt = List.of(Message.user("Write a one-line product tagline for a phone charger."));
+        LLMProvider delegate = classifier();
+        CachingLLMProvider provider = new CachingLLMProvider(delegate, memoryOnly(), new SimpleMeterRegistry());
+
+        provider.chat(prompt, Map.of("temperature", 0.9));
+        provider.chat(prompt, Map.of("temperature", 0.9));
+
+        verify(delegate, times(2)).chat(anyList(), anyMap());
+    }
+
+    @Test
+    public void testCompletedStreamIsReplayed() {
+        List<Message> review = List.of(Message.user("Summarise: the battery died after an hour."));
+        LLMProvider delegate = classifier();
+        when(delegate.streamChat(anyList(), anyMap())).thenAnswer(invocation -> StreamPublishers.fromChunks(List.of(
+                new StreamChunk("Short ", false, Map.of(), null),
+                new StreamChunk("battery life.", false, Map.of(), null),
+                new StreamChunk("", true, Map.of(), "stop"))));
+        CachingLLMProvider provider = new CachingLLMProvider(delegate, memoryOnly(), new SimpleMeterRegistry());
+
+        StringBuilder streamed = new StringBuilder();
+        StreamPublishers.consume(provider.streamChat(review, Map.of()), chunk -> streamed.append(chunk.getContent()));
+        List<StreamChunk> replay = new ArrayList<>();
+        StreamPublishers.consume(provider.streamChat(review, Map.of()), replay::add);
+
+        assertEquals("Short battery life.", streamed.toString());
+        verify(delegate, times(1)).streamChat(anyList(), anyMap());
+        StringBuilder replayed = new StringBuilder();
+        replay.forEach(chunk -> replayed.append(chunk.getContent()));
+        assertEquals("Short battery life.", replayed.toString());
+        StreamChunk last = replay.get(replay.size() - 1);
+        assertTrue(last.isDone());
+        assertEquals("stop", last.getFinishReason());
+    }
+
+    @Test
+    public void testDiskTierSurvivesRestart() {
+        List<Message> review = List.of(Message.user("Sentiment of: 'Arrived broken.'"));
+        LLMProvider delegate = classifier();
+        LyraAgentProperties.Llm config = memoryOnly();
+        config.getCache().setDiskEnabled(true);
+        config.getCache().setDiskPath(dir.resolve("llm-cache.dat").toString());
+        config.getCache().setDiskMaxBytes(64 * 1024);
+
+        CachingLLMProvider provider = new CachingLLMProvider(delegate, config, new SimpleMeterRegistry());
+        provider.chat(review, Map.of());
+        provider.close();
+
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        CachingLLMProvider restarted = new CachingLLMProvider(delegate, config, registry);
+        assertEquals("negative", restarted.chat(review, Map.of()).getContent());
+        // Promoted to memory by the disk hit
+        assertEquals("negative", restarted.chat(review, Map.of()).getContent());
+        restarted.close();
+
+        verify(delegate, times(1)).chatAsync(anyList(), anyMap());
+        assertEquals(1.0, registry.counter("lyra.llm.cache.hits", "provider", "openai", "tier", "disk").count());
+        assertEquals(1.0, registry.counter("lyra.llm.cache.hits", "provider", "openai", "tier", "memory").count());
+    }
+
+    /**
+     * A sentiment classifier that always answers "negative".
+     */
+    private static LLMProvider classifier() {
+        LLMProvider delegate = Mockito.mock(LLMProvider.class);
+        when(delegate.getModelName()).thenReturn("gpt-4o-mini");
+        when(delegate.chatAsync(anyList(), anyMap()))
+                .thenAnswer(invocation -> CompletableFuture.completedFuture(new LlmResponse("negative", Map.of(), "stop")));
+        when(delegate.chat(anyList(), anyMap())).thenReturn(new LlmResponse("negative", Map.of(), "stop"));
+        return delegate;
+    }
+
+    private static LyraAgentProperties.Llm memoryOnly() {
+        LyraAgentProperties.Llm llm = new LyraAgentProperties.Llm();
+        llm.getCache().setEnabled(true);
+        return llm;
+    }
+}
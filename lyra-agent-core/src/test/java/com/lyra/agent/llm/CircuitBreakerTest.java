@@ -0,0 +1,127 @@
+package com.lyra.agent.llm;
+
+import com.lyra.agent.autoconfigure.LyraAgentProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CircuitBreakerTest {
+    private static final LlmException SERVER_ERROR = new LlmException("HTTP 503", 503, null);
+
+    @Test
+    public void testOpensOnceTheFailureRateCrossesTheThreshold() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        CircuitBreaker breaker = new CircuitBreaker("openai", smallWindow(), registry);
+
+        breaker.tryAcquire().success(0);
+        breaker.tryAcquire().failure(0, SERVER_ERROR);
+        breaker.tryAcquire().success(0);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState(), "below minimum calls");
+        breaker.tryAcquire().failure(0, SERVER_ERROR);
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertNull(breaker.tryAcquire());
+        assertEquals(1.0, registry.counter("lyra.llm.circuit.calls", "name", "openai", "outcome", "rejected").count());
+    }
+
+    @Test
+    public void testClientErrorsAndCancellationsAreNotFailures() {
+        CircuitBreaker breaker = new CircuitBreaker("openai", smallWindow(), new SimpleMeterRegistry());
+
+        for (int i = 0; i < 10; i++) {
+            breaker.tryAcquire().failure(0, new LlmException("HTTP 429", 429, null));
+            breaker.tryAcquire().failure(0, new CancellationException());
+        }
+
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertFalse(CircuitBreaker.isFailure(new LlmException("HTTP 400", 400, null)));
+        assertTrue(CircuitBreaker.isFailure(new IOException("connection reset")));
+    }
+
+    @Test
+    public void testSlowCallsOpenTheBreaker() {
+        LyraAgentProperties.Llm.CircuitBreaker config = smallWindow();
+        config.setSlowCallDurationMs(100);
+        CircuitBreaker breaker = new CircuitBreaker("openai", config, new SimpleMeterRegistry());
+
+        for (int i = 0; i < 4; i++) {
+            breaker.tryAcquire().success(TimeUnit.MILLISECONDS.toNanos(200));
+        }
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    public void testHalfOpenProbesCloseTheBreaker() throws Exception {
+        CircuitBreaker breaker = opened();
+        Thread.sleep(80);
+
+        CircuitBreaker.Permit first = breaker.tryAcquire();
+        CircuitBreaker.Permit second = breaker.tryAcquire();
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertNotNull(first);
+        assertNotNull(second);
+        assertNull(breaker.tryAcquire(), "probe slots are limited");
+
+        // A released probe frees its slot
+        second.release();
+        CircuitBreaker.Permit third = breaker.tryAcquire();
+        assertNotNull(third);
+        first.success(0);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        third.success(0);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void testFailedProbeReopensTheBreaker() throws Exception {
+        CircuitBreaker breaker = opened();
+        Thread.sleep(80);
+
+        breaker.tryAcquire().failure(0, SERVER_ERROR);
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertNull(breaker.tryAcquire());
+    }
+
+    @Test
+    public void testCallsFromAnEarlierStateAreIgnored() {
+        CircuitBreaker breaker = new CircuitBreaker("openai", smallWindow(), new SimpleMeterRegistry());
+        CircuitBreaker.Permit stale = breaker.tryAcquire();
+        for (int i = 0; i < 4; i++) {
+            breaker.tryAcquire().failure(0, SERVER_ERROR);
+        }
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+        stale.success(0);
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    private static CircuitBreaker opened() {
+        CircuitBreaker breaker = new CircuitBreaker("openai", smallWindow(), new SimpleMeterRegistry());
+        for (int i = 0; i < 4; i++) {
+            breaker.tryAcquire().failure(0, SERVER_ERROR);
+        }
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        return breaker;
+    }
+
+    private static LyraAgentProperties.Llm.CircuitBreaker smallWindow() {
+        LyraAgentProperties.Llm.CircuitBreaker config = new LyraAgentProperties.Llm.CircuitBreaker();
+        config.setWindowSize(10);
+        config.setMinimumCalls(4);
+        config.setOpenDurationMs(50);
+        config.setHalfOpenProbes(2);
+        return config;
+    }
+}
@@ -0,0 +1,105 @@
+package com.lyra.agent.llm;
+
+import com.lyra.agent.agent.Message;
+import com.lyra.agent.autoconfigure.LyraAgentProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class CircuitBreakingLLMProviderTest {
+    @Test
+    public void testOpenBreakerFailsFastWithoutFallback() {
+        // The primary provider is down; after two failures it is no longer called at all
+        List<Message> translate = List.of(Message.user("Translate 'good night' to German."));
+        LLMProvider delegate = Mockito.mock(LLMProvider.class);
+        when(delegate.chatAsync(anyList(), anyMap()))
+                .thenAnswer(invocation -> CompletableFuture.failedFuture(new LlmException("HTTP 502", 502, null)));
+        CircuitBreakingLLMProvider provider = new CircuitBreakingLLMProvider(delegate, null, opensAfterTwoFailures());
+
+        for (int i = 0; i < 2; i++) {
+            assertThrows(CompletionException.class, () -> provider.chatAsync(translate, Map.of()).join());
+        }
+        CompletionException e = assertThrows(CompletionException.class,
+                () -> provider.chatAsync(translate, Map.of()).join());
+
+        assertEquals(503, assertInstanceOf(LlmException.class, e.getCause()).getStatusCode());
+        verify(delegate, times(2)).chatAsync(anyList(), anyMap());
+        assertEquals(CircuitBreaker.State.OPEN, provider.getBreaker().getState());
+    }
+
+    @Test
+    public void testServerErrorsAndOpenBreakerGoToTheFallback() {
+        List<Message> translate = List.of(Message.user("Translate 'good night' to German."));
+        LLMProvider delegate = Mockito.mock(LLMProvider.class);
+        LLMProvider fallback = Mockito.mock(LLMProvider.class);
+        when(delegate.chatAsync(anyList(), anyMap()))
+                .thenAnswer(invocation -> CompletableFuture.failedFuture(new LlmException("HTTP 502", 502, null)));
+        when(fallback.chatAsync(anyList(), anyMap()))
+                .thenAnswer(invocation -> CompletableFuture.completedFuture(new LlmResponse("Gute Nacht", Map.of(), "stop")));
+        CircuitBreakingLLMProvider provider = new CircuitBreakingLLMProvider(delegate, fallback, opensAfterTwoFailures());
+
+        for (int i = 0; i < 4; i++) {
+            assertEquals("Gute Nacht", provider.chat(translate, Map.of()).getContent());
+        }
+
+        // Two failures open the breaker; the remaining calls skip the delegate entirely
+        verify(delegate, times(2)).chatAsync(anyList(), anyMap());
+        verify(fallback, times(4)).chatAsync(anyList(), anyMap());
+    }
+
+    @Test
+    public void testClientErrorsAreNotRetriedOnTheFallback() {
+        // A malformed request fails the same way on any provider
+        List<Message> translate = List.of(Message.user(""));
+        LLMProvider delegate = Mockito.mock(LLMProvider.class);
+        LLMProvider fallback = Mockito.mock(LLMProvider.class);
+        when(delegate.chatAsync(anyList(), anyMap()))
+                .thenAnswer(invocation -> CompletableFuture.failedFuture(new LlmException("HTTP 400", 400, null)));
+        CircuitBreakingLLMProvider provider = new CircuitBreakingLLMProvider(delegate, fallback, opensAfterTwoFailures());
+
+        CompletionException e = assertThrows(CompletionException.class,
+                () -> provider.chatAsync(translate, Map.of()).join());
+
+        assertEquals(400, assertInstanceOf(LlmException.class, e.getCause()).getStatusCode());
+        verify(fallback, never()).chatAsync(anyList(), anyMap());
+    }
+
+    @Test
+    public void testStreamFallsBackBeforeTheFirstChunk() {
+        List<Message> translate = List.of(Message.user("Translate 'good morning' to German."));
+        LLMProvider delegate = Mockito.mock(LLMProvider.class);
+        LLMProvider fallback = Mockito.mock(LLMProvider.class);
+        when(delegate.streamChat(anyList(), anyMap()))
+                .thenReturn(StreamPublishers.error(new LlmException("HTTP 502", 502, null)));
+        when(fallback.streamChat(anyList(), anyMap())).thenReturn(StreamPublishers.fromChunks(List.of(
+                new StreamChunk("Guten Morgen", false, Map.of(), null),
+                new StreamChunk("", true, Map.of(), "stop"))));
+        CircuitBreakingLLMProvider provider = new CircuitBreakingLLMProvider(delegate, fallback, opensAfterTwoFailures());
+
+        StringBuilder content = new StringBuilder();
+        StreamPublishers.consume(provider.streamChat(translate, Map.of()), chunk -> content.append(chunk.getContent()));
+
+        assertEquals("Guten Morgen", content.toString());
+    }
+
+    private static CircuitBreaker opensAfterTwoFailures() {
+        LyraAgentProperties.Llm.CircuitBreaker config = new LyraAgentProperties.Llm.CircuitBreaker();
+        config.setMinimumCalls(2);
+        return new CircuitBreaker("openai", config, new SimpleMeterRegistry());
+    }
+}
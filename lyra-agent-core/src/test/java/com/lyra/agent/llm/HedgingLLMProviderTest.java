@@ -0,0 +1,146 @@
+package com.lyra.agent.llm;
+
+import com.lyra.agent.agent.Message;
+import com.lyra.agent.autoconfigure.LyraAgentProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class HedgingLLMProviderTest {
+    @Test
+    public void testSlowPrimaryIsHedgedAndCancelled() throws Exception {
+        // The primary replica stalls on a short extraction request; the hedge answers first
+        List<Message> invoice = List.of(Message.user("Extract the total from: 'Total due: $42.10'"));
+        LLMProvider primary = Mockito.mock(LLMProvider.class);
+        LLMProvider secondary = Mockito.mock(LLMProvider.class);
+        CompletableFuture<LlmResponse> slow = new CompletableFuture<>();
+        when(primary.chatAsync(anyList(), anyMap())).thenReturn(slow);
+        when(secondary.chatAsync(anyList(), anyMap()))
+                .thenReturn(CompletableFuture.completedFuture(new LlmResponse("42.10", Map.of(), "stop")));
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        HedgingLLMProvider provider = new HedgingLLMProvider(primary, secondary, hedgeAfter20ms(1.0), registry);
+
+        LlmResponse response = provider.chatAsync(invoice, Map.of()).get(2, TimeUnit.SECONDS);
+
+        assertEquals("42.10", response.getContent());
+        assertTrue(slow.isCancelled(), "the losing primary call should be cancelled");
+        assertEquals(1.0, registry.counter("lyra.llm.hedge.sent", "provider", "openai").count());
+    }
+
+    @Test
+    public void testHedgeWinRecordsThePrimaryLatency() throws Exception {
+        LLMProvider primary = Mockito.mock(LLMProvider.class);
+        LLMProvider secondary = Mockito.mock(LLMProvider.class);
+        when(primary.chatAsync(anyList(), anyMap())).thenReturn(new CompletableFuture<>());
+        when(secondary.chatAsync(anyList(), anyMap()))
+                .thenReturn(CompletableFuture.completedFuture(new LlmResponse("42.10", Map.of(), "stop")));
+        LyraAgentProperties.Llm config = hedgeAfter20ms(1.0);
+        config.getHedge().setMinSamples(1);
+        config.getHedge().setMinDelayMs(0);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        HedgingLLMProvider provider = new HedgingLLMProvider(primary, secondary, config, registry);
+
+        provider.chatAsync(List.of(Message.user("Extract the total.")), Map.of()).get(2, TimeUnit.SECONDS);
+
+        // The instant hedge answer must not pull the threshold below the time the primary had already taken
+        assertTrue(registry.get("lyra.llm.hedge.delay").gauge().value() >= 20);
+    }
+
+    @Test
+    public void testNoHedgeWithoutBudget() throws Exception {
+        List<Message> invoice = List.of(Message.user("Extract the due date from: 'Due by 2024-07-01'"));
+        LLMProvider primary = Mockito.mock(LLMProvider.class);
+        LLMProvider secondary = Mockito.mock(LLMProvider.class);
+        CompletableFuture<LlmResponse> slow = new CompletableFuture<>();
+        when(primary.chatAsync(anyList(), anyMap())).thenReturn(slow);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        HedgingLLMProvider provider = new HedgingLLMProvider(primary, secondary, hedgeAfter20ms(0), registry);
+
+        CompletableFuture<LlmResponse> result = provider.chatAsync(invoice, Map.of());
+        Thread.sleep(100);
+        assertFalse(result.isDone());
+        slow.complete(new LlmResponse("2024-07-01", Map.of(), "stop"));
+
+        assertEquals("2024-07-01", result.get(2, TimeUnit.SECONDS).getContent());
+        verify(secondary, never()).chatAsync(anyList(), anyMap());
+        assertEquals(1.0, registry.counter("lyra.llm.hedge.skipped", "provider", "openai").count());
+    }
+
+    @Test
+    public void testCancellingTheResultCancelsInFlightCalls() {
+        LLMProvider primary = Mockito.mock(LLMProvider.class);
+        CompletableFuture<LlmResponse> slow = new CompletableFuture<>();
+        when(primary.chatAsync(anyList(), anyMap())).thenReturn(slow);
+        HedgingLLMProvider provider = new HedgingLLMProvider(primary, null, hedgeAfter20ms(1.0), new SimpleMeterRegistry());
+
+        provider.chatAsync(List.of(Message.user("Extract the vendor name.")), Map.of()).cancel(true);
+
+        assertTrue(slow.isCancelled());
+    }
+
+    @Test
+    public void testFirstChunkWinsTheStreamAndTheLoserIsCancelled() {
+        LLMProvider primary = Mockito.mock(LLMProvider.class);
+        LLMProvider secondary = Mockito.mock(LLMProvider.class);
+        SilentPublisher slow = new SilentPublisher();
+        when(primary.streamChat(anyList(), anyMap())).thenReturn(slow);
+        when(secondary.streamChat(anyList(), anyMap())).thenReturn(StreamPublishers.fromChunks(List.of(
+                new StreamChunk("Invoice 7731 ", false, Map.of(), null),
+                new StreamChunk("is overdue.", false, Map.of(), null),
+                new StreamChunk("", true, Map.of(), "stop"))));
+        HedgingLLMProvider provider = new HedgingLLMProvider(primary, secondary, hedgeAfter20ms(1.0), new SimpleMeterRegistry());
+
+        StringBuilder content = new StringBuilder();
+        StreamPublishers.consume(provider.streamChat(List.of(Message.user("Is invoice 7731 overdue?")), Map.of()), chunk -> content.append(chunk.getContent()));
+
+        assertEquals("Invoice 7731 is overdue.", content.toString());
+        assertTrue(slow.cancelled, "the losing primary stream should be cancelled");
+    }
+
+    /**
+     * Hedges after 20 ms while fewer than minSamples latencies are known, within the given budget ratio.
+     */
+    private static LyraAgentProperties.Llm hedgeAfter20ms(double maxRatio) {
+        LyraAgentProperties.Llm llm = new LyraAgentProperties.Llm();
+        llm.getHedge().setEnabled(true);
+        llm.getHedge().setInitialDelayMs(20);
+        llm.getHedge().setMaxRatio(maxRatio);
+        return llm;
+    }
+
+    /**
+     * An upstream that accepts a subscription but never emits.
+     */
+    private static final class SilentPublisher implements Flow.Publisher<StreamChunk> {
+        private volatile boolean cancelled;
+
+        @Override
+        public void subscribe(Flow.Subscriber<? super StreamChunk> subscriber) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                }
+
+                @Override
+                public void cancel() {
+                    cancelled = true;
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.lyra.agent.llm;
+
+import com.lyra.agent.autoconfigure.LyraAgentProperties;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LlmHttpTransportTest {
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final List<String> arrivals = new CopyOnWriteArrayList<>();
+    private final Semaphore arrived = new Semaphore(0);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final ExecutorService serverExecutor = Executors.newCachedThreadPool();
+    private HttpServer server;
+    private LlmHttpTransport transport;
+
+    @BeforeEach
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        // Answers once the test releases it
+        server.createContext("/slow", exchange -> {
+            arrivals.add(exchange.getRequestURI().getQuery());
+            arrived.release();
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            byte[] body = "ok".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        // Promises a longer body than it sends
+        server.createContext("/broken", exchange -> {
+            exchange.sendResponseHeaders(200, 100);
+            exchange.getResponseBody().write("partial".getBytes(StandardCharsets.UTF_8));
+            exchange.getResponseBody().flush();
+            exchange.close();
+        });
+        server.setExecutor(serverExecutor);
+        server.start();
+    }
+
+    @AfterEach
+    public void stopServer() {
+        release.countDown();
+        if (transport != null) {
+            transport.close();
+        }
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    @Test
+    public void testWaitersGetTheSlotInArrivalOrder() throws Exception {
+        transport = transport(1, 5000);
+        CompletableFuture<HttpResponse<String>> first = send("/slow?first");
+        assertTrue(arrived.tryAcquire(5, TimeUnit.SECONDS));
+        CompletableFuture<HttpResponse<String>> second = send("/slow?second");
+        CompletableFuture<HttpResponse<String>> third = send("/slow?third");
+
+        assertEquals(1, transport.activeRequests(host()));
+        assertEquals(2.0, registry.get("lyra.llm.http.queued").gauge().value());
+        assertEquals(List.of("first"), arrivals);
+
+        release.countDown();
+        assertEquals("ok", third.get(5, TimeUnit.SECONDS).body());
+        assertEquals("ok", first.get().body());
+        assertEquals("ok", second.get().body());
+        assertEquals(List.of("first", "second", "third"), arrivals);
+        assertEquals(0, transport.activeRequests(host()));
+        assertEquals(0.0, registry.get("lyra.llm.http.queued").gauge().value());
+    }
+
+    @Test
+    public void testAcquireTimesOutAndLeavesTheQueue() throws Exception {
+        transport = transport(1, 100);
+        CompletableFuture<HttpResponse<String>> first = send("/slow?first");
+        assertTrue(arrived.tryAcquire(5, TimeUnit.SECONDS));
+
+        ExecutionException e = assertThrows(ExecutionException.class,
+                () -> send("/slow?second").get(5, TimeUnit.SECONDS));
+        assertInstanceOf(HttpTimeoutException.class, e.getCause());
+        assertEquals(0.0, registry.get("lyra.llm.http.queued").gauge().value());
+        assertEquals(List.of("first"), arrivals);
+
+        release.countDown();
+        assertEquals("ok", first.get(5, TimeUnit.SECONDS).body());
+        assertEquals(0, transport.activeRequests(host()));
+        assertEquals("ok", send("/slow?third").get(5, TimeUnit.SECONDS).body());
+    }
+
+    @Test
+    public void testSlotIsReleasedOnResponseErrorAndCancel() throws Exception {
+        transport = transport(1, 5000);
+        assertThrows(ExecutionException.class, () -> send("/broken").get(5, TimeUnit.SECONDS));
+        assertEquals(0, transport.activeRequests(host()));
+
+        CompletableFuture<HttpResponse<String>> cancelled = send("/slow?cancelled");
+        assertTrue(arrived.tryAcquire(5, TimeUnit.SECONDS));
+        CompletableFuture<HttpResponse<String>> queued = send("/slow?queued");
+        queued.cancel(true);
+        assertEquals(0.0, registry.get("lyra.llm.http.queued").gauge().value());
+        cancelled.cancel(true);
+        assertEquals(0, transport.activeRequests(host()));
+
+        // The slot is free again even though the server never answered the cancelled request
+        release.countDown();
+        assertEquals("ok", send("/slow?after").get(5, TimeUnit.SECONDS).body());
+        assertEquals(List.of("cancelled", "after"), arrivals);
+    }
+
+    private LlmHttpTransport transport(int maxPerHost, long acquireTimeoutMs) {
+        LyraAgentProperties.Llm config = new LyraAgentProperties.Llm();
+        config.getPool().setMaxPerHost(maxPerHost);
+        config.getPool().setAcquireTimeoutMs(acquireTimeoutMs);
+        config.getPool().setHttp2(false);
+        return new LlmHttpTransport(config, registry);
+    }
+
+    private CompletableFuture<HttpResponse<String>> send(String path) {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://" + host() + path)).build();
+        return transport.sendAsync(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private String host() {
+        return "127.0.0.1:" + server.getAddress().getPort();
+    }
+}
@@ -0,0 +1,143 @@
+package com.lyra.agent.llm;
+
+import com.lyra.agent.tokenizer.Tokenizer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MicroBatchingEmbeddingModelTest {
+    private final ExecutorService callers = Executors.newFixedThreadPool(3);
+
+    @AfterEach
+    public void tearDown() {
+        callers.shutdownNow();
+    }
+
+    @Test
+    public void testConcurrentEmbedsShareOneRequestSealedBySize() {
+        RecordingEmbeddingModel delegate = new RecordingEmbeddingModel();
+        // The window is far longer than the test; only the size limit can seal the batch
+        MicroBatchingEmbeddingModel model = new MicroBatchingEmbeddingModel(delegate, new LengthTokenizer(),
+                10_000, 3, 1000, new SimpleMeterRegistry());
+
+        List<CompletableFuture<float[]>> results = new ArrayList<>();
+        for (String text : List.of("a", "bb", "ccc")) {
+            results.add(CompletableFuture.supplyAsync(() -> model.embed(text), callers));
+        }
+
+        assertArrayEquals(new float[]{1}, results.get(0).orTimeout(5, TimeUnit.SECONDS).join());
+        assertArrayEquals(new float[]{2}, results.get(1).orTimeout(5, TimeUnit.SECONDS).join());
+        assertArrayEquals(new float[]{3}, results.get(2).orTimeout(5, TimeUnit.SECONDS).join());
+        assertEquals(1, delegate.batches.size());
+        assertEquals(3, delegate.batches.get(0).size());
+    }
+
+    @Test
+    public void testBatchIsSealedByTheWindowOrTheTokenLimit() {
+        RecordingEmbeddingModel delegate = new RecordingEmbeddingModel();
+        MicroBatchingEmbeddingModel windowed = new MicroBatchingEmbeddingModel(delegate, new LengthTokenizer(),
+                50, 8, 1000, new SimpleMeterRegistry());
+        long start = System.nanoTime();
+        assertArrayEquals(new float[]{4}, windowed.embed("dddd"));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50), "sent before the window closed");
+
+        MicroBatchingEmbeddingModel limited = new MicroBatchingEmbeddingModel(delegate, new LengthTokenizer(),
+                10_000, 8, 5, new SimpleMeterRegistry());
+        start = System.nanoTime();
+        assertArrayEquals(new float[]{5}, limited.embed("eeeee"));
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5), "a batch at the token limit waits for nothing");
+        assertEquals(List.of(List.of("dddd"), List.of("eeeee")), delegate.batches);
+    }
+
+    @Test
+    public void testFailedRequestFailsEveryCallerInTheBatch() {
+        RuntimeException failure = new LlmException("HTTP 503", 503, null);
+        EmbeddingModel delegate = new EmbeddingModel() {
+            @Override
+            public float[] embed(String text) {
+                throw failure;
+            }
+
+            @Override
+            public List<float[]> embedBatch(List<String> texts) {
+                throw failure;
+            }
+        };
+        MicroBatchingEmbeddingModel model = new MicroBatchingEmbeddingModel(delegate, new LengthTokenizer(),
+                10_000, 3, 1000, new SimpleMeterRegistry());
+
+        List<CompletableFuture<float[]>> results = new ArrayList<>();
+        for (String text : List.of("a", "bb", "ccc")) {
+            results.add(CompletableFuture.supplyAsync(() -> model.embed(text), callers));
+        }
+
+        for (CompletableFuture<float[]> result : results) {
+            CompletionException e = assertThrows(CompletionException.class,
+                    () -> result.orTimeout(5, TimeUnit.SECONDS).join());
+            assertSame(failure, e.getCause());
+        }
+    }
+
+    @Test
+    public void testExplicitBatchIsSplitAtTheLimits() {
+        RecordingEmbeddingModel delegate = new RecordingEmbeddingModel();
+        MicroBatchingEmbeddingModel model = new MicroBatchingEmbeddingModel(delegate, new LengthTokenizer(),
+                10_000, 2, 6, new SimpleMeterRegistry());
+
+        List<float[]> vectors = model.embedBatch(List.of("a", "b", "cccc", "ddd", "eeeeeeee"));
+
+        assertEquals(5, vectors.size());
+        assertArrayEquals(new float[]{4}, vectors.get(2));
+        // Two per request, and no request over six tokens unless a single text is larger on its own
+        assertEquals(List.of(List.of("a", "b"), List.of("cccc"), List.of("ddd"), List.of("eeeeeeee")), delegate.batches);
+    }
+
+    /**
+     * Embeds each text as a one-dimensional vector holding its length, and records every request.
+     */
+    private static final class RecordingEmbeddingModel implements EmbeddingModel {
+        private final List<List<String>> batches = new ArrayList<>();
+
+        @Override
+        public float[] embed(String text) {
+            return new float[]{text.length()};
+        }
+
+        @Override
+        public synchronized List<float[]> embedBatch(List<String> texts) {
+            batches.add(List.copyOf(texts));
+            List<float[]> vectors = new ArrayList<>();
+            texts.forEach(text -> vectors.add(embed(text)));
+            return vectors;
+        }
+    }
+
+    /**
+     * One token per character.
+     */
+    private static final class LengthTokenizer implements Tokenizer {
+        @Override
+        public String getEncoding() {
+            return "cl100k_base";
+        }
+
+        @Override
+        public int count(String text) {
+            return text == null ? 0 : text.length();
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.lyra.agent.llm;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.lyra.agent.agent.Message;
+import com.lyra.agent.autoconfigure.LyraAgentProperties;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class OpenAICompatibleLLMProviderTest {
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testIdLessStreamedToolCall() throws Exception {
+        // Some compatible servers stream tool calls without an id
+        TreeMap<Integer, ToolCall> calls = new TreeMap<>();
+        ToolCall.merge(calls, ToolCall.from(chunk("{\"choices\":[{\"delta\":{\"tool_calls\":[{\"index\":0,"
+                + "\"type\":\"function\",\"function\":{\"name\":\"search\"}}]}}]}").getMetadata()));
+        ToolCall.merge(calls, ToolCall.from(chunk("{\"choices\":[{\"delta\":{\"tool_calls\":[{\"index\":0,"
+                + "\"function\":{\"arguments\":\"{\\\"query\\\": \\\"Paris\\\"}\"}}]}}]}").getMetadata()));
+        ToolCall call = calls.get(0);
+        assertNull(call.getId());
+        assertEquals(Map.of("query", "Paris"), call.parseArguments());
+
+        Message result = Message.tool(call.getName(), call.getId(), "Result for Paris");
+        assertNull(result.getToolCallId());
+
+        OpenAILLMProvider provider = new OpenAILLMProvider(new LyraAgentProperties.Llm());
+        Map<String, Object> body = provider.requestBody(List.of(Message.user("question"),
+                Message.assistant("", List.copyOf(calls.values())), result), Map.of(), true);
+        List<Map<String, Object>> messages = (List<Map<String, Object>>) body.get("messages");
+        Map<String, Object> wireCall = ((List<Map<String, Object>>) messages.get(1).get("tool_calls")).get(0);
+        assertFalse(wireCall.containsKey("id"));
+        assertEquals(Map.of("name", "search", "arguments", "{\"query\": \"Paris\"}"), wireCall.get("function"));
+        // Without an id the result cannot answer the call, so it goes out as a user message
+        assertEquals("user", messages.get(2).get("role"));
+        assertFalse(messages.get(2).containsKey("tool_call_id"));
+    }
+
+    private static StreamChunk chunk(String json) throws Exception {
+        try (JsonParser parser = OpenAICompatibleLLMProvider.MAPPER.getFactory().createParser(json)) {
+            return OpenAICompatibleLLMProvider.toChunk(parser);
+        }
+    }
+}
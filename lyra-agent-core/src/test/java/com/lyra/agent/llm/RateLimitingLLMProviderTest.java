@@ -0,0 +1,96 @@
+package com.lyra.agent.llm;
+
+import com.lyra.agent.agent.Message;
+import com.lyra.agent.autoconfigure.LyraAgentProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class RateLimitingLLMProviderTest {
+
+    @Test
+    public void testRateLimitedCallIsRetriedAfterRetryAfter() {
+        // A batch job summarising support tickets runs into the provider's rate limit
+        List<Message> ticket = List.of(Message.user("Summarise ticket #4821 in one line."));
+        LLMProvider delegate = Mockito.mock(LLMProvider.class);
+        when(delegate.chatAsync(anyList(), anyMap()))
+                .thenReturn(CompletableFuture.failedFuture(tooManyRequests(Duration.ofMillis(100))))
+                .thenReturn(CompletableFuture.completedFuture(new LlmResponse("Refund issued.", Map.of(), "stop")));
+        RateLimitingLLMProvider provider = new RateLimitingLLMProvider(delegate, "openai", "sk-batch",
+                retries(3), new SimpleMeterRegistry());
+
+        long start = System.nanoTime();
+        assertEquals("Refund issued.", provider.chatAsync(ticket, Map.of()).join().getContent());
+
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(100), "Retry-After not honoured");
+        verify(delegate, times(2)).chatAsync(anyList(), anyMap());
+        assertTrue(provider.getLimiter().currentLimit() < 64, "the 429 should have lowered the concurrency limit");
+    }
+
+    @Test
+    public void testGivesUpAfterMaxRetries() {
+        // Every retry waits for a limiter wake-up scheduled from inside the previous one
+        List<Message> ticket = List.of(Message.user("Summarise ticket #4822 in one line."));
+        LLMProvider delegate = Mockito.mock(LLMProvider.class);
+        when(delegate.chatAsync(anyList(), anyMap()))
+                .thenAnswer(invocation -> CompletableFuture.failedFuture(tooManyRequests(Duration.ofMillis(10))));
+        RateLimitingLLMProvider provider = new RateLimitingLLMProvider(delegate, "openai", "sk-batch",
+                retries(2), new SimpleMeterRegistry());
+
+        CompletionException e = assertThrows(CompletionException.class,
+                () -> provider.chatAsync(ticket, Map.of()).orTimeout(5, TimeUnit.SECONDS).join());
+        assertEquals(429, assertInstanceOf(LlmException.class, e.getCause()).getStatusCode());
+        verify(delegate, times(3)).chatAsync(anyList(), anyMap());
+        assertEquals(0, provider.getLimiter().inFlight());
+    }
+
+    @Test
+    public void testStreamIsRetriedWhenRateLimitedBeforeTheFirstChunk() {
+        List<Message> ticket = List.of(Message.user("Draft a reply to ticket #4821."));
+        LLMProvider delegate = Mockito.mock(LLMProvider.class);
+        when(delegate.streamChat(anyList(), anyMap()))
+                .thenReturn(StreamPublishers.error(tooManyRequests(null)))
+                .thenReturn(StreamPublishers.fromChunks(List.of(
+                        new StreamChunk("Your refund ", false, Map.of(), null),
+                        new StreamChunk("is on its way.", false, Map.of(), null),
+                        new StreamChunk("", true, Map.of(), "stop"))));
+        RateLimitingLLMProvider provider = new RateLimitingLLMProvider(delegate, "openai", "sk-batch",
+                retries(3), new SimpleMeterRegistry());
+
+        StringBuilder reply = new StringBuilder();
+        StreamPublishers.consume(provider.streamChat(ticket, Map.of()), chunk -> reply.append(chunk.getContent()));
+
+        assertEquals("Your refund is on its way.", reply.toString());
+        verify(delegate, times(2)).streamChat(anyList(), anyMap());
+        assertEquals(0, provider.getLimiter().inFlight());
+    }
+
+    private static LyraAgentProperties.Llm.RateLimit retries(int maxRetries) {
+        LyraAgentProperties.Llm.RateLimit rateLimit = new LyraAgentProperties.Llm.RateLimit();
+        rateLimit.setMaxRetries(maxRetries);
+        // Used when the 429 carries no Retry-After
+        rateLimit.setDefaultRetryAfterMs(20);
+        return rateLimit;
+    }
+
+    private static LlmException tooManyRequests(Duration retryAfter) {
+        return new LlmException("HTTP 429: rate limit reached for requests", 429, retryAfter, null);
+    }
+}
@@ -0,0 +1,132 @@
+package com.lyra.agent.llm;
+
+import com.lyra.agent.agent.Message;
+import com.lyra.agent.autoconfigure.LyraAgentProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class RoutingLLMProviderTest {
+
+    @Test
+    public void testOutstandingRequestsSpreadAcrossEndpoints() {
+        // Two API keys for the same model; neither has answered yet
+        LLMProvider eu = Mockito.mock(LLMProvider.class);
+        LLMProvider us = Mockito.mock(LLMProvider.class);
+        CompletableFuture<LlmResponse> pendingEu = new CompletableFuture<>();
+        CompletableFuture<LlmResponse> pendingUs = new CompletableFuture<>();
+        when(eu.chatAsync(anyList(), anyMap())).thenReturn(pendingEu);
+        when(us.chatAsync(anyList(), anyMap())).thenReturn(pendingUs);
+        RoutingLLMProvider provider = new RoutingLLMProvider(List.of(endpoint("openai-eu", eu), endpoint("openai-us", us)),
+                new LyraAgentProperties.Llm.Routing(), new SimpleMeterRegistry());
+
+        provider.chatAsync(List.of(Message.user("Is 'You won a prize!' spam?")), Map.of());
+        provider.chatAsync(List.of(Message.user("Is 'Lunch at noon?' spam?")), Map.of());
+
+        verify(eu, times(1)).chatAsync(anyList(), anyMap());
+        verify(us, times(1)).chatAsync(anyList(), anyMap());
+        assertEquals(1, provider.routingTable().get(0).getOutstanding());
+        assertEquals(1, provider.routingTable().get(1).getOutstanding());
+
+        pendingEu.complete(new LlmResponse("spam", Map.of(), "stop"));
+        pendingUs.cancel(true);
+        assertEquals(0, provider.routingTable().get(0).getOutstanding());
+        assertEquals(0, provider.routingTable().get(1).getOutstanding());
+    }
+
+    @Test
+    public void testFailingEndpointIsAvoided() {
+        LLMProvider eu = Mockito.mock(LLMProvider.class);
+        LLMProvider us = Mockito.mock(LLMProvider.class);
+        when(eu.chatAsync(anyList(), anyMap()))
+                .thenAnswer(invocation -> CompletableFuture.failedFuture(new LlmException("HTTP 502", 502, null)));
+        when(us.chatAsync(anyList(), anyMap()))
+                .thenAnswer(invocation -> CompletableFuture.completedFuture(new LlmResponse("not spam", Map.of(), "stop")));
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        RoutingLLMProvider provider = new RoutingLLMProvider(List.of(endpoint("openai-eu", eu), endpoint("openai-us", us)),
+                new LyraAgentProperties.Llm.Routing(), registry);
+
+        for (int i = 0; i < 10; i++) {
+            provider.chat(List.of(Message.user("Is message #" + i + " spam?")), Map.of());
+        }
+
+        // Unseen endpoints are probed once; after that the failure penalty keeps traffic away from the EU key
+        verify(eu, times(1)).chatAsync(anyList(), anyMap());
+        verify(us, times(9)).chatAsync(anyList(), anyMap());
+        assertTrue(provider.routingTable().get(0).getLatencyMs() >= 1000);
+        assertEquals(1.0, registry.counter("lyra.llm.route.requests", "endpoint", "openai-eu", "outcome", "error").count());
+    }
+
+    @Test
+    public void testOpenBreakerTakesEndpointOutOfRotation() {
+        LLMProvider eu = Mockito.mock(LLMProvider.class);
+        LLMProvider us = Mockito.mock(LLMProvider.class);
+        when(us.chatAsync(anyList(), anyMap()))
+                .thenAnswer(invocation -> CompletableFuture.completedFuture(new LlmResponse("not spam", Map.of(), "stop")));
+        LyraAgentProperties.Llm.CircuitBreaker breakerConfig = new LyraAgentProperties.Llm.CircuitBreaker();
+        breakerConfig.setMinimumCalls(1);
+        CircuitBreaker euBreaker = new CircuitBreaker("openai-eu", breakerConfig, new SimpleMeterRegistry());
+        euBreaker.tryAcquire().failure(0, new LlmException("HTTP 503", 503, null));
+        RoutingLLMProvider provider = new RoutingLLMProvider(List.of(
+                new RoutingLLMProvider.Endpoint("openai-eu", eu, null, euBreaker, 1.0), endpoint("openai-us", us)),
+                new LyraAgentProperties.Llm.Routing(), new SimpleMeterRegistry());
+
+        for (int i = 0; i < 5; i++) {
+            assertEquals("not spam", provider.chat(List.of(Message.user("Is message #" + i + " spam?")), Map.of()).getContent());
+        }
+
+        verify(eu, never()).chatAsync(anyList(), anyMap());
+        assertEquals(0.0, provider.routingTable().get(0).getHeadroom());
+    }
+
+    @Test
+    public void testStreamReleasesTheEndpointWhenDone() {
+        LLMProvider eu = Mockito.mock(LLMProvider.class);
+        when(eu.streamChat(anyList(), anyMap())).thenReturn(StreamPublishers.fromChunks(List.of(
+                new StreamChunk("spam", false, Map.of(), null),
+                new StreamChunk("", true, Map.of(), "stop"))));
+        RoutingLLMProvider provider = new RoutingLLMProvider(List.of(endpoint("openai-eu", eu)),
+                new LyraAgentProperties.Llm.Routing(), new SimpleMeterRegistry());
+
+        StringBuilder content = new StringBuilder();
+        StreamPublishers.consume(provider.streamChat(List.of(Message.user("Is 'You won a prize!' spam?")), Map.of()),
+                chunk -> content.append(chunk.getContent()));
+
+        assertEquals("spam", content.toString());
+        assertEquals(0, provider.routingTable().get(0).getOutstanding());
+        assertThrows(IllegalArgumentException.class, () -> new RoutingLLMProvider(List.of(),
+                new LyraAgentProperties.Llm.Routing(), new SimpleMeterRegistry()));
+    }
+
+    @Test
+    public void testToolCallingRequiresEveryEndpoint() {
+        LLMProvider openai = Mockito.mock(LLMProvider.class);
+        LLMProvider local = Mockito.mock(LLMProvider.class);
+        when(openai.supportsToolCalling()).thenReturn(true);
+        when(local.supportsToolCalling()).thenReturn(false);
+
+        assertTrue(new RoutingLLMProvider(List.of(endpoint("openai", openai)),
+                new LyraAgentProperties.Llm.Routing(), new SimpleMeterRegistry()).supportsToolCalling());
+        assertFalse(new RoutingLLMProvider(List.of(endpoint("openai", openai), endpoint("local", local)),
+                new LyraAgentProperties.Llm.Routing(), new SimpleMeterRegistry()).supportsToolCalling());
+    }
+
+    private static RoutingLLMProvider.Endpoint endpoint(String name, LLMProvider provider) {
+        return new RoutingLLMProvider.Endpoint(name, provider, null, 1.0);
+    }
+}
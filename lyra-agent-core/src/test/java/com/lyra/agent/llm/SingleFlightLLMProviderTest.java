@@ -0,0 +1,193 @@
+package com.lyra.agent.llm;
+
+import com.lyra.agent.agent.Message;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class SingleFlightLLMProviderTest {
+
+    @Test
+    public void testConcurrentChatsShareOneCall() {
+        // Several agents ask for the same tool-routing decision at the same moment
+        List<Message> routing = List.of(Message.system("Reply with the tool to use."), Message.user("Weather in Oslo?"));
+        LLMProvider delegate = Mockito.mock(LLMProvider.class);
+        CompletableFuture<LlmResponse> pending = new CompletableFuture<>();
+        when(delegate.chatAsync(anyList(), anyMap())).thenReturn(pending, CompletableFuture.completedFuture(
+                new LlmResponse("get_forecast", Map.of(), "stop")));
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        SingleFlightLLMProvider provider = new SingleFlightLLMProvider(delegate, "openai", registry);
+
+        CompletableFuture<LlmResponse> first = provider.chatAsync(routing, Map.of());
+        CompletableFuture<LlmResponse> second = provider.chatAsync(routing, Map.of());
+        // Cancelling one waiter leaves the shared call and the other waiter alone
+        second.cancel(true);
+        CompletableFuture<LlmResponse> third = provider.chatAsync(routing, Map.of());
+        pending.complete(new LlmResponse("get_weather", Map.of(), "stop"));
+
+        assertEquals("get_weather", first.join().getContent());
+        assertEquals("get_weather", third.join().getContent());
+        verify(delegate, times(1)).chatAsync(anyList(), anyMap());
+        assertEquals(2.0, registry.counter("lyra.llm.singleflight.requests", "provider", "openai", "result", "coalesced").count());
+
+        // Finished calls are not cached; the next identical request goes upstream again
+        assertEquals("get_forecast", provider.chatAsync(routing, Map.of()).join().getContent());
+        verify(delegate, times(2)).chatAsync(anyList(), anyMap());
+    }
+
+    @Test
+    public void testSampledChatsAreNotCoalesced() {
+        List<Message> brainstorm = List.of(Message.user("Suggest a name for a hiking app."));
+        LLMProvider delegate = Mockito.mock(LLMProvider.class);
+        when(delegate.chatAsync(anyList(), anyMap())).thenAnswer(invocation -> new CompletableFuture<>());
+        SingleFlightLLMProvider provider = new SingleFlightLLMProvider(delegate, "openai", new SimpleMeterRegistry());
+
+        provider.chatAsync(brainstorm, Map.of("temperature", 0.8));
+        provider.chatAsync(brainstorm, Map.of("temperature", 0.8));
+
+        verify(delegate, times(2)).chatAsync(anyList(), anyMap());
+    }
+
+    @Test
+    public void testLateSubscriberReplaysTheSharedStream() {
+        List<Message> summary = List.of(Message.user("Summarise today's deploy log."));
+        LLMProvider delegate = Mockito.mock(LLMProvider.class);
+        ManualPublisher upstream = new ManualPublisher();
+        when(delegate.streamChat(anyList(), anyMap())).thenReturn(upstream);
+        SingleFlightLLMProvider provider = new SingleFlightLLMProvider(delegate, "openai", new SimpleMeterRegistry());
+
+        Collector early = new Collector();
+        provider.streamChat(summary, Map.of()).subscribe(early);
+        upstream.emit("Two services ");
+        upstream.emit("deployed, ");
+        Collector late = new Collector();
+        provider.streamChat(summary, Map.of()).subscribe(late);
+        assertEquals("Two services deployed, ", late.content(), "chunks received before joining are replayed");
+        upstream.emit("one rolled back.");
+        upstream.complete();
+
+        verify(delegate, times(1)).streamChat(anyList(), anyMap());
+        assertEquals("Two services deployed, one rolled back.", early.content());
+        assertEquals("Two services deployed, one rolled back.", late.content());
+        assertTrue(early.completed);
+        assertTrue(late.completed);
+    }
+
+    @Test
+    public void testUpstreamIsCancelledOnlyWhenEverySubscriberCancels() {
+        List<Message> summary = List.of(Message.user("Summarise today's deploy log."));
+        LLMProvider delegate = Mockito.mock(LLMProvider.class);
+        ManualPublisher upstream = new ManualPublisher();
+        ManualPublisher next = new ManualPublisher();
+        when(delegate.streamChat(anyList(), anyMap())).thenReturn(upstream, next);
+        SingleFlightLLMProvider provider = new SingleFlightLLMProvider(delegate, "openai", new SimpleMeterRegistry());
+
+        Collector first = new Collector();
+        Collector second = new Collector();
+        provider.streamChat(summary, Map.of()).subscribe(first);
+        provider.streamChat(summary, Map.of()).subscribe(second);
+        upstream.emit("Two services ");
+
+        first.subscription.cancel();
+        assertFalse(upstream.cancelled);
+        upstream.emit("deployed.");
+        assertEquals("Two services ", first.content());
+        assertEquals("Two services deployed.", second.content());
+
+        second.subscription.cancel();
+        assertTrue(upstream.cancelled);
+
+        // A cancelled stream is not joined; the next request starts a new one
+        provider.streamChat(summary, Map.of()).subscribe(new Collector());
+        verify(delegate, times(2)).streamChat(anyList(), anyMap());
+        assertTrue(next.subscribed());
+    }
+
+    /**
+     * An upstream that emits only when the test says so, within the demand it was given.
+     */
+    private static final class ManualPublisher implements Flow.Publisher<StreamChunk> {
+        private Flow.Subscriber<? super StreamChunk> subscriber;
+        private long requested;
+        private boolean cancelled;
+
+        @Override
+        public void subscribe(Flow.Subscriber<? super StreamChunk> subscriber) {
+            this.subscriber = subscriber;
+            subscriber.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                    requested += n;
+                }
+
+                @Override
+                public void cancel() {
+                    cancelled = true;
+                }
+            });
+        }
+
+        void emit(String content) {
+            assertTrue(requested > 0, "emitted without demand");
+            requested--;
+            subscriber.onNext(new StreamChunk(content, false, Map.of(), null));
+        }
+
+        void complete() {
+            subscriber.onNext(new StreamChunk("", true, Map.of(), "stop"));
+            subscriber.onComplete();
+        }
+
+        boolean subscribed() {
+            return subscriber != null;
+        }
+    }
+
+    private static final class Collector implements Flow.Subscriber<StreamChunk> {
+        private final List<StreamChunk> chunks = new ArrayList<>();
+        private Flow.Subscription subscription;
+        private boolean completed;
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(StreamChunk item) {
+            chunks.add(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            throw new AssertionError(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            completed = true;
+        }
+
+        String content() {
+            StringBuilder content = new StringBuilder();
+            chunks.forEach(chunk -> content.append(chunk.getContent()));
+            return content.toString();
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.lyra.agent.llm;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * SSE 流解码吞吐基准，单位为 tokens/秒（每个 chat.completion.chunk 计为一个 token）。
+ * 对比逐行创建字符串并用 {@code readTree} 解析的旧实现与 {@link SseDecoder} + 流式 JsonParser 的新实现。
+ * 运行方式：先执行 {@code mvn test-compile}，再以测试类路径运行本类的 main 方法。
+ */
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(1)
+@State(Scope.Thread)
+public class SseDecoderBenchmark {
+    private static final int TOKENS = 1000;
+    private static final int NETWORK_BUFFER = 8 * 1024;
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private byte[] stream;
+
+    @Setup
+    public void setUp() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < TOKENS; i++) {
+            sb.append("data: {\"id\":\"chatcmpl-9x\",\"object\":\"chat.completion.chunk\",\"created\":1718000000,")
+                    .append("\"model\":\"gpt-4o\",\"system_fingerprint\":\"fp_abc\",\"choices\":[{\"index\":0,")
+                    .append("\"delta\":{\"content\":\" token").append(i).append("\"},\"logprobs\":null,")
+                    .append("\"finish_reason\":").append(i == TOKENS - 1 ? "\"stop\"" : "null").append("}]}\n\n");
+        }
+        sb.append("data: [DONE]\n\n");
+        stream = sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TOKENS)
+    public void lineReaderWithTree(Blackhole bh) throws IOException {
+        ObjectMapper mapper = new ObjectMapper();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new ByteArrayInputStream(stream), StandardCharsets.UTF_8));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (!line.startsWith("data: ")) {
+                continue;
+            }
+            String data = line.substring(6);
+            if ("[DONE]".equals(data)) {
+                break;
+            }
+            JsonNode choice = mapper.readTree(data).get("choices").get(0);
+            JsonNode content = choice.path("delta").get("content");
+            bh.consume(content != null ? content.asText() : "");
+            bh.consume(choice.get("finish_reason"));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TOKENS)
+    public void byteDecoderWithStreamingParser(Blackhole bh) {
+        SseDecoder decoder = new SseDecoder();
+        SseDecoder.Handler handler = new SseDecoder.Handler() {
+            @Override
+            public void onData(byte[] buf, int off, int len) {
+                try (JsonParser parser = JSON_FACTORY.createParser(buf, off, len)) {
+                    bh.consume(OpenAICompatibleLLMProvider.toChunk(parser));
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+
+            @Override
+            public void onDone() {
+                bh.consume(Boolean.TRUE);
+            }
+        };
+        // 按网络读缓冲区大小切片，模拟 HTTP 客户端交付的 ByteBuffer
+        for (int off = 0; off < stream.length; off += NETWORK_BUFFER) {
+            decoder.feed(ByteBuffer.wrap(stream, off, Math.min(NETWORK_BUFFER, stream.length - off)), handler);
+        }
+        decoder.finish(handler);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(SseDecoderBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
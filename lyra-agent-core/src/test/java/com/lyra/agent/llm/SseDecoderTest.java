@@ -0,0 +1,75 @@
+package com.lyra.agent.llm;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class SseDecoderTest {
+    private static final String DONE = "<done>";
+
+    @Test
+    public void testLineEndingsSplitAcrossBuffers() {
+        String stream = "data: {\"delta\":\"Hel\"}\r\n\r\ndata: {\"delta\":\"lo\"}\n\ndata: [DONE]\r\n\r\n";
+        List<String> expected = List.of("{\"delta\":\"Hel\"}", "{\"delta\":\"lo\"}", DONE);
+
+        // Every split point, including between \r and \n
+        for (int i = 0; i <= stream.length(); i++) {
+            assertEquals(expected, decode(stream.substring(0, i), stream.substring(i)), "split at " + i);
+        }
+        assertEquals(expected, decode(stream.split("")));
+    }
+
+    @Test
+    public void testMultiLineDataIsJoinedWithNewlines() {
+        assertEquals(List.of("{\"delta\":\n\"Hello\"}"), decode("data: {\"delta\":\ndata:\"Hello\"}\n\n"));
+    }
+
+    @Test
+    public void testCommentEventAndIdLinesAreIgnored() {
+        assertEquals(List.of("{\"delta\":\"Hi\"}"),
+                decode(": keep-alive\n\nevent: message\nid: 42\nretry: 1000\ndata: {\"delta\":\"Hi\"}\n\n"));
+    }
+
+    @Test
+    public void testDoneMarker() {
+        assertEquals(List.of(DONE), decode("data:[DONE]\n\n"));
+        // Only an exact [DONE] ends the stream
+        assertEquals(List.of("[DONE] "), decode("data: [DONE] \n\n"));
+    }
+
+    @Test
+    public void testTrailingEventWithoutBlankLine() {
+        assertEquals(List.of("{\"delta\":\"Hi\"}", "{\"delta\":\"!\"}"),
+                decode("data: {\"delta\":\"Hi\"}\n\ndata: {\"delta\":\"!\"}"));
+        assertEquals(List.of("{\"delta\":\"!\"}"), decode("data: {\"delta\":\"!\"}\r"));
+    }
+
+    /**
+     * Feeds each part as its own buffer, then ends the input; [DONE] is recorded as {@link #DONE}.
+     */
+    private static List<String> decode(String... parts) {
+        SseDecoder decoder = new SseDecoder();
+        List<String> events = new ArrayList<>();
+        SseDecoder.Handler handler = new SseDecoder.Handler() {
+            @Override
+            public void onData(byte[] buf, int off, int len) {
+                events.add(new String(buf, off, len, StandardCharsets.UTF_8));
+            }
+
+            @Override
+            public void onDone() {
+                events.add(DONE);
+            }
+        };
+        for (String part : parts) {
+            decoder.feed(ByteBuffer.wrap(part.getBytes(StandardCharsets.UTF_8)), handler);
+        }
+        decoder.finish(handler);
+        return events;
+    }
+}
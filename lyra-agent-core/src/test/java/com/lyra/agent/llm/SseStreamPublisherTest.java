@@ -0,0 +1,264 @@
+package com.lyra.agent.llm;
+
+import com.lyra.agent.autoconfigure.LyraAgentProperties;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SseStreamPublisherTest {
+    private static final String COMPLETE = "<complete>";
+
+    private final CountDownLatch endlessStarted = new CountDownLatch(1);
+    private final CountDownLatch clientGone = new CountDownLatch(1);
+    private final ExecutorService serverExecutor = Executors.newCachedThreadPool();
+    private HttpServer server;
+    private LlmHttpTransport transport;
+
+    @BeforeEach
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/stream", exchange -> {
+            try (OutputStream out = openStream(exchange)) {
+                for (int i = 0; i < 3; i++) {
+                    write(out, "data: \"chunk-" + i + "\"\n\n");
+                }
+                write(out, "data: [DONE]\n\n");
+            }
+        });
+        // OpenAI with include_usage: a finish chunk, then a usage-only chunk, then [DONE]
+        server.createContext("/usage", exchange -> {
+            try (OutputStream out = openStream(exchange)) {
+                write(out, "data: {\"choices\":[{\"delta\":{\"content\":\"Hi\"}}]}\n\n");
+                write(out, "data: {\"choices\":[{\"delta\":{},\"finish_reason\":\"length\"}]}\n\n");
+                write(out, "data: {\"choices\":[],\"usage\":{\"prompt_tokens\":7,\"completion_tokens\":2}}\n\n");
+                write(out, "data: [DONE]\n\n");
+            }
+        });
+        // Gemini style: the finish event ends the stream without [DONE]
+        server.createContext("/no-done", exchange -> {
+            try (OutputStream out = openStream(exchange)) {
+                write(out, "data: {\"choices\":[{\"delta\":{\"content\":\"Hi\"},\"finish_reason\":\"stop\"}]}\n\n");
+            }
+        });
+        server.createContext("/endless", exchange -> {
+            try (OutputStream out = openStream(exchange)) {
+                endlessStarted.countDown();
+                for (int i = 0; ; i++) {
+                    write(out, "data: \"chunk-" + i + "\"\n\n");
+                    Thread.sleep(10);
+                }
+            } catch (IOException e) {
+                clientGone.countDown();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        server.createContext("/error", exchange -> {
+            byte[] body = "overloaded".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(500, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.setExecutor(serverExecutor);
+        server.start();
+
+        LyraAgentProperties.Llm config = new LyraAgentProperties.Llm();
+        config.getPool().setHttp2(false);
+        transport = new LlmHttpTransport(config);
+    }
+
+    @AfterEach
+    public void stopServer() {
+        transport.close();
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    @Test
+    public void testChunksAreDeliveredOnDemand() throws Exception {
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        publisher("/stream").subscribe(subscriber);
+
+        subscriber.subscription.request(1);
+        assertEquals("chunk-0", subscriber.next());
+        assertNull(subscriber.events.poll(200, TimeUnit.MILLISECONDS), "only one chunk was requested");
+
+        subscriber.subscription.request(Long.MAX_VALUE);
+        assertEquals("chunk-1", subscriber.next());
+        assertEquals("chunk-2", subscriber.next());
+        assertEquals("<done:stop>", subscriber.next());
+        assertEquals(COMPLETE, subscriber.next());
+        // Nothing follows onComplete
+        subscriber.subscription.request(1);
+        assertNull(subscriber.events.poll(200, TimeUnit.MILLISECONDS));
+        assertEquals(0, transport.activeRequests(hostKey()));
+    }
+
+    @Test
+    public void testFinishAndUsageArriveAsOneTerminalChunk() throws Exception {
+        List<StreamChunk> chunks = collect(new SseStreamPublisher(transport,
+                () -> HttpRequest.newBuilder(URI.create("http://" + hostKey() + "/usage")).build(),
+                OpenAICompatibleLLMProvider::toChunk));
+
+        // [DONE] adds no chunk of its own after the merged one
+        assertEquals(2, chunks.size());
+        assertEquals("Hi", chunks.get(0).getContent());
+        StreamChunk terminal = chunks.get(1);
+        assertTrue(terminal.isDone());
+        assertEquals("length", terminal.getFinishReason());
+        assertEquals(Map.of(LlmResponse.PROMPT_TOKENS, 7, LlmResponse.COMPLETION_TOKENS, 2), terminal.getMetadata());
+    }
+
+    @Test
+    public void testTerminalChunkIsEmittedWhenTheStreamEndsWithoutDone() throws Exception {
+        List<StreamChunk> chunks = collect(new SseStreamPublisher(transport,
+                () -> HttpRequest.newBuilder(URI.create("http://" + hostKey() + "/no-done")).build(),
+                OpenAICompatibleLLMProvider::toChunk));
+
+        assertEquals(1, chunks.size());
+        assertEquals("Hi", chunks.get(0).getContent());
+        assertTrue(chunks.get(0).isDone());
+        assertEquals("stop", chunks.get(0).getFinishReason());
+    }
+
+    @Test
+    public void testCancelBeforeTheFirstChunkClosesTheBody() throws Exception {
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        publisher("/endless").subscribe(subscriber);
+        assertTrue(endlessStarted.await(5, TimeUnit.SECONDS));
+
+        subscriber.subscription.cancel();
+
+        assertTrue(clientGone.await(5, TimeUnit.SECONDS), "the HTTP body should be closed");
+        awaitNoActiveRequests();
+        subscriber.subscription.request(1);
+        assertNull(subscriber.events.poll(200, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testCancelAfterTheFirstChunkClosesTheBody() throws Exception {
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        publisher("/endless").subscribe(subscriber);
+        subscriber.subscription.request(1);
+        assertEquals("chunk-0", subscriber.next());
+
+        subscriber.subscription.cancel();
+
+        assertTrue(clientGone.await(5, TimeUnit.SECONDS), "the HTTP body should be closed");
+        awaitNoActiveRequests();
+        subscriber.subscription.request(1);
+        assertNull(subscriber.events.poll(200, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testHttpErrorIsDeliveredOnce() throws Exception {
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        publisher("/error").subscribe(subscriber);
+        subscriber.subscription.request(1);
+
+        LlmException error = assertInstanceOf(LlmException.class, subscriber.events.poll(5, TimeUnit.SECONDS));
+        assertEquals(500, error.getStatusCode());
+        subscriber.subscription.request(1);
+        assertNull(subscriber.events.poll(200, TimeUnit.MILLISECONDS));
+        awaitNoActiveRequests();
+    }
+
+    private SseStreamPublisher publisher(String path) {
+        URI uri = URI.create("http://" + hostKey() + path);
+        // Each event carries a JSON string literal
+        return new SseStreamPublisher(transport, () -> HttpRequest.newBuilder(uri).build(), parser -> {
+            parser.nextToken();
+            return new StreamChunk(parser.getText(), false, Map.of(), null);
+        });
+    }
+
+    private static List<StreamChunk> collect(SseStreamPublisher publisher) {
+        List<StreamChunk> chunks = new ArrayList<>();
+        StreamPublishers.consume(publisher, chunks::add);
+        return chunks;
+    }
+
+    private String hostKey() {
+        return "127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    private void awaitNoActiveRequests() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (transport.activeRequests(hostKey()) > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, transport.activeRequests(hostKey()), "the request slot should be released");
+    }
+
+    private static OutputStream openStream(HttpExchange exchange) throws IOException {
+        exchange.getResponseHeaders().add("Content-Type", "text/event-stream");
+        exchange.sendResponseHeaders(200, 0);
+        return exchange.getResponseBody();
+    }
+
+    private static void write(OutputStream out, String event) throws IOException {
+        out.write(event.getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    /**
+     * Records chunk contents, terminal chunks as {@code <done:reason>}, completion and errors in arrival order.
+     */
+    private static final class RecordingSubscriber implements Flow.Subscriber<StreamChunk> {
+        private final BlockingQueue<Object> events = new LinkedBlockingQueue<>();
+        private volatile Flow.Subscription subscription;
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(StreamChunk chunk) {
+            events.add(chunk.isDone() ? "<done:" + chunk.getFinishReason() + ">" : chunk.getContent());
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            events.add(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            events.add(COMPLETE);
+        }
+
+        Object next() throws InterruptedException {
+            Object event = events.poll(5, TimeUnit.SECONDS);
+            if (event instanceof Throwable error) {
+                throw new AssertionError("stream failed", error);
+            }
+            return event;
+        }
+    }
+}
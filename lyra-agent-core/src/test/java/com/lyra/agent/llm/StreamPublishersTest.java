@@ -0,0 +1,102 @@
+package com.lyra.agent.llm;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Flow;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class StreamPublishersTest {
+    private static final List<StreamChunk> CHUNKS = List.of(
+            new StreamChunk("Hel", false, Map.of(), null),
+            new StreamChunk("lo", false, Map.of(), null),
+            new StreamChunk("", true, Map.of(), "stop"));
+
+    @Test
+    public void testFromChunksDeliversOnDemand() {
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        StreamPublishers.fromChunks(CHUNKS).subscribe(subscriber);
+        assertEquals(List.of(), subscriber.events);
+
+        subscriber.subscription.request(1);
+        assertEquals(List.of("Hel"), subscriber.events);
+
+        subscriber.subscription.request(5);
+        assertEquals(List.of("Hel", "lo", "<done:stop>", "<complete>"), subscriber.events);
+        // Nothing follows onComplete
+        subscriber.subscription.request(1);
+        assertEquals(4, subscriber.events.size());
+    }
+
+    @Test
+    public void testFromChunksStopsOnCancel() {
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        StreamPublishers.fromChunks(CHUNKS).subscribe(subscriber);
+        subscriber.subscription.cancel();
+        subscriber.subscription.request(5);
+        assertEquals(List.of(), subscriber.events);
+
+        // Cancelling from onNext stops delivery within the same request
+        RecordingSubscriber cancelling = new RecordingSubscriber() {
+            @Override
+            public void onNext(StreamChunk chunk) {
+                super.onNext(chunk);
+                subscription.cancel();
+            }
+        };
+        StreamPublishers.fromChunks(CHUNKS).subscribe(cancelling);
+        cancelling.subscription.request(Long.MAX_VALUE);
+        cancelling.subscription.request(1);
+        assertEquals(List.of("Hel"), cancelling.events);
+    }
+
+    @Test
+    public void testErrorsAreDeliveredOnce() {
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        StreamPublishers.fromChunks(CHUNKS).subscribe(subscriber);
+        subscriber.subscription.request(0);
+        subscriber.subscription.request(1);
+        assertEquals(1, subscriber.events.size());
+        assertInstanceOf(IllegalArgumentException.class, subscriber.events.get(0));
+
+        LlmException failure = new LlmException("boom");
+        RecordingSubscriber failed = new RecordingSubscriber();
+        StreamPublishers.error(failure).subscribe(failed);
+        failed.subscription.request(1);
+        assertEquals(1, failed.events.size());
+        assertSame(failure, failed.events.get(0));
+    }
+
+    /**
+     * Records chunk contents, terminal chunks as {@code <done:reason>}, completion and errors in arrival order.
+     */
+    private static class RecordingSubscriber implements Flow.Subscriber<StreamChunk> {
+        final List<Object> events = new ArrayList<>();
+        Flow.Subscription subscription;
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(StreamChunk chunk) {
+            events.add(chunk.isDone() ? "<done:" + chunk.getFinishReason() + ">" : chunk.getContent());
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            events.add(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            events.add("<complete>");
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.lyra.agent.llm;
+
+import com.lyra.agent.agent.Message;
+import com.lyra.agent.tokenizer.ApproximateTokenizer;
+import com.lyra.agent.tokenizer.ContextBudget;
+import com.lyra.agent.tool.ToolDescriptor;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class TokenBudgetLLMProviderTest {
+
+    @Test
+    public void testToolSchemasCountTowardsTheBudget() {
+        ContextBudget budget = new ContextBudget(new ApproximateTokenizer("cl100k_base"), 1024 + 60, 1024);
+        List<Message> messages = List.of(Message.user("What is the weather in Oslo?"));
+        Map<String, Object> schema = Map.of("type", "object", "properties", Map.of(
+                "city", Map.of("type", "string", "description", "City name, e.g. Oslo or Bergen"),
+                "unit", Map.of("type", "string", "enum", List.of("celsius", "fahrenheit"))));
+        Map<String, Object> options = Map.of(LLMProvider.OPTION_TOOLS,
+                List.of(new ToolDescriptor("weather", "Current weather for a city", schema)));
+        LLMProvider delegate = Mockito.mock(LLMProvider.class);
+        when(delegate.chatAsync(anyList(), anyMap()))
+                .thenReturn(CompletableFuture.completedFuture(new LlmResponse("12°C", Map.of(), "stop")));
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        TokenBudgetLLMProvider provider = new TokenBudgetLLMProvider(delegate, budget, "openai", registry);
+
+        // The messages alone fit, the tool definitions push the prompt over the limit
+        assertEquals("12°C", provider.chatAsync(messages, Map.of()).join().getContent());
+        LlmException error = assertInstanceOf(LlmException.class,
+                assertThrows(CompletionException.class, () -> provider.chatAsync(messages, options).join()).getCause());
+        assertEquals(400, error.getStatusCode());
+        verify(delegate, never()).chatAsync(messages, options);
+        assertEquals(1.0, registry.counter("lyra.llm.prompt.rejected", "provider", "openai").count());
+    }
+}
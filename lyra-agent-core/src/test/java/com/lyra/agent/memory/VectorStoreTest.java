@@ -4,7 +4,6 @@ import com.lyra.agent.llm.EmbeddingModel;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 
-import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -24,10 +23,10 @@ public class VectorStoreTest {
         // "apple" -> [1.0, 0.0]
         // "banana" -> [0.9, 0.1]
         // "car" -> [0.0, 1.0]
-        when(embeddingModel.embed("apple")).thenReturn(Arrays.asList(1.0, 0.0));
-        when(embeddingModel.embed("banana")).thenReturn(Arrays.asList(0.9, 0.1));
-        when(embeddingModel.embed("car")).thenReturn(Arrays.asList(0.0, 1.0));
-        when(embeddingModel.embed("fruit")).thenReturn(Arrays.asList(1.0, 0.0)); // Query close to apple
+        when(embeddingModel.embed("apple")).thenReturn(new float[]{1.0f, 0.0f});
+        when(embeddingModel.embed("banana")).thenReturn(new float[]{0.9f, 0.1f});
+        when(embeddingModel.embed("car")).thenReturn(new float[]{0.0f, 1.0f});
+        when(embeddingModel.embed("fruit")).thenReturn(new float[]{1.0f, 0.0f}); // Query close to apple
 
         // 2. Create VectorStore
         VectorStore store = new InMemoryVectorStore(embeddingModel);
@@ -0,0 +1,206 @@
+package com.lyra.agent.parser;
+
+import com.lyra.agent.agent.ParsedAction;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class StreamingReActParserTest {
+
+    @Test
+    public void testActionSplitAcrossChunks() {
+        List<String> events = new ArrayList<>();
+        StreamingReActParser parser = new StreamingReActParser(new ReActParseListener() {
+            @Override
+            public void onActionName(String name) {
+                events.add("name:" + name);
+            }
+
+            @Override
+            public void onActionInput(String name, Map<String, Object> input) {
+                events.add("input:" + input);
+            }
+        });
+        String output = "Thought: look it up\nAction: search\nAction Input: {\"query\": \"a } in {text\"}";
+        String trailing = "\nObservation: made up";
+        // One character at a time, so every marker and the JSON are split across chunks
+        for (char c : (output + trailing).toCharArray()) {
+            parser.feed(String.valueOf(c));
+        }
+
+        assertTrue(parser.isComplete());
+        assertEquals(output.length(), parser.getEnd());
+        assertEquals(List.of("name:search", "input:{query=a } in {text}"), events);
+        ParsedAction action = parser.result();
+        assertFalse(action.isFinalAnswer());
+        assertEquals("look it up", action.getThought());
+        assertEquals("search", action.getActionName());
+        assertEquals(Map.of("query", "a } in {text"), action.getActionInput());
+    }
+
+    @Test
+    public void testSeveralActionsInOneStep() {
+        StreamingReActParser parser = new StreamingReActParser();
+        String output = "Thought: two lookups\nAction: search\nAction Input: {\"query\": \"a\"}\n"
+                + "Action: search\nAction Input: {\"query\": \"b\"}";
+        parser.feed(output);
+        assertFalse(parser.isComplete(), "another action may still follow");
+        parser.feed("\nObservation:");
+
+        assertTrue(parser.isComplete());
+        assertEquals(output.length(), parser.getEnd());
+        List<ParsedAction> actions = parser.result().getActions();
+        assertEquals(2, actions.size());
+        assertEquals(Map.of("query", "a"), actions.get(0).getActionInput());
+        assertEquals(Map.of("query", "b"), actions.get(1).getActionInput());
+    }
+
+    @Test
+    public void testFinalAnswerEndsAtNextTurn() {
+        StringBuilder answer = new StringBuilder();
+        StreamingReActParser parser = new StreamingReActParser(new ReActParseListener() {
+            @Override
+            public void onFinalAnswerDelta(String delta) {
+                answer.append(delta);
+            }
+        });
+        parser.feed("Thought: done\nFinal Ans");
+        parser.feed("wer: Paris. Question: none\nQue");
+        assertFalse(parser.isComplete());
+        parser.feed("stion: next");
+
+        assertTrue(parser.isComplete());
+        assertEquals("Paris. Question: none\n", answer.toString());
+        assertEquals("Paris. Question: none", parser.result().getFinalAnswer());
+        assertEquals("Thought: done\nFinal Answer: Paris. Question: none\n".length(), parser.getEnd());
+    }
+
+    @Test
+    public void testMarkersSplitAtChunkBoundaries() {
+        List<String> events = new ArrayList<>();
+        StreamingReActParser parser = new StreamingReActParser(new ReActParseListener() {
+            @Override
+            public void onActionName(String name) {
+                events.add("name:" + name);
+            }
+
+            @Override
+            public void onActionInput(String name, Map<String, Object> input) {
+                events.add("input:" + input);
+            }
+        });
+        parser.feed("Thou");
+        parser.feed("ght: look it up\nAc");
+        assertEquals("look it up", parser.getThought());
+        parser.feed("tion: sea");
+        parser.feed("rch\nAction In");
+        assertEquals(List.of("name:search"), events);
+        parser.feed("put: {\"query\": \"x\"}");
+        parser.finish();
+
+        assertEquals(List.of("name:search", "input:{query=x}"), events);
+        ParsedAction action = parser.result();
+        assertEquals("look it up", action.getThought());
+        assertEquals("search", action.getActionName());
+        assertEquals(Map.of("query", "x"), action.getActionInput());
+    }
+
+    @Test
+    public void testHeldBackPrefixThatIsNotAMarker() {
+        List<String> deltas = new ArrayList<>();
+        StreamingReActParser parser = new StreamingReActParser(new ReActParseListener() {
+            @Override
+            public void onThoughtDelta(String delta) {
+                deltas.add("thought:" + delta);
+            }
+
+            @Override
+            public void onFinalAnswerDelta(String delta) {
+                deltas.add("answer:" + delta);
+            }
+        });
+        // "Act" and "Quest" could start a marker, so they are held back until the next chunk shows they do not
+        parser.feed("Thought: check the Act");
+        assertEquals(List.of("thought:check the "), deltas);
+        parser.feed("ivity log\nFinal Answer: done\nQuest");
+        assertEquals(List.of("thought:check the ", "thought:Activity log\n", "answer:done\n"), deltas);
+        parser.feed("ions remain");
+        parser.finish();
+
+        assertEquals(List.of("thought:check the ", "thought:Activity log\n", "answer:done\n",
+                "answer:Questions remain"), deltas);
+        assertEquals("done\nQuestions remain", parser.result().getFinalAnswer());
+    }
+
+    @Test
+    public void testObservationInsideFinalAnswer() {
+        StreamingReActParser parser = new StreamingReActParser();
+        parser.feed("Final Answer: see Observation: 3 above\n");
+        assertFalse(parser.isComplete(), "a marker in the middle of a line is part of the answer");
+        parser.feed("Observ");
+        parser.feed("ation: made up");
+
+        assertTrue(parser.isComplete());
+        assertEquals("see Observation: 3 above", parser.result().getFinalAnswer());
+        assertEquals("Final Answer: see Observation: 3 above\n".length(), parser.getEnd());
+    }
+
+    @Test
+    public void testFinalAnswerAfterAction() {
+        List<String> events = new ArrayList<>();
+        StreamingReActParser parser = new StreamingReActParser(new ReActParseListener() {
+            @Override
+            public void onFinalAnswerStart() {
+                events.add("answer");
+            }
+
+            @Override
+            public void onActionInput(String name, Map<String, Object> input) {
+                events.add("input:" + input);
+            }
+        });
+        String output = "Thought: look it up\nAction: search\nAction Input: {\"query\": \"x\"}";
+        parser.feed(output + "\nFinal Answer: made up before the observation");
+
+        // The model answered without waiting for the observation; the action wins and the answer is dropped
+        assertTrue(parser.isComplete());
+        assertEquals(List.of("input:{query=x}"), events);
+        assertEquals(output.length(), parser.getEnd());
+        ParsedAction action = parser.result();
+        assertFalse(action.isFinalAnswer());
+        assertEquals("search", action.getActionName());
+    }
+
+    @Test
+    public void testActionWithoutInput() {
+        List<String> events = new ArrayList<>();
+        StreamingReActParser parser = new StreamingReActParser(new ReActParseListener() {
+            @Override
+            public void onActionName(String name) {
+                events.add("name:" + name);
+            }
+
+            @Override
+            public void onActionInput(String name, Map<String, Object> input) {
+                events.add("input:" + input);
+            }
+        });
+        parser.feed("Thought: I need the time\nAction: current_time");
+        assertFalse(parser.isComplete());
+
+        // The output ended before any input, so the action runs with an empty input instead of becoming the answer
+        parser.finish();
+        assertEquals(List.of("name:current_time", "input:{}"), events);
+        ParsedAction action = parser.result();
+        assertFalse(action.isFinalAnswer());
+        assertEquals("current_time", action.getActionName());
+        assertEquals(Map.of(), action.getActionInput());
+        assertEquals("current_time", ReActOutputParser.parse("Thought: I need the time\nAction: current_time\n").getActionName());
+    }
+}
@@ -0,0 +1,71 @@
+package com.lyra.agent.tokenizer;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class BpeTokenizerTest {
+
+    @Test
+    public void testLowestRankedPairsAreMergedFirst() throws IOException {
+        BpeTokenizer tokenizer = tokenizer("he", "ll", "hell");
+
+        // h e l l o -> he l l o -> he ll o -> hell o
+        assertArrayEquals(new int[]{258, 'o'}, tokenizer.encode("hello"));
+        assertEquals(2, tokenizer.count("hello"));
+        assertEquals("hello", tokenizer.decode(tokenizer.encode("hello")));
+    }
+
+    @Test
+    public void testWholePieceInTheVocabularyIsOneToken() throws IOException {
+        BpeTokenizer tokenizer = tokenizer("he", "ll", "hello", " hello");
+
+        // Pre-split into "hello" and " hello"
+        assertArrayEquals(new int[]{258, 259}, tokenizer.encode("hello hello"));
+        assertEquals(2, tokenizer.count("hello hello"));
+    }
+
+    @Test
+    public void testMultiByteCharactersRoundTrip() throws IOException {
+        BpeTokenizer tokenizer = tokenizer();
+
+        assertEquals(2, tokenizer.count("é"));
+        assertEquals("巴黎 é", tokenizer.decode(tokenizer.encode("巴黎 é")));
+        assertEquals(0, tokenizer.count(""));
+        assertEquals(0, tokenizer.count((String) null));
+    }
+
+    @Test
+    public void testMalformedVocabularyIsRejected() {
+        byte[] vocabulary = "aGVsbG8=\n".getBytes(StandardCharsets.US_ASCII);
+
+        assertThrows(IOException.class, () -> BpeTokenizer.load("cl100k_base", new ByteArrayInputStream(vocabulary)));
+        BpeTokenizer tokenizer = assertDoesNotThrow(() -> tokenizer());
+        assertThrows(IllegalArgumentException.class, () -> tokenizer.decode(new int[]{999}));
+    }
+
+    /**
+     * A vocabulary in tiktoken format: every single byte by value, then the given merges in rank order.
+     */
+    private static BpeTokenizer tokenizer(String... merges) throws IOException {
+        Base64.Encoder encoder = Base64.getEncoder();
+        StringBuilder vocabulary = new StringBuilder();
+        for (int b = 0; b < 256; b++) {
+            vocabulary.append(encoder.encodeToString(new byte[]{(byte) b})).append(' ').append(b).append('\n');
+        }
+        for (int i = 0; i < merges.length; i++) {
+            vocabulary.append(encoder.encodeToString(merges[i].getBytes(StandardCharsets.UTF_8)))
+                    .append(' ').append(256 + i).append('\n');
+        }
+        return BpeTokenizer.load("cl100k_base",
+                new ByteArrayInputStream(vocabulary.toString().getBytes(StandardCharsets.US_ASCII)));
+    }
+}
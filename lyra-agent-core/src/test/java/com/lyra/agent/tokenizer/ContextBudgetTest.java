@@ -0,0 +1,59 @@
+package com.lyra.agent.tokenizer;
+
+import com.lyra.agent.tool.ToolDescriptor;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ContextBudgetTest {
+
+    @Test
+    public void testContextWindowIsLookedUpByModelPrefix() {
+        assertEquals(128000, ContextBudget.contextWindowFor("gpt-4o-mini"));
+        assertEquals(32768, ContextBudget.contextWindowFor("gpt-4-32k-0613"));
+        assertEquals(8192, ContextBudget.contextWindowFor("gpt-4-0613"));
+        assertEquals(65536, ContextBudget.contextWindowFor("DeepSeek-Chat"));
+        assertEquals(ContextBudget.DEFAULT_CONTEXT_WINDOW, ContextBudget.contextWindowFor("llama-3"));
+        assertEquals(ContextBudget.DEFAULT_CONTEXT_WINDOW, ContextBudget.contextWindowFor(null));
+    }
+
+    @Test
+    public void testEncodingFollowsTheModelFamily() {
+        assertEquals("o200k_base", ContextBudget.encodingFor("gpt-4o"));
+        assertEquals("o200k_base", ContextBudget.encodingFor("o3-mini"));
+        assertEquals("cl100k_base", ContextBudget.encodingFor("gpt-4-turbo"));
+        assertEquals("cl100k_base", ContextBudget.encodingFor("qwen-plus"));
+    }
+
+    @Test
+    public void testPromptLimitReservesRoomForTheOutput() {
+        ContextBudget budget = new ContextBudget(new ApproximateTokenizer("cl100k_base"), 8192, 1024);
+
+        assertEquals(7168, budget.promptLimit(null));
+        assertEquals(7168, budget.promptLimit(Map.of()));
+        assertEquals(6192, budget.promptLimit(Map.of("max_tokens", 2000)));
+        assertEquals(0, budget.promptLimit(Map.of("max_tokens", 10000)));
+        assertEquals(ContextBudget.DEFAULT_RESERVED_OUTPUT_TOKENS,
+                ContextBudget.forModel("gpt-4o", budget.getTokenizer()).getReservedOutputTokens());
+    }
+
+    @Test
+    public void testToolDefinitionsAreCountedWithTheirSchemas() {
+        ContextBudget budget = new ContextBudget(new ApproximateTokenizer("cl100k_base"), 8192, 1024);
+        ToolDescriptor bare = new ToolDescriptor("search", "Search the web");
+        ToolDescriptor withSchema = new ToolDescriptor("search", "Search the web", Map.of(
+                "type", "object",
+                "properties", Map.of("query", Map.of("type", "string", "description", "Search terms")),
+                "required", List.of("query")));
+
+        assertEquals(0, budget.toolTokens(null));
+        assertEquals(0, budget.toolTokens(Map.of("tools", List.of())));
+        int bareTokens = budget.toolTokens(Map.of("tools", List.of(bare)));
+        assertTrue(bareTokens > 0);
+        assertTrue(budget.toolTokens(Map.of("tools", List.of(withSchema))) > bareTokens + 10, "the schema should be counted");
+    }
+}
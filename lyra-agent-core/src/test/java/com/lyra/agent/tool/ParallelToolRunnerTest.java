@@ -0,0 +1,124 @@
+package com.lyra.agent.tool;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ParallelToolRunnerTest {
+
+    @Test
+    public void testCallsRunTogetherAndResultsKeepSubmissionOrder() throws Exception {
+        try (ParallelToolRunner runner = new ParallelToolRunner(3, 5000)) {
+            // Each call waits until all three have started, so this only finishes if they run in parallel
+            CountDownLatch started = new CountDownLatch(3);
+            List<Future<Object>> results = runner.runAll(List.of(
+                    call(started, 100, "weather"),
+                    call(started, 50, "search"),
+                    call(started, 0, "calculator")));
+
+            assertEquals("weather", results.get(0).get());
+            assertEquals("search", results.get(1).get());
+            assertEquals("calculator", results.get(2).get());
+        }
+    }
+
+    @Test
+    public void testCallsOverTheTimeoutAreCancelledAndInterrupted() throws Exception {
+        try (ParallelToolRunner runner = new ParallelToolRunner(2, 100)) {
+            AtomicBoolean interrupted = new AtomicBoolean();
+            CountDownLatch finished = new CountDownLatch(1);
+            long start = System.nanoTime();
+            List<Future<Object>> results = runner.runAll(List.of(
+                    () -> "fast",
+                    () -> {
+                        try {
+                            Thread.sleep(10_000);
+                            return "slow";
+                        } catch (InterruptedException e) {
+                            interrupted.set(true);
+                            throw e;
+                        } finally {
+                            finished.countDown();
+                        }
+                    }));
+
+            assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5), "runAll waited past the timeout");
+            assertEquals("fast", results.get(0).get());
+            assertTrue(results.get(1).isCancelled());
+            assertThrows(CancellationException.class, () -> results.get(1).get());
+            assertTrue(finished.await(5, TimeUnit.SECONDS));
+            assertTrue(interrupted.get());
+        }
+    }
+
+    @Test
+    public void testFailureIsReportedForItsOwnCallOnly() throws Exception {
+        try (ParallelToolRunner runner = new ParallelToolRunner(2, 5000)) {
+            List<Future<Object>> results = runner.runAll(List.of(
+                    () -> {
+                        throw new IllegalStateException("tool failed");
+                    },
+                    () -> "ok"));
+
+            ExecutionException e = assertThrows(ExecutionException.class, () -> results.get(0).get());
+            assertInstanceOf(IllegalStateException.class, e.getCause());
+            assertEquals("ok", results.get(1).get());
+        }
+    }
+
+    @Test
+    public void testParallelismIsCapped() throws Exception {
+        try (ParallelToolRunner runner = new ParallelToolRunner(2, 5000)) {
+            AtomicInteger running = new AtomicInteger();
+            AtomicInteger peak = new AtomicInteger();
+            Callable<Object> call = () -> {
+                peak.accumulateAndGet(running.incrementAndGet(), Math::max);
+                Thread.sleep(20);
+                running.decrementAndGet();
+                return "ok";
+            };
+
+            List<Future<Object>> results = runner.runAll(List.of(call, call, call, call, call));
+            Future<Object> submitted = runner.submit(call);
+
+            for (Future<Object> result : results) {
+                assertEquals("ok", result.get());
+            }
+            assertEquals("ok", submitted.get(5, TimeUnit.SECONDS));
+            assertTrue(peak.get() <= 2, "peak concurrency " + peak.get());
+        }
+        assertThrows(IllegalArgumentException.class, () -> new ParallelToolRunner(0, 5000));
+    }
+
+    @Test
+    public void testSharedRunnerIsReusedAndCannotBeClosed() throws Exception {
+        ParallelToolRunner shared = ParallelToolRunner.shared();
+        assertSame(shared, ParallelToolRunner.shared());
+
+        shared.close();
+        assertEquals("ok", shared.submit(() -> "ok").get(5, TimeUnit.SECONDS));
+    }
+
+    private static Callable<Object> call(CountDownLatch started, long sleepMs, String result) {
+        return () -> {
+            started.countDown();
+            assertTrue(started.await(5, TimeUnit.SECONDS), "calls did not run in parallel");
+            Thread.sleep(sleepMs);
+            return result;
+        };
+    }
+}
@@ -13,6 +13,8 @@ import com.lyra.agent.event.EventBus;
 import com.lyra.agent.event.EventListener;
 import com.lyra.agent.event.SimpleEventBus;
 import com.lyra.agent.llm.LLMProvider;
+import com.lyra.agent.tokenizer.ContextBudget;
+import com.lyra.agent.tool.ParallelToolRunner;
 import com.lyra.agent.tool.ToolRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -39,6 +41,8 @@ public class DemoController {
     private final LyraAgentProperties properties;
     private final ResourceLoader resourceLoader;
     private final EventBus eventBus;
+    private final ContextBudget budget;
+    private final ParallelToolRunner toolRunner;
     private final ExecutorService executor = Executors.newCachedThreadPool();
     private final ObjectMapper objectMapper = new ObjectMapper();
     private static final Logger logger = LoggerFactory.getLogger(DemoController.class);
@@ -47,13 +51,17 @@ public class DemoController {
                           ToolRegistry toolRegistry, 
                           LyraAgentProperties properties, 
                           ResourceLoader resourceLoader,
-                          EventBus eventBus) {
+                          EventBus eventBus,
+                          ContextBudget budget,
+                          ParallelToolRunner toolRunner) {
         this.agentManager = agentManager;
         this.llmProvider = llmProvider;
         this.toolRegistry = toolRegistry;
         this.properties = properties;
         this.resourceLoader = resourceLoader;
         this.eventBus = eventBus;
+        this.budget = budget;
+        this.toolRunner = toolRunner;
     }
 
     @GetMapping(value = "/demo/chat", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
@@ -89,6 +97,7 @@ public class DemoController {
                 localEventBus.subscribe("agent.stream.chunk", listener);
                 localEventBus.subscribe("agent.tool.start", listener);
                 localEventBus.subscribe("agent.tool.end", listener);
+                localEventBus.subscribe("agent.answer.delta", listener);
                 localEventBus.subscribe("agent.finish", listener);
                 localEventBus.subscribe("agent.error", listener);
                 localEventBus.subscribe("agent.timeout", listener);
@@ -97,9 +106,14 @@ public class DemoController {
                 logger.info("Getting default ReAct agent");
                 // Create a temporary AgentManager with the local event bus for this request
                 SimpleModeRegistry modeRegistry = new SimpleModeRegistry();
-                // Register ReactMode
-                Resource promptTemplate = resourceLoader.getResource("classpath:templates/react-prompt.txt");
-                ReactMode reactMode = new ReactMode(llmProvider, toolRegistry, localEventBus, properties.getMaxSteps(), promptTemplate);
+                // Register ReactMode, sharing the configured budget and tool runner across requests
+                Resource promptTemplate = resourceLoader.getResource(properties.getPromptPath());
+                ReactMode reactMode = new ReactMode(llmProvider, toolRegistry, localEventBus, properties.getMaxSteps(), promptTemplate,
+                        new ReactMode.Options()
+                                .budget(budget)
+                                .nativeToolCalling(properties.isNativeToolCalling())
+                                .speculativeToolExecution(properties.isSpeculativeToolExecution())
+                                .toolRunner(toolRunner));
                 modeRegistry.register(reactMode);
                 
                 AgentManager localAgentManager = new SimpleAgentManager(
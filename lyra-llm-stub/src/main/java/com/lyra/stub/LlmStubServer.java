@@ -0,0 +1,522 @@
+package com.lyra.stub;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 可嵌入的 LLM 桩服务器，兼容 OpenAI/DeepSeek 与 Gemini 的 HTTP 接口，用于无网络的压测与延迟测试。
+ * <p>
+ * 支持的接口（路径前缀任意，便于直接作为 {@code agent.llm.base-url}）：
+ * <ul>
+ *   <li>{@code POST .../chat/completions}：阻塞或 {@code stream=true} 的 SSE，{@code stream_options.include_usage} 时追加用量块；
+ *       请求带 {@code tools} 时，脚本回复中的 {@code Action:}/{@code Action Input:} 以原生 tool_calls 返回；</li>
+ *   <li>{@code POST .../embeddings}：按文本哈希生成确定性的单位向量，支持数组 input；</li>
+ *   <li>{@code POST .../models/{model}:generateContent} 与 {@code :streamGenerateContent?alt=sse}。</li>
+ * </ul>
+ * 补全文本由 {@link StubScript} 生成，在请求的 stop / stopSequences 首次出现处截断，按空白切分为 token；首个 token 前等待 timeToFirstTokenMs，
+ * 之后按 tokensPerSecond 输出（以绝对时间排期，不累积误差）。可按比例注入 500 与 429 错误。
+ * <p>
+ * 独立运行：{@code java -cp ... com.lyra.stub.LlmStubServer --port=8089 --ttft-ms=300 --tps=40 --error-rate=0.01}。
+ */
+public class LlmStubServer implements Closeable {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final Pattern TOKEN = Pattern.compile("\\s*\\S+|\\s+");
+    private static final Pattern ACTION = Pattern.compile("(?s)(.*?)\\s*Action:\\s*(\\S+)\\s*Action Input:\\s*(.*)");
+    private static final Pattern GEMINI_METHOD = Pattern.compile("/models/([^/:]+):(generateContent|streamGenerateContent)$");
+
+    private final StubOptions options;
+    private final StubScript script;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong injectedErrors = new AtomicLong();
+    private final AtomicLong injectedRateLimits = new AtomicLong();
+
+    /**
+     * 创建并启动服务器。
+     *
+     * @param options 行为配置
+     * @param script  补全脚本
+     * @throws IOException 端口无法绑定
+     */
+    public LlmStubServer(StubOptions options, StubScript script) throws IOException {
+        this.options = options;
+        this.script = script;
+        AtomicInteger threadId = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(Math.max(1, options.getThreads()), r -> {
+            Thread t = new Thread(r, "lyra-llm-stub-" + threadId.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", options.getPort()), 1024);
+        this.server.createContext("/", this::handle);
+        this.server.setExecutor(executor);
+        this.server.start();
+    }
+
+    /**
+     * 以默认 ReAct 脚本启动。
+     *
+     * @param options 行为配置
+     * @return 已启动的服务器
+     * @throws IOException 端口无法绑定
+     */
+    public static LlmStubServer start(StubOptions options) throws IOException {
+        return new LlmStubServer(options, ReActScript.defaults());
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * OpenAI 兼容接口的基础地址，可直接用作 {@code agent.llm.base-url}。
+     *
+     * @return 形如 {@code http://127.0.0.1:port/v1}
+     */
+    public String getOpenAiBaseUrl() {
+        return "http://127.0.0.1:" + getPort() + "/v1";
+    }
+
+    /**
+     * Gemini 接口的基础地址。
+     *
+     * @return 形如 {@code http://127.0.0.1:port/v1beta}
+     */
+    public String getGeminiBaseUrl() {
+        return "http://127.0.0.1:" + getPort() + "/v1beta";
+    }
+
+    public StubOptions getOptions() {
+        return options;
+    }
+
+    public long getRequests() {
+        return requests.get();
+    }
+
+    public long getInjectedErrors() {
+        return injectedErrors.get();
+    }
+
+    public long getInjectedRateLimits() {
+        return injectedRateLimits.get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            requests.incrementAndGet();
+            String path = exchange.getRequestURI().getPath();
+            boolean gemini = path.contains(":");
+            if ("HEAD".equals(exchange.getRequestMethod())) {
+                // 提供者启动时的连接预热；HEAD 响应不能带响应体，否则复用该连接的下一个请求会读到残留数据
+                exchange.sendResponseHeaders(200, -1);
+                return;
+            }
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                sendError(exchange, 405, "Method not allowed", gemini);
+                return;
+            }
+            JsonNode body = MAPPER.readTree(exchange.getRequestBody());
+            if (injectFailure(exchange, gemini)) {
+                return;
+            }
+            Matcher geminiMethod = GEMINI_METHOD.matcher(path);
+            if (path.endsWith("/chat/completions")) {
+                chatCompletions(exchange, body);
+            } else if (path.endsWith("/embeddings")) {
+                embeddings(exchange, body);
+            } else if (geminiMethod.find()) {
+                generateContent(exchange, body, geminiMethod.group(1), "streamGenerateContent".equals(geminiMethod.group(2)));
+            } else {
+                sendError(exchange, 404, "Unknown endpoint: " + path, gemini);
+            }
+        } catch (IOException e) {
+            // 客户端中途断开（例如流被取消），无需处理
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private boolean injectFailure(HttpExchange exchange, boolean gemini) throws IOException {
+        double roll = ThreadLocalRandom.current().nextDouble();
+        if (roll < options.getRateLimitRate()) {
+            injectedRateLimits.incrementAndGet();
+            exchange.getResponseHeaders().set("Retry-After", String.valueOf(options.getRetryAfterSeconds()));
+            sendError(exchange, 429, "Rate limit reached (injected)", gemini);
+            return true;
+        }
+        if (roll < options.getRateLimitRate() + options.getErrorRate()) {
+            injectedErrors.incrementAndGet();
+            sendError(exchange, 500, "Internal server error (injected)", gemini);
+            return true;
+        }
+        return false;
+    }
+
+    private void chatCompletions(HttpExchange exchange, JsonNode body) throws IOException {
+        List<StubMessage> messages = new ArrayList<>();
+        for (JsonNode message : body.path("messages")) {
+            messages.add(new StubMessage(message.path("role").asText(), message.path("content").asText("")));
+        }
+        String model = body.path("model").asText("stub");
+        String reply = truncate(script.reply(messages), body.path("stop"));
+        // 提供了工具时，把文本动作改写为原生工具调用：Thought 作为 content，参数按 token 分片
+        Matcher action = body.path("tools").isEmpty() ? null : ACTION.matcher(reply);
+        boolean toolCall = action != null && action.matches();
+        List<String> tokens = tokenize(toolCall ? action.group(1) : reply);
+        List<String> arguments = toolCall ? tokenize(action.group(3).trim()) : List.of();
+        int completionTokens = tokens.size() + arguments.size() + (toolCall ? 1 : 0);
+        String finishReason = toolCall ? "tool_calls" : "stop";
+        int promptTokens = promptTokens(messages);
+        long start = System.nanoTime();
+
+        if (!body.path("stream").asBoolean(false)) {
+            sleepUntil(start, completionTokens);
+            Map<String, Object> message = new LinkedHashMap<>();
+            message.put("role", "assistant");
+            message.put("content", String.join("", tokens));
+            if (toolCall) {
+                message.put("tool_calls", List.of(openAiToolCall(null, action.group(2), String.join("", arguments))));
+            }
+            Map<String, Object> choice = new LinkedHashMap<>();
+            choice.put("index", 0);
+            choice.put("message", message);
+            choice.put("finish_reason", finishReason);
+            Map<String, Object> response = completion("chat.completion", model);
+            response.put("choices", List.of(choice));
+            response.put("usage", openAiUsage(promptTokens, completionTokens));
+            sendJson(exchange, 200, response);
+            return;
+        }
+
+        startSse(exchange);
+        OutputStream out = exchange.getResponseBody();
+        int index = 0;
+        for (String token : tokens) {
+            sleepUntil(start, index++);
+            writeEvent(out, openAiChunk(model, Map.of("content", token), null));
+        }
+        if (toolCall) {
+            sleepUntil(start, index++);
+            writeEvent(out, openAiChunk(model, Map.of("tool_calls", List.of(openAiToolCall(0, action.group(2), ""))), null));
+            for (String token : arguments) {
+                sleepUntil(start, index++);
+                Map<String, Object> fragment = new LinkedHashMap<>();
+                fragment.put("index", 0);
+                fragment.put("function", Map.of("arguments", token));
+                writeEvent(out, openAiChunk(model, Map.of("tool_calls", List.of(fragment)), null));
+            }
+        }
+        writeEvent(out, openAiChunk(model, Map.of(), finishReason));
+        if (body.path("stream_options").path("include_usage").asBoolean(false)) {
+            Map<String, Object> usage = completion("chat.completion.chunk", model);
+            usage.put("choices", List.of());
+            usage.put("usage", openAiUsage(promptTokens, completionTokens));
+            writeEvent(out, usage);
+        }
+        out.write("data: [DONE]\n\n".getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    private void generateContent(HttpExchange exchange, JsonNode body, String model, boolean stream) throws IOException {
+        List<StubMessage> messages = new ArrayList<>();
+        StringBuilder system = new StringBuilder();
+        for (JsonNode part : body.path("systemInstruction").path("parts")) {
+            system.append(part.path("text").asText(""));
+        }
+        if (system.length() > 0) {
+            messages.add(new StubMessage("system", system.toString()));
+        }
+        for (JsonNode content : body.path("contents")) {
+            StringBuilder text = new StringBuilder();
+            for (JsonNode part : content.path("parts")) {
+                text.append(part.path("text").asText(""));
+            }
+            String role = content.path("role").asText("user");
+            messages.add(new StubMessage("model".equals(role) ? "assistant" : role, text.toString()));
+        }
+        List<String> tokens = tokenize(truncate(script.reply(messages),
+                body.path("generationConfig").path("stopSequences")));
+        int promptTokens = promptTokens(messages);
+        long start = System.nanoTime();
+
+        if (!stream) {
+            sleepUntil(start, tokens.size());
+            Map<String, Object> response = new LinkedHashMap<>();
+            response.put("candidates", List.of(geminiCandidate(String.join("", tokens), "STOP")));
+            response.put("usageMetadata", geminiUsage(promptTokens, tokens.size()));
+            response.put("modelVersion", model);
+            sendJson(exchange, 200, response);
+            return;
+        }
+
+        startSse(exchange);
+        OutputStream out = exchange.getResponseBody();
+        for (int i = 0; i < tokens.size(); i++) {
+            sleepUntil(start, i);
+            boolean last = i == tokens.size() - 1;
+            Map<String, Object> event = new LinkedHashMap<>();
+            event.put("candidates", List.of(geminiCandidate(tokens.get(i), last ? "STOP" : null)));
+            if (last) {
+                event.put("usageMetadata", geminiUsage(promptTokens, tokens.size()));
+            }
+            writeEvent(out, event);
+        }
+        if (tokens.isEmpty()) {
+            Map<String, Object> event = new LinkedHashMap<>();
+            event.put("candidates", List.of(geminiCandidate("", "STOP")));
+            event.put("usageMetadata", geminiUsage(promptTokens, 0));
+            writeEvent(out, event);
+        }
+    }
+
+    private void embeddings(HttpExchange exchange, JsonNode body) throws IOException {
+        List<String> inputs = new ArrayList<>();
+        JsonNode input = body.path("input");
+        if (input.isArray()) {
+            input.forEach(item -> inputs.add(item.asText()));
+        } else {
+            inputs.add(input.asText());
+        }
+        sleepUntil(System.nanoTime(), 0);
+        List<Map<String, Object>> data = new ArrayList<>(inputs.size());
+        int promptTokens = 0;
+        for (int i = 0; i < inputs.size(); i++) {
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("object", "embedding");
+            item.put("index", i);
+            item.put("embedding", vector(inputs.get(i), options.getEmbeddingDimensions()));
+            data.add(item);
+            promptTokens += tokenize(inputs.get(i)).size();
+        }
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("object", "list");
+        response.put("data", data);
+        response.put("model", body.path("model").asText("stub"));
+        response.put("usage", Map.of("prompt_tokens", promptTokens, "total_tokens", promptTokens));
+        sendJson(exchange, 200, response);
+    }
+
+    /**
+     * 等到第 index 个 token 的排期时间：start + ttft + index / tps。
+     */
+    private void sleepUntil(long startNanos, int index) throws IOException {
+        double tps = options.getTokensPerSecond();
+        long due = startNanos + TimeUnit.MILLISECONDS.toNanos(options.getTimeToFirstTokenMs())
+                + (tps > 0 ? (long) (index * 1_000_000_000L / tps) : 0);
+        long remaining = due - System.nanoTime();
+        if (remaining <= 0) {
+            return;
+        }
+        try {
+            TimeUnit.NANOSECONDS.sleep(remaining);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted", e);
+        }
+    }
+
+    private static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) {
+            return tokens;
+        }
+        Matcher matcher = TOKEN.matcher(text);
+        while (matcher.find()) {
+            tokens.add(matcher.group());
+        }
+        return tokens;
+    }
+
+    private static int promptTokens(List<StubMessage> messages) {
+        int tokens = 0;
+        for (StubMessage message : messages) {
+            tokens += tokenize(message.getContent()).size() + 3;
+        }
+        return tokens + 3;
+    }
+
+    /**
+     * 在任一停止序列首次出现处截断回复，与真实服务一致，停止序列本身不输出。
+     */
+    private static String truncate(String reply, JsonNode stop) {
+        int end = reply.length();
+        for (JsonNode sequence : stop.isArray() ? stop : List.of(stop)) {
+            String text = sequence.asText("");
+            int at = text.isEmpty() ? -1 : reply.indexOf(text);
+            if (at >= 0 && at < end) {
+                end = at;
+            }
+        }
+        return reply.substring(0, end);
+    }
+
+    /**
+     * 由文本哈希生成确定性的单位向量，相同文本得到相同向量。
+     */
+    private static float[] vector(String text, int dimensions) {
+        float[] vector = new float[Math.max(1, dimensions)];
+        long seed = text.hashCode() * 0x9E3779B97F4A7C15L;
+        double norm = 0;
+        for (int i = 0; i < vector.length; i++) {
+            seed ^= seed << 13;
+            seed ^= seed >>> 7;
+            seed ^= seed << 17;
+            vector[i] = (float) ((seed >>> 11) * 0x1.0p-53 * 2 - 1);
+            norm += vector[i] * vector[i];
+        }
+        float scale = (float) (1 / Math.sqrt(norm == 0 ? 1 : norm));
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] *= scale;
+        }
+        return vector;
+    }
+
+    private static Map<String, Object> completion(String object, String model) {
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("id", "chatcmpl-stub");
+        response.put("object", object);
+        response.put("created", System.currentTimeMillis() / 1000);
+        response.put("model", model);
+        return response;
+    }
+
+    private static Map<String, Object> openAiChunk(String model, Map<String, Object> delta, String finishReason) {
+        Map<String, Object> choice = new LinkedHashMap<>();
+        choice.put("index", 0);
+        choice.put("delta", delta);
+        choice.put("finish_reason", finishReason);
+        Map<String, Object> chunk = completion("chat.completion.chunk", model);
+        chunk.put("choices", List.of(choice));
+        return chunk;
+    }
+
+    /**
+     * 一次工具调用；index 非 null 时为流式响应的首个分片。
+     */
+    private static Map<String, Object> openAiToolCall(Integer index, String name, String arguments) {
+        Map<String, Object> call = new LinkedHashMap<>();
+        if (index != null) {
+            call.put("index", index);
+        }
+        call.put("id", "call_" + Integer.toHexString(ThreadLocalRandom.current().nextInt()));
+        call.put("type", "function");
+        call.put("function", Map.of("name", name, "arguments", arguments));
+        return call;
+    }
+
+    private static Map<String, Object> openAiUsage(int promptTokens, int completionTokens) {
+        Map<String, Object> usage = new LinkedHashMap<>();
+        usage.put("prompt_tokens", promptTokens);
+        usage.put("completion_tokens", completionTokens);
+        usage.put("total_tokens", promptTokens + completionTokens);
+        return usage;
+    }
+
+    private static Map<String, Object> geminiCandidate(String text, String finishReason) {
+        Map<String, Object> candidate = new LinkedHashMap<>();
+        candidate.put("content", Map.of("role", "model", "parts", List.of(Map.of("text", text))));
+        if (finishReason != null) {
+            candidate.put("finishReason", finishReason);
+        }
+        candidate.put("index", 0);
+        return candidate;
+    }
+
+    private static Map<String, Object> geminiUsage(int promptTokens, int completionTokens) {
+        Map<String, Object> usage = new LinkedHashMap<>();
+        usage.put("promptTokenCount", promptTokens);
+        usage.put("candidatesTokenCount", completionTokens);
+        usage.put("totalTokenCount", promptTokens + completionTokens);
+        return usage;
+    }
+
+    private static void startSse(HttpExchange exchange) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+        exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+        exchange.sendResponseHeaders(200, 0);
+    }
+
+    private static void writeEvent(OutputStream out, Object event) throws IOException {
+        out.write("data: ".getBytes(StandardCharsets.UTF_8));
+        out.write(MAPPER.writeValueAsBytes(event));
+        out.write("\n\n".getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    private static void sendJson(HttpExchange exchange, int status, Object body) throws IOException {
+        byte[] bytes = MAPPER.writeValueAsBytes(body);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message, boolean gemini) throws IOException {
+        Map<String, Object> error = new LinkedHashMap<>();
+        if (gemini) {
+            error.put("code", status);
+            error.put("message", message);
+            error.put("status", status == 429 ? "RESOURCE_EXHAUSTED" : status == 404 ? "NOT_FOUND" : "INTERNAL");
+        } else {
+            error.put("message", message);
+            error.put("type", status == 429 ? "rate_limit_exceeded" : "server_error");
+            error.put("code", status == 429 ? "rate_limit_exceeded" : null);
+        }
+        sendJson(exchange, status, Map.of("error", error));
+    }
+
+    /**
+     * 独立运行入口，参数形如 {@code --port=8089 --ttft-ms=200 --tps=50 --error-rate=0 --rate-limit-rate=0}。
+     *
+     * @param args 命令行参数
+     * @throws Exception 启动失败
+     */
+    public static void main(String[] args) throws Exception {
+        StubOptions options = new StubOptions().setPort(8089);
+        for (String arg : args) {
+            String[] kv = arg.replaceFirst("^--", "").split("=", 2);
+            String value = kv.length > 1 ? kv[1] : "";
+            switch (kv[0]) {
+                case "port" -> options.setPort(Integer.parseInt(value));
+                case "ttft-ms" -> options.setTimeToFirstTokenMs(Long.parseLong(value));
+                case "tps" -> options.setTokensPerSecond(Double.parseDouble(value));
+                case "error-rate" -> options.setErrorRate(Double.parseDouble(value));
+                case "rate-limit-rate" -> options.setRateLimitRate(Double.parseDouble(value));
+                case "retry-after" -> options.setRetryAfterSeconds(Integer.parseInt(value));
+                case "threads" -> options.setThreads(Integer.parseInt(value));
+                default -> throw new IllegalArgumentException("Unknown option: " + arg);
+            }
+        }
+        LlmStubServer server = start(options);
+        System.out.println("LLM stub listening: OpenAI/DeepSeek base-url " + server.getOpenAiBaseUrl()
+                + ", Gemini base-url " + server.getGeminiBaseUrl());
+        Thread.currentThread().join();
+    }
+}
@@ -0,0 +1,76 @@
+package com.lyra.stub;
+
+import java.util.List;
+
+/**
+ * 按 ReAct 格式回复的脚本：前 actionSteps 轮调用指定工具，之后给出最终答案。
+ * <p>
+ * 当前轮次由请求中已有的观察数推断：每条 tool 角色的消息（原生工具调用的结果）计一次，
+ * 其余消息统计以 {@code Observation:} 开头的行，跳过提示词模板中的格式说明行（{@code Observation: the result of the action}）。
+ * 对话式调用与单 Prompt 调用（历史拼在 Prompt 中）都适用。
+ */
+public class ReActScript implements StubScript {
+    private static final String TEMPLATE_LINE = "Observation: the result of the action";
+
+    private final String toolName;
+    private final String toolInput;
+    private final int actionSteps;
+    private final String thought;
+    private final String finalAnswer;
+
+    /**
+     * 构造函数。
+     *
+     * @param toolName    调用的工具名
+     * @param toolInput   工具输入（JSON）
+     * @param actionSteps 给出最终答案前的工具调用轮数
+     * @param thought     每轮 Thought 的文本，用于控制补全长度
+     * @param finalAnswer 最终答案
+     */
+    public ReActScript(String toolName, String toolInput, int actionSteps, String thought, String finalAnswer) {
+        this.toolName = toolName;
+        this.toolInput = toolInput;
+        this.actionSteps = actionSteps;
+        this.thought = thought;
+        this.finalAnswer = finalAnswer;
+    }
+
+    /**
+     * 默认脚本：调用一次 search 工具后回答。
+     *
+     * @return 脚本
+     */
+    public static ReActScript defaults() {
+        return new ReActScript("search", "{\"query\": \"capital of France\"}", 1,
+                "I need to look this up before answering.", "The capital of France is Paris.");
+    }
+
+    @Override
+    public String reply(List<StubMessage> messages) {
+        if (observations(messages) < actionSteps) {
+            return thought + "\nAction: " + toolName + "\nAction Input: " + toolInput;
+        }
+        return "I now know the final answer\nFinal Answer: " + finalAnswer;
+    }
+
+    private static int observations(List<StubMessage> messages) {
+        int count = 0;
+        for (StubMessage message : messages) {
+            String content = message.getContent();
+            if ("tool".equals(message.getRole())) {
+                count++;
+                continue;
+            }
+            if (content == null) {
+                continue;
+            }
+            for (String line : content.split("\n")) {
+                String trimmed = line.trim();
+                if (trimmed.startsWith("Observation:") && !trimmed.startsWith(TEMPLATE_LINE)) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,22 @@
+package com.lyra.stub;
+
+/**
+ * 桩服务器收到的一条消息，角色已统一为 system/user/assistant/tool（Gemini 的 model 映射为 assistant）。
+ */
+public final class StubMessage {
+    private final String role;
+    private final String content;
+
+    public StubMessage(String role, String content) {
+        this.role = role;
+        this.content = content;
+    }
+
+    public String getRole() {
+        return role;
+    }
+
+    public String getContent() {
+        return content;
+    }
+}
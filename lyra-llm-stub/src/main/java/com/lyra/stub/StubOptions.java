@@ -0,0 +1,37 @@
+package com.lyra.stub;
+
+/**
+ * 桩服务器行为配置。延迟与错误注入对所有接口生效，可在运行中修改，下一个请求起生效。
+ */
+public class StubOptions {
+    private volatile int port = 0; // 0 = 随机端口
+    private volatile long timeToFirstTokenMs = 200;
+    private volatile double tokensPerSecond = 50; // 0 = 不限速
+    private volatile double errorRate = 0;
+    private volatile double rateLimitRate = 0;
+    private volatile int retryAfterSeconds = 1;
+    private volatile int embeddingDimensions = 16;
+    private volatile int threads = 256;
+
+    public int getPort() { return port; }
+    public StubOptions setPort(int port) { this.port = port; return this; }
+    /** 首个 token 前的延迟；阻塞模式下为响应前的固定延迟。 */
+    public long getTimeToFirstTokenMs() { return timeToFirstTokenMs; }
+    public StubOptions setTimeToFirstTokenMs(long timeToFirstTokenMs) { this.timeToFirstTokenMs = timeToFirstTokenMs; return this; }
+    /** 首个 token 之后的输出速率；阻塞模式下按同样速率计算总耗时。 */
+    public double getTokensPerSecond() { return tokensPerSecond; }
+    public StubOptions setTokensPerSecond(double tokensPerSecond) { this.tokensPerSecond = tokensPerSecond; return this; }
+    /** 返回 500 的请求比例。 */
+    public double getErrorRate() { return errorRate; }
+    public StubOptions setErrorRate(double errorRate) { this.errorRate = errorRate; return this; }
+    /** 返回 429（带 Retry-After）的请求比例。 */
+    public double getRateLimitRate() { return rateLimitRate; }
+    public StubOptions setRateLimitRate(double rateLimitRate) { this.rateLimitRate = rateLimitRate; return this; }
+    public int getRetryAfterSeconds() { return retryAfterSeconds; }
+    public StubOptions setRetryAfterSeconds(int retryAfterSeconds) { this.retryAfterSeconds = retryAfterSeconds; return this; }
+    public int getEmbeddingDimensions() { return embeddingDimensions; }
+    public StubOptions setEmbeddingDimensions(int embeddingDimensions) { this.embeddingDimensions = embeddingDimensions; return this; }
+    /** 处理请求的线程数，即可同时保持的流数。 */
+    public int getThreads() { return threads; }
+    public StubOptions setThreads(int threads) { this.threads = threads; return this; }
+}
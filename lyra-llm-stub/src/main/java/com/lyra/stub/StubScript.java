@@ -0,0 +1,27 @@
+package com.lyra.stub;
+
+import java.util.List;
+
+/**
+ * 决定桩服务器对每个请求返回的补全文本。实现需线程安全。
+ */
+@FunctionalInterface
+public interface StubScript {
+    /**
+     * 生成补全文本。
+     *
+     * @param messages 请求中的消息
+     * @return 补全文本，按 token 切分后逐块返回
+     */
+    String reply(List<StubMessage> messages);
+
+    /**
+     * 总是返回同一段文本的脚本。
+     *
+     * @param reply 补全文本
+     * @return 脚本
+     */
+    static StubScript fixed(String reply) {
+        return messages -> reply;
+    }
+}
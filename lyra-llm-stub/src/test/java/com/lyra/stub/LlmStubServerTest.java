@@ -0,0 +1,143 @@
+package com.lyra.stub;
+
+import com.lyra.agent.agent.Message;
+import com.lyra.agent.agent.ModeContext;
+import com.lyra.agent.agent.ModeResult;
+import com.lyra.agent.agent.ReactMode;
+import com.lyra.agent.autoconfigure.LyraAgentProperties;
+import com.lyra.agent.llm.DeepSeekLLMProvider;
+import com.lyra.agent.llm.GeminiLLMProvider;
+import com.lyra.agent.llm.LLMProvider;
+import com.lyra.agent.llm.LlmException;
+import com.lyra.agent.llm.LlmResponse;
+import com.lyra.agent.llm.OpenAIEmbeddingModel;
+import com.lyra.agent.llm.OpenAILLMProvider;
+import com.lyra.agent.llm.StreamChunk;
+import com.lyra.agent.event.SimpleEventBus;
+import com.lyra.agent.llm.StreamPublishers;
+import com.lyra.agent.memory.SimpleAgentMemory;
+import com.lyra.agent.tokenizer.ApproximateTokenizer;
+import com.lyra.agent.tokenizer.ContextBudget;
+import com.lyra.agent.tool.ToolRegistry;
+import com.lyra.agent.tool.impl.SearchTool;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.DefaultResourceLoader;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LlmStubServerTest {
+    private static final String ANSWER = "The capital of France is Paris.";
+
+    private LlmStubServer server;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        server = new LlmStubServer(new StubOptions().setTimeToFirstTokenMs(100).setTokensPerSecond(200),
+                StubScript.fixed("Thought: I now know the final answer\nFinal Answer: " + ANSWER));
+    }
+
+    @AfterEach
+    public void tearDown() {
+        server.close();
+    }
+
+    @Test
+    public void testOpenAiBlockingAndStreaming() {
+        LLMProvider provider = new OpenAILLMProvider(config(server.getOpenAiBaseUrl()));
+
+        long start = System.nanoTime();
+        LlmResponse response = provider.chat(List.of(Message.user("What is the capital of France?")), Map.of());
+        assertTrue(System.nanoTime() - start >= 100_000_000L, "time to first token not applied");
+        assertTrue(response.getContent().endsWith("Final Answer: " + ANSWER));
+        assertEquals(15, response.getMetadata().get(LlmResponse.COMPLETION_TOKENS));
+
+        List<StreamChunk> chunks = collect(provider.streamChat(List.of(Message.user("question")), Map.of()));
+        StringBuilder content = new StringBuilder();
+        chunks.forEach(chunk -> content.append(chunk.getContent()));
+        assertEquals(response.getContent(), content.toString());
+        assertTrue(chunks.size() > 15, "expected one chunk per token");
+        assertTrue(chunks.stream().anyMatch(chunk -> Integer.valueOf(15).equals(
+                chunk.getMetadata().get(LlmResponse.COMPLETION_TOKENS))), "usage chunk missing");
+    }
+
+    @Test
+    public void testDeepSeekAndGemini() {
+        LLMProvider deepSeek = new DeepSeekLLMProvider(config(server.getOpenAiBaseUrl()));
+        assertTrue(deepSeek.generate("question").endsWith(ANSWER));
+
+        LLMProvider gemini = new GeminiLLMProvider(config("http://127.0.0.1:" + server.getPort()));
+        assertTrue(gemini.generate("question").endsWith(ANSWER));
+        StringBuilder content = new StringBuilder();
+        collect(gemini.streamChat(List.of(Message.system("Be brief."), Message.user("question")), Map.of()))
+                .forEach(chunk -> content.append(chunk.getContent()));
+        assertTrue(content.toString().endsWith(ANSWER));
+    }
+
+    @Test
+    public void testEmbeddingsAreDeterministic() {
+        OpenAIEmbeddingModel model = new OpenAIEmbeddingModel(config(server.getOpenAiBaseUrl()));
+        List<float[]> vectors = model.embedBatch(List.of("apple", "banana", "apple"));
+        assertEquals(16, vectors.get(0).length);
+        assertArrayEquals(vectors.get(0), vectors.get(2));
+        assertArrayEquals(vectors.get(1), model.embed("banana"));
+    }
+
+    @Test
+    public void testInjectedRateLimit() {
+        server.getOptions().setRateLimitRate(1.0).setRetryAfterSeconds(7);
+        LLMProvider provider = new OpenAILLMProvider(config(server.getOpenAiBaseUrl()));
+        CompletionException e = assertThrows(CompletionException.class,
+                () -> provider.chatAsync(List.of(Message.user("question")), Map.of()).join());
+        LlmException cause = assertInstanceOf(LlmException.class, e.getCause());
+        assertEquals(429, cause.getStatusCode());
+        assertTrue(server.getInjectedRateLimits() >= 1);
+    }
+
+    @Test
+    public void testReactModeNativeToolCalls() throws Exception {
+        try (LlmStubServer react = new LlmStubServer(new StubOptions().setTimeToFirstTokenMs(0).setTokensPerSecond(1000),
+                ReActScript.defaults())) {
+            LLMProvider provider = new OpenAILLMProvider(config(react.getOpenAiBaseUrl()));
+            ToolRegistry tools = new ToolRegistry(List.of(new SearchTool()));
+            SimpleEventBus eventBus = new SimpleEventBus();
+            List<Object> toolResults = new ArrayList<>();
+            eventBus.subscribe("agent.tool.end", event -> toolResults.add(event.payload().get("result")));
+            ReactMode mode = new ReactMode(provider, tools, eventBus, 5,
+                    new DefaultResourceLoader().getResource("classpath:templates/react-prompt.txt"),
+                    new ReactMode.Options()
+                            .budget(ContextBudget.forModel("gpt-4o", new ApproximateTokenizer("o200k_base")))
+                            .nativeToolCalling(true));
+            ModeResult result = mode.run(new ModeContext(List.of(Message.user("What is the capital of France?")),
+                    new SimpleAgentMemory(), tools, provider, Map.of(), List.of()));
+
+            assertTrue(result.isFinal());
+            assertEquals("The capital of France is Paris.", result.getFinalAnswer());
+            assertEquals(2, result.getUsage().getLlmCalls());
+            assertEquals(List.of("Result for capital of France"), toolResults);
+        }
+    }
+
+    private static LyraAgentProperties.Llm config(String baseUrl) {
+        LyraAgentProperties.Llm llm = new LyraAgentProperties.Llm();
+        llm.setBaseUrl(baseUrl);
+        llm.setApiKey("stub");
+        return llm;
+    }
+
+    private static List<StreamChunk> collect(java.util.concurrent.Flow.Publisher<StreamChunk> publisher) {
+        List<StreamChunk> chunks = new ArrayList<>();
+        StreamPublishers.consume(publisher, chunks::add);
+        return chunks;
+    }
+}